@@ -11,7 +11,7 @@
  */
 final class ErrorMessages {
     public static final String EMPTY_EXPRESSION = "The inputted expression is empty.";
-    public static final String TOO_MANY_TOKENS = "The number of tokens exceeds the limit (StaticSettings.MAX_TOKEN_COUNT: '$0')";
+    public static final String TOO_MANY_TOKENS = "The number of tokens exceeds the limit (StaticSettings.MAX_TOKEN_COUNT or setLimits: '$0')";
     public static final String DEFICIENT_OPEN_PARENTHESIS = "The number of open parentheses '(' is deficient.";
     public static final String DEFICIENT_CLOSED_PARENTHESIS = "The number of closed parentheses ')' is deficient.";
     public static final String EMPTY_PARENTHESIS = "The content of parentheses '()' should not be empty.";
@@ -22,7 +22,7 @@ final class ErrorMessages {
     public static final String UNKNOWN_UNARY_PREFIX_OPERATOR = "Unknown unary-prefix operator: '$0'";
     public static final String UNKNOWN_BINARY_OPERATOR = "Unknown binary operator: '$0'";
     public static final String UNKNOWN_OPERATOR_SYNTAX = "Unknown operator syntax: '$0'";
-    public static final String EXCEEDS_MAX_AST_DEPTH = "The depth of the AST exceeds the limit (StaticSettings.MAX_AST_DEPTH: '$0')";
+    public static final String EXCEEDS_MAX_AST_DEPTH = "The depth of the AST exceeds the limit (StaticSettings.MAX_AST_DEPTH or setLimits: '$0')";
     public static final String UNEXPECTED_PARTIAL_EXPRESSION = "Unexpected end of a partial expression";
     public static final String INVALID_NUMBER_LITERAL = "Invalid number literal: '$0'";
     public static final String INVALID_MEMORY_ADDRESS = "Invalid memory address: '$0'";
@@ -31,7 +31,7 @@ final class ErrorMessages {
     public static final String FUNCTION_NOT_FOUND = "Function not found: '$0'";
     public static final String UNEXPECTED_OPERATOR = "Unexpected operator: '$0'";
     public static final String UNEXPECTED_TOKEN = "Unexpected token: '$0'";
-    public static final String TOO_LONG_EXPRESSION = "The length of the expression exceeds the limit (StaticSettings.MAX_EXPRESSION_CHAR_COUNT: '$0')";
+    public static final String TOO_LONG_EXPRESSION = "The length of the expression exceeds the limit (StaticSettings.MAX_EXPRESSION_CHAR_COUNT or setLimits: '$0')";
     public static final String UNEXPECTED_ERROR = "Unexpected error occurred: $0";
     public static final String REEVAL_NOT_AVAILABLE = "\"reeval\" is not available before using \"eval\"";
     public static final String TOO_LONG_VARIABLE_NAME = "The length of the variable name exceeds the limit (StaticSettings.MAX_NAME_CHAR_COUNT: '$0')";
@@ -39,4 +39,16 @@ final class ErrorMessages {
     public static final String VARIABLE_ALREADY_DECLARED = "The variable '$0' is already declared";
     public static final String FUNCTION_ALREADY_CONNECTED = "The function '$0' is already connected";
     public static final String INVALID_VARIABLE_ADDRESS = "Invalid memory address: '$0'";
+    public static final String UNEXPECTED_LET = "The keyword 'let' is available only at the beginning of an expression or a partial expression";
+    public static final String INVALID_LET_SYNTAX = "A variable name and '=' are required at the right of 'let', as: 'let name = value in expression'";
+    public static final String DEFICIENT_LET = "The keyword 'let' corresponding with 'in' is deficient.";
+    public static final String DEFICIENT_IN = "The keyword 'in' corresponding with 'let' is deficient.";
+    public static final String UNEXPECTED_STATEMENT_SEPARATOR = "The statement separator ';' is not available in parentheses";
+    public static final String INVALID_CONDITIONAL_OPERATOR = "The conditional operator should be in the form: 'condition ? value1 : value2'";
+    public static final String INVALID_REDUCTION_ARGUMENTS = "The built-in function '$0' should be called in the form: '$0(index, lower, upper, expression)'";
+    public static final String INVALID_FUNCTION_COST = "The cost of the function '$0' should be a non-negative number: '$1'";
+    public static final String EVALUATION_TIMED_OUT = "The evaluation has been aborted, because it exceeded the time limit ('$0' ns)";
+    public static final String EVALUATION_CANCELLED = "The evaluation has been cancelled";
+    public static final String SPECIALIZED_VARIABLE_ASSIGNED = "The variable '$0' can not be specialized as a constant, because a value is assigned to it in the expression";
+    public static final String INVALID_REDUCTION_RANGE = "The limits of the index of '$0' should be finite, and the number of iterations should not exceed the limit (StaticSettings.MAX_REDUCTION_ITERATION_COUNT): from '$1' to '$2'";
 }
@@ -11,7 +11,7 @@
  */
 final class ErrorMessages {
     public static final String EMPTY_EXPRESSION = "入力された計算式が空です。";
-    public static final String TOO_MANY_TOKENS = "入力トークンの数が、許容上限を超過しています (StaticSettings.MAX_TOKEN_COUNT: '$0')";
+    public static final String TOO_MANY_TOKENS = "入力トークンの数が、許容上限を超過しています (StaticSettings.MAX_TOKEN_COUNT または setLimits: '$0')";
     public static final String DEFICIENT_OPEN_PARENTHESIS = "開き括弧 '(' の数が足りません。";
     public static final String DEFICIENT_CLOSED_PARENTHESIS = "閉じ括弧 ')' の数が足りません。";
     public static final String EMPTY_PARENTHESIS = "括弧 '()' の中が空になっていますが、何かが必要です。";
@@ -22,7 +22,7 @@ final class ErrorMessages {
     public static final String UNKNOWN_UNARY_PREFIX_OPERATOR = "'$0' は文法的に前置演算子と解釈されましたが、サポートされていない記号です。";
     public static final String UNKNOWN_BINARY_OPERATOR = "'$0' は文法的に二項演算子と解釈されましたが、サポートされていない記号です。";
     public static final String UNKNOWN_OPERATOR_SYNTAX = "'$0' は文法的に演算子と推測されますが、サポートされていない書き方や記号です。";
-    public static final String EXCEEDS_MAX_AST_DEPTH = "抽象構文木の深さが、許容上限を超過しています (StaticSettings.MAX_AST_DEPTH: '$0')";
+    public static final String EXCEEDS_MAX_AST_DEPTH = "抽象構文木の深さが、許容上限を超過しています (StaticSettings.MAX_AST_DEPTH または setLimits: '$0')";
     public static final String UNEXPECTED_PARTIAL_EXPRESSION = "部分式が、予期しない形で終わっています。";
     public static final String INVALID_NUMBER_LITERAL = "数値リテラル '$0' は、記法が想定外の形になっています。";
     public static final String INVALID_MEMORY_ADDRESS = "アドレス '$0' は未割当か、許容領域外です。";
@@ -31,7 +31,7 @@ final class ErrorMessages {
     public static final String FUNCTION_NOT_FOUND = "関数が見つかりません: '$0'";
     public static final String UNEXPECTED_OPERATOR = "'$0' は文法的に演算子と推測されますが、種類や文法などを解釈できませんでした。";
     public static final String UNEXPECTED_TOKEN = "トークン '$0' の種類や文法などを解釈できませんでした。";
-    public static final String TOO_LONG_EXPRESSION = "式の長さが、許容上限を超過しています (StaticSettings.MAX_EXPRESSION_CHAR_COUNT: '$0')";
+    public static final String TOO_LONG_EXPRESSION = "式の長さが、許容上限を超過しています (StaticSettings.MAX_EXPRESSION_CHAR_COUNT または setLimits: '$0')";
     public static final String UNEXPECTED_ERROR = "通常想定されていないエラーが発生しました: $0";
     public static final String REEVAL_NOT_AVAILABLE = "\"reeval\" は、 \"eval\" を一度も使用する前にコールする事はできません。";
     public static final String TOO_LONG_VARIABLE_NAME = "変数名の長さが、許容上限を超過しています (StaticSettings.MAX_NAME_CHAR_COUNT: '$0')";
@@ -39,4 +39,16 @@ final class ErrorMessages {
     public static final String VARIABLE_ALREADY_DECLARED = "変数 '$0' は既に宣言されています。";
     public static final String FUNCTION_ALREADY_CONNECTED = "関数 '$0' は既に登録されています。";
     public static final String INVALID_VARIABLE_ADDRESS = "変数のアドレス '$0' は未割当か、許容領域外です。";
+    public static final String UNEXPECTED_LET = "キーワード 'let' は、式または部分式の先頭にのみ記述できます。";
+    public static final String INVALID_LET_SYNTAX = "'let' の右には、'let 名前 = 値 in 式' の形で、変数名と '=' が必要です。";
+    public static final String DEFICIENT_LET = "'in' に対応するキーワード 'let' が足りません。";
+    public static final String DEFICIENT_IN = "'let' に対応するキーワード 'in' が足りません。";
+    public static final String UNEXPECTED_STATEMENT_SEPARATOR = "文の区切り ';' は、括弧の中には記述できません。";
+    public static final String INVALID_CONDITIONAL_OPERATOR = "条件演算子は '条件 ? 値1 : 値2' の形で記述してください。";
+    public static final String INVALID_REDUCTION_ARGUMENTS = "組み込み関数 '$0' は '$0(インデックス, 下限, 上限, 式)' の形で呼び出してください。";
+    public static final String INVALID_FUNCTION_COST = "関数 '$0' のコストには、0 以上の数値を指定してください: '$1'";
+    public static final String EVALUATION_TIMED_OUT = "評価が制限時間 ('$0' ns) を超過したため、中断されました。";
+    public static final String EVALUATION_CANCELLED = "評価がキャンセルされました。";
+    public static final String SPECIALIZED_VARIABLE_ASSIGNED = "変数 '$0' は式の中で値が代入されるため、定数として特殊化できません。";
+    public static final String INVALID_REDUCTION_RANGE = "'$0' のインデックスの上限と下限は有限の値で、反復回数は上限 (StaticSettings.MAX_REDUCTION_ITERATION_COUNT) 以下である必要があります: '$1' から '$2'";
 }
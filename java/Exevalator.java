@@ -9,15 +9,33 @@
  */
 // package your.projects.package.anywhere;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.List;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.ArrayDeque;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.EnumSet;
 import java.util.Map;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -34,7 +52,7 @@ import java.util.regex.Pattern;
  */
 final class ErrorMessages {
     public static final String EMPTY_EXPRESSION = "The inputted expression is empty.";
-    public static final String TOO_MANY_TOKENS = "The number of tokens exceeds the limit (StaticSettings.MAX_TOKEN_COUNT: '$0')";
+    public static final String TOO_MANY_TOKENS = "The number of tokens exceeds the limit (StaticSettings.MAX_TOKEN_COUNT or setLimits: '$0')";
     public static final String DEFICIENT_OPEN_PARENTHESIS = "The number of open parentheses '(' is deficient.";
     public static final String DEFICIENT_CLOSED_PARENTHESIS = "The number of closed parentheses ')' is deficient.";
     public static final String EMPTY_PARENTHESIS = "The content of parentheses '()' should not be empty.";
@@ -45,7 +63,7 @@ final class ErrorMessages {
     public static final String UNKNOWN_UNARY_PREFIX_OPERATOR = "Unknown unary-prefix operator: '$0'";
     public static final String UNKNOWN_BINARY_OPERATOR = "Unknown binary operator: '$0'";
     public static final String UNKNOWN_OPERATOR_SYNTAX = "Unknown operator syntax: '$0'";
-    public static final String EXCEEDS_MAX_AST_DEPTH = "The depth of the AST exceeds the limit (StaticSettings.MAX_AST_DEPTH: '$0')";
+    public static final String EXCEEDS_MAX_AST_DEPTH = "The depth of the AST exceeds the limit (StaticSettings.MAX_AST_DEPTH or setLimits: '$0')";
     public static final String UNEXPECTED_PARTIAL_EXPRESSION = "Unexpected end of a partial expression";
     public static final String INVALID_NUMBER_LITERAL = "Invalid number literal: '$0'";
     public static final String INVALID_MEMORY_ADDRESS = "Invalid memory address: '$0'";
@@ -54,7 +72,7 @@ final class ErrorMessages {
     public static final String FUNCTION_NOT_FOUND = "Function not found: '$0'";
     public static final String UNEXPECTED_OPERATOR = "Unexpected operator: '$0'";
     public static final String UNEXPECTED_TOKEN = "Unexpected token: '$0'";
-    public static final String TOO_LONG_EXPRESSION = "The length of the expression exceeds the limit (StaticSettings.MAX_EXPRESSION_CHAR_COUNT: '$0')";
+    public static final String TOO_LONG_EXPRESSION = "The length of the expression exceeds the limit (StaticSettings.MAX_EXPRESSION_CHAR_COUNT or setLimits: '$0')";
     public static final String UNEXPECTED_ERROR = "Unexpected error occurred: $0";
     public static final String REEVAL_NOT_AVAILABLE = "\"reeval\" is not available before using \"eval\"";
     public static final String TOO_LONG_VARIABLE_NAME = "The length of the variable name exceeds the limit (StaticSettings.MAX_NAME_CHAR_COUNT: '$0')";
@@ -62,6 +80,18 @@ final class ErrorMessages {
     public static final String VARIABLE_ALREADY_DECLARED = "The variable '$0' is already declared";
     public static final String FUNCTION_ALREADY_CONNECTED = "The function '$0' is already connected";
     public static final String INVALID_VARIABLE_ADDRESS = "Invalid memory address: '$0'";
+    public static final String UNEXPECTED_LET = "The keyword 'let' is available only at the beginning of an expression or a partial expression";
+    public static final String INVALID_LET_SYNTAX = "A variable name and '=' are required at the right of 'let', as: 'let name = value in expression'";
+    public static final String DEFICIENT_LET = "The keyword 'let' corresponding with 'in' is deficient.";
+    public static final String DEFICIENT_IN = "The keyword 'in' corresponding with 'let' is deficient.";
+    public static final String UNEXPECTED_STATEMENT_SEPARATOR = "The statement separator ';' is not available in parentheses";
+    public static final String INVALID_CONDITIONAL_OPERATOR = "The conditional operator should be in the form: 'condition ? value1 : value2'";
+    public static final String INVALID_REDUCTION_ARGUMENTS = "The built-in function '$0' should be called in the form: '$0(index, lower, upper, expression)'";
+    public static final String INVALID_FUNCTION_COST = "The cost of the function '$0' should be a non-negative number: '$1'";
+    public static final String EVALUATION_TIMED_OUT = "The evaluation has been aborted, because it exceeded the time limit ('$0' ns)";
+    public static final String EVALUATION_CANCELLED = "The evaluation has been cancelled";
+    public static final String SPECIALIZED_VARIABLE_ASSIGNED = "The variable '$0' can not be specialized as a constant, because a value is assigned to it in the expression";
+    public static final String INVALID_REDUCTION_RANGE = "The limits of the index of '$0' should be finite, and the number of iterations should not exceed the limit (StaticSettings.MAX_REDUCTION_ITERATION_COUNT): from '$1' to '$2'";
 }
 
 
@@ -70,6 +100,12 @@ final class ErrorMessages {
  */
 public final class Exevalator {
 
+    /** The empty memory, shared by engines in which no variables are declared. */
+    private static final double[] EMPTY_MEMORY = new double[0];
+
+    /** The size of the memory allocated when the first variable is declared. */
+    private static final int INITIAL_MEMORY_SIZE = 8;
+
     /** The array used as as a virtual memory storing values of variables. */
     private volatile double[] memory;
 
@@ -82,1388 +118,6326 @@ public final class Exevalator {
     /** The Map mapping each variable name to an address of the variable. */
     private volatile Map<String, Integer> variableTable;
 
-    /** The Map mapping each function name to an IExevalatorFunction instance. */
+    /**
+     * The Map mapping each function name to an IExevalatorFunction instance.
+     * It is the shared FunctionRegistry itself until any function is connected to this engine.
+     */
     private volatile Map<String, FunctionInterface> functionTable;
 
+    /** The Map mapping each function name to the estimated cost of a call of it, used in "explain" method (null until any cost is set). */
+    private volatile Map<String, Double> functionCostTable;
+
     /** Caches the content of the expression evaluated last time, to skip re-parsing. */
     private volatile String lastEvaluatedExpression;
 
-    /**
-     * Creates a new interpreter of the Exevalator.
-     */
-    public Exevalator() {
-        this.memory = new double[64];
-        this.memoryUsage = 0;
-        this.evaluator = new Evaluator();
-        this.variableTable = new ConcurrentHashMap<String, Integer>();
-        this.functionTable = new ConcurrentHashMap<String, FunctionInterface>();
-        this.lastEvaluatedExpression = null;
-    }
+    /** The number of tokens of the expression evaluated last time. */
+    private volatile int lastTokenCount;
+
+    /** Listeners to which events of this engine are notified (empty if no listeners are added). */
+    private volatile EventListener[] eventListeners;
+
+    /** The listener dispatching times of function calls to listeners, set to evaluators if any listener requires them. */
+    private final EventListener functionCallDispatcher;
+
+    /** The checkpoint checked in evaluations having deadlines or cancellation tokens. */
+    private final Evaluator.Checkpoint checkpoint;
+
+    /** The scratch Set of names of local variables (e.g. let-bound ones) reused by "validate" method, guarded by the lock. */
+    private final Set<String> validationNameSet;
+
+    /** The default time limit of evaluations in nanoseconds (0 if there is no limit). */
+    private volatile long defaultTimeout;
 
     /**
-     * Evaluates (computes) the value of an expression.
-     *
-     * @param expression The expression to be evaluated.
-     * @return The evaluated value.
+     * The lock guarding the state of this engine.
+     * A ReentrantLock is used instead of "synchronized", so that virtual threads waiting for it
+     * or blocking in connected functions don't pin their carrier threads.
      */
-    public synchronized double eval(String expression) {
-        if (expression == null) {
-            throw new NullPointerException();
-        }
-        if (StaticSettings.MAX_EXPRESSION_CHAR_COUNT < expression.length()) {
-            throw new Exevalator.Exception(
-                ErrorMessages.TOO_LONG_EXPRESSION.replace("$0", Integer.toString(StaticSettings.MAX_EXPRESSION_CHAR_COUNT))
-            );
-        }
+    private final ReentrantLock lock;
 
-        try {
-            boolean expressionChanged = expression != this.lastEvaluatedExpression
-            && !expression.equals(this.lastEvaluatedExpression);
+    /** The executor on which "evalAsync" method evaluates expressions, or null to use the default executor. */
+    private volatile Executor asyncExecutor;
 
-            // If the expression changed from the last-evaluated expression, re-parsing is necessary.
-            if (expressionChanged || !this.evaluator.isEvaluatable()) {
+    /** The maximum number of characters in an expression (StaticSettings.MAX_EXPRESSION_CHAR_COUNT by default). */
+    private volatile int maxExpressionCharCount;
 
-                // Split the expression into tokens, and analyze them.
-                Token[] tokens = LexicalAnalyzer.analyze(expression);
+    /** The maximum number of tokens in an expression (StaticSettings.MAX_TOKEN_COUNT by default). */
+    private volatile int maxTokenCount;
 
-                /*
-                // Temporary, for debugging tokens
-                for (Token token: tokens) {
-                    System.out.println(token.toString());
-                }
-                */
+    /** The maximum depth of an AST (StaticSettings.MAX_AST_DEPTH by default). */
+    private volatile int maxAstDepth;
 
-                // Construct AST (Abstract Syntax Tree) by parsing tokens.
-                AstNode ast = Parser.parse(tokens);
+    /** The flag representing whether stack traces are captured for exceptions thrown by this engine (true by default). */
+    private volatile boolean stackTraceEnabled;
 
-                /*
-                // Temporary, for debugging AST
-                System.out.println(ast.toMarkuppedText());
-                */
+    /** The pool of subtrees shared among compiled expressions, or null not to share them (default). */
+    private volatile SubtreePool subtreePool;
 
-                // Update the evaluator, to evaluate the parsed AST.
-                this.evaluator.update(ast, this.variableTable, this.functionTable);
+    /**
+     * The evaluator of the engine from which this engine has been forked,
+     * of which AST is reused when the same expression is evaluated first (null if there is no such evaluator).
+     */
+    private volatile Evaluator inheritedEvaluator;
 
-                this.lastEvaluatedExpression = expression;
-            }
+    /** The flag representing whether the evaluator is inherited by forked engines, so it should not be updated in-place. */
+    private volatile boolean evaluatorShared;
 
-            // Evaluate the value of the expression, and return it.
-            double evaluatedValue = this.evaluator.evaluate(this.memory);
-            return evaluatedValue;
+    /** The flag representing whether the memory is shared with forked engines (or the engine from which this engine has been forked). */
+    private volatile boolean memoryShared;
 
-        } catch (Exevalator.Exception ee) {
-            throw ee;
+    /** The flag representing whether the variable table is shared with forked engines (or the engine from which this engine has been forked). */
+    private volatile boolean variableTableShared;
 
-        // Wrap an unexpected exception by Exevalator.Exception and rethrow it.
-        } catch (java.lang.Exception e) {
-            throw new Exevalator.Exception(ErrorMessages.UNEXPECTED_ERROR.replace("$0", e.getMessage()), e);
-        }
-    }
+    /** The flag representing whether the function table is shared with forked engines (or the engine from which this engine has been forked). */
+    private volatile boolean functionTableShared;
+
+    /** The flag representing whether the function cost table is shared with forked engines (or the engine from which this engine has been forked). */
+    private volatile boolean functionCostTableShared;
 
     /**
-     * Re-evaluates (re-computes) the value of the expression evaluated by "eval" method last time.
-     * This method may (slightly) work faster than calling "eval" method repeatedly for the same expression.
-     * Note that, the result value may differ from the last evaluated value, 
-     * if values of variables or behaviour of functions had changed.
-     * 
-     * @return The evaluated value
+     * Creates a new interpreter of the Exevalator.
      */
-    public synchronized double reeval() {
-        if (this.evaluator.isEvaluatable()) {
-            double evaluatedValue = this.evaluator.evaluate(this.memory);
-            return evaluatedValue;
-        } else {
-            throw new Exevalator.Exception(ErrorMessages.REEVAL_NOT_AVAILABLE);
-        }
+    public Exevalator() {
+        this(FunctionRegistry.EMPTY);
     }
 
     /**
-     * Declares a new variable, for using the value of it in expressions.
+     * Creates a new interpreter of the Exevalator, in which functions in the specified registry are available.
+     * The registry is shared (not copied), so creating many engines from the same registry is cheap.
+     * Functions connected by connectFunction method are stored in the table of this engine (the overlay),
+     * and they can't have the same names as ones in the registry.
      *
-     * @param name The name of the variable to be declared.
-     * @return The virtual address of the declared variable,
-     *             which useful for accessing to the variable faster.
-     *             See "writeVariableAt" and "readVariableAt" method.
+     * @param functionRegistry The registry of functions shared among engines.
      */
-    public synchronized int declareVariable(String name) {
-        if (name == null) {
+    public Exevalator(FunctionRegistry functionRegistry) {
+        if (functionRegistry == null) {
             throw new NullPointerException();
         }
-        if (StaticSettings.MAX_NAME_CHAR_COUNT < name.length()) {
-            throw new Exevalator.Exception(
-                ErrorMessages.TOO_LONG_VARIABLE_NAME.replace("$0", Integer.toString(StaticSettings.MAX_NAME_CHAR_COUNT))
-            );
-        }
-        if (this.variableTable.containsKey(name)) {
-            throw new Exevalator.Exception(ErrorMessages.VARIABLE_ALREADY_DECLARED.replace("$0", name));
-        }
-
-        // If the memory is full, expand the memory size.
-        if (this.memory.length == this.memoryUsage) {
-            double[] stock = new double[this.memory.length];
-            System.arraycopy(this.memory, 0, stock, 0, this.memory.length);
-            this.memory = new double[ this.memory.length * 2 ];
-            System.arraycopy(stock, 0, this.memory, 0, stock.length);
-        }
+        this.memory = EMPTY_MEMORY;
+        this.memoryUsage = 0;
+        this.evaluator = new Evaluator();
+        this.variableTable = new ConcurrentHashMap<String, Integer>();
+        this.functionTable = functionRegistry;
+        this.functionCostTable = null;
+        this.lastEvaluatedExpression = null;
+        this.lastTokenCount = 0;
+        this.eventListeners = new EventListener[0];
+        this.functionCallDispatcher = new FunctionCallDispatcher();
+        this.checkpoint = new Evaluator.Checkpoint();
+        this.validationNameSet = new HashSet<String>();
+        this.defaultTimeout = 0L;
+        this.lock = new ReentrantLock();
+        this.asyncExecutor = null;
+        this.maxExpressionCharCount = StaticSettings.MAX_EXPRESSION_CHAR_COUNT;
+        this.maxTokenCount = StaticSettings.MAX_TOKEN_COUNT;
+        this.maxAstDepth = StaticSettings.MAX_AST_DEPTH;
+        this.stackTraceEnabled = true;
+        this.subtreePool = null;
+        this.inheritedEvaluator = null;
+        this.evaluatorShared = false;
+        this.memoryShared = false;
+        this.variableTableShared = false;
+        this.functionTableShared = false;
+        this.functionCostTableShared = false;
+    }
 
-        // Assign an address to the new variable,
-        // and register the address and the name to the variable table.
-        int address = this.memoryUsage;
-        this.variableTable.put(name, address);
-        this.memoryUsage++;
-        return address;
+    /**
+     * Creates a new interpreter of the Exevalator forked from the specified engine,
+     * sharing the memory, tables, and the cached AST of it until they are modified (see "fork" method).
+     * This constructor should be called while the lock of the parent engine is held.
+     *
+     * @param parent The engine from which the new engine is forked.
+     */
+    private Exevalator(Exevalator parent) {
+        this.memory = parent.memory;
+        this.memoryUsage = parent.memoryUsage;
+        this.evaluator = new Evaluator();
+        this.variableTable = parent.variableTable;
+        this.functionTable = parent.functionTable;
+        this.functionCostTable = parent.functionCostTable;
+        this.lastEvaluatedExpression = parent.lastEvaluatedExpression;
+        this.lastTokenCount = parent.lastTokenCount;
+        this.eventListeners = new EventListener[0];
+        this.functionCallDispatcher = new FunctionCallDispatcher();
+        this.checkpoint = new Evaluator.Checkpoint();
+        this.validationNameSet = new HashSet<String>();
+        this.defaultTimeout = parent.defaultTimeout;
+        this.lock = new ReentrantLock();
+        this.asyncExecutor = parent.asyncExecutor;
+        this.maxExpressionCharCount = parent.maxExpressionCharCount;
+        this.maxTokenCount = parent.maxTokenCount;
+        this.maxAstDepth = parent.maxAstDepth;
+        this.stackTraceEnabled = parent.stackTraceEnabled;
+        this.subtreePool = parent.subtreePool;
+        this.inheritedEvaluator = parent.lastEvaluatedExpression != null && parent.evaluator.isEvaluatable() ? parent.evaluator : null;
+        this.evaluatorShared = false;
+        this.memoryShared = true;
+        this.variableTableShared = true;
+        this.functionTableShared = true;
+        this.functionCostTableShared = true;
     }
 
     /**
-     * Writes the value to the variable having the specified name.
+     * Creates a new engine in which the same variables (with the same values) and functions as this engine are available.
+     * The forked engine shares the memory, the variable table, the function table, and the cache of the last-evaluated expression
+     * with this engine, and each of them is copied only when it is modified by either engine (copy-on-write),
+     * so forking is cheap, and modifications in either engine don't affect the other.
+     * Settings (limits, the default time limit, and so on) are inherited, but listeners are not.
      *
-     * @param name The name of the variable to be written.
-     * @param value The new value of the variable.
+     * @return The forked engine.
      */
-    public synchronized void writeVariable(String name, double value) {
-        if (name == null) {
-            throw new NullPointerException();
-        }
-        if (StaticSettings.MAX_NAME_CHAR_COUNT < name.length() || !this.variableTable.containsKey(name)) {
-            throw new Exevalator.Exception(ErrorMessages.VARIABLE_NOT_FOUND.replace("$0", name));
+    public Exevalator fork() {
+        this.lock.lock();
+        try {
+            Exevalator forkedEngine = new Exevalator(this);
+            this.evaluatorShared |= forkedEngine.inheritedEvaluator != null;
+            this.memoryShared = true;
+            this.variableTableShared = true;
+            this.functionTableShared = true;
+            this.functionCostTableShared = true;
+            return forkedEngine;
+        } finally {
+            this.lock.unlock();
         }
-        int address = this.variableTable.get(name);
-        this.writeVariableAt(address, value);
     }
 
     /**
-     * Writes the value to the variable at the specified virtual address.
-     * This method is more efficient than "WriteVariable" method.
+     * Evaluates (computes) the value of an expression.
+     * If the expression is the same as the last-evaluated one, the cached result of parsing is reused,
+     * and no objects are allocated on the heap in this method (unless any exception is thrown).
+     * If the default time limit is set by "setDefaultTimeout" method, the evaluation is aborted when it exceeds the limit.
      *
-     * @param address The virtual address of the variable to be written.
-     * @param value The new value of the variable.
+     * @param expression The expression to be evaluated.
+     * @return The evaluated value.
      */
-    public synchronized void writeVariableAt(int address, double value) {
-        if (address < 0 || this.memoryUsage <= address) {
-            throw new Exevalator.Exception(ErrorMessages.INVALID_VARIABLE_ADDRESS.replace("$0", Integer.toString(address)));
+    public double eval(String expression) {
+        this.lock.lock();
+        try {
+            return this.evalWithCheckpoint(expression, this.defaultTimeout, null);
+        } finally {
+            this.lock.unlock();
         }
-        this.memory[address] = value;
     }
 
     /**
-     * Reads the value of the variable having the specified name.
+     * Evaluates (computes) the value of an expression, with aborting it if it exceeds the specified time limit.
+     * The deadline is checked at each function call and each iteration of reductions (sum, prod),
+     * so a call of a function taking a long time is not interrupted, but the evaluation is aborted after it.
      *
-     * @param name The name of the variable to be read.
-     * @return The current value of the variable.
+     * @param expression The expression to be evaluated.
+     * @param timeout The time limit of the evaluation (including parsing), or 0 for no limit.
+     * @param unit The unit of the time limit.
+     * @return The evaluated value.
+     * @throws Exevalator.EvaluationAbortedException Thrown if the evaluation exceeded the time limit.
      */
-    public synchronized double readVariable(String name) {
-        if (name == null) {
-            throw new NullPointerException();
-        }
-        if (StaticSettings.MAX_NAME_CHAR_COUNT < name.length() || !this.variableTable.containsKey(name)) {
-            throw new Exevalator.Exception(ErrorMessages.VARIABLE_NOT_FOUND.replace("$0", name));
+    public double eval(String expression, long timeout, TimeUnit unit) {
+        this.lock.lock();
+        try {
+            if (unit == null) {
+                throw new NullPointerException();
+            }
+            return this.evalWithCheckpoint(expression, toTimeoutNanos(timeout, unit), null);
+        } finally {
+            this.lock.unlock();
         }
-        int address = this.variableTable.get(name);
-        return this.readVariableAt(address);
     }
 
     /**
-     * Reads the value of the variable at the specified virtual address.
-     * This method is more efficient than "ReadVariable" method.
+     * Evaluates (computes) the value of an expression, with aborting it if the specified token is cancelled.
+     * The token is checked at each function call and each iteration of reductions (sum, prod).
+     * The default time limit set by "setDefaultTimeout" method is also applied.
      *
-     * @param address The virtual address of the variable to be read.
-     * @return The current value of the variable.
+     * @param expression The expression to be evaluated.
+     * @param cancellationToken The token to cancel the evaluation from another thread.
+     * @return The evaluated value.
+     * @throws Exevalator.EvaluationAbortedException Thrown if the evaluation has been cancelled or exceeded the time limit.
      */
-    public synchronized double readVariableAt(int address) {
-        if (address < 0 || this.memoryUsage <= address) {
-            throw new Exevalator.Exception(ErrorMessages.INVALID_VARIABLE_ADDRESS.replace("$0", Integer.toString(address)));
+    public double eval(String expression, CancellationToken cancellationToken) {
+        this.lock.lock();
+        try {
+            if (cancellationToken == null) {
+                throw new NullPointerException();
+            }
+            return this.evalWithCheckpoint(expression, this.defaultTimeout, cancellationToken);
+        } finally {
+            this.lock.unlock();
         }
-        return this.memory[address];
     }
 
     /**
-     * Connects a function, for using it in expressions.
+     * Evaluates (computes) the value of an expression asynchronously, on the executor set by "setAsyncExecutor" method
+     * (by default, a new virtual thread for each evaluation on Java 21 or later, or the common ForkJoinPool otherwise).
+     * Cancelling the returned future aborts the evaluation at the next function call or iteration of reductions.
+     * Evaluations on the same engine are performed one at a time, so create multiple engines to evaluate in parallel.
      *
-     * @param name The name of the function used in the expression.
-     * @param function The function to be connected.
+     * @param expression The expression to be evaluated.
+     * @return The future completed with the evaluated value, or completed exceptionally with Exevalator.Exception.
      */
-    public synchronized void connectFunction(String name, FunctionInterface function) {
-        if (name == null || function == null) {
+    public CompletableFuture<Double> evalAsync(final String expression) {
+        if (expression == null) {
             throw new NullPointerException();
         }
-        if (StaticSettings.MAX_NAME_CHAR_COUNT < name.length()) {
-            throw new Exevalator.Exception(
-                ErrorMessages.TOO_LONG_FUNCTION_NAME.replace("$0", Integer.toString(StaticSettings.MAX_NAME_CHAR_COUNT))
-            );
-        }
-        if (this.functionTable.containsKey(name)) {
-            throw new Exevalator.Exception(ErrorMessages.FUNCTION_ALREADY_CONNECTED.replace("$0", name));
-        }
-        this.functionTable.put(name, function);
+        Executor executor = this.asyncExecutor != null ? this.asyncExecutor : DefaultAsyncExecutorHolder.EXECUTOR;
+        final CancellationToken cancellationToken = new CancellationToken();
+        CompletableFuture<Double> future = CompletableFuture.supplyAsync(new Supplier<Double>() {
+            @Override
+            public Double get() {
+                return eval(expression, cancellationToken);
+            }
+        }, executor);
+        future.whenComplete(new BiConsumer<Double, Throwable>() {
+            @Override
+            public void accept(Double value, Throwable throwable) {
+                if (throwable instanceof CancellationException) {
+                    cancellationToken.cancel();
+                }
+            }
+        });
+        return future;
     }
 
     /**
-     * The interface to implement functions available in expressions.
+     * Sets the executor on which "evalAsync" method evaluates expressions.
+     *
+     * @param executor The executor, or null to use the default executor
+     *                     (a new virtual thread for each evaluation on Java 21 or later, or the common ForkJoinPool otherwise).
      */
-    public interface FunctionInterface {
-
-        /**
-         * Invokes the function.
-         * 
-         * @param arguments An array storing values of arguments.
-         * @return The return value of the function.
-         */
-        public double invoke(double[] arguments);
+    public void setAsyncExecutor(Executor executor) {
+        this.asyncExecutor = executor;
     }
 
     /**
-     * The Exception class thrown in/by this engine.
+     * The holder of the default executor of "evalAsync" method, created when it is used first.
      */
-    @SuppressWarnings("serial")
-    public static final class Exception extends RuntimeException {
+    private static final class DefaultAsyncExecutorHolder {
 
-        /**
-         * Create an instance having the specified error message.
-         *
-         * @param errorMessage The error message explaining the cause of this exception.
-         */
-        public Exception(String errorMessage) {
-            super(errorMessage);
-        }
+        /** The default executor of "evalAsync" method. */
+        private static final Executor EXECUTOR = createDefaultAsyncExecutor();
 
         /**
-         * Create an instance having the specified error message and the cause exception.
+         * Creates the executor creating a new virtual thread for each task if it is available (Java 21 or later),
+         * or returns the common ForkJoinPool otherwise.
+         * The virtual-thread executor is obtained by reflection, so that this code can be compiled and used in Java 8.
          *
-         * @param errorMessage The error message explaining the cause of this exception.
-         * @param causeException The cause exception of this exception.
+         * @return The default executor of "evalAsync" method.
          */
-        public Exception(String errorMessage, java.lang.Exception causeException) {
-            super(errorMessage, causeException);
+        private static Executor createDefaultAsyncExecutor() {
+            try {
+                return (Executor)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                return ForkJoinPool.commonPool();
+            }
         }
     }
-}
-
-
-/**
- * The class performing functions of a lexical analyzer.
- */
-final class LexicalAnalyzer {
 
     /**
-     * Splits (tokenizes) the expression into tokens, and analyze them.
+     * Sets the default time limit of evaluations by "eval", "reeval", and "execute" (of compiled expressions) method,
+     * to protect threads calling them from expressions taking a long time.
+     * The deadline is checked at each function call and each iteration of reductions (sum, prod).
+     * While no time limit is set (default), there is no overhead for checking it.
      *
-     * @param expression The expression to be tokenized/analyzed.
-     * @return Analyzed tokens.
+     * @param timeout The default time limit of evaluations, or 0 for no limit.
+     * @param unit The unit of the time limit.
      */
-    public static Token[] analyze(String expression) {
+    public void setDefaultTimeout(long timeout, TimeUnit unit) {
+        this.lock.lock();
+        try {
+            if (unit == null) {
+                throw new NullPointerException();
+            }
+            this.defaultTimeout = toTimeoutNanos(timeout, unit);
+        } finally {
+            this.lock.unlock();
+        }
+    }
 
-        // Firstly, to simplify the tokenization,
-        // replace number literals in the expression to the escaped representation: "@NUMBER_LITERAL",
-        // because number literals may contains "+" or "-" in their exponent part.
-        List<String> numberLiteralList = new ArrayList<String>();
-        expression = escapeNumberLiterals(expression, numberLiteralList);
+    /**
+     * Sets whether stack traces are captured for exceptions thrown by this engine (true by default).
+     * Capturing a stack trace is the most costly part of throwing an exception, so disabling it
+     * is useful when many invalid expressions are rejected, e.g. for checking inputs from users.
+     * Regardless of this setting, the error code, the position, and the message are available from exceptions.
+     * Expressions compiled before calling this method keep the setting at the time of their compilation.
+     *
+     * @param stackTraceEnabled Specify false not to capture stack traces.
+     */
+    public void setStackTraceEnabled(boolean stackTraceEnabled) {
+        this.lock.lock();
+        try {
+            this.stackTraceEnabled = stackTraceEnabled;
 
-        // Tokenize (split) the expression into token words.
-        for (char splitter: StaticSettings.TOKEN_SPLITTER_SYMBOL_LIST) {
-            expression = expression.replace(Character.toString(splitter), " " + splitter + " ");
+            // Discard the cached expression, to re-create the tree of evaluator nodes throwing exceptions with/without stack traces.
+            this.lastEvaluatedExpression = null;
+        } finally {
+            this.lock.unlock();
         }
-        String[] tokenWords = expression.trim().split("\\s+");
+    }
 
-        // For an empty expression (containing no tokens), the above returns { "" }, not { }.
-        // So we should detect/handle it as follows.
-        if (tokenWords.length == 1 && tokenWords[0].length() == 0) {
-            throw new Exevalator.Exception(ErrorMessages.EMPTY_EXPRESSION);
+    /**
+     * Sets the pool of subtrees shared among expressions compiled (or specialized) after calling this method.
+     * Structurally identical subtrees of them (e.g. common terms) are shared, to reduce the memory for holding many compiled expressions.
+     * The same pool can be set to multiple engines, to share subtrees among all of their compiled expressions.
+     * Subtrees containing function calls or reductions (sum, prod) are not shared.
+     * Also, while the pool is set, compiled expressions don't retain their ASTs, which are larger than evaluator nodes,
+     * and re-create them from expressions only when they are required (e.g. for enabling the profiling mode).
+     *
+     * @param subtreePool The pool of shared subtrees, or null not to share subtrees (default).
+     */
+    public void setSubtreePool(SubtreePool subtreePool) {
+        this.lock.lock();
+        try {
+            this.subtreePool = subtreePool;
+        } finally {
+            this.lock.unlock();
         }
+    }
 
-        // Checks the total number of tokens.
-        if (StaticSettings.MAX_TOKEN_COUNT < tokenWords.length) {
-            throw new Exevalator.Exception(ErrorMessages.TOO_MANY_TOKENS.replace("$0", Integer.toString(StaticSettings.MAX_TOKEN_COUNT)));
+    /**
+     * Sets the limits of the length, the number of tokens, and the depth of the AST of expressions, for this engine
+     * (StaticSettings.MAX_EXPRESSION_CHAR_COUNT, MAX_TOKEN_COUNT, and MAX_AST_DEPTH by default).
+     * Long chains of the same kind of arithmetic operators (e.g. "x1 + x2 + ... + xN") are evaluated iteratively,
+     * so they count as one level of the depth, regardless of their lengths.
+     * Other nesting, including chains of comparison operators, conditional operators, and function calls,
+     * is compiled and evaluated recursively, so the depth limit bounds the depth of recursive calls,
+     * and it should not exceed StaticSettings.MAX_AST_DEPTH_UPPER_LIMIT, which is safe on the default stack of threads.
+     *
+     * @param maxExpressionCharCount The maximum number of characters in an expression.
+     * @param maxTokenCount The maximum number of tokens in an expression.
+     * @param maxAstDepth The maximum depth of an AST (up to StaticSettings.MAX_AST_DEPTH_UPPER_LIMIT).
+     * @throws IllegalArgumentException Thrown if any limit is not positive, or the depth exceeds the upper limit.
+     */
+    public void setLimits(int maxExpressionCharCount, int maxTokenCount, int maxAstDepth) {
+        this.lock.lock();
+        try {
+            if (maxExpressionCharCount <= 0 || maxTokenCount <= 0 || maxAstDepth <= 0) {
+                throw new IllegalArgumentException(
+                    "The limits should be positive: " + maxExpressionCharCount + ", " + maxTokenCount + ", " + maxAstDepth
+                );
+            }
+            if (StaticSettings.MAX_AST_DEPTH_UPPER_LIMIT < maxAstDepth) {
+                throw new IllegalArgumentException(
+                    "The maximum depth of an AST should not exceed "
+                    + StaticSettings.MAX_AST_DEPTH_UPPER_LIMIT + ": " + maxAstDepth
+                );
+            }
+            this.maxExpressionCharCount = maxExpressionCharCount;
+            this.maxTokenCount = maxTokenCount;
+            this.maxAstDepth = maxAstDepth;
+        } finally {
+            this.lock.unlock();
         }
+    }
 
-        // Create Token instances.
-        // Also, escaped number literals will be recovered.
-        Token[] tokens = createTokensFromTokenWords(tokenWords, numberLiteralList);
+    /**
+     * Returns the maximum number of characters in an expression, set by "setLimits" method.
+     *
+     * @return The maximum number of characters in an expression.
+     */
+    public int getMaxExpressionCharCount() {
+        return this.maxExpressionCharCount;
+    }
 
-        // Checks syntactic correctness of tokens of inputted expressions.
-        checkParenthesisBalance(tokens);
-        checkEmptyParentheses(tokens);
-        checkLocationsOfOperatorsAndLeafs(tokens);
+    /**
+     * Returns the maximum number of tokens in an expression, set by "setLimits" method.
+     *
+     * @return The maximum number of tokens in an expression.
+     */
+    public int getMaxTokenCount() {
+        return this.maxTokenCount;
+    }
 
-        return tokens;
+    /**
+     * Returns the maximum depth of an AST, set by "setLimits" method.
+     *
+     * @return The maximum depth of an AST.
+     */
+    public int getMaxAstDepth() {
+        return this.maxAstDepth;
     }
 
     /**
-     * Creates Token-type instances from token words (String).
+     * Returns the upper limit of the maximum depth of ASTs, which can be set by "setLimits" method
+     * (StaticSettings.MAX_AST_DEPTH_UPPER_LIMIT).
      *
-     * @param tokenWords Token words (String) to be converted to Token instances.
-     * @param numberLiterals The List storing number literals.
-     * @return Created Token instances.
+     * @return The upper limit of the maximum depth of ASTs.
      */
-    private static Token[] createTokensFromTokenWords(String[] tokenWords, List<String> numberLiterals) {
-        int tokenCount = tokenWords.length;
+    public static int getMaxAstDepthUpperLimit() {
+        return StaticSettings.MAX_AST_DEPTH_UPPER_LIMIT;
+    }
 
-        // Stores the parenthesis-depth, which will increase at "(" and decrease at ")".
-        int parenthesisDepth = 0;
+    /**
+     * Converts the time limit into nanoseconds, with checking that it is not negative.
+     *
+     * @param timeout The time limit.
+     * @param unit The unit of the time limit.
+     * @return The time limit in nanoseconds (at least 1 if the specified limit is positive).
+     */
+    private static long toTimeoutNanos(long timeout, TimeUnit unit) {
+        if (timeout < 0L) {
+            throw new IllegalArgumentException("The time limit should not be negative: " + timeout);
+        }
+        return timeout == 0L ? 0L : Math.max(1L, unit.toNanos(timeout));
+    }
 
-        // Stores the parenthesis-depth when a function call operator begins,
-        // for detecting the end of the function operator.
-        Set<Integer> callParenthesisDepths = new HashSet<Integer>();
+    /**
+     * Evaluates (computes) the value of an expression, with checking the deadline and/or the cancellation token.
+     *
+     * @param expression The expression to be evaluated.
+     * @param timeout The time limit of the evaluation in nanoseconds, or 0 for no limit.
+     * @param cancellationToken The token to cancel the evaluation, or null if it is not cancellable.
+     * @return The evaluated value.
+     */
+    private double evalWithCheckpoint(String expression, long timeout, CancellationToken cancellationToken) {
+        if (expression == null) {
+            throw new NullPointerException();
+        }
+        if (this.maxExpressionCharCount < expression.length()) {
+            throw this.notifyExceptionThrown(Exevalator.Exception.create(
+                this.stackTraceEnabled, Exevalator.ErrorCode.TOO_LONG_EXPRESSION, -1, Integer.toString(this.maxExpressionCharCount)
+            ));
+        }
 
-        Token[] tokens = new Token[tokenCount];
-        Token lastToken = null;
-        int iliteral = 0;
-        for (int itoken=0; itoken<tokenCount; itoken++) {
-            String word = tokenWords[itoken];
+        // Times of phases are measured only when any listener is added.
+        EventListener[] eventListeners = this.eventListeners;
+        boolean eventsEnabled = eventListeners.length != 0;
+        boolean parsingRequired = false;
+        long lexingTime = 0L;
+        long parsingTime = 0L;
+        long buildingTime = 0L;
+        long evaluatingTime = 0L;
+        double evaluatedValue = 0.0;
+
+        // The checkpoint is set to the tree of evaluator nodes only if it is required, so there is no overhead otherwise.
+        boolean checkpointRequired = timeout != 0L || cancellationToken != null;
+        if (checkpointRequired) {
+            this.checkpoint.begin(timeout, cancellationToken, this.stackTraceEnabled);
+        }
 
-            // Cases of open parentheses, or beginning of function calls.
-            if (word.equals("(")) {
-                parenthesisDepth++;
-                if (1 <= itoken && tokens[itoken - 1].type == TokenType.FUNCTION_IDENTIFIER) {
-                    callParenthesisDepths.add(parenthesisDepth);
-                    Operator op = StaticSettings.CALL_OPERATOR_SYMBOL_MAP.get(word.charAt(0));
-                    tokens[itoken] = new Token(TokenType.OPERATOR, word, op);
-                } else {
-                    tokens[itoken] = new Token(TokenType.PARENTHESIS, word);
+        try {
+            boolean expressionChanged = expression != this.lastEvaluatedExpression
+            && !expression.equals(this.lastEvaluatedExpression);
+
+            // If the expression changed from the last-evaluated expression, re-parsing is necessary.
+            parsingRequired = expressionChanged || !this.evaluator.isEvaluatable();
+            if (parsingRequired) {
+                long lexingBeginTime = eventsEnabled ? System.nanoTime() : 0L;
+                long parsingBeginTime = lexingBeginTime;
+                int tokenCount = this.lastTokenCount;
+
+                // If this engine has been forked and the expression is the last-evaluated one of the parent engine,
+                // reuse the AST of the parent engine, instead of re-parsing the expression.
+                Evaluator inheritedEvaluator = this.inheritedEvaluator;
+                this.inheritedEvaluator = null;
+                AstNode ast = !expressionChanged && inheritedEvaluator != null ? inheritedEvaluator.getAst() : null;
+                if (ast == null) {
+
+                    // Split the expression into tokens, and analyze them.
+                    Token[] tokens = LexicalAnalyzer.analyze(expression, this.maxTokenCount, this.stackTraceEnabled);
+                    parsingBeginTime = eventsEnabled ? System.nanoTime() : 0L;
+                    tokenCount = tokens.length;
+
+                    /*
+                    // Temporary, for debugging tokens
+                    for (Token token: tokens) {
+                        System.out.println(token.toString());
+                    }
+                    */
+
+                    // Construct AST (Abstract Syntax Tree) by parsing tokens.
+                    ast = Parser.parse(tokens, this.maxAstDepth, this.stackTraceEnabled);
                 }
+                long buildingBeginTime = eventsEnabled ? System.nanoTime() : 0L;
 
-            // Cases of closes parentheses, or end of function calls.
-            } else if (word.equals(")")) {
-                if (callParenthesisDepths.contains(parenthesisDepth)) {
-                    callParenthesisDepths.remove(parenthesisDepth);
-                    Operator op = StaticSettings.CALL_OPERATOR_SYMBOL_MAP.get(word.charAt(0));
-                    tokens[itoken] = new Token(TokenType.OPERATOR, word, op);
-                } else {
-                    tokens[itoken] = new Token(TokenType.PARENTHESIS, word);
+                /*
+                // Temporary, for debugging AST
+                System.out.println(ast.toMarkuppedText());
+                */
+
+                // Update the evaluator, to evaluate the parsed AST.
+                // Scratch slots (storing let-bound values) are allocated after the declared variables.
+                // The evaluator inherited by forked engines is not updated in-place, because they may reuse its AST.
+                if (this.evaluatorShared) {
+                    this.evaluator = new Evaluator();
+                    this.evaluatorShared = false;
                 }
-                parenthesisDepth--;
+                this.evaluator.setFunctionCallListener(this.getFunctionCallListener());
+                this.evaluator.setStackTraceEnabled(this.stackTraceEnabled);
+                this.evaluator.setCheckpoint(checkpointRequired ? this.checkpoint : null);
+                this.evaluator.update(ast, this.variableTable, this.functionTable, this.memoryUsage);
+                this.expandMemory(this.evaluator.getRequiredMemorySize());
 
-            // Case of separators of function arguments:
-            // they are handled as a special operator, for the algorithm of the parser of Exevalator.
-            } else if (word.equals(",")) {
-                Operator op = StaticSettings.CALL_OPERATOR_SYMBOL_MAP.get(word.charAt(0));
-                tokens[itoken] = new Token(TokenType.OPERATOR, word, op);
+                this.lastEvaluatedExpression = expression;
+                this.lastTokenCount = tokenCount;
 
-            // Cases of other operators.
-            } else if (word.length() == 1 && StaticSettings.OPERATOR_SYMBOL_SET.contains(word.charAt(0))) {
-                Operator op = null;
+                if (eventsEnabled) {
+                    long buildingEndTime = System.nanoTime();
+                    lexingTime = parsingBeginTime - lexingBeginTime;
+                    parsingTime = buildingBeginTime - parsingBeginTime;
+                    buildingTime = buildingEndTime - buildingBeginTime;
+                }
+            }
 
-                // Cases of unary-prefix operators.
-                if (lastToken == null
-                        || lastToken.word.equals("(")
-                        || lastToken.word.equals(",")
-                        || (lastToken.type == TokenType.OPERATOR && lastToken.operator.type != OperatorType.CALL) ) {
+            // Evaluate the value of the expression.
+            if (checkpointRequired) {
+                this.enableCheckpoint(this.evaluator);
+            }
+            if (this.evaluator.isMemoryWritten()) {
+                this.copyMemoryIfShared();
+            }
+            long evaluatingBeginTime = eventsEnabled ? System.nanoTime() : 0L;
+            evaluatedValue = this.evaluator.evaluate(this.memory);
+            if (eventsEnabled) {
+                evaluatingTime = System.nanoTime() - evaluatingBeginTime;
+            }
 
-                    if (!StaticSettings.UNARY_PREFIX_OPERATOR_SYMBOL_MAP.containsKey(word.charAt(0))) {
-                        throw new Exevalator.Exception(ErrorMessages.UNKNOWN_UNARY_PREFIX_OPERATOR.replace("$0", word));
-                    }
-                    op = StaticSettings.UNARY_PREFIX_OPERATOR_SYMBOL_MAP.get(word.charAt(0));
+        } catch (Exevalator.Exception ee) {
+            throw this.notifyExceptionThrown(ee);
 
-                // Cases of binary operators.
-                } else if (lastToken.word.equals(")")
-                        || lastToken.type == TokenType.NUMBER_LITERAL
-                        || lastToken.type == TokenType.VARIABLE_IDENTIFIER) {
+        // Wrap an unexpected exception by Exevalator.Exception and rethrow it.
+        } catch (java.lang.Exception e) {
+            throw this.notifyExceptionThrown(new Exevalator.Exception(
+                Exevalator.ErrorCode.UNEXPECTED_ERROR, -1, new String[] { String.valueOf(e.getMessage()) }, e, this.stackTraceEnabled
+            ));
 
-                    if (!StaticSettings.BINARY_OPERATOR_SYMBOL_MAP.containsKey(word.charAt(0))) {
-                        throw new Exevalator.Exception(ErrorMessages.UNKNOWN_BINARY_OPERATOR.replace("$0", word));
-                    }
-                    op = StaticSettings.BINARY_OPERATOR_SYMBOL_MAP.get(word.charAt(0));
+        } finally {
+            if (checkpointRequired) {
+                this.checkpoint.end();
+            }
+        }
 
-                } else {
-                    throw new Exevalator.Exception(ErrorMessages.UNKNOWN_OPERATOR_SYNTAX.replace("$0", word));
-                }
-                tokens[itoken] = new Token(TokenType.OPERATOR, word, op);
+        // Notify listeners of the evaluation, and return the evaluated value.
+        if (eventsEnabled) {
+            for (EventListener eventListener: eventListeners) {
+                eventListener.expressionEvaluated(
+                    expression, this.lastTokenCount, !parsingRequired, lexingTime, parsingTime, buildingTime, evaluatingTime
+                );
+            }
+        }
+        return evaluatedValue;
+    }
 
-            // Case of literals
-            } else if (word.equals(StaticSettings.ESCAPED_NUMBER_LITERAL)) {
-                tokens[itoken] = new Token(TokenType.NUMBER_LITERAL, numberLiterals.get(iliteral));
-                iliteral++;
+    /**
+     * Re-evaluates (re-computes) the value of the expression evaluated by "eval" method last time.
+     * This method may (slightly) work faster than calling "eval" method repeatedly for the same expression.
+     * Note that, the result value may differ from the last evaluated value, 
+     * if values of variables or behaviour of functions had changed.
+     * No objects are allocated on the heap in this method (unless any exception is thrown).
+     * 
+     * @return The evaluated value
+     */
+    public double reeval() {
+        this.lock.lock();
+        try {
 
-            // Cases of variable identifier of function identifier.
-            } else {
-                if (itoken < tokenCount - 1 && tokenWords[itoken + 1].equals("(")) {
-                    tokens[itoken] = new Token(TokenType.FUNCTION_IDENTIFIER, word);
-                } else {
-                    tokens[itoken] = new Token(TokenType.VARIABLE_IDENTIFIER, word);
+            // A forked engine creates its evaluator from the AST of the parent engine, at the first evaluation.
+            if (!this.evaluator.isEvaluatable() && this.inheritedEvaluator != null) {
+                return this.eval(this.lastEvaluatedExpression);
+            }
+            if (this.evaluator.isEvaluatable()) {
+                EventListener[] eventListeners = this.eventListeners;
+                long beginTime = eventListeners.length != 0 ? System.nanoTime() : 0L;
+                long timeout = this.defaultTimeout;
+                double evaluatedValue;
+                try {
+                    if (timeout != 0L) {
+                        this.checkpoint.begin(timeout, null, this.stackTraceEnabled);
+                        this.enableCheckpoint(this.evaluator);
+                    }
+                    if (this.evaluator.isMemoryWritten()) {
+                        this.copyMemoryIfShared();
+                    }
+                    evaluatedValue = this.evaluator.evaluate(this.memory);
+                } catch (Exevalator.Exception ee) {
+                    throw this.notifyExceptionThrown(ee);
+                } finally {
+                    if (timeout != 0L) {
+                        this.checkpoint.end();
+                    }
+                }
+                if (eventListeners.length != 0) {
+                    long evaluatingTime = System.nanoTime() - beginTime;
+                    for (EventListener eventListener: eventListeners) {
+                        eventListener.expressionReevaluated(evaluatingTime);
+                    }
                 }
+                return evaluatedValue;
+            } else {
+                throw this.notifyExceptionThrown(Exevalator.Exception.create(this.stackTraceEnabled, Exevalator.ErrorCode.REEVAL_NOT_AVAILABLE, -1));
             }
-            lastToken = tokens[itoken];
+        } finally {
+            this.lock.unlock();
         }
-        return tokens;
     }
 
     /**
-     * Replaces number literals in the expression to the escaped representation: "@NUMBER_LITERAL@".
+     * Compiles an expression (or statements separated by ";"), to evaluate it repeatedly by
+     * "execute" method of the returned instance, without re-parsing.
+     * Differently from the expression cached by "eval" method, any number of compiled expressions can be held at the same time.
      *
-     * @param expression The expression of which number literals are not escaped yet.
-     * @param literalStoreList The list to which number literals will be added.
-     * @return The expression in which number literals are escaped.
+     * @param expression The expression to be compiled.
+     * @return The compiled expression.
      */
-    private static String escapeNumberLiterals(String expression, List<String> literalStoreList) {
-        Pattern numberLiteralPattern = Pattern.compile(StaticSettings.NUMBER_LITERAL_REGEX);
-        Matcher numberLiteralMatcher = numberLiteralPattern.matcher(expression);
+    public CompiledExpression compile(String expression) {
+        return this.compile(expression, null);
+    }
 
-        // Search the next number literal, and loops while any literals undetected yet exist.
-        while(numberLiteralMatcher.find()) {
+    /**
+     * Compiles an expression from its AST parsed in advance (e.g. loaded from a persistent cache),
+     * or from its text if the AST is not given.
+     * The AST is checked with the limits of this engine, in the same way as ASTs parsed from texts.
+     *
+     * @param expression The expression to be compiled.
+     * @param parsedExpression The AST of the expression and the number of its tokens, or null to parse the expression.
+     * @return The compiled expression.
+     */
+    CompiledExpression compile(String expression, ParsedExpression parsedExpression) {
+        this.lock.lock();
+        try {
+            if (expression == null) {
+                throw new NullPointerException();
+            }
+            if (this.maxExpressionCharCount < expression.length()) {
+                throw this.notifyExceptionThrown(Exevalator.Exception.create(
+                    this.stackTraceEnabled, Exevalator.ErrorCode.TOO_LONG_EXPRESSION, -1, Integer.toString(this.maxExpressionCharCount)
+                ));
+            }
 
-            // Extract a number literal detected by the above searching.
-            String matchedLiteral = numberLiteralMatcher.group();
+            // Times of phases are measured only when any listener is added.
+            EventListener[] eventListeners = this.eventListeners;
+            boolean eventsEnabled = eventListeners.length != 0;
+            CompiledExpression compiledExpression = null;
+            int tokenCount = 0;
+            long lexingTime = 0L;
+            long parsingTime = 0L;
+            long buildingTime = 0L;
 
-            // Add the extracted literal to the List specified to the argument.
-            literalStoreList.add(matchedLiteral);
-        }
+            try {
+                long lexingBeginTime = eventsEnabled ? System.nanoTime() : 0L;
+                Token[] tokens = null;
+                if (parsedExpression == null) {
+                    tokens = LexicalAnalyzer.analyze(expression, this.maxTokenCount, this.stackTraceEnabled);
+                }
+                long parsingBeginTime = eventsEnabled ? System.nanoTime() : 0L;
+                AstNode ast;
+                if (parsedExpression == null) {
+                    ast = Parser.parse(tokens, this.maxAstDepth, this.stackTraceEnabled);
+                } else {
+                    ast = parsedExpression.ast.astNode;
+                    if (this.maxTokenCount < parsedExpression.tokenCount) {
+                        throw Exevalator.Exception.create(
+                            this.stackTraceEnabled, Exevalator.ErrorCode.TOO_MANY_TOKENS, -1, Integer.toString(this.maxTokenCount)
+                        );
+                    }
+                    ast.checkDepth(this.maxAstDepth, this.stackTraceEnabled);
+                }
+                long buildingBeginTime = eventsEnabled ? System.nanoTime() : 0L;
+                Evaluator evaluator = new Evaluator();
+                evaluator.setFunctionCallListener(this.getFunctionCallListener());
+                evaluator.setStackTraceEnabled(this.stackTraceEnabled);
+                evaluator.setCheckpoint(this.defaultTimeout != 0L ? this.checkpoint : null);
+                evaluator.setNodePool(this.subtreePool != null ? this.subtreePool.nodePool : null);
+                evaluator.update(ast, this.variableTable, this.functionTable, this.memoryUsage);
+                if (this.subtreePool != null) {
+                    evaluator.discardAst(expression);
+                }
+                this.expandMemory(evaluator.getRequiredMemorySize());
+                compiledExpression = new CompiledExpression(this, evaluator);
+
+                tokenCount = parsedExpression == null ? tokens.length : parsedExpression.tokenCount;
+                if (eventsEnabled) {
+                    long buildingEndTime = System.nanoTime();
+                    lexingTime = parsingBeginTime - lexingBeginTime;
+                    parsingTime = buildingBeginTime - parsingBeginTime;
+                    buildingTime = buildingEndTime - buildingBeginTime;
+                }
 
-        // Replace all number literals in the expression to the escaped representation.
-        numberLiteralMatcher.reset();
-        String replacedExpression = numberLiteralMatcher.replaceAll(StaticSettings.ESCAPED_NUMBER_LITERAL);
-        return replacedExpression;
+            } catch (Exevalator.Exception ee) {
+                throw this.notifyExceptionThrown(ee);
+
+            // Wrap an unexpected exception by Exevalator.Exception and rethrow it.
+            } catch (java.lang.Exception e) {
+                throw this.notifyExceptionThrown(new Exevalator.Exception(
+                    Exevalator.ErrorCode.UNEXPECTED_ERROR, -1, new String[] { String.valueOf(e.getMessage()) }, e, this.stackTraceEnabled
+                ));
+            }
+
+            // Notify listeners of the compilation, and return the compiled expression.
+            for (EventListener eventListener: eventListeners) {
+                eventListener.expressionCompiled(expression, tokenCount, lexingTime, parsingTime, buildingTime);
+            }
+            return compiledExpression;
+        } finally {
+            this.lock.unlock();
+        }
     }
 
     /**
-     * Checks the number and correspondence of open "(" / closed ")" parentheses.
-     * An ExevalatorException will be thrown when any errors detected.
-     * If no error detected, nothing will occur.
+     * Specializes a compiled expression on values of some variables (e.g. parameters fixed for a session),
+     * by treating them as constants, i.e., number literals.
+     * Subexpressions depending only on them are folded into literals, conditional operators of which conditions become constants
+     * are replaced with selected values, and calls of pure functions (see FunctionInterface.isPure) of which arguments become constants
+     * are computed in advance. So the returned expression is smaller and faster than the specified one.
+     * The specified expression is not modified, and values of variables written after specializing are not reflected to the returned one.
      *
-     * @param tokens Tokens of the inputted expression.
+     * @param compiledExpression The compiled expression to be specialized, compiled by this engine.
+     * @param constants The Map mapping each name of a variable treated as a constant to its value.
+     * @return The specialized compiled expression.
      */
-    private static void checkParenthesisBalance(Token[] tokens) {
-        int tokenCount = tokens.length;
-        int hierarchy = 0; // Increases at "(" and decreases at ")".
-
-        for (int tokenIndex=0; tokenIndex<tokenCount; tokenIndex++) {
-            Token token = tokens[tokenIndex];
-            if (token.word.equals("(")) {
-                hierarchy++;
-            } else if (token.word.equals(")")) {
-                hierarchy--;
+    public CompiledExpression specialize(CompiledExpression compiledExpression, Map<String, Double> constants) {
+        this.lock.lock();
+        try {
+            if (compiledExpression == null || constants == null) {
+                throw new NullPointerException();
+            }
+            if (compiledExpression.engine != this) {
+                throw new IllegalArgumentException("The expression has been compiled by another engine.");
+            }
+            Map<String, Double> constantTable = new HashMap<String, Double>();
+            for (Map.Entry<String, Double> constantEntry: constants.entrySet()) {
+                if (constantEntry.getKey() == null || constantEntry.getValue() == null) {
+                    throw new NullPointerException();
+                }
+                if (!this.variableTable.containsKey(constantEntry.getKey())) {
+                    throw this.notifyExceptionThrown(Exevalator.Exception.create(
+                        this.stackTraceEnabled, Exevalator.ErrorCode.VARIABLE_NOT_FOUND, -1, constantEntry.getKey()
+                    ));
+                }
+                constantTable.put(constantEntry.getKey(), constantEntry.getValue());
             }
 
-            // If the value of hierarchy is negative, the open parenthesis is deficient.
-            if (hierarchy < 0) {
-                throw new Exevalator.Exception(ErrorMessages.DEFICIENT_OPEN_PARENTHESIS);
+            try {
+                Evaluator evaluator = new Evaluator();
+                evaluator.setFunctionCallListener(this.getFunctionCallListener());
+                evaluator.setStackTraceEnabled(this.stackTraceEnabled);
+                evaluator.setCheckpoint(this.defaultTimeout != 0L ? this.checkpoint : null);
+                evaluator.setNodePool(this.subtreePool != null ? this.subtreePool.nodePool : null);
+                evaluator.setConstantTable(constantTable);
+                evaluator.update(compiledExpression.evaluator.getAst(), this.variableTable, this.functionTable, this.memoryUsage);
+                if (this.subtreePool != null && compiledExpression.evaluator.getAstExpression() != null) {
+                    evaluator.discardAst(compiledExpression.evaluator.getAstExpression());
+                }
+                this.expandMemory(evaluator.getRequiredMemorySize());
+                return new CompiledExpression(this, evaluator);
+
+            } catch (Exevalator.Exception ee) {
+                throw this.notifyExceptionThrown(ee);
+
+            // Wrap an unexpected exception by Exevalator.Exception and rethrow it.
+            } catch (java.lang.Exception e) {
+                throw this.notifyExceptionThrown(new Exevalator.Exception(
+                    Exevalator.ErrorCode.UNEXPECTED_ERROR, -1, new String[] { String.valueOf(e.getMessage()) }, e, this.stackTraceEnabled
+                ));
             }
+        } finally {
+            this.lock.unlock();
         }
+    }
 
-        // If the value of hierarchy is not zero at the end of the expression,
-        // the closed parentheses ")" is deficient.
-        if (hierarchy > 0) {
-            throw new Exevalator.Exception(ErrorMessages.DEFICIENT_CLOSED_PARENTHESIS);
+    /**
+     * Parses an expression (or statements separated by ";") with the limits of this engine, without compiling it.
+     * This method is for add-ons in the same package processing ASTs of expressions (e.g. caches and code generators),
+     * and it does not notify listeners of errors, as "validate" method.
+     *
+     * @param expression The expression to be parsed.
+     * @return The AST of the expression and the number of its tokens.
+     * @throws Exevalator.Exception Thrown if the expression is syntactically incorrect, or exceeds the limits.
+     */
+    ParsedExpression parse(String expression) {
+        if (expression == null) {
+            throw new NullPointerException();
+        }
+        if (this.maxExpressionCharCount < expression.length()) {
+            throw Exevalator.Exception.create(
+                this.stackTraceEnabled, Exevalator.ErrorCode.TOO_LONG_EXPRESSION, -1, Integer.toString(this.maxExpressionCharCount)
+            );
         }
+        Token[] tokens = LexicalAnalyzer.analyze(expression, this.maxTokenCount, this.stackTraceEnabled);
+        AstNode ast = Parser.parse(tokens, this.maxAstDepth, this.stackTraceEnabled);
+        return new ParsedExpression(new SyntaxNode(ast), tokens.length);
     }
 
     /**
-     * Checks that empty parentheses "()" are not contained in the expression.
-     * An ExevalatorException will be thrown when any errors detected.
-     * If no error detected, nothing will occur.
+     * Returns the virtual address of the variable having the specified name.
+     * This method is for add-ons in the same package resolving addresses in advance,
+     * to write values by "writeVariableAt" method without looking up names for each write.
      *
-     * @param tokens Tokens of the inputted expression.
+     * @param name The name of the variable.
+     * @return The virtual address of the variable, or -1 if it has not been declared.
      */
-    private static void checkEmptyParentheses(Token[] tokens) {
-        int tokenCount = tokens.length;
-        int contentCounter = 0;
-        for (int tokenIndex=0; tokenIndex<tokenCount; tokenIndex++) {
-            Token token = tokens[tokenIndex];
-            if (token.type == TokenType.PARENTHESIS) { // Excepting CALL operators
-                if (token.word.equals("(")) {
-                    contentCounter = 0;
-                } else if (token.word.equals(")")) {
-                    if (contentCounter == 0) {
-                        throw new Exevalator.Exception(ErrorMessages.EMPTY_PARENTHESIS);
-                    }
-                }
-            } else {
-                contentCounter++;
-            }
+    int getVariableAddress(String name) {
+        if (name == null) {
+            throw new NullPointerException();
         }
+        Integer address = this.variableTable.get(name);
+        return address != null ? address.intValue() : -1;
     }
 
     /**
-     * Checks correctness of locations of operators and leaf elements (literals and identifiers).
-     * An ExevalatorException will be thrown when any errors detected.
-     * If no error detected, nothing will occur.
+     * Returns the lock guarding the state of this engine.
+     * This method is for add-ons in the same package performing multiple operations on this engine atomically
+     * (e.g. writing values of variables and evaluating expressions for a batch of updates).
+     * As the lock is reentrant, methods of this engine can be called while holding it.
      *
-     * @param tokens Tokens of the inputted expression.
+     * @return The lock guarding the state of this engine.
      */
-    private static void checkLocationsOfOperatorsAndLeafs(Token[] tokens) {
-        int tokenCount = tokens.length;
-        Set<TokenType> leafTypeSet = EnumSet.noneOf(TokenType.class);
-        leafTypeSet.add(TokenType.NUMBER_LITERAL);
-        leafTypeSet.add(TokenType.VARIABLE_IDENTIFIER);
-
-        // Reads and check tokens from left to right.
-        for (int tokenIndex=0; tokenIndex<tokenCount; tokenIndex++) {
-            Token token = tokens[tokenIndex];
+    ReentrantLock getLock() {
+        return this.lock;
+    }
 
-            // Prepare information of next/previous token.
-            boolean nextIsLeaf = tokenIndex!=tokenCount-1 && leafTypeSet.contains(tokens[tokenIndex+1].type);
-            boolean prevIsLeaf = tokenIndex!=0 && leafTypeSet.contains(tokens[tokenIndex-1].type);
-            boolean nextIsOpenParenthesis = tokenIndex < tokenCount-1 && tokens[tokenIndex+1].word.equals("(");
-            boolean prevIsCloseParenthesis = tokenIndex != 0 && tokens[tokenIndex-1].word.equals(")");
-            boolean nextIsPrefixOperator = tokenIndex < tokenCount-1
-                    && tokens[tokenIndex+1].type == TokenType.OPERATOR
-                    && tokens[tokenIndex+1].operator.type == OperatorType.UNARY_PREFIX;
-            boolean nextIsFunctionCallBegin = nextIsOpenParenthesis
-                    && tokens[tokenIndex+1].type == TokenType.OPERATOR
-                    && tokens[tokenIndex+1].operator.type == OperatorType.CALL;
-            boolean nextIsFunctionIdentifier = tokenIndex < tokenCount-1
-                    && tokens[tokenIndex+1].type == TokenType.FUNCTION_IDENTIFIER;
+    /**
+     * Explains how an expression (or statements separated by ";") is evaluated, without evaluating it:
+     * the plan (the tree of evaluator nodes, after optimizations), the estimated cost,
+     * counts of operations for each type, counts of function calls, the depth of the plan, and the number of scratch slots.
+     * Use this method to reject/route expensive expressions before evaluating them.
+     *
+     * @param expression The expression to be explained.
+     * @return The explanation of the expression.
+     */
+    public Explanation explain(String expression) {
+        this.lock.lock();
+        try {
+            if (expression == null) {
+                throw new NullPointerException();
+            }
+            if (this.maxExpressionCharCount < expression.length()) {
+                throw this.notifyExceptionThrown(Exevalator.Exception.create(
+                    this.stackTraceEnabled, Exevalator.ErrorCode.TOO_LONG_EXPRESSION, -1, Integer.toString(this.maxExpressionCharCount)
+                ));
+            }
+            try {
+                Token[] tokens = LexicalAnalyzer.analyze(expression, this.maxTokenCount, this.stackTraceEnabled);
+                AstNode ast = Parser.parse(tokens, this.maxAstDepth, this.stackTraceEnabled);
+                Evaluator evaluator = new Evaluator();
+                return evaluator.explain(ast, this.variableTable, this.functionTable, this.memoryUsage,
+                    this.functionCostTable != null ? this.functionCostTable : Collections.<String, Double>emptyMap()
+                );
+
+            } catch (Exevalator.Exception ee) {
+                throw this.notifyExceptionThrown(ee);
+
+            // Wrap an unexpected exception by Exevalator.Exception and rethrow it.
+            } catch (java.lang.Exception e) {
+                throw this.notifyExceptionThrown(new Exevalator.Exception(
+                    Exevalator.ErrorCode.UNEXPECTED_ERROR, -1, new String[] { String.valueOf(e.getMessage()) }, e, this.stackTraceEnabled
+                ));
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
 
-            // Case of operators
-            if (token.type == TokenType.OPERATOR) {
+    /**
+     * Validates an expression (or statements separated by ";") without evaluating it:
+     * it is parsed and identifiers in it are resolved, but evaluator nodes are not created.
+     * Differently from other methods, errors are returned as the result instead of being thrown,
+     * and listeners are not notified of them, so this method is cheap enough for rejecting many invalid inputs.
+     *
+     * @param expression The expression to be validated.
+     * @return The result of the validation, having the code and the position of the error if the expression is invalid.
+     */
+    public ValidationResult validate(String expression) {
+        if (expression == null) {
+            throw new NullPointerException();
+        }
+        this.lock.lock();
+        try {
+            if (this.maxExpressionCharCount < expression.length()) {
+                throw Exevalator.Exception.create(
+                    false, Exevalator.ErrorCode.TOO_LONG_EXPRESSION, -1, Integer.toString(this.maxExpressionCharCount)
+                );
+            }
+            // Stack traces are not captured, because exceptions are not thrown to the caller.
+            Token[] tokens = LexicalAnalyzer.analyze(expression, this.maxTokenCount, false);
+            AstNode ast = Parser.parse(tokens, this.maxAstDepth, false);
+            Evaluator.validate(ast, this.variableTable, this.functionTable, this.validationNameSet, false);
+            return ValidationResult.VALID;
 
-                // Cases of unary-prefix operators
-                if (token.operator.type == OperatorType.UNARY_PREFIX) {
+        } catch (Exevalator.Exception ee) {
+            return new ValidationResult(ee);
+        } finally {
+            this.validationNameSet.clear();
+            this.lock.unlock();
+        }
+    }
 
-                    // Only leafs, open parentheses, unary-prefix and function-call operators can be an operand.
-                    if ( !(  nextIsLeaf || nextIsOpenParenthesis || nextIsPrefixOperator || nextIsFunctionIdentifier ) ) {
-                        throw new Exevalator.Exception(ErrorMessages.RIGHT_OPERAND_REQUIRED.replace("$0", token.word));
-                    }
-                } // Cases of unary-prefix operators
+    /**
+     * Declares a new variable, for using the value of it in expressions.
+     *
+     * @param name The name of the variable to be declared.
+     * @return The virtual address of the declared variable,
+     *             which useful for accessing to the variable faster.
+     *             See "writeVariableAt" and "readVariableAt" method.
+     */
+    public int declareVariable(String name) {
+        this.lock.lock();
+        try {
+            if (name == null) {
+                throw new NullPointerException();
+            }
+            if (StaticSettings.MAX_NAME_CHAR_COUNT < name.length()) {
+                throw this.notifyExceptionThrown(Exevalator.Exception.create(
+                    this.stackTraceEnabled, Exevalator.ErrorCode.TOO_LONG_VARIABLE_NAME, -1, Integer.toString(StaticSettings.MAX_NAME_CHAR_COUNT)
+                ));
+            }
+            if (this.variableTable.containsKey(name)) {
+                throw this.notifyExceptionThrown(Exevalator.Exception.create(
+                    this.stackTraceEnabled, Exevalator.ErrorCode.VARIABLE_ALREADY_DECLARED, -1, name
+                ));
+            }
 
-                // Cases of binary operators or a separator of partial expressions
-                if (token.operator.type == OperatorType.BINARY || token.word.equals(",")) {
+            // If the memory is full, expand the memory size.
+            this.expandMemory(this.memoryUsage + 1);
 
-                    // Only leafs, open parentheses, unary-prefix and function-call operators can be a right-operands.
-                    if( !(  nextIsLeaf || nextIsOpenParenthesis || nextIsPrefixOperator || nextIsFunctionIdentifier ) ) {
-                        throw new Exevalator.Exception(ErrorMessages.RIGHT_OPERAND_REQUIRED.replace("$0", token.word));
-                    }
-                    // Only leaf elements and closed parenthesis can be a right-operand.
-                    if( !(  prevIsLeaf || prevIsCloseParenthesis  ) ) {
-                        throw new Exevalator.Exception(ErrorMessages.LEFT_OPERAND_REQUIRED.replace("$0", token.word));
-                    }
-                } // Cases of binary operators or a separator of partial expressions
+            // Copy the variable table if it is shared with forked engines, before modifying it.
+            if (this.variableTableShared) {
+                this.variableTable = new ConcurrentHashMap<String, Integer>(this.variableTable);
+                this.variableTableShared = false;
+            }
 
-            } // Case of operators
+            // Assign an address to the new variable,
+            // and register the address and the name to the variable table.
+            int address = this.memoryUsage;
+            this.variableTable.put(name, address);
+            this.memoryUsage++;
+
+            // The slot may have been used as a scratch slot (e.g. for storing a let-bound value), so clear it.
+            // The memory shared with forked engines is copied only if the slot is not cleared yet.
+            if (Double.doubleToRawLongBits(this.memory[address]) != 0L) {
+                this.copyMemoryIfShared();
+                this.memory[address] = 0.0;
+            }
 
-            // Case of leaf elements
-            if (leafTypeSet.contains(token.type)) {
+            // If the evaluator uses the scratch slot at the assigned address (for storing a let-bound value),
+            // re-create it to relocate scratch slots after the new variable.
+            if (this.evaluator.isRelocationRequired(this.memoryUsage)) {
+                this.evaluator.relocate(this.variableTable, this.functionTable, this.memoryUsage);
+                this.expandMemory(this.evaluator.getRequiredMemorySize());
+            }
 
-                // An other leaf element or an open parenthesis can not be at the right of an leaf element.
-                if (!nextIsFunctionCallBegin && (nextIsOpenParenthesis || nextIsLeaf)) {
-                    throw new Exevalator.Exception(ErrorMessages.RIGHT_OPERATOR_REQUIRED.replace("$0", token.word));
-                }
+            for (EventListener eventListener: this.eventListeners) {
+                eventListener.variableDeclared(name, address);
+            }
+            return address;
+        } finally {
+            this.lock.unlock();
+        }
+    }
 
-                // An other leaf element or a closed parenthesis can not be at the left of an leaf element.
-                if (prevIsCloseParenthesis || prevIsLeaf) {
-                    throw new Exevalator.Exception(ErrorMessages.LEFT_OPERATOR_REQUIRED.replace("$0", token.word));
-                }
-            } // Case of leaf elements
-        } // Loops for each token
-    } // End of this method
-}
+    /**
+     * Expands the memory (by doubling its size) if it is smaller than the required size.
+     *
+     * @param requiredSize The required size of the memory.
+     */
+    private void expandMemory(int requiredSize) {
+        if (requiredSize <= this.memory.length) {
+            return;
+        }
+        int newSize = Math.max(this.memory.length, INITIAL_MEMORY_SIZE);
+        while (newSize < requiredSize) {
+            newSize *= 2;
+        }
+        double[] newMemory = new double[newSize];
+        System.arraycopy(this.memory, 0, newMemory, 0, this.memory.length);
+        this.memory = newMemory;
+        this.memoryShared = false;
+    }
 
-
-/**
- * The class performing functions of a parser.
- */
-final class Parser {
+    /**
+     * Copies the memory if it is shared with forked engines (or the engine from which this engine has been forked),
+     * before modifying it.
+     */
+    private void copyMemoryIfShared() {
+        if (this.memoryShared) {
+            this.memory = Arrays.copyOf(this.memory, this.memory.length);
+            this.memoryShared = false;
+        }
+    }
 
     /**
-     * Parses tokens and construct Abstract Syntax Tree (AST).
+     * Writes the value to the variable having the specified name.
      *
-     * @param tokens Tokens to be parsed.
-     * @return The root node of the constructed AST.
+     * @param name The name of the variable to be written.
+     * @param value The new value of the variable.
      */
-    public static AstNode parse(Token[] tokens) {
-
-        /* In this method, we use a non-recursive algorithm for the parsing.
-         * Processing cost is maybe O(N), where N is the number of tokens. */
-
-        // Number of tokens
-        int tokenCount = tokens.length;
+    public void writeVariable(String name, double value) {
+        this.lock.lock();
+        try {
+            if (name == null) {
+                throw new NullPointerException();
+            }
+            Integer address = StaticSettings.MAX_NAME_CHAR_COUNT < name.length() ? null : this.variableTable.get(name);
+            if (address == null) {
+                throw this.notifyExceptionThrown(Exevalator.Exception.create(
+                    this.stackTraceEnabled, Exevalator.ErrorCode.VARIABLE_NOT_FOUND, -1, name
+                ));
+            }
+            this.writeVariableAt(address.intValue(), value);
+        } finally {
+            this.lock.unlock();
+        }
+    }
 
-        // Working stack to form multiple AstNode instances into a tree-shape.
-        Deque<AstNode> stack = new ArrayDeque<AstNode>();
+    /**
+     * Writes the value to the variable at the specified virtual address.
+     * This method is more efficient than "WriteVariable" method.
+     *
+     * @param address The virtual address of the variable to be written.
+     * @param value The new value of the variable.
+     */
+    public void writeVariableAt(int address, double value) {
+        this.lock.lock();
+        try {
+            if (address < 0 || this.memoryUsage <= address) {
+                throw this.notifyExceptionThrown(Exevalator.Exception.create(
+                    this.stackTraceEnabled, Exevalator.ErrorCode.INVALID_VARIABLE_ADDRESS, -1, Integer.toString(address)
+                ));
+            }
+            this.copyMemoryIfShared();
+            this.memory[address] = value;
 
-        // Temporary nodes used in the above working stack, for isolating ASTs of partial expressions.
-        AstNode parenthesisStackLid = new AstNode(new Token(TokenType.STACK_LID, "(PARENTHESIS_STACK_LID)"));
-        AstNode separatorStackLid = new AstNode(new Token(TokenType.STACK_LID, "(SEPARATOR_STACK_LID)"));
-        AstNode callBeginStackLid = new AstNode(new Token(TokenType.STACK_LID, "(CALL_BEGIN_STACK_LID)"));
+            for (EventListener eventListener: this.eventListeners) {
+                eventListener.variableWritten(address, value);
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
 
-        // The array storing next operator's precedence for each token.
-        // At [i], it is stored that the precedence of the first operator of which token-index is greater than i.
-        int[] nextOperatorPrecedences = getNextOperatorPrecedences(tokens);
+    /**
+     * Reads the value of the variable having the specified name.
+     *
+     * @param name The name of the variable to be read.
+     * @return The current value of the variable.
+     */
+    public double readVariable(String name) {
+        this.lock.lock();
+        try {
+            if (name == null) {
+                throw new NullPointerException();
+            }
+            Integer address = StaticSettings.MAX_NAME_CHAR_COUNT < name.length() ? null : this.variableTable.get(name);
+            if (address == null) {
+                throw this.notifyExceptionThrown(Exevalator.Exception.create(
+                    this.stackTraceEnabled, Exevalator.ErrorCode.VARIABLE_NOT_FOUND, -1, name
+                ));
+            }
+            return this.readVariableAt(address.intValue());
+        } finally {
+            this.lock.unlock();
+        }
+    }
 
-        // Read tokens from left to right.
-        int itoken = 0;
-        do {
-            Token token = tokens[itoken];
-            AstNode operatorNode = null;
+    /**
+     * Reads the value of the variable at the specified virtual address.
+     * This method is more efficient than "ReadVariable" method.
+     *
+     * @param address The virtual address of the variable to be read.
+     * @return The current value of the variable.
+     */
+    public double readVariableAt(int address) {
+        this.lock.lock();
+        try {
+            if (address < 0 || this.memoryUsage <= address) {
+                throw this.notifyExceptionThrown(Exevalator.Exception.create(
+                    this.stackTraceEnabled, Exevalator.ErrorCode.INVALID_VARIABLE_ADDRESS, -1, Integer.toString(address)
+                ));
+            }
+            return this.memory[address];
+        } finally {
+            this.lock.unlock();
+        }
+    }
 
-            // Case of literals and identifiers: "1.23", "x", "f", etc.
-            if (token.type == TokenType.NUMBER_LITERAL
-                    || token.type == TokenType.VARIABLE_IDENTIFIER
-                    || token.type == TokenType.FUNCTION_IDENTIFIER) {
-                stack.push(new AstNode(token));
-                itoken++;
-                continue;
+    /**
+     * Connects a function, for using it in expressions.
+     *
+     * @param name The name of the function used in the expression.
+     * @param function The function to be connected.
+     */
+    public void connectFunction(String name, FunctionInterface function) {
+        this.lock.lock();
+        try {
+            if (name == null || function == null) {
+                throw new NullPointerException();
+            }
+            if (StaticSettings.MAX_NAME_CHAR_COUNT < name.length()) {
+                throw this.notifyExceptionThrown(Exevalator.Exception.create(
+                    this.stackTraceEnabled, Exevalator.ErrorCode.TOO_LONG_FUNCTION_NAME, -1, Integer.toString(StaticSettings.MAX_NAME_CHAR_COUNT)
+                ));
+            }
+            if (this.functionTable.containsKey(name)) {
+                throw this.notifyExceptionThrown(Exevalator.Exception.create(
+                    this.stackTraceEnabled, Exevalator.ErrorCode.FUNCTION_ALREADY_CONNECTED, -1, name
+                ));
+            }
 
-            // Case of parenthesis: "(" or ")"
-            } else if (token.type == TokenType.PARENTHESIS) {
-                if (token.word.equals("(")) {
-                    stack.push(parenthesisStackLid);
-                    itoken++;
-                    continue;
-                } else { // Case of ")"
-                    operatorNode = popPartialExprNodes(stack, parenthesisStackLid)[0];
+            // Functions in the registry are shared with other engines, so store connected ones into the overlay.
+            // Also, copy the function table if it is shared with forked engines, before modifying it.
+            if (this.functionTable instanceof FunctionRegistry) {
+                FunctionRegistry functionRegistry = (FunctionRegistry)this.functionTable;
+                if (functionRegistry.isEmpty()) {
+                    this.functionTable = new ConcurrentHashMap<String, FunctionInterface>();
+                } else {
+                    this.functionTable = new LayeredFunctionTable(functionRegistry, null);
                 }
-
-            // Case of operators: "+", "-", etc.
-            } else if (token.type == TokenType.OPERATOR) {
-                operatorNode = new AstNode(token);
-                int nextOpPrecedence = nextOperatorPrecedences[itoken];
-
-                // Case of unary-prefix operators:
-                // * Connect the node of right-token as an operand, if necessary (depending the next operator's precedence).
-                if (token.operator.type == OperatorType.UNARY_PREFIX) {
-                    if (shouldAddRightOperand(token.operator.associativity, token.operator.precedence, nextOpPrecedence)) {
-                        operatorNode.childNodeList.add(new AstNode(tokens[itoken + 1]));
-                        itoken++; // The next token has been looked-ahead.
-                    } // else: Operand will be connected later. See the bottom of this loop.
-
-                // Case of binary operators:
-                // * Always connect the node of left-token as an operand.
-                // * Connect the node of right-token as an operand, if necessary (depending the next operator's precedence).
-                } else if (token.operator.type == OperatorType.BINARY) {
-                    operatorNode.childNodeList.add(stack.pop());
-                    if (shouldAddRightOperand(token.operator.associativity, token.operator.precedence, nextOpPrecedence)) {
-                        operatorNode.childNodeList.add(new AstNode(tokens[itoken + 1]));
-                        itoken++; // The next token has been looked-ahead.
-                    } // else: Right-operand will be connected later. See the bottom of this loop.
-
-                // Case of function-call operators.
-                } else if (token.operator.type == OperatorType.CALL) {
-                    if (token.word.equals("(")) {
-                        operatorNode.childNodeList.add(stack.pop()); // Add function-identifier node at the top of the stack.
-                        stack.push(operatorNode);
-                        stack.push(callBeginStackLid); // The marker to correct partial expressions of args from the stack.
-                        itoken++;
-                        continue;
-                    } else if (token.word.equals(")")) {
-                        AstNode[] argNodes = popPartialExprNodes(stack, callBeginStackLid);
-                        operatorNode = stack.pop();
-                        for (AstNode argNode: argNodes) {
-                            operatorNode.childNodeList.add(argNode);
-                        }
-                    } else if (token.word.equals(",")) {
-                        stack.push(separatorStackLid);
-                        itoken++;
-                        continue;
-                    }
+            } else if (this.functionTableShared) {
+                if (this.functionTable instanceof LayeredFunctionTable) {
+                    LayeredFunctionTable layeredFunctionTable = (LayeredFunctionTable)this.functionTable;
+                    this.functionTable = new LayeredFunctionTable(layeredFunctionTable.registry, layeredFunctionTable.overlay);
+                } else {
+                    this.functionTable = new ConcurrentHashMap<String, FunctionInterface>(this.functionTable);
                 }
             }
+            this.functionTableShared = false;
+            this.functionTable.put(name, function);
 
-            // If the precedence of the operator at the top of the stack is stronger than the next operator,
-            // connect all "unconnected yet" operands and operators in the stack.
-            while (shouldAddRightOperandToStackedOperator(stack, nextOperatorPrecedences[itoken])) {
-                AstNode oldOperatorNode = operatorNode;
-                operatorNode = stack.pop();
-                operatorNode.childNodeList.add(oldOperatorNode);
+            for (EventListener eventListener: this.eventListeners) {
+                eventListener.functionConnected(name, function);
             }
-            stack.push(operatorNode);
-            itoken++;
-
-        } while (itoken < tokenCount);
-
-        // The AST has been constructed on the stack, and only its root node is stored in the stack.
-        AstNode rootNodeOfExpressionAst = stack.pop();
-
-        // Check that the depth of the constructed AST does not exceeds the limit.
-        rootNodeOfExpressionAst.checkDepth(1, StaticSettings.MAX_AST_DEPTH);
-
-        return rootNodeOfExpressionAst;
+        } finally {
+            this.lock.unlock();
+        }
     }
 
     /**
-     * Judges whether the right-side token should be connected directly as an operand, to the target operator.
+     * Sets the estimated cost of a call of a function, used in "explain" method.
+     * The cost is in units of the cost of evaluating an operator (e.g. an addition),
+     * and StaticSettings.DEFAULT_FUNCTION_COST is used for functions of which costs are not set.
      *
-     * @param targetOperatorAssociativity The associativity (right/left) of the target opeartor.
-     * @param targetOperatorPrecedence The precedence of the target operator (smaller value gives higher precedence).
-     * @param nextOperatorPrecedence The precedence of the next operator (smaller value gives higher precedence).
-     * @return Returns true if the right-side token (operand) should be connected to the target operator.
+     * @param name The name of the function.
+     * @param cost The estimated cost of a call of the function (excluding costs of arguments).
      */
-    private static boolean shouldAddRightOperand(
-            OperatorAssociativity targetOperatorAssociativity, int targetOperatorPrecedence, int nextOperatorPrecedence) {
-
-		// If the precedence of the target operator is stronger than the next operator, return true.
-		// If the precedence of the next operator is stronger than the target operator, return false.
-		// If the precedence of both operators is the same:
-		//         Return true if the target operator is left-associative.
-		//         Return false if the target operator is right-associative.
-
-		boolean targetOpPrecedenceIsStrong = targetOperatorPrecedence < nextOperatorPrecedence; // Smaller value gives higher precedence.
-		boolean targetOpPrecedenceIsEqual = targetOperatorPrecedence == nextOperatorPrecedence; // Smaller value gives higher precedence.
-		boolean targetOpAssociativityIsLeft = targetOperatorAssociativity == OperatorAssociativity.LEFT;
-		return targetOpPrecedenceIsStrong || (targetOpPrecedenceIsEqual && targetOpAssociativityIsLeft);
+    public void setFunctionCost(String name, double cost) {
+        this.lock.lock();
+        try {
+            if (name == null) {
+                throw new NullPointerException();
+            }
+            if (!(0.0 <= cost) || Double.isInfinite(cost)) {
+                throw this.notifyExceptionThrown(Exevalator.Exception.create(
+                    this.stackTraceEnabled, Exevalator.ErrorCode.INVALID_FUNCTION_COST, -1, name, Double.toString(cost)
+                ));
+            }
+            if (this.functionCostTable == null) {
+                this.functionCostTable = new ConcurrentHashMap<String, Double>();
+            } else if (this.functionCostTableShared) {
+                this.functionCostTable = new ConcurrentHashMap<String, Double>(this.functionCostTable);
+            }
+            this.functionCostTableShared = false;
+            this.functionCostTable.put(name, cost);
+        } finally {
+            this.lock.unlock();
+        }
     }
 
     /**
-     * Judges whether the right-side token should be connected directly as an operand,
-     * to the operator at the top of the working stack.
+     * Adds a listener, to which events of this engine (evaluations of expressions, calls of functions, and so on) are notified.
+     * While no listeners are added, times of events are not measured, so there is no overhead for them.
+     * Note that, times of function calls are measured only in expressions evaluated/compiled after adding the listener.
      *
-     * @param stack The working stack used for the parsing.
-     * @param nextOperatorPrecedence The precedence of the next operator (smaller value gives higher precedence).
-     * @return Returns true if the right-side token (operand) should be connected to the operator at the top of the stack.
+     * @param listener The listener to be added.
      */
-    private static boolean shouldAddRightOperandToStackedOperator(Deque<AstNode> stack, int nextOperatorPrecedence) {
-        if (stack.size() == 0 || stack.peek().token.type != TokenType.OPERATOR) {
-            return false;
+    public void addEventListener(EventListener listener) {
+        this.lock.lock();
+        try {
+            if (listener == null) {
+                throw new NullPointerException();
+            }
+            EventListener[] newEventListeners = new EventListener[this.eventListeners.length + 1];
+            System.arraycopy(this.eventListeners, 0, newEventListeners, 0, this.eventListeners.length);
+            newEventListeners[this.eventListeners.length] = listener;
+            this.eventListeners = newEventListeners;
+
+            // Discard the cached expression, to re-create the tree of evaluator nodes measuring times of function calls if necessary.
+            this.lastEvaluatedExpression = null;
+        } finally {
+            this.lock.unlock();
         }
-        Operator operatorOnStackTop = stack.peek().token.operator;
-        return shouldAddRightOperand(operatorOnStackTop.associativity, operatorOnStackTop.precedence, nextOperatorPrecedence);
     }
 
     /**
-     * Pops root nodes of ASTs of partial expressions constructed on the stack.
-     * In the returned array, the popped nodes are stored in FIFO order.
+     * Removes a listener added by "addEventListener" method.
      *
-     * @param stack The working stack used for the parsing.
-     * @param endStackLidNode The temporary node pushed in the stack, at the end of partial expressions to be popped.
-     * @return Root nodes of ASTs of partial expressions.
+     * @param listener The listener to be removed.
      */
-    private static AstNode[] popPartialExprNodes(Deque<AstNode> stack, AstNode endStackLidNode) {
-        if (stack.size() == 0) {
-            throw new Exevalator.Exception(ErrorMessages.UNEXPECTED_PARTIAL_EXPRESSION);
-        }
-        List<AstNode> partialExprNodeList = new ArrayList<AstNode>();
-        while(stack.size() != 0) {
-            if (stack.peek().token.type == TokenType.STACK_LID) {
-                AstNode stackLidNode = stack.pop();
-                if (stackLidNode == endStackLidNode) {
-                    break;
+    public void removeEventListener(EventListener listener) {
+        this.lock.lock();
+        try {
+            if (listener == null) {
+                throw new NullPointerException();
+            }
+            List<EventListener> eventListenerList = new ArrayList<EventListener>();
+            boolean removed = false;
+            for (EventListener eventListener: this.eventListeners) {
+                if (!removed && eventListener == listener) {
+                    removed = true;
+                    continue;
                 }
-            } else {
-                partialExprNodeList.add(stack.pop());
+                eventListenerList.add(eventListener);
             }
+            this.eventListeners = eventListenerList.toArray(new EventListener[eventListenerList.size()]);
+
+            // Discard the cached expression, to re-create the tree of evaluator nodes not measuring times of function calls if possible.
+            this.lastEvaluatedExpression = null;
+        } finally {
+            this.lock.unlock();
         }
-        int nodeCount = partialExprNodeList.size();
-        AstNode[] partialExprNodes = new AstNode[nodeCount];
-        for (int inode=0; inode<nodeCount; inode++) {
-            partialExprNodes[inode] = partialExprNodeList.get(nodeCount - inode - 1); // Storing elements in reverse order.
-        }
-        return partialExprNodes;
     }
 
     /**
-     * Returns an array storing next operator's precedence for each token.
-     * In the returned array, it will stored at [i] that
-     * precedence of the first operator of which token-index is greater than i.
+     * Re-creates the tree of evaluator nodes of the evaluator with the checkpoint, if it has been created without it.
      *
-     * @param tokens All tokens to be parsed.
-     * @return The array storing next operator's precedence for each token.
+     * @param evaluator The evaluator of which tree should check the checkpoint.
      */
-    private static int[] getNextOperatorPrecedences(Token[] tokens) {
-        int tokenCount = tokens.length;
-        int lastOperatorPrecedence = Integer.MAX_VALUE; // least prior
-        int[] nextOperatorPrecedences = new int[tokenCount];
+    private void enableCheckpoint(Evaluator evaluator) {
+        if (!evaluator.isCheckpointEnabled()) {
+            evaluator.setCheckpoint(this.checkpoint);
+            evaluator.relocate(this.variableTable, this.functionTable, this.memoryUsage);
+            this.expandMemory(evaluator.getRequiredMemorySize());
+        }
+    }
 
-        for (int itoken=tokenCount-1; 0<=itoken; itoken--) {
-            Token token = tokens[itoken];
-            nextOperatorPrecedences[itoken] = lastOperatorPrecedence;
+    /**
+     * Notifies listeners of the exception thrown by "eval", "reeval", "compile", or "execute" method.
+     *
+     * @param exception The exception to be thrown.
+     * @return The exception to be thrown by the caller.
+     */
+    private Exevalator.Exception notifyExceptionThrown(Exevalator.Exception exception) {
+        for (EventListener eventListener: this.eventListeners) {
+            eventListener.exceptionThrown(exception);
+        }
+        return exception;
+    }
 
-            if (token.type == TokenType.OPERATOR) {
-                lastOperatorPrecedence = token.operator.precedence;
+    /**
+     * Returns the listener to be notified of times of function calls, for setting it to evaluators.
+     *
+     * @return The listener dispatching times of function calls, or null if no listeners require them.
+     */
+    private EventListener getFunctionCallListener() {
+        for (EventListener eventListener: this.eventListeners) {
+            if (0L <= eventListener.getFunctionCallTimeThreshold()) {
+                return this.functionCallDispatcher;
             }
+        }
+        return null;
+    }
 
-            if (token.type == TokenType.PARENTHESIS) {
-                if (token.word.equals("(")) {
-                    lastOperatorPrecedence = 0; // most prior
-                } else { // case of ")"
-                    lastOperatorPrecedence = Integer.MAX_VALUE; // least prior
+    /**
+     * The listener dispatching times of function calls to listeners added to this engine,
+     * each of which is notified only when the time reaches its threshold.
+     */
+    private final class FunctionCallDispatcher implements EventListener {
+        @Override
+        public void functionCalled(String functionName, long time) {
+            for (EventListener eventListener: Exevalator.this.eventListeners) {
+                long threshold = eventListener.getFunctionCallTimeThreshold();
+                if (0L <= threshold && threshold <= time) {
+                    eventListener.functionCalled(functionName, time);
                 }
             }
         }
-        return nextOperatorPrecedences;
     }
-}
 
+    /**
+     * The interface of listeners to which events of the engine are notified.
+     * All methods have default implementations doing nothing, so implement only necessary ones.
+     * Methods are called on the thread evaluating expressions, so implementations should return quickly.
+     */
+    public interface EventListener {
 
-/**
- * The enum representing types of operators.
- */
-enum OperatorType {
-
-    /** Represents unary operator, for example: - of -1.23 */
-    UNARY_PREFIX,
-
-    /** Represents binary operator, for example: + of 1+2 */
-    BINARY,
+        /**
+         * Called when an expression has been evaluated by "eval" method.
+         * Times of phases are in nanoseconds, and ones of lexing/parsing/building are 0 if the cached result of parsing is reused.
+         *
+         * @param expression The evaluated expression.
+         * @param tokenCount The number of tokens of the expression.
+         * @param cacheHit True if the cached result of parsing has been reused.
+         * @param lexingTime The time taken for splitting the expression into tokens.
+         * @param parsingTime The time taken for constructing the AST from tokens.
+         * @param buildingTime The time taken for creating the tree of evaluator nodes from the AST.
+         * @param evaluatingTime The time taken for evaluating the value.
+         */
+        public default void expressionEvaluated(String expression, int tokenCount, boolean cacheHit,
+                long lexingTime, long parsingTime, long buildingTime, long evaluatingTime) {
+        }
 
-    /** Represents function-call operator */
-    CALL
-}
+        /**
+         * Called when an expression has been compiled by "compile" method.
+         * Times of phases are in nanoseconds, and 0 if no listeners were added when starting the compilation.
+         *
+         * @param expression The compiled expression.
+         * @param tokenCount The number of tokens of the expression.
+         * @param lexingTime The time taken for splitting the expression into tokens.
+         * @param parsingTime The time taken for constructing the AST from tokens.
+         * @param buildingTime The time taken for creating the tree of evaluator nodes from the AST.
+         */
+        public default void expressionCompiled(String expression, int tokenCount,
+                long lexingTime, long parsingTime, long buildingTime) {
+        }
 
+        /**
+         * Called when an exception is thrown by "eval", "reeval", "compile", or "execute" method of the engine.
+         *
+         * @param exception The thrown exception.
+         */
+        public default void exceptionThrown(Exevalator.Exception exception) {
+        }
 
-/**
- * The enum representing associativities of operators.
- */
-enum OperatorAssociativity {
+        /**
+         * Called when the expression evaluated last time has been re-evaluated by "reeval" method.
+         *
+         * @param evaluatingTime The time taken for evaluating the value, in nanoseconds.
+         */
+        public default void expressionReevaluated(long evaluatingTime) {
+        }
 
-    /** Represents left-associative. */
-    LEFT,
+        /**
+         * Called when a value has been written to a variable by "writeVariable" or "writeVariableAt" method.
+         * (Assignments in expressions are not notified.)
+         *
+         * @param address The virtual address of the written variable.
+         * @param value The written value.
+         */
+        public default void variableWritten(int address, double value) {
+        }
 
-    /** Represents right-associative. */
-    RIGHT
-}
+        /**
+         * Called when a variable has been declared.
+         *
+         * @param name The name of the declared variable.
+         * @param address The virtual address of the declared variable.
+         */
+        public default void variableDeclared(String name, int address) {
+        }
 
+        /**
+         * Called when a function has been connected.
+         *
+         * @param name The name of the connected function.
+         * @param function The connected function.
+         */
+        public default void functionConnected(String name, FunctionInterface function) {
+        }
 
-/**
- * The class storing information of an operator.
- */
-final class Operator {
+        /**
+         * Returns the threshold of times of function calls (in nanoseconds),
+         * at or above which "functionCalled" method is called.
+         * Return a negative value (default) to disable measuring times of function calls.
+         *
+         * @return The threshold of times of function calls.
+         */
+        public default long getFunctionCallTimeThreshold() {
+            return -1L;
+        }
 
-    /** The symbol of this operator (for example: '+'). */
-    public final char symbol;
+        /**
+         * Called when a function call has taken the time at or above the threshold.
+         * For a function implementing LazyFunctionInterface, the time includes evaluation of arguments.
+         *
+         * @param functionName The name of the called function.
+         * @param time The time taken for the function call, in nanoseconds.
+         */
+        public default void functionCalled(String functionName, long time) {
+        }
+    }
 
-    /** The precedence of this operator (smaller value gives higher precedence). */
-    public final int precedence;
+    /**
+     * The interface to implement functions available in expressions.
+     */
+    public interface FunctionInterface {
 
-    /** The type of operator tokens. */
-    public final OperatorType type;
+        /**
+         * Invokes the function.
+         * 
+         * @param arguments An array storing values of arguments.
+         * @return The return value of the function.
+         */
+        public double invoke(double[] arguments);
 
-    /** The associativity of operator tokens. */
-    public final OperatorAssociativity associativity;
+        /**
+         * Returns whether the function is pure, i.e., it always returns the same value for the same arguments
+         * and has no side effects.
+         * Calls of a pure function of which arguments are constants are computed in advance when expressions are compiled
+         * (or specialized by "specialize" method), so the function is not called when they are evaluated.
+         *
+         * @return Returns true if the function is pure (false by default).
+         */
+        public default boolean isPure() {
+            return false;
+        }
+    }
 
     /**
-     * Create an Operator instance storing specified information.
-     *
-     * @param type The type of this operator.
-     * @param symbol The symbol of this operator.
-     * @param precedence The precedence of this operator.
-     * @param associativity The associativity of this operator.
+     * The interface to implement functions of which arguments are evaluated lazily, only when they are used.
+     * Functions implementing this interface are connected by "connectFunction" method,
+     * in the same way as functions implementing FunctionInterface.
      */
-    public Operator(OperatorType type, char symbol, int precedence, OperatorAssociativity associativity) {
-        this.type = type;
-        this.symbol = symbol;
-        this.precedence = precedence;
-        this.associativity = associativity;
+    public interface LazyFunctionInterface extends FunctionInterface {
+
+        /**
+         * Invokes the function.
+         *
+         * @param arguments The object to evaluate values of arguments on demand,
+         *                      which is available only during this invocation.
+         * @return The return value of the function.
+         */
+        public double invoke(LazyArguments arguments);
+
+        /**
+         * Invokes the function with values of arguments evaluated in advance.
+         *
+         * @param arguments An array storing values of arguments.
+         * @return The return value of the function.
+         */
+        @Override
+        public default double invoke(final double[] arguments) {
+            return this.invoke(new LazyArguments() {
+                @Override
+                public int count() {
+                    return arguments.length;
+                }
+                @Override
+                public double arg(int index) {
+                    return arguments[index];
+                }
+            });
+        }
     }
 
     /**
-     * Returns the String representation of this Operator instance.
+     * The interface to evaluate values of arguments passed to LazyFunctionInterface.
      */
-    @Override
-    public String toString() {
-        return "Operator [symbol=" + symbol + ", type=" + type + ", precedence=" + precedence + ", associativity=" + associativity + "]";
-    }
-}
+    public interface LazyArguments {
 
+        /**
+         * Returns the number of arguments.
+         *
+         * @return The number of arguments.
+         */
+        public int count();
 
-/**
- * The enum representing types of tokens.
- */
-enum TokenType {
-
-    /** Represents number literal tokens, for example: 1.23 */
-    NUMBER_LITERAL,
+        /**
+         * Evaluates the value of the argument at the specified index.
+         * Note that the argument is evaluated again at each call of this method.
+         *
+         * @param index The index of the argument.
+         * @return The value of the argument.
+         */
+        public double arg(int index);
+    }
 
-    /** Represents operator tokens, for example: + */
-    OPERATOR,
+    /**
+     * The class of an expression compiled by "compile" method.
+     */
+    public static final class CompiledExpression {
 
-    /** Represents parenthesis, for example: ( and ) of (1*(2+3)) */
-    PARENTHESIS,
+        /** The engine by which this expression has been compiled. */
+        private final Exevalator engine;
 
-    /** Represents variable-identifier tokens, for example: x */
-    VARIABLE_IDENTIFIER,
+        /** The object evaluating the value of the compiled expression. */
+        private final Evaluator evaluator;
 
-    /** Represents function-identifier tokens, for example: f */
-    FUNCTION_IDENTIFIER,
+        /**
+         * Creates a compiled expression.
+         *
+         * @param engine The engine by which this expression has been compiled.
+         * @param evaluator The object evaluating the value of the compiled expression.
+         */
+        private CompiledExpression(Exevalator engine, Evaluator evaluator) {
+            this.engine = engine;
+            this.evaluator = evaluator;
+        }
 
-    /** Represents temporary token for isolating partial expressions in the stack, in parser */
-    STACK_LID
-}
+        /**
+         * Evaluates (computes) the value of the compiled expression, on the memory of the engine.
+         * For statements separated by ";", all of them are evaluated in order,
+         * and values assigned in them are stored to variables at once.
+         * No objects are allocated on the heap in this method (unless any exception is thrown).
+         *
+         * @return The evaluated value (the value of the last statement, for statements).
+         */
+        public double execute() {
+            this.engine.lock.lock();
+            try {
 
+                // If variables have been declared after the compilation, relocate scratch slots after them.
+                if (this.evaluator.isRelocationRequired(this.engine.memoryUsage)) {
+                    this.evaluator.relocate(this.engine.variableTable, this.engine.functionTable, this.engine.memoryUsage);
+                    this.engine.expandMemory(this.evaluator.getRequiredMemorySize());
+                }
+                long timeout = this.engine.defaultTimeout;
+                try {
+                    if (timeout != 0L) {
+                        this.engine.checkpoint.begin(timeout, null, this.evaluator.isStackTraceEnabled());
+                        this.engine.enableCheckpoint(this.evaluator);
+                    }
+                    if (this.evaluator.isMemoryWritten()) {
+                        this.engine.copyMemoryIfShared();
+                    }
+                    return this.evaluator.evaluate(this.engine.memory);
+                } catch (Exevalator.Exception ee) {
+                    throw this.engine.notifyExceptionThrown(ee);
+                } finally {
+                    if (timeout != 0L) {
+                        this.engine.checkpoint.end();
+                    }
+                }
+            } finally {
+                this.engine.lock.unlock();
+            }
+        }
 
-/**
- * The class storing information of an token.
- */
-final class Token {
+        /**
+         * Enables/disables the profiling mode, in which counts and times of evaluations of all subexpressions are measured.
+         * Measured values are discarded when switching the mode.
+         * While the profiling mode is disabled (default), there is no overhead for profiling.
+         *
+         * @param enabled Specify true to enable the profiling mode.
+         */
+        public void setProfilingEnabled(boolean enabled) {
+            this.engine.lock.lock();
+            try {
+                this.evaluator.setProfilingEnabled(enabled, this.engine.variableTable, this.engine.functionTable);
+            } finally {
+                this.engine.lock.unlock();
+            }
+        }
 
-    /** The type of this token. */
-    public final TokenType type;
+        /**
+         * Returns whether the profiling mode is enabled.
+         *
+         * @return Returns true if the profiling mode is enabled.
+         */
+        public boolean isProfilingEnabled() {
+            return this.evaluator.isProfilingEnabled();
+        }
 
-    /** The text representation of this token. */
-    public final String word;
+        /**
+         * Returns the report of counts and times measured in the profiling mode, in XML-like text format.
+         * Times are in nanoseconds, estimated from times measured at intervals, and include times of subexpressions.
+         *
+         * @return The report, or null if the profiling mode is disabled.
+         */
+        public String getProfileReport() {
+            this.engine.lock.lock();
+            try {
+                return this.evaluator.getProfileReport();
+            } finally {
+                this.engine.lock.unlock();
+            }
+        }
 
-    /** The detailed information of the operator, if the type of this token is OPERATOR. */
-    public final Operator operator;
+        /**
+         * Discards counts and times measured in the profiling mode.
+         */
+        public void resetProfile() {
+            this.engine.lock.lock();
+            try {
+                this.evaluator.resetProfile();
+            } finally {
+                this.engine.lock.unlock();
+            }
+        }
 
-    /**
-     * Create an Token instance storing specified information.
-     *
-     * @param type The type of this token.
-     * @param word The text representation of this token.
-     */
-    public Token(TokenType type, String word) {
-        this.type = type;
-        this.word = word;
-        this.operator = null;
+        /**
+         * Returns names of declared variables which are read or assigned in the compiled expression,
+         * e.g. for re-evaluating only expressions depending on updated variables.
+         * Let-bound variables and indices of reductions are not included,
+         * nor are variables folded into literals by "specialize" method.
+         *
+         * @return The Set of names of variables.
+         */
+        public Set<String> getVariableNames() {
+            this.engine.lock.lock();
+            try {
+                Set<Integer> addressSet = this.evaluator.getVariableAddresses();
+                Set<String> variableNameSet = new HashSet<String>();
+                for (Map.Entry<String, Integer> variableEntry: this.engine.variableTable.entrySet()) {
+                    if (addressSet.contains(variableEntry.getValue())) {
+                        variableNameSet.add(variableEntry.getKey());
+                    }
+                }
+                return Collections.unmodifiableSet(variableNameSet);
+            } finally {
+                this.engine.lock.unlock();
+            }
+        }
     }
 
     /**
-     * Create an Token instance storing specified information.
-     *
-     * @param type The type of this token.
-     * @param word The text representation of this token.
-     * @param operator The detailed information of the operator, for OPERATOR type tokens.
+     * The node of the AST of an expression, for add-ons in the same package processing ASTs
+     * (e.g. caches and code generators) without depending on the internal classes of the parser.
+     * Operators are represented by their kinds and symbols, e.g. "a ? b : c" is parsed as :(?(a, b), c),
+     * "let a = b in c" as in(=(a, b), c), "f(a, b)" as the call operator "(" of which child nodes are f, a, and b,
+     * and statements "a; b; c" as ;(a, b, c).
      */
-    public Token(TokenType type, String word, Operator operator) {
-        this.type = type;
-        this.word = word;
-        this.operator = operator;
-    }
+    static final class SyntaxNode {
 
-    /**
-     * Returns the String representation of this Token instance.
-     */
-    @Override
-    public String toString() {
-        if (this.operator == null) {
-            return "Token [type=" + type + ", word=" + word + "]";
-        } else {
-            return "Token [type=" + type + ", word=" + word +
-                ", operator.type=" + operator.type + ", operator.precedence=" + operator.precedence + "]";
-        }
-    }
-}
+        /**
+         * The enum representing kinds of nodes.
+         */
+        enum Kind {
 
+            /** Represents number literals, of which words are their texts. */
+            NUMBER_LITERAL,
 
-/**
- * The class storing information of an node of an AST.
- */
-final class AstNode {
+            /** Represents variables, of which words are their names. */
+            VARIABLE_IDENTIFIER,
 
-    /** The token corresponding with this AST node. */
-    public final Token token;
+            /** Represents functions (the first child nodes of function-call operators), of which words are their names. */
+            FUNCTION_IDENTIFIER,
 
-    /** The list of child nodes of this AST node. */
-    public final List<AstNode> childNodeList;
+            /** Represents unary prefix operators, of which words are their symbols. */
+            UNARY_PREFIX_OPERATOR,
 
-    /**
-     * Create an AST node instance storing specified information.
-     *
-     * @param token The token corresponding with this AST node
-     */
-    public AstNode(Token token) {
-        this.token = token;
-        this.childNodeList = new ArrayList<AstNode>();
-    }
+            /** Represents binary operators, of which words are their symbols. */
+            BINARY_OPERATOR,
 
-    /**
-     * Checks that depths in the AST of all nodes under this node (child nodes, grandchild nodes, and so on)
-     * does not exceeds the specified maximum value.
-     * An ExevalatorException will be thrown when the depth exceeds the maximum value.
-     * If the depth does not exceeds the maximum value, nothing will occur.
+            /** Represents function-call operators, of which words are their symbols. */
+            CALL_OPERATOR
+        }
+
+        /** The name of the built-in reduction computing sums: sum(index, lower, upper, expression). */
+        static final String SUM_FUNCTION_NAME = StaticSettings.SUM_FUNCTION_NAME;
+
+        /** The name of the built-in reduction computing products: prod(index, lower, upper, expression). */
+        static final String PRODUCT_FUNCTION_NAME = StaticSettings.PRODUCT_FUNCTION_NAME;
+
+        /** The maximum number of iterations of built-in reductions. */
+        static final long MAX_REDUCTION_ITERATION_COUNT = StaticSettings.MAX_REDUCTION_ITERATION_COUNT;
+
+        /** The node of the AST represented by this node. */
+        final AstNode astNode;
+
+        /**
+         * Creates a node representing the node of the AST.
+         *
+         * @param astNode The node of the AST.
+         */
+        private SyntaxNode(AstNode astNode) {
+            this.astNode = astNode;
+        }
+
+        /**
+         * Creates a new node having no child nodes, e.g. for restoring an AST stored in a cache.
+         *
+         * @param kind The kind of the node.
+         * @param word The text of the number literal, the name of the variable/function, or the symbol of the operator.
+         * @throws IllegalArgumentException Thrown if the symbol of the operator is unknown.
+         */
+        SyntaxNode(Kind kind, String word) {
+            Token token;
+            switch (kind) {
+                case NUMBER_LITERAL: {
+                    token = new Token(TokenType.NUMBER_LITERAL, word);
+                    break;
+                }
+                case VARIABLE_IDENTIFIER: {
+                    token = new Token(TokenType.VARIABLE_IDENTIFIER, word);
+                    break;
+                }
+                case FUNCTION_IDENTIFIER: {
+                    token = new Token(TokenType.FUNCTION_IDENTIFIER, word);
+                    break;
+                }
+                default: {
+                    Map<String, Operator> operatorSymbolMap =
+                        kind == Kind.UNARY_PREFIX_OPERATOR ? StaticSettings.UNARY_PREFIX_OPERATOR_SYMBOL_MAP :
+                        kind == Kind.BINARY_OPERATOR ? StaticSettings.BINARY_OPERATOR_SYMBOL_MAP :
+                        StaticSettings.CALL_OPERATOR_SYMBOL_MAP;
+                    Operator operator = operatorSymbolMap.get(word);
+                    if (operator == null) {
+                        throw new IllegalArgumentException("Unknown operator: " + kind + " " + word);
+                    }
+                    token = new Token(TokenType.OPERATOR, word, operator);
+                    break;
+                }
+            }
+            this.astNode = new AstNode(token);
+        }
+
+        /**
+         * Returns the kind of this node.
+         *
+         * @return The kind of this node.
+         */
+        Kind getKind() {
+            Token token = this.astNode.token;
+            switch (token.type) {
+                case NUMBER_LITERAL: {
+                    return Kind.NUMBER_LITERAL;
+                }
+                case VARIABLE_IDENTIFIER: {
+                    return Kind.VARIABLE_IDENTIFIER;
+                }
+                case FUNCTION_IDENTIFIER: {
+                    return Kind.FUNCTION_IDENTIFIER;
+                }
+                case OPERATOR: {
+                    switch (token.operator.type) {
+                        case UNARY_PREFIX: {
+                            return Kind.UNARY_PREFIX_OPERATOR;
+                        }
+                        case BINARY: {
+                            return Kind.BINARY_OPERATOR;
+                        }
+                        default: {
+                            return Kind.CALL_OPERATOR;
+                        }
+                    }
+                }
+                default: {
+                    throw new IllegalStateException("Unexpected token in the AST: " + token);
+                }
+            }
+        }
+
+        /**
+         * Returns the text of the number literal, the name of the variable/function, or the symbol of the operator.
+         *
+         * @return The word of this node.
+         */
+        String getWord() {
+            return this.astNode.token.word;
+        }
+
+        /**
+         * Returns the position (index of the first character) of the token of this node in the expression.
+         *
+         * @return The position, or -1 if unknown (e.g. for restored nodes).
+         */
+        int getPosition() {
+            return this.astNode.token.position;
+        }
+
+        /**
+         * Returns the number of child nodes.
+         *
+         * @return The number of child nodes.
+         */
+        int getChildCount() {
+            return this.astNode.childNodeList.size();
+        }
+
+        /**
+         * Returns the child node at the specified index.
+         *
+         * @param index The index of the child node.
+         * @return The child node.
+         */
+        SyntaxNode getChild(int index) {
+            return new SyntaxNode(this.astNode.childNodeList.get(index));
+        }
+
+        /**
+         * Appends a child node.
+         *
+         * @param childNode The child node to be appended.
+         */
+        void addChild(SyntaxNode childNode) {
+            this.astNode.childNodeList.add(childNode.astNode);
+        }
+    }
+
+    /**
+     * The AST of an expression parsed by "parse" method, and the number of its tokens.
+     */
+    static final class ParsedExpression {
+
+        /** The root node of the AST. */
+        final SyntaxNode ast;
+
+        /** The number of tokens of the expression. */
+        final int tokenCount;
+
+        /**
+         * Creates a parsed expression.
+         *
+         * @param ast The root node of the AST.
+         * @param tokenCount The number of tokens of the expression.
+         */
+        ParsedExpression(SyntaxNode ast, int tokenCount) {
+            this.ast = ast;
+            this.tokenCount = tokenCount;
+        }
+    }
+
+    /**
+     * The pool of subtrees (of trees of evaluator nodes) shared among compiled expressions, set to engines by "setSubtreePool" method.
+     * Subtrees are referred weakly, so ones no longer used by any compiled expression are collected.
+     */
+    public static final class SubtreePool {
+
+        /** The pool of shared evaluator nodes. */
+        final Evaluator.NodePool nodePool;
+
+        /**
+         * Creates an empty pool.
+         */
+        public SubtreePool() {
+            this.nodePool = new Evaluator.NodePool();
+        }
+
+        /**
+         * Returns the number of shared nodes (operators, literals, variables, and so on) in this pool.
+         *
+         * @return The number of shared nodes.
+         */
+        public int getNodeCount() {
+            return this.nodePool.getSize();
+        }
+    }
+
+    /**
+     * The class of an immutable table of functions, which can be shared by many engines
+     * to skip connecting the same functions to each of them (see the constructor taking this class).
+     * Functions are stored in a flat table with a perfect hash function (hash and displace):
+     * names are grouped into buckets, and for each bucket a displacement (a seed of the second hash function)
+     * is chosen when the registry is created, so that no names collide in the table.
+     * Hence each function is looked up with a single probe.
+     */
+    public static final class FunctionRegistry extends AbstractMap<String, FunctionInterface> {
+
+        /** The empty registry, used by engines created without registries. */
+        static final FunctionRegistry EMPTY = new FunctionRegistry(Collections.<String, FunctionInterface>emptyMap());
+
+        /** The seed of the hash function determining the bucket of a name. */
+        private static final int BUCKET_SEED = 0x7F4A7C15;
+
+        /** The maximum number of displacements tried for each bucket. */
+        private static final int MAX_DISPLACEMENT_TRIAL_COUNT = 1 << 16;
+
+        /** Names of functions, stored at the indices determined by the hash function (null for empty slots). */
+        private final String[] names;
+
+        /** Functions, stored at the same indices as their names. */
+        private final FunctionInterface[] functions;
+
+        /** Displacements (seeds of the hash function determining indices) for each bucket. */
+        private final int[] displacements;
+
+        /** The bit mask to convert a hash value to an index of the table (the size of the table - 1). */
+        private final int mask;
+
+        /** The bit mask to convert a hash value to an index of a bucket (the number of buckets - 1). */
+        private final int bucketMask;
+
+        /**
+         * The maximum number of extra probes required to find a function.
+         * It is 0 unless different names have the same hash code (String.hashCode), for which no displacements work.
+         */
+        private final int maxProbeCount;
+
+        /** The read-only set of entries (names and functions). */
+        private final Set<Map.Entry<String, FunctionInterface>> entrySet;
+
+        /**
+         * Creates a registry storing the specified functions.
+         * The content of the specified Map is copied, so modifications of it after the creation don't affect the registry.
+         *
+         * @param functionTable The Map mapping each function name to a function.
+         */
+        public FunctionRegistry(Map<String, ? extends FunctionInterface> functionTable) {
+            if (functionTable == null) {
+                throw new NullPointerException();
+            }
+            Set<Map.Entry<String, FunctionInterface>> entrySet = new HashSet<Map.Entry<String, FunctionInterface>>();
+            for (Map.Entry<String, ? extends FunctionInterface> entry: functionTable.entrySet()) {
+                String name = entry.getKey();
+                FunctionInterface function = entry.getValue();
+                if (name == null || function == null) {
+                    throw new NullPointerException();
+                }
+                if (StaticSettings.MAX_NAME_CHAR_COUNT < name.length()) {
+                    throw new Exevalator.Exception(
+                        Exevalator.ErrorCode.TOO_LONG_FUNCTION_NAME, -1, Integer.toString(StaticSettings.MAX_NAME_CHAR_COUNT)
+                    );
+                }
+                entrySet.add(new AbstractMap.SimpleImmutableEntry<String, FunctionInterface>(name, function));
+            }
+            this.entrySet = Collections.unmodifiableSet(entrySet);
+
+            // Keep the load factor of the table at most 0.5, and the average number of names in a bucket at most 2.
+            int entryCount = entrySet.size();
+            int tableSize = 1;
+            while (tableSize < entryCount * 2) {
+                tableSize *= 2;
+            }
+            int bucketCount = Math.max(1, tableSize / 4);
+            this.names = new String[tableSize];
+            this.functions = new FunctionInterface[tableSize];
+            this.displacements = new int[bucketCount];
+            this.mask = tableSize - 1;
+            this.bucketMask = bucketCount - 1;
+
+            // Group entries into buckets, linked by indices in "nextEntryIndices".
+            String[] entryNames = new String[entryCount];
+            FunctionInterface[] entryFunctions = new FunctionInterface[entryCount];
+            int[] bucketHeadIndices = new int[bucketCount];
+            int[] bucketSizes = new int[bucketCount];
+            int[] nextEntryIndices = new int[entryCount];
+            Arrays.fill(bucketHeadIndices, -1);
+            int maxBucketSize = 0;
+            int ientry = 0;
+            for (Map.Entry<String, FunctionInterface> entry: entrySet) {
+                int bucketIndex = mix(entry.getKey().hashCode(), BUCKET_SEED) & this.bucketMask;
+                entryNames[ientry] = entry.getKey();
+                entryFunctions[ientry] = entry.getValue();
+                nextEntryIndices[ientry] = bucketHeadIndices[bucketIndex];
+                bucketHeadIndices[bucketIndex] = ientry;
+                bucketSizes[bucketIndex]++;
+                maxBucketSize = Math.max(maxBucketSize, bucketSizes[bucketIndex]);
+                ientry++;
+            }
+
+            // Place larger buckets first (while the table is emptier), searching a displacement without collisions for each.
+            int maxProbeCount = 0;
+            for (int bucketSize=maxBucketSize; 1<=bucketSize; bucketSize--) {
+                for (int ibucket=0; ibucket<bucketCount; ibucket++) {
+                    if (bucketSizes[ibucket] != bucketSize) {
+                        continue;
+                    }
+                    int displacement = this.findDisplacement(entryNames, bucketHeadIndices[ibucket], nextEntryIndices);
+                    boolean displaced = displacement != -1;
+                    this.displacements[ibucket] = displaced ? displacement : 0;
+
+                    // If no displacements work (e.g. names having the same hash code), store them by linear probing.
+                    for (int i=bucketHeadIndices[ibucket]; i!=-1; i=nextEntryIndices[i]) {
+                        int index = mix(entryNames[i].hashCode(), this.displacements[ibucket]) & this.mask;
+                        int probeCount = 0;
+                        while (this.names[index] != null) {
+                            index = (index + 1) & this.mask;
+                            probeCount++;
+                        }
+                        this.names[index] = entryNames[i];
+                        this.functions[index] = entryFunctions[i];
+                        maxProbeCount = Math.max(maxProbeCount, probeCount);
+                    }
+                }
+            }
+            this.maxProbeCount = maxProbeCount;
+        }
+
+        /**
+         * Searches the displacement with which all names in a bucket are stored into different empty slots of the table.
+         *
+         * @param entryNames Names of all entries.
+         * @param headIndex The index of the first entry in the bucket.
+         * @param nextEntryIndices The array storing the index of the next entry in the same bucket for each entry (-1 for the last).
+         * @return The found displacement, or -1 if no displacements work.
+         */
+        private int findDisplacement(String[] entryNames, int headIndex, int[] nextEntryIndices) {
+            for (int itrial=0; itrial<MAX_DISPLACEMENT_TRIAL_COUNT; itrial++) {
+                int displacement = itrial * 0x61C88647;
+                boolean collided = false;
+                for (int i=headIndex; i!=-1 && !collided; i=nextEntryIndices[i]) {
+                    int index = mix(entryNames[i].hashCode(), displacement) & this.mask;
+                    collided = this.names[index] != null;
+                    for (int j=headIndex; j!=i && !collided; j=nextEntryIndices[j]) {
+                        collided = (mix(entryNames[j].hashCode(), displacement) & this.mask) == index;
+                    }
+                }
+                if (!collided && displacement != -1) {
+                    return displacement;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Mixes bits of the hash code of a name with the seed.
+         *
+         * @param hashCode The hash code of the name.
+         * @param seed The seed.
+         * @return The hash value.
+         */
+        private static int mix(int hashCode, int seed) {
+            int hash = (hashCode ^ seed) * 0x9E3779B9;
+            hash ^= hash >>> 15;
+            hash *= 0x85EBCA6B;
+            return hash ^ (hash >>> 13);
+        }
+
+        /**
+         * Returns the function having the specified name.
+         *
+         * @param name The name of the function.
+         * @return The function, or null if no function has the name.
+         */
+        @Override
+        public FunctionInterface get(Object name) {
+            if (!(name instanceof String)) {
+                return null;
+            }
+            String functionName = (String)name;
+            int hashCode = functionName.hashCode();
+            int index = mix(hashCode, this.displacements[mix(hashCode, BUCKET_SEED) & this.bucketMask]) & this.mask;
+            for (int iprobe=0; iprobe<=this.maxProbeCount; iprobe++) {
+                String storedName = this.names[index];
+                if (storedName == null) {
+                    return null;
+                }
+                if (storedName.equals(functionName)) {
+                    return this.functions[index];
+                }
+                index = (index + 1) & this.mask;
+            }
+            return null;
+        }
+
+        /**
+         * Returns whether any function has the specified name.
+         *
+         * @param name The name of the function.
+         * @return Returns true if any function has the name.
+         */
+        @Override
+        public boolean containsKey(Object name) {
+            return this.get(name) != null;
+        }
+
+        /**
+         * Returns the number of functions.
+         *
+         * @return The number of functions.
+         */
+        @Override
+        public int size() {
+            return this.entrySet.size();
+        }
+
+        /**
+         * Returns the read-only set of entries (names and functions).
+         *
+         * @return The set of entries.
+         */
+        @Override
+        public Set<Map.Entry<String, FunctionInterface>> entrySet() {
+            return this.entrySet;
+        }
+    }
+
+    /**
+     * The function table of an engine created from a FunctionRegistry,
+     * storing functions connected to the engine (the overlay) separately from the shared registry.
+     * Functions in the overlay are looked up first, but they can't have the same names as ones in the registry
+     * (connectFunction method checks it).
+     */
+    private static final class LayeredFunctionTable extends AbstractMap<String, FunctionInterface> {
+
+        /** The shared registry. */
+        private final FunctionRegistry registry;
+
+        /** The Map storing functions connected to the engine. */
+        private final Map<String, FunctionInterface> overlay;
+
+        /**
+         * Creates a table having the copy of the specified functions in the overlay.
+         *
+         * @param registry The shared registry.
+         * @param overlay The Map storing functions to be copied into the overlay, or null to create the empty overlay.
+         */
+        private LayeredFunctionTable(FunctionRegistry registry, Map<String, FunctionInterface> overlay) {
+            this.registry = registry;
+            this.overlay = overlay != null
+                ? new ConcurrentHashMap<String, FunctionInterface>(overlay)
+                : new ConcurrentHashMap<String, FunctionInterface>();
+        }
+
+        @Override
+        public FunctionInterface get(Object name) {
+            FunctionInterface function = this.overlay.get(name);
+            return function != null ? function : this.registry.get(name);
+        }
+
+        @Override
+        public boolean containsKey(Object name) {
+            return this.get(name) != null;
+        }
+
+        @Override
+        public FunctionInterface put(String name, FunctionInterface function) {
+            return this.overlay.put(name, function);
+        }
+
+        @Override
+        public Set<Map.Entry<String, FunctionInterface>> entrySet() {
+            Map<String, FunctionInterface> mergedTable = new HashMap<String, FunctionInterface>(this.registry);
+            mergedTable.putAll(this.overlay);
+            return Collections.unmodifiableMap(mergedTable).entrySet();
+        }
+    }
+
+    /**
+     * The class of the explanation of an expression, returned by "explain" method.
+     */
+    public static final class Explanation {
+
+        /** The plan (the tree of evaluator nodes) in XML-like text format. */
+        private final String plan;
+
+        /** The estimated cost. */
+        private final double estimatedCost;
+
+        /** The Map mapping each type of nodes to the number of them. */
+        private final Map<String, Integer> operationCountMap;
+
+        /** The Map mapping each function name to the number of call sites of it. */
+        private final Map<String, Integer> functionCallCountMap;
+
+        /** The depth of the plan. */
+        private final int depth;
+
+        /** The number of scratch slots. */
+        private final int scratchSlotCount;
+
+        /** Descriptions of applied optimizations. */
+        private final List<String> optimizationList;
+
+        /**
+         * Creates an explanation.
+         *
+         * @param plan The plan (the tree of evaluator nodes) in XML-like text format.
+         * @param estimatedCost The estimated cost.
+         * @param operationCountMap The Map mapping each type of nodes to the number of them.
+         * @param functionCallCountMap The Map mapping each function name to the number of call sites of it.
+         * @param depth The depth of the plan.
+         * @param scratchSlotCount The number of scratch slots.
+         * @param optimizationList Descriptions of applied optimizations.
+         */
+        Explanation(String plan, double estimatedCost, Map<String, Integer> operationCountMap, Map<String, Integer> functionCallCountMap,
+                int depth, int scratchSlotCount, List<String> optimizationList) {
+            this.plan = plan;
+            this.estimatedCost = estimatedCost;
+            this.operationCountMap = Collections.unmodifiableMap(operationCountMap);
+            this.functionCallCountMap = Collections.unmodifiableMap(functionCallCountMap);
+            this.depth = depth;
+            this.scratchSlotCount = scratchSlotCount;
+            this.optimizationList = Collections.unmodifiableList(optimizationList);
+        }
+
+        /**
+         * Returns the plan: the tree of evaluator nodes after optimizations, in XML-like text format,
+         * in which each node has the estimated cost including child nodes.
+         *
+         * @return The plan.
+         */
+        public String getPlan() {
+            return this.plan;
+        }
+
+        /**
+         * Returns the estimated cost of an evaluation, in units of the cost of evaluating a node (e.g. an addition).
+         * Function calls cost values set by "setFunctionCost" method in addition,
+         * conditional operators cost the more expensive one of values, and reductions cost the expression times iterations.
+         *
+         * @return The estimated cost.
+         */
+        public double getEstimatedCost() {
+            return this.estimatedCost;
+        }
+
+        /**
+         * Returns the Map mapping each type of nodes in the plan (e.g. "ADDITION") to the number of them.
+         *
+         * @return The (unmodifiable) Map of counts of operations.
+         */
+        public Map<String, Integer> getOperationCounts() {
+            return this.operationCountMap;
+        }
+
+        /**
+         * Returns the Map mapping each function name to the number of calls of it in the plan (not multiplied by iterations).
+         *
+         * @return The (unmodifiable) Map of counts of function calls.
+         */
+        public Map<String, Integer> getFunctionCallCounts() {
+            return this.functionCallCountMap;
+        }
+
+        /**
+         * Returns the depth of the plan (1 for a single node).
+         *
+         * @return The depth of the plan.
+         */
+        public int getDepth() {
+            return this.depth;
+        }
+
+        /**
+         * Returns the number of scratch slots, allocated in the memory for let-bound variables and indices of reductions.
+         *
+         * @return The number of scratch slots.
+         */
+        public int getScratchSlotCount() {
+            return this.scratchSlotCount;
+        }
+
+        /**
+         * Returns descriptions of optimizations applied to the plan, e.g. "CONSTANT_FOLDING: 2 * 3 -> 6.0".
+         *
+         * @return The (unmodifiable) List of descriptions of optimizations.
+         */
+        public List<String> getOptimizations() {
+            return this.optimizationList;
+        }
+
+        @Override
+        public String toString() {
+            final String eol = System.getProperty("line.separator");
+            StringBuilder textBuilder = new StringBuilder();
+            textBuilder.append("Estimated cost: ").append(this.estimatedCost).append(eol);
+            textBuilder.append("Operations: ").append(this.operationCountMap).append(eol);
+            textBuilder.append("Function calls: ").append(this.functionCallCountMap).append(eol);
+            textBuilder.append("Depth: ").append(this.depth).append(eol);
+            textBuilder.append("Scratch slots: ").append(this.scratchSlotCount).append(eol);
+            textBuilder.append("Optimizations: ").append(this.optimizationList).append(eol);
+            textBuilder.append(this.plan);
+            return textBuilder.toString();
+        }
+    }
+
+    /**
+     * The Exception class thrown in/by this engine.
+     */
+    @SuppressWarnings("serial")
+    public static class Exception extends RuntimeException {
+
+        /** The code of the error, or null if this exception is created from an error message. */
+        private final ErrorCode errorCode;
+
+        /** The position (index of the character) of the token causing the error in the expression, or -1 if unknown. */
+        private final int position;
+
+        /** Arguments embedded in the error message (e.g. the name of the undeclared variable). */
+        private final String[] errorArguments;
+
+        /** The error message, built from the code and arguments when it is required first time. */
+        private volatile String errorMessage;
+
+        /**
+         * Create an instance having the specified error message.
+         *
+         * @param errorMessage The error message explaining the cause of this exception.
+         */
+        public Exception(String errorMessage) {
+            super(errorMessage);
+            this.errorCode = null;
+            this.position = -1;
+            this.errorArguments = new String[0];
+            this.errorMessage = errorMessage;
+        }
+
+        /**
+         * Create an instance having the specified error message and the cause exception.
+         *
+         * @param errorMessage The error message explaining the cause of this exception.
+         * @param causeException The cause exception of this exception.
+         */
+        public Exception(String errorMessage, java.lang.Exception causeException) {
+            super(errorMessage, causeException);
+            this.errorCode = null;
+            this.position = -1;
+            this.errorArguments = new String[0];
+            this.errorMessage = errorMessage;
+        }
+
+        /**
+         * Create an instance having the specified error code and arguments.
+         * The error message is built from them when it is required (by "getMessage" method).
+         *
+         * @param errorCode The code of the error.
+         * @param position The position of the token causing the error in the expression, or -1 if unknown.
+         * @param errorArguments Arguments embedded in the error message.
+         */
+        public Exception(ErrorCode errorCode, int position, String... errorArguments) {
+            this(errorCode, position, errorArguments, null, true);
+        }
+
+        /**
+         * Create an instance having the specified error code, arguments, and the cause exception,
+         * with or without capturing the stack trace.
+         *
+         * @param errorCode The code of the error.
+         * @param position The position of the token causing the error in the expression, or -1 if unknown.
+         * @param errorArguments Arguments embedded in the error message.
+         * @param causeException The cause exception of this exception, or null if there is no cause.
+         * @param stackTraceCaptured Specify false to skip capturing the stack trace (which is expensive).
+         */
+        Exception(ErrorCode errorCode, int position, String[] errorArguments, Throwable causeException,
+                boolean stackTraceCaptured) {
+
+            super(null, causeException, false, stackTraceCaptured);
+            if (errorCode == null) {
+                throw new NullPointerException();
+            }
+            this.errorCode = errorCode;
+            this.position = position;
+            this.errorArguments = errorArguments;
+            this.errorMessage = null;
+        }
+
+        /**
+         * Creates an instance thrown on error paths of the engine, capturing the stack trace at the throw site
+         * only if it is enabled (it is disabled by "setStackTraceEnabled" of the engine).
+         *
+         * @param stackTraceEnabled Specify false to skip capturing the stack trace (which is expensive).
+         * @param errorCode The code of the error.
+         * @param position The position of the token causing the error in the expression, or -1 if unknown.
+         * @param errorArguments Arguments embedded in the error message.
+         * @return The created instance.
+         */
+        static Exception create(boolean stackTraceEnabled, ErrorCode errorCode, int position, String... errorArguments) {
+            return new Exception(errorCode, position, errorArguments, null, stackTraceEnabled);
+        }
+
+        /**
+         * Returns the error message, building it from the error code and arguments if it has not been built yet.
+         *
+         * @return The error message.
+         */
+        @Override
+        public String getMessage() {
+            if (this.errorMessage == null) {
+                this.errorMessage = this.errorCode.formatMessage(this.errorArguments);
+            }
+            return this.errorMessage;
+        }
+
+        /**
+         * Returns the code of the error.
+         *
+         * @return The code of the error, or null if this exception has been created from an error message.
+         */
+        public ErrorCode getErrorCode() {
+            return this.errorCode;
+        }
+
+        /**
+         * Returns the position (index of the character) of the token causing the error in the expression.
+         *
+         * @return The position of the token, or -1 if the error is not related to a specific token.
+         */
+        public int getPosition() {
+            return this.position;
+        }
+
+        /**
+         * Returns arguments embedded in the error message (e.g. the name of the undeclared variable).
+         *
+         * @return Arguments embedded in the error message.
+         */
+        public List<String> getErrorArguments() {
+            return Collections.unmodifiableList(Arrays.asList(this.errorArguments));
+        }
+    }
+
+    /**
+     * Codes of errors of Exevalator.Exception, each of which corresponds with the error message in ErrorMessages class.
+     */
+    public static enum ErrorCode {
+        EMPTY_EXPRESSION(ErrorMessages.EMPTY_EXPRESSION),
+        TOO_MANY_TOKENS(ErrorMessages.TOO_MANY_TOKENS),
+        DEFICIENT_OPEN_PARENTHESIS(ErrorMessages.DEFICIENT_OPEN_PARENTHESIS),
+        DEFICIENT_CLOSED_PARENTHESIS(ErrorMessages.DEFICIENT_CLOSED_PARENTHESIS),
+        EMPTY_PARENTHESIS(ErrorMessages.EMPTY_PARENTHESIS),
+        RIGHT_OPERAND_REQUIRED(ErrorMessages.RIGHT_OPERAND_REQUIRED),
+        LEFT_OPERAND_REQUIRED(ErrorMessages.LEFT_OPERAND_REQUIRED),
+        RIGHT_OPERATOR_REQUIRED(ErrorMessages.RIGHT_OPERATOR_REQUIRED),
+        LEFT_OPERATOR_REQUIRED(ErrorMessages.LEFT_OPERATOR_REQUIRED),
+        UNKNOWN_UNARY_PREFIX_OPERATOR(ErrorMessages.UNKNOWN_UNARY_PREFIX_OPERATOR),
+        UNKNOWN_BINARY_OPERATOR(ErrorMessages.UNKNOWN_BINARY_OPERATOR),
+        UNKNOWN_OPERATOR_SYNTAX(ErrorMessages.UNKNOWN_OPERATOR_SYNTAX),
+        EXCEEDS_MAX_AST_DEPTH(ErrorMessages.EXCEEDS_MAX_AST_DEPTH),
+        UNEXPECTED_PARTIAL_EXPRESSION(ErrorMessages.UNEXPECTED_PARTIAL_EXPRESSION),
+        INVALID_NUMBER_LITERAL(ErrorMessages.INVALID_NUMBER_LITERAL),
+        INVALID_MEMORY_ADDRESS(ErrorMessages.INVALID_MEMORY_ADDRESS),
+        FUNCTION_ERROR(ErrorMessages.FUNCTION_ERROR),
+        VARIABLE_NOT_FOUND(ErrorMessages.VARIABLE_NOT_FOUND),
+        FUNCTION_NOT_FOUND(ErrorMessages.FUNCTION_NOT_FOUND),
+        UNEXPECTED_OPERATOR(ErrorMessages.UNEXPECTED_OPERATOR),
+        UNEXPECTED_TOKEN(ErrorMessages.UNEXPECTED_TOKEN),
+        TOO_LONG_EXPRESSION(ErrorMessages.TOO_LONG_EXPRESSION),
+        UNEXPECTED_ERROR(ErrorMessages.UNEXPECTED_ERROR),
+        REEVAL_NOT_AVAILABLE(ErrorMessages.REEVAL_NOT_AVAILABLE),
+        TOO_LONG_VARIABLE_NAME(ErrorMessages.TOO_LONG_VARIABLE_NAME),
+        TOO_LONG_FUNCTION_NAME(ErrorMessages.TOO_LONG_FUNCTION_NAME),
+        VARIABLE_ALREADY_DECLARED(ErrorMessages.VARIABLE_ALREADY_DECLARED),
+        FUNCTION_ALREADY_CONNECTED(ErrorMessages.FUNCTION_ALREADY_CONNECTED),
+        INVALID_VARIABLE_ADDRESS(ErrorMessages.INVALID_VARIABLE_ADDRESS),
+        UNEXPECTED_LET(ErrorMessages.UNEXPECTED_LET),
+        INVALID_LET_SYNTAX(ErrorMessages.INVALID_LET_SYNTAX),
+        DEFICIENT_LET(ErrorMessages.DEFICIENT_LET),
+        DEFICIENT_IN(ErrorMessages.DEFICIENT_IN),
+        UNEXPECTED_STATEMENT_SEPARATOR(ErrorMessages.UNEXPECTED_STATEMENT_SEPARATOR),
+        INVALID_CONDITIONAL_OPERATOR(ErrorMessages.INVALID_CONDITIONAL_OPERATOR),
+        INVALID_REDUCTION_ARGUMENTS(ErrorMessages.INVALID_REDUCTION_ARGUMENTS),
+        INVALID_FUNCTION_COST(ErrorMessages.INVALID_FUNCTION_COST),
+        EVALUATION_TIMED_OUT(ErrorMessages.EVALUATION_TIMED_OUT),
+        EVALUATION_CANCELLED(ErrorMessages.EVALUATION_CANCELLED),
+        SPECIALIZED_VARIABLE_ASSIGNED(ErrorMessages.SPECIALIZED_VARIABLE_ASSIGNED),
+        INVALID_REDUCTION_RANGE(ErrorMessages.INVALID_REDUCTION_RANGE);
+
+        /** The error message, in which "$0", "$1", ... are replaced with arguments. */
+        private final String messageTemplate;
+
+        /**
+         * Creates a code of the error having the specified error message.
+         *
+         * @param messageTemplate The error message, in which "$0", "$1", ... are replaced with arguments.
+         */
+        private ErrorCode(String messageTemplate) {
+            this.messageTemplate = messageTemplate;
+        }
+
+        /**
+         * Builds the error message, by replacing "$0", "$1", ... in the message with the specified arguments.
+         *
+         * @param errorArguments Arguments embedded in the error message.
+         * @return The error message.
+         */
+        public String formatMessage(String... errorArguments) {
+            String template = this.messageTemplate;
+            StringBuilder messageBuilder = new StringBuilder(template.length() + 16);
+            int templateLength = template.length();
+            for (int ichar=0; ichar<templateLength; ichar++) {
+                char c = template.charAt(ichar);
+                int argumentIndex = ichar + 1 < templateLength ? template.charAt(ichar + 1) - '0' : -1;
+                if (c == '$' && 0 <= argumentIndex && argumentIndex < errorArguments.length) {
+                    messageBuilder.append(errorArguments[argumentIndex]);
+                    ichar++;
+                } else {
+                    messageBuilder.append(c);
+                }
+            }
+            return messageBuilder.toString();
+        }
+    }
+
+    /**
+     * The result of the validation of an expression by "validate" method.
+     */
+    public static final class ValidationResult {
+
+        /** The result of a valid expression, shared by all validations. */
+        static final ValidationResult VALID = new ValidationResult(null);
+
+        /** The exception representing the error of the expression, or null if it is valid. */
+        private final Exevalator.Exception exception;
+
+        /**
+         * Creates a result of the validation.
+         *
+         * @param exception The exception representing the error of the expression, or null if it is valid.
+         */
+        ValidationResult(Exevalator.Exception exception) {
+            this.exception = exception;
+        }
+
+        /**
+         * Returns whether the expression is valid, i.e., it can be evaluated by the engine.
+         *
+         * @return Returns true if the expression is valid.
+         */
+        public boolean isValid() {
+            return this.exception == null;
+        }
+
+        /**
+         * Returns the code of the error of the expression.
+         *
+         * @return The code of the error, or null if the expression is valid.
+         */
+        public ErrorCode getErrorCode() {
+            return this.exception == null ? null : this.exception.getErrorCode();
+        }
+
+        /**
+         * Returns the position (index of the character) of the token causing the error in the expression.
+         *
+         * @return The position of the token, or -1 if the expression is valid or the error is not related to a specific token.
+         */
+        public int getPosition() {
+            return this.exception == null ? -1 : this.exception.getPosition();
+        }
+
+        /**
+         * Returns arguments embedded in the error message (e.g. the name of the undeclared variable).
+         *
+         * @return The unmodifiable List of arguments (empty if the expression is valid).
+         */
+        public List<String> getErrorArguments() {
+            return this.exception == null ? Collections.<String>emptyList() : this.exception.getErrorArguments();
+        }
+
+        /**
+         * Returns the error message, which is the same as the message of the exception thrown by "eval" method.
+         *
+         * @return The error message, or null if the expression is valid.
+         */
+        public String getErrorMessage() {
+            return this.exception == null ? null : this.exception.getMessage();
+        }
+    }
+
+    /**
+     * The Exception class thrown when an evaluation has been aborted,
+     * because it exceeded the time limit or it has been cancelled by the token.
+     */
+    @SuppressWarnings("serial")
+    public static final class EvaluationAbortedException extends Exception {
+
+        /** The flag representing whether the evaluation exceeded the time limit (false if cancelled). */
+        private final boolean timedOut;
+
+        /**
+         * Create an instance having the specified error message.
+         *
+         * @param errorMessage The error message explaining the cause of this exception.
+         * @param timedOut Specify true if the evaluation exceeded the time limit, or false if it has been cancelled.
+         */
+        public EvaluationAbortedException(String errorMessage, boolean timedOut) {
+            super(errorMessage);
+            this.timedOut = timedOut;
+        }
+
+        /**
+         * Create an instance having the specified error code and arguments.
+         * The error message is built from them when it is required (by "getMessage" method).
+         *
+         * @param errorCode The code of the error (EVALUATION_TIMED_OUT or EVALUATION_CANCELLED).
+         * @param timedOut Specify true if the evaluation exceeded the time limit, or false if it has been cancelled.
+         * @param errorArguments Arguments embedded in the error message.
+         */
+        public EvaluationAbortedException(ErrorCode errorCode, boolean timedOut, String... errorArguments) {
+            this(errorCode, timedOut, errorArguments, true);
+        }
+
+        /**
+         * Create an instance having the specified error code and arguments, with or without capturing the stack trace.
+         *
+         * @param errorCode The code of the error (EVALUATION_TIMED_OUT or EVALUATION_CANCELLED).
+         * @param timedOut Specify true if the evaluation exceeded the time limit, or false if it has been cancelled.
+         * @param errorArguments Arguments embedded in the error message.
+         * @param stackTraceCaptured Specify false to skip capturing the stack trace (which is expensive).
+         */
+        EvaluationAbortedException(ErrorCode errorCode, boolean timedOut, String[] errorArguments, boolean stackTraceCaptured) {
+            super(errorCode, -1, errorArguments, null, stackTraceCaptured);
+            this.timedOut = timedOut;
+        }
+
+        /**
+         * Returns whether the evaluation has been aborted because it exceeded the time limit.
+         *
+         * @return Returns true if the evaluation exceeded the time limit, or false if it has been cancelled.
+         */
+        public boolean isTimedOut() {
+            return this.timedOut;
+        }
+    }
+
+    /**
+     * The token to cancel evaluations by "eval(String, CancellationToken)" method from another thread.
+     * A token can be shared by multiple evaluations, and all of them are aborted when it is cancelled.
+     */
+    public static final class CancellationToken {
+
+        /** The flag representing whether this token has been cancelled. */
+        private volatile boolean cancelled = false;
+
+        /**
+         * Cancels evaluations using this token.
+         * Evaluations are aborted at the next function call or iteration of reductions.
+         */
+        public void cancel() {
+            this.cancelled = true;
+        }
+
+        /**
+         * Returns whether this token has been cancelled.
+         *
+         * @return Returns true if this token has been cancelled.
+         */
+        public boolean isCancelled() {
+            return this.cancelled;
+        }
+    }
+}
+
+
+/**
+ * The class performing functions of a lexical analyzer.
+ */
+final class LexicalAnalyzer {
+
+    /**
+     * Splits (tokenizes) the expression into tokens, and analyze them.
+     *
+     * @param expression The expression to be tokenized/analyzed.
+     * @return Analyzed tokens.
+     */
+    public static Token[] analyze(String expression) {
+        return analyze(expression, StaticSettings.MAX_TOKEN_COUNT);
+    }
+
+    /**
+     * Splits (tokenizes) the expression into tokens, and analyze them, with checking the number of tokens.
+     *
+     * @param expression The expression to be tokenized/analyzed.
+     * @param maxTokenCount The maximum number of tokens in the expression.
+     * @return Analyzed tokens.
+     */
+    public static Token[] analyze(String expression, int maxTokenCount) {
+        return analyze(expression, maxTokenCount, true);
+    }
+
+    /**
+     * Splits (tokenizes) the expression into tokens, and analyze them, with checking the number of tokens.
+     *
+     * @param expression The expression to be tokenized/analyzed.
+     * @param maxTokenCount The maximum number of tokens in the expression.
+     * @param stackTraceEnabled Specify false not to capture stack traces of thrown exceptions.
+     * @return Analyzed tokens.
+     */
+    public static Token[] analyze(String expression, int maxTokenCount, boolean stackTraceEnabled) {
+
+        // Firstly, to simplify the tokenization,
+        // replace number literals in the expression to the escaped representation: "@NUMBER_LITERAL",
+        // because number literals may contains "+" or "-" in their exponent part.
+        String originalExpression = expression;
+        List<String> numberLiteralList = new ArrayList<String>();
+        expression = escapeNumberLiterals(expression, numberLiteralList);
+
+        // Tokenize (split) the expression into token words.
+        // (Splitter symbols consisting of multiple characters, e.g. "<=", are matched preferentially.)
+        expression = StaticSettings.TOKEN_SPLITTER_PATTERN.matcher(expression).replaceAll(" $0 ");
+        String[] tokenWords = expression.trim().split("\\s+");
+
+        // For an empty expression (containing no tokens), the above returns { "" }, not { }.
+        // So we should detect/handle it as follows.
+        if (tokenWords.length == 1 && tokenWords[0].length() == 0) {
+            throw Exevalator.Exception.create(stackTraceEnabled, Exevalator.ErrorCode.EMPTY_EXPRESSION, -1);
+        }
+
+        // Checks the total number of tokens.
+        if (maxTokenCount < tokenWords.length) {
+            throw Exevalator.Exception.create(stackTraceEnabled, Exevalator.ErrorCode.TOO_MANY_TOKENS, -1, Integer.toString(maxTokenCount));
+        }
+
+        // Create Token instances.
+        // Also, escaped number literals will be recovered.
+        Token[] tokens = createTokensFromTokenWords(tokenWords, numberLiteralList, originalExpression, stackTraceEnabled);
+
+        // Checks syntactic correctness of tokens of inputted expressions.
+        checkParenthesisBalance(tokens, stackTraceEnabled);
+        checkEmptyParentheses(tokens, stackTraceEnabled);
+        checkStatementSeparators(tokens, stackTraceEnabled);
+        checkLetBindings(tokens, stackTraceEnabled);
+        checkLocationsOfOperatorsAndLeafs(tokens, stackTraceEnabled);
+
+        return tokens;
+    }
+
+    /**
+     * Creates Token-type instances from token words (String).
+     *
+     * @param tokenWords Token words (String) to be converted to Token instances.
+     * @param numberLiterals The List storing number literals.
+     * @param expression The original expression, for detecting positions of tokens.
+     * @return Created Token instances.
+     */
+    private static Token[] createTokensFromTokenWords(String[] tokenWords, List<String> numberLiterals, String expression,
+            boolean stackTraceEnabled) {
+        int tokenCount = tokenWords.length;
+
+        // Stores the parenthesis-depth, which will increase at "(" and decrease at ")".
+        int parenthesisDepth = 0;
+
+        // Stores the parenthesis-depth when a function call operator begins,
+        // for detecting the end of the function operator.
+        Set<Integer> callParenthesisDepths = new HashSet<Integer>();
+
+        Token[] tokens = new Token[tokenCount];
+        Token lastToken = null;
+        int iliteral = 0;
+        int expressionLength = expression.length();
+        int charIndex = 0;
+        for (int itoken=0; itoken<tokenCount; itoken++) {
+            String word = tokenWords[itoken];
+
+            // Detect the position of the token in the original expression, by skipping spaces before it.
+            String originalWord = word.equals(StaticSettings.ESCAPED_NUMBER_LITERAL) ? numberLiterals.get(iliteral) : word;
+            while (charIndex < expressionLength && Character.isWhitespace(expression.charAt(charIndex))) {
+                charIndex++;
+            }
+            int position = -1;
+            if (expression.startsWith(originalWord, charIndex)) {
+                position = charIndex;
+                charIndex += originalWord.length();
+            }
+
+            // Cases of open parentheses, or beginning of function calls.
+            if (word.equals("(")) {
+                parenthesisDepth++;
+                if (1 <= itoken && tokens[itoken - 1].type == TokenType.FUNCTION_IDENTIFIER) {
+                    callParenthesisDepths.add(parenthesisDepth);
+                    Operator op = StaticSettings.CALL_OPERATOR_SYMBOL_MAP.get(word);
+                    tokens[itoken] = new Token(TokenType.OPERATOR, word, op, position);
+                } else {
+                    tokens[itoken] = new Token(TokenType.PARENTHESIS, word, null, position);
+                }
+
+            // Cases of closes parentheses, or end of function calls.
+            } else if (word.equals(")")) {
+                if (callParenthesisDepths.contains(parenthesisDepth)) {
+                    callParenthesisDepths.remove(parenthesisDepth);
+                    Operator op = StaticSettings.CALL_OPERATOR_SYMBOL_MAP.get(word);
+                    tokens[itoken] = new Token(TokenType.OPERATOR, word, op, position);
+                } else {
+                    tokens[itoken] = new Token(TokenType.PARENTHESIS, word, null, position);
+                }
+                parenthesisDepth--;
+
+            // Case of separators of function arguments:
+            // they are handled as a special operator, for the algorithm of the parser of Exevalator.
+            } else if (word.equals(",")) {
+                Operator op = StaticSettings.CALL_OPERATOR_SYMBOL_MAP.get(word);
+                tokens[itoken] = new Token(TokenType.OPERATOR, word, op, position);
+
+            // Cases of other operators.
+            } else if (StaticSettings.OPERATOR_SYMBOL_SET.contains(word)) {
+                Operator op = null;
+
+                // Cases of unary-prefix operators.
+                if (lastToken == null
+                        || lastToken.word.equals("(")
+                        || lastToken.word.equals(",")
+                        || (lastToken.type == TokenType.OPERATOR && lastToken.operator.type != OperatorType.CALL) ) {
+
+                    if (!StaticSettings.UNARY_PREFIX_OPERATOR_SYMBOL_MAP.containsKey(word)) {
+                        throw Exevalator.Exception.create(stackTraceEnabled, Exevalator.ErrorCode.UNKNOWN_UNARY_PREFIX_OPERATOR, position, word);
+                    }
+                    op = StaticSettings.UNARY_PREFIX_OPERATOR_SYMBOL_MAP.get(word);
+
+                // Cases of binary operators.
+                } else if (lastToken.word.equals(")")
+                        || lastToken.type == TokenType.NUMBER_LITERAL
+                        || lastToken.type == TokenType.VARIABLE_IDENTIFIER) {
+
+                    if (!StaticSettings.BINARY_OPERATOR_SYMBOL_MAP.containsKey(word)) {
+                        throw Exevalator.Exception.create(stackTraceEnabled, Exevalator.ErrorCode.UNKNOWN_BINARY_OPERATOR, position, word);
+                    }
+                    op = StaticSettings.BINARY_OPERATOR_SYMBOL_MAP.get(word);
+
+                } else {
+                    throw Exevalator.Exception.create(stackTraceEnabled, Exevalator.ErrorCode.UNKNOWN_OPERATOR_SYNTAX, position, word);
+                }
+                tokens[itoken] = new Token(TokenType.OPERATOR, word, op, position);
+
+            // Case of literals
+            } else if (word.equals(StaticSettings.ESCAPED_NUMBER_LITERAL)) {
+                tokens[itoken] = new Token(TokenType.NUMBER_LITERAL, originalWord, null, position);
+                iliteral++;
+
+            // Case of the keyword beginning let-bindings: "let".
+            } else if (word.equals(StaticSettings.LET_KEYWORD)) {
+                tokens[itoken] = new Token(TokenType.KEYWORD, word, null, position);
+
+            // Cases of variable identifier of function identifier.
+            } else {
+                if (itoken < tokenCount - 1 && tokenWords[itoken + 1].equals("(")) {
+                    tokens[itoken] = new Token(TokenType.FUNCTION_IDENTIFIER, word, null, position);
+                } else {
+                    tokens[itoken] = new Token(TokenType.VARIABLE_IDENTIFIER, word, null, position);
+                }
+            }
+            lastToken = tokens[itoken];
+        }
+        return tokens;
+    }
+
+    /**
+     * Replaces number literals in the expression to the escaped representation: "@NUMBER_LITERAL@".
+     *
+     * @param expression The expression of which number literals are not escaped yet.
+     * @param literalStoreList The list to which number literals will be added.
+     * @return The expression in which number literals are escaped.
+     */
+    private static String escapeNumberLiterals(String expression, List<String> literalStoreList) {
+        Matcher numberLiteralMatcher = StaticSettings.NUMBER_LITERAL_PATTERN.matcher(expression);
+
+        // Search the next number literal, and loops while any literals undetected yet exist.
+        while(numberLiteralMatcher.find()) {
+
+            // Extract a number literal detected by the above searching.
+            String matchedLiteral = numberLiteralMatcher.group();
+
+            // Add the extracted literal to the List specified to the argument.
+            literalStoreList.add(matchedLiteral);
+        }
+
+        // Replace all number literals in the expression to the escaped representation.
+        numberLiteralMatcher.reset();
+        String replacedExpression = numberLiteralMatcher.replaceAll(StaticSettings.ESCAPED_NUMBER_LITERAL);
+        return replacedExpression;
+    }
+
+    /**
+     * Checks the number and correspondence of open "(" / closed ")" parentheses.
+     * An ExevalatorException will be thrown when any errors detected.
+     * If no error detected, nothing will occur.
+     *
+     * @param tokens Tokens of the inputted expression.
+     */
+    private static void checkParenthesisBalance(Token[] tokens, boolean stackTraceEnabled) {
+        int tokenCount = tokens.length;
+        int hierarchy = 0; // Increases at "(" and decreases at ")".
+
+        for (int tokenIndex=0; tokenIndex<tokenCount; tokenIndex++) {
+            Token token = tokens[tokenIndex];
+            if (token.word.equals("(")) {
+                hierarchy++;
+            } else if (token.word.equals(")")) {
+                hierarchy--;
+            }
+
+            // If the value of hierarchy is negative, the open parenthesis is deficient.
+            if (hierarchy < 0) {
+                throw Exevalator.Exception.create(stackTraceEnabled, Exevalator.ErrorCode.DEFICIENT_OPEN_PARENTHESIS, token.position);
+            }
+        }
+
+        // If the value of hierarchy is not zero at the end of the expression,
+        // the closed parentheses ")" is deficient.
+        if (hierarchy > 0) {
+            throw Exevalator.Exception.create(stackTraceEnabled, Exevalator.ErrorCode.DEFICIENT_CLOSED_PARENTHESIS, -1);
+        }
+    }
+
+    /**
+     * Checks that empty parentheses "()" are not contained in the expression.
+     * An ExevalatorException will be thrown when any errors detected.
+     * If no error detected, nothing will occur.
+     *
+     * @param tokens Tokens of the inputted expression.
+     */
+    private static void checkEmptyParentheses(Token[] tokens, boolean stackTraceEnabled) {
+        int tokenCount = tokens.length;
+        int contentCounter = 0;
+        for (int tokenIndex=0; tokenIndex<tokenCount; tokenIndex++) {
+            Token token = tokens[tokenIndex];
+            if (token.type == TokenType.PARENTHESIS) { // Excepting CALL operators
+                if (token.word.equals("(")) {
+                    contentCounter = 0;
+                } else if (token.word.equals(")")) {
+                    if (contentCounter == 0) {
+                        throw Exevalator.Exception.create(stackTraceEnabled, Exevalator.ErrorCode.EMPTY_PARENTHESIS, token.position);
+                    }
+                }
+            } else {
+                contentCounter++;
+            }
+        }
+    }
+
+    /**
+     * Checks that statement separators ";" are not contained in parentheses.
+     * An ExevalatorException will be thrown when any errors detected.
+     * If no error detected, nothing will occur.
+     *
+     * @param tokens Tokens of the inputted expression.
+     */
+    private static void checkStatementSeparators(Token[] tokens, boolean stackTraceEnabled) {
+        int tokenCount = tokens.length;
+        int hierarchy = 0; // Increases at "(" and decreases at ")".
+
+        for (int tokenIndex=0; tokenIndex<tokenCount; tokenIndex++) {
+            Token token = tokens[tokenIndex];
+            if (token.word.equals("(")) {
+                hierarchy++;
+            } else if (token.word.equals(")")) {
+                hierarchy--;
+            } else if (token.word.equals(";") && hierarchy != 0) {
+                throw Exevalator.Exception.create(stackTraceEnabled, Exevalator.ErrorCode.UNEXPECTED_STATEMENT_SEPARATOR, token.position);
+            }
+        }
+    }
+
+    /**
+     * Checks the syntax of let-bindings: "let name = value in expression",
+     * and assignments: "name = value".
+     * An ExevalatorException will be thrown when any errors detected.
+     * If no error detected, nothing will occur.
+     *
+     * @param tokens Tokens of the inputted expression.
+     */
+    private static void checkLetBindings(Token[] tokens, boolean stackTraceEnabled) {
+        int tokenCount = tokens.length;
+        int parenthesisDepth = 0;
+
+        // Stores the number of "let" of which corresponding "in" has not appeared yet, for each parenthesis-depth.
+        int[] openLetCounts = new int[tokenCount + 1];
+
+        for (int tokenIndex=0; tokenIndex<tokenCount; tokenIndex++) {
+            Token token = tokens[tokenIndex];
+
+            // "let" should be at the beginning of a (partial) expression or a statement,
+            // or at the beginning of the body of another let-binding.
+            // Also, it should be followed by a variable name and "=".
+            if (token.type == TokenType.KEYWORD && token.word.equals(StaticSettings.LET_KEYWORD)) {
+                Token prevToken = tokenIndex == 0 ? null : tokens[tokenIndex - 1];
+                if (prevToken != null
+                        && !prevToken.word.equals("(")
+                        && !prevToken.word.equals(",")
+                        && !prevToken.word.equals(";")
+                        && !prevToken.word.equals("in")) {
+                    throw Exevalator.Exception.create(stackTraceEnabled, Exevalator.ErrorCode.UNEXPECTED_LET, token.position);
+                }
+                if (tokenCount <= tokenIndex + 2
+                        || tokens[tokenIndex + 1].type != TokenType.VARIABLE_IDENTIFIER
+                        || !tokens[tokenIndex + 2].word.equals("=")) {
+                    throw Exevalator.Exception.create(stackTraceEnabled, Exevalator.ErrorCode.INVALID_LET_SYNTAX, token.position);
+                }
+                openLetCounts[parenthesisDepth]++;
+
+            // "=" is available only in the form of "let name =",
+            // or in the form of "name =" at the beginning of a statement or the body of a let-binding (assignment).
+            } else if (token.type == TokenType.OPERATOR && token.word.equals("=")) {
+                boolean isBinding = 2 <= tokenIndex && tokens[tokenIndex - 2].type == TokenType.KEYWORD;
+                boolean isAssignment = 1 <= tokenIndex && tokens[tokenIndex - 1].type == TokenType.VARIABLE_IDENTIFIER
+                        && (tokenIndex == 1 || tokens[tokenIndex - 2].word.equals(";") || tokens[tokenIndex - 2].word.equals("in"));
+                if (!isBinding && !isAssignment) {
+                    throw Exevalator.Exception.create(stackTraceEnabled, Exevalator.ErrorCode.UNEXPECTED_OPERATOR, token.position, token.word);
+                }
+
+            // "in" closes the last "let" in the same parenthesis-depth.
+            } else if (token.type == TokenType.OPERATOR && token.word.equals("in")) {
+                if (openLetCounts[parenthesisDepth] == 0) {
+                    throw Exevalator.Exception.create(stackTraceEnabled, Exevalator.ErrorCode.DEFICIENT_LET, token.position);
+                }
+                openLetCounts[parenthesisDepth]--;
+
+            } else if (token.word.equals("(")) {
+                parenthesisDepth++;
+                openLetCounts[parenthesisDepth] = 0;
+
+            // At the end of a partial expression or a statement, all "let" in it should have been closed by "in".
+            } else if (token.word.equals(")") || token.word.equals(",") || token.word.equals(";")) {
+                if (openLetCounts[parenthesisDepth] != 0) {
+                    throw Exevalator.Exception.create(stackTraceEnabled, Exevalator.ErrorCode.DEFICIENT_IN, token.position);
+                }
+                if (token.word.equals(")")) {
+                    parenthesisDepth--;
+                }
+            }
+        }
+        if (openLetCounts[parenthesisDepth] != 0) {
+            throw Exevalator.Exception.create(stackTraceEnabled, Exevalator.ErrorCode.DEFICIENT_IN, -1);
+        }
+    }
+
+    /**
+     * Checks correctness of locations of operators and leaf elements (literals and identifiers).
+     * An ExevalatorException will be thrown when any errors detected.
+     * If no error detected, nothing will occur.
+     *
+     * @param tokens Tokens of the inputted expression.
+     */
+    private static void checkLocationsOfOperatorsAndLeafs(Token[] tokens, boolean stackTraceEnabled) {
+        int tokenCount = tokens.length;
+        Set<TokenType> leafTypeSet = EnumSet.noneOf(TokenType.class);
+        leafTypeSet.add(TokenType.NUMBER_LITERAL);
+        leafTypeSet.add(TokenType.VARIABLE_IDENTIFIER);
+
+        // Reads and check tokens from left to right.
+        for (int tokenIndex=0; tokenIndex<tokenCount; tokenIndex++) {
+            Token token = tokens[tokenIndex];
+
+            // Prepare information of next/previous token.
+            boolean nextIsLeaf = tokenIndex!=tokenCount-1 && leafTypeSet.contains(tokens[tokenIndex+1].type);
+            boolean prevIsLeaf = tokenIndex!=0 && leafTypeSet.contains(tokens[tokenIndex-1].type);
+            boolean nextIsOpenParenthesis = tokenIndex < tokenCount-1 && tokens[tokenIndex+1].word.equals("(");
+            boolean prevIsCloseParenthesis = tokenIndex != 0 && tokens[tokenIndex-1].word.equals(")");
+            boolean nextIsPrefixOperator = tokenIndex < tokenCount-1
+                    && tokens[tokenIndex+1].type == TokenType.OPERATOR
+                    && tokens[tokenIndex+1].operator.type == OperatorType.UNARY_PREFIX;
+            boolean nextIsFunctionCallBegin = nextIsOpenParenthesis
+                    && tokens[tokenIndex+1].type == TokenType.OPERATOR
+                    && tokens[tokenIndex+1].operator.type == OperatorType.CALL;
+            boolean nextIsFunctionIdentifier = tokenIndex < tokenCount-1
+                    && tokens[tokenIndex+1].type == TokenType.FUNCTION_IDENTIFIER;
+            boolean nextIsKeyword = tokenIndex < tokenCount-1
+                    && tokens[tokenIndex+1].type == TokenType.KEYWORD;
+
+            // Case of operators
+            if (token.type == TokenType.OPERATOR) {
+
+                // Cases of unary-prefix operators
+                if (token.operator.type == OperatorType.UNARY_PREFIX) {
+
+                    // Only leafs, open parentheses, unary-prefix and function-call operators can be an operand.
+                    if ( !(  nextIsLeaf || nextIsOpenParenthesis || nextIsPrefixOperator || nextIsFunctionIdentifier ) ) {
+                        throw Exevalator.Exception.create(stackTraceEnabled, Exevalator.ErrorCode.RIGHT_OPERAND_REQUIRED, token.position, token.word);
+                    }
+                } // Cases of unary-prefix operators
+
+                // Cases of binary operators or a separator of partial expressions
+                if (token.operator.type == OperatorType.BINARY || token.word.equals(",")) {
+
+                    // Only leafs, open parentheses, unary-prefix and function-call operators,
+                    // and let-bindings (only after "in" or ",", which has been checked in checkLetBindings) can be a right-operands.
+                    if( !(  nextIsLeaf || nextIsOpenParenthesis || nextIsPrefixOperator || nextIsFunctionIdentifier || nextIsKeyword ) ) {
+                        throw Exevalator.Exception.create(stackTraceEnabled, Exevalator.ErrorCode.RIGHT_OPERAND_REQUIRED, token.position, token.word);
+                    }
+                    // Only leaf elements and closed parenthesis can be a right-operand.
+                    if( !(  prevIsLeaf || prevIsCloseParenthesis  ) ) {
+                        throw Exevalator.Exception.create(stackTraceEnabled, Exevalator.ErrorCode.LEFT_OPERAND_REQUIRED, token.position, token.word);
+                    }
+                } // Cases of binary operators or a separator of partial expressions
+
+            } // Case of operators
+
+            // Case of leaf elements
+            if (leafTypeSet.contains(token.type)) {
+
+                // An other leaf element or an open parenthesis can not be at the right of an leaf element.
+                if (!nextIsFunctionCallBegin && (nextIsOpenParenthesis || nextIsLeaf)) {
+                    throw Exevalator.Exception.create(stackTraceEnabled, Exevalator.ErrorCode.RIGHT_OPERATOR_REQUIRED, token.position, token.word);
+                }
+
+                // An other leaf element or a closed parenthesis can not be at the left of an leaf element.
+                if (prevIsCloseParenthesis || prevIsLeaf) {
+                    throw Exevalator.Exception.create(stackTraceEnabled, Exevalator.ErrorCode.LEFT_OPERATOR_REQUIRED, token.position, token.word);
+                }
+            } // Case of leaf elements
+        } // Loops for each token
+    } // End of this method
+}
+
+
+/**
+ * The class performing functions of a parser.
+ */
+final class Parser {
+
+    /**
+     * Parses tokens and construct Abstract Syntax Tree (AST).
+     *
+     * @param tokens Tokens to be parsed.
+     * @return The root node of the constructed AST.
+     */
+    public static AstNode parse(Token[] tokens) {
+        return parse(tokens, StaticSettings.MAX_AST_DEPTH);
+    }
+
+    /**
+     * Parses tokens and construct Abstract Syntax Tree (AST), with checking the depth of it.
+     *
+     * @param tokens Tokens to be parsed.
+     * @param maxAstDepth The maximum depth of the AST.
+     * @return The root node of the constructed AST.
+     */
+    public static AstNode parse(Token[] tokens, int maxAstDepth) {
+        return parse(tokens, maxAstDepth, true);
+    }
+
+    /**
+     * Parses tokens and construct Abstract Syntax Tree (AST), with checking the depth of it.
+     *
+     * @param tokens Tokens to be parsed.
+     * @param maxAstDepth The maximum depth of the AST.
+     * @param stackTraceEnabled Specify false not to capture stack traces of thrown exceptions.
+     * @return The root node of the constructed AST.
+     */
+    public static AstNode parse(Token[] tokens, int maxAstDepth, boolean stackTraceEnabled) {
+
+        /* In this method, we use a non-recursive algorithm for the parsing.
+         * Processing cost is maybe O(N), where N is the number of tokens. */
+
+        // Enclose the middle operand of each conditional operator with parentheses,
+        // to parse it as a full expression up to the matching ":", e.g.: "a ? b ? c : d : e".
+        tokens = encloseConditionalMiddleOperands(tokens);
+
+        // Number of tokens
+        int tokenCount = tokens.length;
+
+        // Working stack to form multiple AstNode instances into a tree-shape.
+        Deque<AstNode> stack = new ArrayDeque<AstNode>();
+
+        // Temporary nodes used in the above working stack, for isolating ASTs of partial expressions.
+        AstNode parenthesisStackLid = new AstNode(new Token(TokenType.STACK_LID, "(PARENTHESIS_STACK_LID)"));
+        AstNode separatorStackLid = new AstNode(new Token(TokenType.STACK_LID, "(SEPARATOR_STACK_LID)"));
+        AstNode callBeginStackLid = new AstNode(new Token(TokenType.STACK_LID, "(CALL_BEGIN_STACK_LID)"));
+
+        // The array storing next operator's precedence for each token.
+        // At [i], it is stored that the precedence of the first operator of which token-index is greater than i.
+        int[] nextOperatorPrecedences = getNextOperatorPrecedences(tokens);
+
+        // Read tokens from left to right.
+        int itoken = 0;
+        do {
+            Token token = tokens[itoken];
+            AstNode operatorNode = null;
+
+            // Case of literals and identifiers: "1.23", "x", "f", etc.
+            if (token.type == TokenType.NUMBER_LITERAL
+                    || token.type == TokenType.VARIABLE_IDENTIFIER
+                    || token.type == TokenType.FUNCTION_IDENTIFIER) {
+                stack.push(new AstNode(token));
+                itoken++;
+                continue;
+
+            // Case of keywords: "let".
+            // It has no node in the AST, because the structure of a let-binding is determined by "=" and "in" operators.
+            } else if (token.type == TokenType.KEYWORD) {
+                itoken++;
+                continue;
+
+            // Case of parenthesis: "(" or ")"
+            } else if (token.type == TokenType.PARENTHESIS) {
+                if (token.word.equals("(")) {
+                    stack.push(parenthesisStackLid);
+                    itoken++;
+                    continue;
+                } else { // Case of ")"
+                    operatorNode = popPartialExprNodes(stack, parenthesisStackLid, stackTraceEnabled)[0];
+                }
+
+            // Case of operators: "+", "-", etc.
+            } else if (token.type == TokenType.OPERATOR) {
+                operatorNode = new AstNode(token);
+                int nextOpPrecedence = nextOperatorPrecedences[itoken];
+
+                // Case of unary-prefix operators:
+                // * Connect the node of right-token as an operand, if necessary (depending the next operator's precedence).
+                if (token.operator.type == OperatorType.UNARY_PREFIX) {
+                    if (shouldAddRightOperand(token.operator.associativity, token.operator.precedence, nextOpPrecedence)) {
+                        operatorNode.childNodeList.add(new AstNode(tokens[itoken + 1]));
+                        itoken++; // The next token has been looked-ahead.
+                    } // else: Operand will be connected later. See the bottom of this loop.
+
+                // Case of binary operators:
+                // * Always connect the node of left-token as an operand.
+                // * Connect the node of right-token as an operand, if necessary (depending the next operator's precedence).
+                } else if (token.operator.type == OperatorType.BINARY) {
+                    AstNode leftOperandNode = stack.pop();
+
+                    // Sequential statements "s1; s2; s3; ..." are stored as children of a single node of ";",
+                    // not as a deep tree: ;(;(s1, s2), s3).
+                    if (token.word.equals(";") && leftOperandNode.token.type == TokenType.OPERATOR
+                            && leftOperandNode.token.word.equals(";")) {
+                        operatorNode = leftOperandNode;
+                    } else {
+                        operatorNode.childNodeList.add(leftOperandNode);
+                    }
+                    if (shouldAddRightOperand(token.operator.associativity, token.operator.precedence, nextOpPrecedence)) {
+                        operatorNode.childNodeList.add(new AstNode(tokens[itoken + 1]));
+                        itoken++; // The next token has been looked-ahead.
+                    } // else: Right-operand will be connected later. See the bottom of this loop.
+
+                // Case of function-call operators.
+                } else if (token.operator.type == OperatorType.CALL) {
+                    if (token.word.equals("(")) {
+                        operatorNode.childNodeList.add(stack.pop()); // Add function-identifier node at the top of the stack.
+                        stack.push(operatorNode);
+                        stack.push(callBeginStackLid); // The marker to correct partial expressions of args from the stack.
+                        itoken++;
+                        continue;
+                    } else if (token.word.equals(")")) {
+                        AstNode[] argNodes = popPartialExprNodes(stack, callBeginStackLid, stackTraceEnabled);
+                        operatorNode = stack.pop();
+                        for (AstNode argNode: argNodes) {
+                            operatorNode.childNodeList.add(argNode);
+                        }
+                    } else if (token.word.equals(",")) {
+                        stack.push(separatorStackLid);
+                        itoken++;
+                        continue;
+                    }
+                }
+            }
+
+            // If the precedence of the operator at the top of the stack is stronger than the next operator,
+            // connect all "unconnected yet" operands and operators in the stack.
+            while (shouldAddRightOperandToStackedOperator(stack, nextOperatorPrecedences[itoken])) {
+                AstNode oldOperatorNode = operatorNode;
+                operatorNode = stack.pop();
+                operatorNode.childNodeList.add(oldOperatorNode);
+            }
+            stack.push(operatorNode);
+            itoken++;
+
+        } while (itoken < tokenCount);
+
+        // The AST has been constructed on the stack, and only its root node is stored in the stack.
+        AstNode rootNodeOfExpressionAst = stack.pop();
+
+        // Check that the depth of the constructed AST does not exceeds the limit.
+        rootNodeOfExpressionAst.checkDepth(maxAstDepth, stackTraceEnabled);
+
+        return rootNodeOfExpressionAst;
+    }
+
+    /**
+     * Judges whether the right-side token should be connected directly as an operand, to the target operator.
+     *
+     * @param targetOperatorAssociativity The associativity (right/left) of the target opeartor.
+     * @param targetOperatorPrecedence The precedence of the target operator (smaller value gives higher precedence).
+     * @param nextOperatorPrecedence The precedence of the next operator (smaller value gives higher precedence).
+     * @return Returns true if the right-side token (operand) should be connected to the target operator.
+     */
+    private static boolean shouldAddRightOperand(
+            OperatorAssociativity targetOperatorAssociativity, int targetOperatorPrecedence, int nextOperatorPrecedence) {
+
+		// If the precedence of the target operator is stronger than the next operator, return true.
+		// If the precedence of the next operator is stronger than the target operator, return false.
+		// If the precedence of both operators is the same:
+		//         Return true if the target operator is left-associative.
+		//         Return false if the target operator is right-associative.
+
+		boolean targetOpPrecedenceIsStrong = targetOperatorPrecedence < nextOperatorPrecedence; // Smaller value gives higher precedence.
+		boolean targetOpPrecedenceIsEqual = targetOperatorPrecedence == nextOperatorPrecedence; // Smaller value gives higher precedence.
+		boolean targetOpAssociativityIsLeft = targetOperatorAssociativity == OperatorAssociativity.LEFT;
+		return targetOpPrecedenceIsStrong || (targetOpPrecedenceIsEqual && targetOpAssociativityIsLeft);
+    }
+
+    /**
+     * Judges whether the right-side token should be connected directly as an operand,
+     * to the operator at the top of the working stack.
+     *
+     * @param stack The working stack used for the parsing.
+     * @param nextOperatorPrecedence The precedence of the next operator (smaller value gives higher precedence).
+     * @return Returns true if the right-side token (operand) should be connected to the operator at the top of the stack.
+     */
+    private static boolean shouldAddRightOperandToStackedOperator(Deque<AstNode> stack, int nextOperatorPrecedence) {
+        if (stack.size() == 0 || stack.peek().token.type != TokenType.OPERATOR) {
+            return false;
+        }
+        Operator operatorOnStackTop = stack.peek().token.operator;
+        return shouldAddRightOperand(operatorOnStackTop.associativity, operatorOnStackTop.precedence, nextOperatorPrecedence);
+    }
+
+    /**
+     * Pops root nodes of ASTs of partial expressions constructed on the stack.
+     * In the returned array, the popped nodes are stored in FIFO order.
+     *
+     * @param stack The working stack used for the parsing.
+     * @param endStackLidNode The temporary node pushed in the stack, at the end of partial expressions to be popped.
+     * @return Root nodes of ASTs of partial expressions.
+     */
+    private static AstNode[] popPartialExprNodes(Deque<AstNode> stack, AstNode endStackLidNode, boolean stackTraceEnabled) {
+        if (stack.size() == 0) {
+            throw Exevalator.Exception.create(stackTraceEnabled, Exevalator.ErrorCode.UNEXPECTED_PARTIAL_EXPRESSION, -1);
+        }
+        List<AstNode> partialExprNodeList = new ArrayList<AstNode>();
+        while(stack.size() != 0) {
+            if (stack.peek().token.type == TokenType.STACK_LID) {
+                AstNode stackLidNode = stack.pop();
+                if (stackLidNode == endStackLidNode) {
+                    break;
+                }
+            } else {
+                partialExprNodeList.add(stack.pop());
+            }
+        }
+        int nodeCount = partialExprNodeList.size();
+        AstNode[] partialExprNodes = new AstNode[nodeCount];
+        for (int inode=0; inode<nodeCount; inode++) {
+            partialExprNodes[inode] = partialExprNodeList.get(nodeCount - inode - 1); // Storing elements in reverse order.
+        }
+        return partialExprNodes;
+    }
+
+    /**
+     * Returns tokens in which the middle operand of each conditional operator "condition ? value1 : value2"
+     * is enclosed with parentheses, so that it is parsed as a full expression up to the matching ":",
+     * e.g.: "a ? b ? c : d : e" is parsed as "a ? (b ? (c) : d) : e".
+     * Each ":" matches the last unmatched "?" in the same parentheses (or the same argument of a function call).
+     *
+     * @param tokens All tokens to be parsed.
+     * @return The tokens in which the middle operands are enclosed (the given array if nothing is enclosed).
+     */
+    private static Token[] encloseConditionalMiddleOperands(Token[] tokens) {
+        int tokenCount = tokens.length;
+
+        // The stack of indices of unmatched "?", in which -1 is pushed at each open parenthesis.
+        Deque<Integer> questionIndexStack = new ArrayDeque<Integer>();
+
+        // At [i] of a "?" or a ":", the index of the matching ":" or "?" is stored, or -1 if unmatched.
+        int[] matchingIndices = null;
+        int matchedCount = 0;
+
+        for (int itoken=0; itoken<tokenCount; itoken++) {
+            Token token = tokens[itoken];
+            boolean isOperator = token.type == TokenType.OPERATOR;
+            boolean isCall = isOperator && token.operator.type == OperatorType.CALL;
+
+            // "(" and ")" of parentheses and function calls.
+            if ((token.type == TokenType.PARENTHESIS || isCall) && token.word.equals("(")) {
+                questionIndexStack.push(-1);
+            } else if ((token.type == TokenType.PARENTHESIS || isCall) && token.word.equals(")")) {
+                while (!questionIndexStack.isEmpty() && questionIndexStack.pop() != -1) {
+                    // Discard unmatched "?" in the parentheses.
+                }
+
+            // "," and ";" terminate the operand, so discard unmatched "?" before them in the same parentheses.
+            } else if (isOperator && (token.word.equals(",") || token.word.equals(";"))) {
+                while (!questionIndexStack.isEmpty() && questionIndexStack.peek() != -1) {
+                    questionIndexStack.pop();
+                }
+
+            } else if (isOperator && token.operator.type == OperatorType.BINARY && token.word.equals("?")) {
+                questionIndexStack.push(itoken);
+            } else if (isOperator && token.operator.type == OperatorType.BINARY && token.word.equals(":")
+                    && !questionIndexStack.isEmpty() && questionIndexStack.peek() != -1) {
+                if (matchingIndices == null) {
+                    matchingIndices = new int[tokenCount];
+                    Arrays.fill(matchingIndices, -1);
+                }
+                int questionIndex = questionIndexStack.pop();
+                matchingIndices[questionIndex] = itoken;
+                matchingIndices[itoken] = questionIndex;
+                matchedCount++;
+            }
+        }
+        if (matchedCount == 0) {
+            return tokens;
+        }
+
+        // Insert "(" after each matched "?", and ")" before each matched ":".
+        Token[] enclosedTokens = new Token[tokenCount + matchedCount * 2];
+        int ienclosed = 0;
+        for (int itoken=0; itoken<tokenCount; itoken++) {
+            Token token = tokens[itoken];
+            boolean isMatched = matchingIndices[itoken] != -1;
+            if (isMatched && token.word.equals(":")) {
+                enclosedTokens[ienclosed++] = new Token(TokenType.PARENTHESIS, ")", null, token.position);
+            }
+            enclosedTokens[ienclosed++] = token;
+            if (isMatched && token.word.equals("?")) {
+                enclosedTokens[ienclosed++] = new Token(TokenType.PARENTHESIS, "(", null, token.position);
+            }
+        }
+        return enclosedTokens;
+    }
+
+    /**
+     * Returns an array storing next operator's precedence for each token.
+     * In the returned array, it will stored at [i] that
+     * precedence of the first operator of which token-index is greater than i.
+     *
+     * @param tokens All tokens to be parsed.
+     * @return The array storing next operator's precedence for each token.
+     */
+    private static int[] getNextOperatorPrecedences(Token[] tokens) {
+        int tokenCount = tokens.length;
+        int lastOperatorPrecedence = Integer.MAX_VALUE; // least prior
+        int[] nextOperatorPrecedences = new int[tokenCount];
+
+        for (int itoken=tokenCount-1; 0<=itoken; itoken--) {
+            Token token = tokens[itoken];
+            nextOperatorPrecedences[itoken] = lastOperatorPrecedence;
+
+            if (token.type == TokenType.OPERATOR) {
+                lastOperatorPrecedence = token.operator.precedence;
+            }
+
+            if (token.type == TokenType.PARENTHESIS) {
+                if (token.word.equals("(")) {
+                    lastOperatorPrecedence = 0; // most prior
+                } else { // case of ")"
+                    lastOperatorPrecedence = Integer.MAX_VALUE; // least prior
+                }
+            }
+        }
+        return nextOperatorPrecedences;
+    }
+}
+
+
+/**
+ * The enum representing types of operators.
+ */
+enum OperatorType {
+
+    /** Represents unary operator, for example: - of -1.23 */
+    UNARY_PREFIX,
+
+    /** Represents binary operator, for example: + of 1+2 */
+    BINARY,
+
+    /** Represents function-call operator */
+    CALL
+}
+
+
+/**
+ * The enum representing associativities of operators.
+ */
+enum OperatorAssociativity {
+
+    /** Represents left-associative. */
+    LEFT,
+
+    /** Represents right-associative. */
+    RIGHT
+}
+
+
+/**
+ * The class storing information of an operator.
+ */
+final class Operator {
+
+    /** The symbol of this operator (for example: "+"). */
+    public final String symbol;
+
+    /** The precedence of this operator (smaller value gives higher precedence). */
+    public final int precedence;
+
+    /** The type of operator tokens. */
+    public final OperatorType type;
+
+    /** The associativity of operator tokens. */
+    public final OperatorAssociativity associativity;
+
+    /**
+     * Create an Operator instance storing specified information.
+     *
+     * @param type The type of this operator.
+     * @param symbol The symbol of this operator.
+     * @param precedence The precedence of this operator.
+     * @param associativity The associativity of this operator.
+     */
+    public Operator(OperatorType type, String symbol, int precedence, OperatorAssociativity associativity) {
+        this.type = type;
+        this.symbol = symbol;
+        this.precedence = precedence;
+        this.associativity = associativity;
+    }
+
+    /**
+     * Returns the String representation of this Operator instance.
+     */
+    @Override
+    public String toString() {
+        return "Operator [symbol=" + symbol + ", type=" + type + ", precedence=" + precedence + ", associativity=" + associativity + "]";
+    }
+}
+
+
+/**
+ * The enum representing types of tokens.
+ */
+enum TokenType {
+
+    /** Represents number literal tokens, for example: 1.23 */
+    NUMBER_LITERAL,
+
+    /** Represents operator tokens, for example: + */
+    OPERATOR,
+
+    /** Represents parenthesis, for example: ( and ) of (1*(2+3)) */
+    PARENTHESIS,
+
+    /** Represents variable-identifier tokens, for example: x */
+    VARIABLE_IDENTIFIER,
+
+    /** Represents function-identifier tokens, for example: f */
+    FUNCTION_IDENTIFIER,
+
+    /** Represents keyword tokens, for example: let */
+    KEYWORD,
+
+    /** Represents temporary token for isolating partial expressions in the stack, in parser */
+    STACK_LID
+}
+
+
+/**
+ * The class storing information of an token.
+ */
+final class Token {
+
+    /** The type of this token. */
+    public final TokenType type;
+
+    /** The text representation of this token. */
+    public final String word;
+
+    /** The detailed information of the operator, if the type of this token is OPERATOR. */
+    public final Operator operator;
+
+    /** The position (index of the first character) of this token in the expression, or -1 if unknown. */
+    public final int position;
+
+    /**
+     * Create an Token instance storing specified information.
+     *
+     * @param type The type of this token.
+     * @param word The text representation of this token.
+     */
+    public Token(TokenType type, String word) {
+        this(type, word, null, -1);
+    }
+
+    /**
+     * Create an Token instance storing specified information.
+     *
+     * @param type The type of this token.
+     * @param word The text representation of this token.
+     * @param operator The detailed information of the operator, for OPERATOR type tokens.
+     */
+    public Token(TokenType type, String word, Operator operator) {
+        this(type, word, operator, -1);
+    }
+
+    /**
+     * Create an Token instance storing specified information.
+     *
+     * @param type The type of this token.
+     * @param word The text representation of this token.
+     * @param operator The detailed information of the operator, for OPERATOR type tokens (null for other tokens).
+     * @param position The position (index of the first character) of this token in the expression, or -1 if unknown.
+     */
+    public Token(TokenType type, String word, Operator operator, int position) {
+        this.type = type;
+        this.word = word;
+        this.operator = operator;
+        this.position = position;
+    }
+
+    /**
+     * Returns the String representation of this Token instance.
+     */
+    @Override
+    public String toString() {
+        if (this.operator == null) {
+            return "Token [type=" + type + ", word=" + word + "]";
+        } else {
+            return "Token [type=" + type + ", word=" + word +
+                ", operator.type=" + operator.type + ", operator.precedence=" + operator.precedence + "]";
+        }
+    }
+}
+
+
+/**
+ * The class storing information of an node of an AST.
+ */
+final class AstNode {
+
+    /** The token corresponding with this AST node. */
+    public final Token token;
+
+    /** The list of child nodes of this AST node. */
+    public final List<AstNode> childNodeList;
+
+    /**
+     * Create an AST node instance storing specified information.
+     *
+     * @param token The token corresponding with this AST node
+     */
+    public AstNode(Token token) {
+        this.token = token;
+        this.childNodeList = new ArrayList<AstNode>();
+    }
+
+    /**
+     * Checks that depths in the AST of all nodes under this node (child nodes, grandchild nodes, and so on)
+     * does not exceeds the specified maximum value, regarding this node as the root node (of which depth is 1).
+     * Operands of a long chain of arithmetic operators (see "getArithmeticChainNodeList" method)
+     * are regarded as child nodes of the chain, because the chain is evaluated iteratively.
+     * So the depth checked by this method bounds the depth of recursive calls in creations/evaluations of evaluator nodes.
+     * An ExevalatorException will be thrown when the depth exceeds the maximum value.
+     * If the depth does not exceeds the maximum value, nothing will occur.
+     *
+     * @param maxAstDepth The maximum value of the depth of the AST.
+     * @param stackTraceEnabled Specify false not to capture the stack trace of the thrown exception.
+     */
+    public void checkDepth(int maxAstDepth, boolean stackTraceEnabled) {
+
+        // Traverse nodes with an explicit stack, not recursively, because the AST may be very deep.
+        Deque<AstNode> nodeStack = new ArrayDeque<AstNode>();
+        Deque<Integer> depthStack = new ArrayDeque<Integer>();
+        nodeStack.push(this);
+        depthStack.push(1);
+        while (!nodeStack.isEmpty()) {
+            AstNode node = nodeStack.pop();
+            int depth = depthStack.pop();
+            if (maxAstDepth < depth) {
+                throw Exevalator.Exception.create(
+                    stackTraceEnabled, Exevalator.ErrorCode.EXCEEDS_MAX_AST_DEPTH, node.token.position, Integer.toString(maxAstDepth)
+                );
+            }
+            List<AstNode> chainOperandList = node.getArithmeticChainOperandList();
+            for (AstNode childNode: chainOperandList != null ? chainOperandList : node.childNodeList) {
+                nodeStack.push(childNode);
+                depthStack.push(depth + 1);
+            }
+        }
+    }
+
+    /**
+     * Returns nodes of operators in the chain of arithmetic operators of the same precedence, if this node is the top of it.
+     * For example, "x1 + x2 - x3 + x4" is parsed as a left-deep tree: +(-(+(x1, x2), x3), x4),
+     * and this method returns nodes of operators from the bottom: [ +(x1, x2), -(..., x3), +(..., x4) ] for the top node.
+     * Shorter chains than StaticSettings.MIN_ARITHMETIC_CHAIN_LENGTH are not regarded as chains (then this method returns null),
+     * so they are evaluated by nodes of binary operators as usual.
+     *
+     * @return Nodes of operators in the chain from the bottom, or null if this node is not the top of a long chain.
+     */
+    public List<AstNode> getArithmeticChainNodeList() {
+        if (!this.isArithmeticOperatorNode()) {
+            return null;
+        }
+        int precedence = this.token.operator.precedence;
+        int chainLength = 0;
+        AstNode node = this;
+        while (node.isArithmeticOperatorNode() && node.token.operator.precedence == precedence) {
+            chainLength++;
+            node = node.childNodeList.get(0);
+        }
+        if (chainLength < StaticSettings.MIN_ARITHMETIC_CHAIN_LENGTH) {
+            return null;
+        }
+
+        AstNode[] chainNodes = new AstNode[chainLength];
+        node = this;
+        for (int inode=chainLength-1; 0<=inode; inode--) {
+            chainNodes[inode] = node;
+            node = node.childNodeList.get(0);
+        }
+        return Arrays.asList(chainNodes);
+    }
+
+    /**
+     * Returns nodes of operands of the chain of arithmetic operators, if this node is the top of it.
+     * For example, this method returns [ x1, x2, x3, x4 ] for the top node of "x1 + x2 - x3 + x4"
+     * (if it is long enough, see "getArithmeticChainNodeList" method).
+     *
+     * @return Nodes of operands of the chain from the left, or null if this node is not the top of a long chain.
+     */
+    public List<AstNode> getArithmeticChainOperandList() {
+        List<AstNode> chainNodeList = this.getArithmeticChainNodeList();
+        if (chainNodeList == null) {
+            return null;
+        }
+        List<AstNode> operandList = new ArrayList<AstNode>(chainNodeList.size() + 1);
+        operandList.add(chainNodeList.get(0).childNodeList.get(0));
+        for (AstNode chainNode: chainNodeList) {
+            operandList.add(chainNode.childNodeList.get(1));
+        }
+        return operandList;
+    }
+
+    /**
+     * Returns whether this node is the node of a binary arithmetic operator: "+", "-", "*", or "/".
+     *
+     * @return Returns true if this node is the node of a binary arithmetic operator.
+     */
+    private boolean isArithmeticOperatorNode() {
+        if (this.token.type != TokenType.OPERATOR || this.token.operator.type != OperatorType.BINARY) {
+            return false;
+        }
+        String symbol = this.token.operator.symbol;
+        return symbol.equals("+") || symbol.equals("-") || symbol.equals("*") || symbol.equals("/");
+    }
+
+    /**
+     * Expresses the AST under this node in XML-like text format.
+     *
+     * @return XML-like text representation of the AST under this node.
+     */
+    public String toMarkuppedText() {
+        return this.toMarkuppedText(0);
+    }
+
+    /**
+     * Expresses the AST under this node in XML-like text format.
+     *
+     * @param indentStage The stage of indent of this node.
+     * @return XML-like text representation of the AST under this node.
+     */
+    public String toMarkuppedText(int indentStage) {
+        StringBuilder indentBuilder = new StringBuilder();
+        for (int istage=0; istage<indentStage; istage++) {
+            indentBuilder.append(StaticSettings.AST_INDENT);
+        }
+        final String indent = indentBuilder.toString();
+        final String eol = System.getProperty("line.separator");
+        StringBuilder resultBuilder = new StringBuilder();
+
+        resultBuilder.append(indent);
+        resultBuilder.append("<");
+        resultBuilder.append(this.token.type);
+        resultBuilder.append(" word=\"");
+        resultBuilder.append(this.token.word);
+        resultBuilder.append("\"");
+        if (this.token.type == TokenType.OPERATOR) {
+            resultBuilder.append(" optype=\"");
+            resultBuilder.append(this.token.operator.type);
+            resultBuilder.append("\" precedence=\"");
+            resultBuilder.append(this.token.operator.precedence);
+            resultBuilder.append("\"");
+        }
+
+        if (0 < this.childNodeList.size()) {
+            resultBuilder.append(">");
+            for (AstNode childNode: this.childNodeList) {
+                resultBuilder.append(eol);
+                resultBuilder.append(childNode.toMarkuppedText(indentStage + 1));
+            }
+            resultBuilder.append(eol);
+            resultBuilder.append(indent);
+            resultBuilder.append("</");
+            resultBuilder.append(this.token.type);
+            resultBuilder.append(">");
+
+        } else {
+            resultBuilder.append(" />");
+        }
+
+        return resultBuilder.toString();
+    }
+
+    /**
+     * Expresses the AST under this node as the (sub)expression in the source code.
+     * Parentheses are inserted only where they are necessary to keep the structure of the AST.
+     *
+     * @return The expression corresponding with the AST under this node.
+     */
+    public String toExpressionText() {
+        if (this.token.type != TokenType.OPERATOR) {
+            return this.token.word;
+        }
+        Operator op = this.token.operator;
+        if (op.type == OperatorType.UNARY_PREFIX) {
+            return op.symbol + this.childNodeList.get(0).toOperandText(op, false);
+        }
+        if (op.type == OperatorType.CALL) {
+            StringBuilder resultBuilder = new StringBuilder();
+            resultBuilder.append(this.childNodeList.get(0).token.word);
+            resultBuilder.append("(");
+            for (int iarg=1; iarg<this.childNodeList.size(); iarg++) {
+                if (iarg != 1) {
+                    resultBuilder.append(", ");
+                }
+                resultBuilder.append(this.childNodeList.get(iarg).toExpressionText());
+            }
+            resultBuilder.append(")");
+            return resultBuilder.toString();
+        }
+        if (op.symbol.equals(";")) {
+            StringBuilder resultBuilder = new StringBuilder();
+            for (int istatement=0; istatement<this.childNodeList.size(); istatement++) {
+                if (istatement != 0) {
+                    resultBuilder.append("; ");
+                }
+                resultBuilder.append(this.childNodeList.get(istatement).toExpressionText());
+            }
+            return resultBuilder.toString();
+        }
+
+        // Let-bindings: in(=(name, value), body), and conditionals: :(?(condition, value1), value2).
+        AstNode leftNode = this.childNodeList.get(0);
+        AstNode rightNode = this.childNodeList.get(1);
+        if (op.symbol.equals("in") && leftNode.token.word.equals("=")) {
+            return StaticSettings.LET_KEYWORD + " " + leftNode.childNodeList.get(0).token.word + " = "
+                + leftNode.childNodeList.get(1).toExpressionText() + " in " + rightNode.toExpressionText();
+        }
+        if (op.symbol.equals(":") && leftNode.token.word.equals("?")) {
+            return leftNode.childNodeList.get(0).toOperandText(leftNode.token.operator, true) + " ? "
+                + leftNode.childNodeList.get(1).toExpressionText() + " : " + rightNode.toOperandText(op, false);
+        }
+
+        // Long chains of arithmetic operators are expressed iteratively, because they may be very long.
+        List<AstNode> chainNodeList = this.getArithmeticChainNodeList();
+        if (chainNodeList != null) {
+            AstNode bottomNode = chainNodeList.get(0);
+            StringBuilder resultBuilder = new StringBuilder();
+            resultBuilder.append(bottomNode.childNodeList.get(0).toOperandText(bottomNode.token.operator, true));
+            for (AstNode chainNode: chainNodeList) {
+                resultBuilder.append(" ");
+                resultBuilder.append(chainNode.token.operator.symbol);
+                resultBuilder.append(" ");
+                resultBuilder.append(chainNode.childNodeList.get(1).toOperandText(chainNode.token.operator, false));
+            }
+            return resultBuilder.toString();
+        }
+        return leftNode.toOperandText(op, true) + " " + op.symbol + " " + rightNode.toOperandText(op, false);
+    }
+
+    /**
+     * Expresses the AST under this node as an operand of the specified operator,
+     * enclosing it with parentheses if necessary.
+     *
+     * @param parentOperator The operator of which operand is this node.
+     * @param isLeftOperand Specify true if this node is the left operand of the operator.
+     * @return The operand corresponding with the AST under this node.
+     */
+    private String toOperandText(Operator parentOperator, boolean isLeftOperand) {
+        String text = this.toExpressionText();
+        if (this.token.type != TokenType.OPERATOR || this.token.operator.type != OperatorType.BINARY) {
+            return text;
+        }
+
+        // Note: The smaller value of the precedence means the higher precedence.
+        int precedence = this.token.operator.precedence;
+        boolean parenthesesRequired = parentOperator.precedence < precedence
+            || parentOperator.type == OperatorType.UNARY_PREFIX
+            || (parentOperator.precedence == precedence && isLeftOperand == (parentOperator.associativity == OperatorAssociativity.RIGHT));
+        return parenthesesRequired ? "(" + text + ")" : text;
+    }
+}
+
+
+/**
+ * The class for evaluating the value of an AST.
+ */
+final class Evaluator {
+
+    /** The Set of symbols of binary operators, for which evaluator nodes are created without any additional checks (used in "validate" method). */
+    private static final Set<String> VALIDATED_BINARY_OPERATOR_SYMBOL_SET = new HashSet<String>(Arrays.asList(
+        "+", "-", "*", "/", "<", "<=", ">", ">=", "==", "!=", ";"
+    ));
+
+    /** The tree of evaluator nodes, which evaluates an expression. */
+    private volatile EvaluatorNode evaluatorNodeTree = null;
+
+    /** The AST from which the current tree of evaluator nodes has been created (null if it is not retained). */
+    private volatile AstNode ast = null;
+
+    /** The expression from which the AST is re-created when it is required, if the AST is not retained (null if it is retained). */
+    private volatile String astExpression = null;
+
+    /** The address of the first scratch slot, in which values of let-bound variables are stored. */
+    private volatile int scratchAddress = 0;
+
+    /** The number of scratch slots used by the current tree of evaluator nodes. */
+    private volatile int scratchSlotCount = 0;
+
+    /** The flag representing whether the current tree of evaluator nodes contains assignments to variables. */
+    private volatile boolean assignmentContained = false;
+
+    /** The listener notified of times of function calls, or null if they are not measured. */
+    private volatile Exevalator.EventListener functionCallListener = null;
+
+    /** The checkpoint checked at function calls and iterations of reductions, or null if they are not checked. */
+    private volatile Checkpoint checkpoint = null;
+
+    /** The Map mapping each name of a variable treated as a constant to its value, or null if there are no such variables. */
+    private volatile Map<String, Double> constantTable = null;
+
+    /** The pool of nodes shared with other trees of evaluator nodes, or null not to share nodes. */
+    private volatile NodePool nodePool = null;
+
+    /** The flag representing whether stack traces are captured for exceptions thrown when creating/evaluating trees of evaluator nodes. */
+    private volatile boolean stackTraceEnabled = true;
+
+    /** The flag representing whether evaluator nodes are wrapped by profiling nodes. */
+    private volatile boolean profilingEnabled = false;
+
+    /** The Map mapping each AST node to the profiling node wrapping the corresponding evaluator node, in the profiling mode. */
+    private volatile Map<AstNode, ProfilingEvaluatorNode> profilingNodeMap = null;
+
+    /** The List of descriptions of optimizations applied when creating the tree of evaluator nodes, recorded only in "explain". */
+    private List<String> optimizationList = null;
+
+    /**
+     * Sets the listener notified of times of function calls, applied to trees of evaluator nodes created after calling this method.
+     *
+     * @param functionCallListener The listener notified of times of function calls, or null not to measure them.
+     */
+    public void setFunctionCallListener(Exevalator.EventListener functionCallListener) {
+        this.functionCallListener = functionCallListener;
+    }
+
+    /**
+     * Sets the checkpoint checked at function calls and iterations of reductions,
+     * applied to trees of evaluator nodes created after calling this method.
+     *
+     * @param checkpoint The checkpoint, or null not to check it (then there is no overhead for checking).
+     */
+    public void setCheckpoint(Checkpoint checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * Sets values of variables treated as constants (number literals), applied to trees of evaluator nodes created after calling this method.
+     * Subexpressions consisting of them are folded into literals.
+     *
+     * @param constantTable The Map mapping each name of a variable to its value, or null not to treat any variables as constants.
+     */
+    public void setConstantTable(Map<String, Double> constantTable) {
+        this.constantTable = constantTable;
+    }
+
+    /**
+     * Sets the pool of nodes shared with other trees of evaluator nodes, applied to trees of evaluator nodes created after calling this method.
+     * Nodes are not shared in the profiling mode, because profiling nodes have their own counts and times.
+     *
+     * @param nodePool The pool of shared nodes, or null not to share nodes.
+     */
+    public void setNodePool(NodePool nodePool) {
+        this.nodePool = nodePool;
+    }
+
+    /**
+     * Sets whether stack traces are captured for exceptions thrown when creating trees of evaluator nodes
+     * and evaluating them, applied to trees of evaluator nodes created after calling this method.
+     *
+     * @param stackTraceEnabled Specify false not to capture stack traces.
+     */
+    public void setStackTraceEnabled(boolean stackTraceEnabled) {
+        this.stackTraceEnabled = stackTraceEnabled;
+    }
+
+    /**
+     * Returns whether stack traces are captured for exceptions thrown by trees of evaluator nodes created by this evaluator.
+     *
+     * @return Returns true if stack traces are captured.
+     */
+    public boolean isStackTraceEnabled() {
+        return this.stackTraceEnabled;
+    }
+
+    /**
+     * Discards the AST from which the current tree of evaluator nodes has been created, to reduce the memory,
+     * and re-creates it from the expression when it is required (for relocating scratch slots, profiling, and so on).
+     * The AST is retained while the profiling mode is enabled.
+     *
+     * @param expression The expression of the AST, which has been lexed and parsed successfully.
+     */
+    public void discardAst(String expression) {
+        this.astExpression = expression;
+        if (!this.profilingEnabled) {
+            this.ast = null;
+        }
+    }
+
+    /**
+     * Returns the AST from which the current tree of evaluator nodes has been created.
+     * If it has been discarded, it is re-created from the expression (without limits, because it has been checked).
+     *
+     * @return The root node of the AST, or null if no tree has been created.
+     */
+    public AstNode getAst() {
+        AstNode ast = this.ast;
+        if (ast == null && this.astExpression != null) {
+            ast = Parser.parse(LexicalAnalyzer.analyze(this.astExpression, Integer.MAX_VALUE), Integer.MAX_VALUE);
+        }
+        return ast;
+    }
+
+    /**
+     * Returns the expression from which the discarded AST is re-created.
+     *
+     * @return The expression, or null if the AST is retained.
+     */
+    public String getAstExpression() {
+        return this.astExpression;
+    }
+
+    /**
+     * Returns whether the checkpoint is set, so it is checked in the tree of evaluator nodes created by "update" method.
+     *
+     * @return Returns true if the checkpoint is set.
+     */
+    public boolean isCheckpointEnabled() {
+        return this.checkpoint != null;
+    }
+
+    /**
+     * Updates the state to evaluate the value of the AST.
+     *
+     * @param ast The root node of the AST.
+     * @param variableTable The Map mapping each variable name to an address of the variable.
+     * @param functionTable The Map mapping each function name to an IExevalatorFunction instance.
+     * @param scratchAddress The address from which scratch slots will be allocated (the current usage of the memory).
+     */
+    public void update(AstNode ast, Map<String, Integer> variableTable, Map<String, Exevalator.FunctionInterface> functionTable,
+            int scratchAddress) {
+
+        this.scratchAddress = scratchAddress;
+        this.scratchSlotCount = 0;
+        this.assignmentContained = false;
+        this.profilingNodeMap = this.profilingEnabled ? new IdentityHashMap<AstNode, ProfilingEvaluatorNode>() : null;
+        Map<String, Integer> localVariableTable = new HashMap<String, Integer>();
+        this.evaluatorNodeTree = this.createEvaluatorNodeTree(ast, variableTable, functionTable, localVariableTable);
+        this.ast = this.astExpression != null && !this.profilingEnabled ? null : ast;
+    }
+
+    /**
+     * Re-creates the tree of evaluator nodes from the AST of the last update,
+     * to relocate scratch slots to the specified address.
+     *
+     * @param variableTable The Map mapping each variable name to an address of the variable.
+     * @param functionTable The Map mapping each function name to an IExevalatorFunction instance.
+     * @param scratchAddress The address from which scratch slots will be allocated (the current usage of the memory).
+     */
+    public void relocate(Map<String, Integer> variableTable, Map<String, Exevalator.FunctionInterface> functionTable,
+            int scratchAddress) {
+
+        this.update(this.getAst(), variableTable, functionTable, scratchAddress);
+    }
+
+    /**
+     * Enables/disables the profiling mode, and re-creates the tree of evaluator nodes from the AST of the last update.
+     * In the profiling mode, each evaluator node is wrapped by a node counting calls and measuring (sampled) times.
+     * Otherwise, evaluator nodes are not wrapped, so there is no overhead for profiling.
+     *
+     * @param profilingEnabled Specify true to enable the profiling mode.
+     * @param variableTable The Map mapping each variable name to an address of the variable.
+     * @param functionTable The Map mapping each function name to an IExevalatorFunction instance.
+     */
+    public void setProfilingEnabled(boolean profilingEnabled,
+            Map<String, Integer> variableTable, Map<String, Exevalator.FunctionInterface> functionTable) {
+
+        this.profilingEnabled = profilingEnabled;
+        AstNode ast = this.getAst();
+        if (ast != null) {
+            this.update(ast, variableTable, functionTable, this.scratchAddress);
+        }
+    }
+
+    /**
+     * Returns whether the profiling mode is enabled.
+     *
+     * @return Returns true if the profiling mode is enabled.
+     */
+    public boolean isProfilingEnabled() {
+        return this.profilingEnabled;
+    }
+
+    /**
+     * Discards counts and times measured in the profiling mode.
+     */
+    public void resetProfile() {
+        if (this.profilingNodeMap != null) {
+            for (ProfilingEvaluatorNode profilingNode: this.profilingNodeMap.values()) {
+                profilingNode.reset();
+            }
+        }
+    }
+
+    /**
+     * Creates the report of counts and times measured in the profiling mode, in XML-like text format.
+     * Each node of the AST is expressed with the corresponding subexpression, the count of evaluations,
+     * the estimated total time (in nanoseconds, including child nodes), and the ratio of the time to the entire expression.
+     * Totals for each function are appended after the tree.
+     *
+     * @return The report, or null if the profiling mode is disabled.
+     */
+    public String getProfileReport() {
+        if (this.profilingNodeMap == null) {
+            return null;
+        }
+        final String eol = System.getProperty("line.separator");
+        StringBuilder reportBuilder = new StringBuilder();
+        long totalTime = this.profilingNodeMap.containsKey(this.ast) ? this.profilingNodeMap.get(this.ast).getEstimatedTime() : 0L;
+        this.appendProfileReport(reportBuilder, this.ast, 0, totalTime, eol);
+
+        // Totals for each function (and built-in reduction).
+        Map<String, long[]> functionProfileMap = new TreeMap<String, long[]>();
+        for (Map.Entry<AstNode, ProfilingEvaluatorNode> entry: this.profilingNodeMap.entrySet()) {
+            Token token = entry.getKey().token;
+            if (token.type == TokenType.OPERATOR && token.operator.type == OperatorType.CALL) {
+                String functionName = entry.getKey().childNodeList.get(0).token.word;
+                if (!functionProfileMap.containsKey(functionName)) {
+                    functionProfileMap.put(functionName, new long[2]);
+                }
+                long[] functionProfile = functionProfileMap.get(functionName);
+                functionProfile[0] += entry.getValue().getCount();
+                functionProfile[1] += entry.getValue().getEstimatedTime();
+            }
+        }
+        for (Map.Entry<String, long[]> entry: functionProfileMap.entrySet()) {
+            reportBuilder.append(eol);
+            reportBuilder.append("<FUNCTION name=\"");
+            reportBuilder.append(entry.getKey());
+            this.appendProfileAttributes(reportBuilder, entry.getValue()[0], entry.getValue()[1], totalTime);
+            reportBuilder.append(" />");
+        }
+        return reportBuilder.toString();
+    }
+
+    /**
+     * Appends the report of counts and times of the AST under the specified node, in XML-like text format.
+     * Nodes not evaluated by themselves (e.g. identifiers of functions) are omitted.
+     *
+     * @param reportBuilder The StringBuilder to which the report is appended.
+     * @param ast The node of the AST.
+     * @param indentStage The stage of indent of the node.
+     * @param totalTime The estimated total time of the entire expression.
+     * @param eol The line separator.
+     */
+    private void appendProfileReport(StringBuilder reportBuilder, AstNode ast, int indentStage, long totalTime, String eol) {
+        ProfilingEvaluatorNode profilingNode = this.profilingNodeMap.get(ast);
+        if (profilingNode == null) {
+            for (AstNode childNode: ast.childNodeList) {
+                this.appendProfileReport(reportBuilder, childNode, indentStage, totalTime, eol);
+            }
+            return;
+        }
+
+        StringBuilder indentBuilder = new StringBuilder();
+        for (int istage=0; istage<indentStage; istage++) {
+            indentBuilder.append(StaticSettings.AST_INDENT);
+        }
+        final String indent = indentBuilder.toString();
+        if (reportBuilder.length() != 0) {
+            reportBuilder.append(eol);
+        }
+        reportBuilder.append(indent);
+        reportBuilder.append("<");
+        reportBuilder.append(ast.token.type);
+        reportBuilder.append(" expression=\"");
+        reportBuilder.append(ast.toExpressionText());
+        this.appendProfileAttributes(reportBuilder, profilingNode.getCount(), profilingNode.getEstimatedTime(), totalTime);
+
+        int reportLength = reportBuilder.length();
+        reportBuilder.append(">");
+        List<AstNode> chainOperandList = ast.getArithmeticChainOperandList();
+        for (AstNode childNode: chainOperandList != null ? chainOperandList : ast.childNodeList) {
+            this.appendProfileReport(reportBuilder, childNode, indentStage + 1, totalTime, eol);
+        }
+        if (reportBuilder.length() == reportLength + 1) {
+            reportBuilder.setLength(reportLength);
+            reportBuilder.append(" />");
+        } else {
+            reportBuilder.append(eol);
+            reportBuilder.append(indent);
+            reportBuilder.append("</");
+            reportBuilder.append(ast.token.type);
+            reportBuilder.append(">");
+        }
+    }
+
+    /**
+     * Appends attributes of a count and a time to the report, after the value of the preceding attribute.
+     *
+     * @param reportBuilder The StringBuilder to which attributes are appended.
+     * @param count The count of evaluations.
+     * @param time The estimated total time.
+     * @param totalTime The estimated total time of the entire expression.
+     */
+    private void appendProfileAttributes(StringBuilder reportBuilder, long count, long time, long totalTime) {
+        reportBuilder.append("\" count=\"");
+        reportBuilder.append(count);
+        reportBuilder.append("\" time=\"");
+        reportBuilder.append(time);
+        reportBuilder.append("\" ratio=\"");
+        reportBuilder.append(totalTime == 0L ? "-" : String.format("%.1f%%", 100.0 * time / totalTime));
+        reportBuilder.append("\"");
+    }
+
+    /**
+     * Creates the tree of evaluator nodes of the AST, and explains it with the estimated cost.
+     *
+     * The cost is estimated in units of the cost of evaluating a node (e.g. an addition or a variable),
+     * in which a function call costs the value in "functionCostTable" (or StaticSettings.DEFAULT_FUNCTION_COST) in addition,
+     * a conditional operator costs the more expensive one of values, and a reduction costs the expression times
+     * the number of iterations (or StaticSettings.DEFAULT_REDUCTION_ITERATION_COUNT if limits are not constants).
+     *
+     * @param ast The root node of the AST.
+     * @param variableTable The Map mapping each variable name to an address of the variable.
+     * @param functionTable The Map mapping each function name to an IExevalatorFunction instance.
+     * @param scratchAddress The address from which scratch slots will be allocated (the current usage of the memory).
+     * @param functionCostTable The Map mapping each function name to the estimated cost of a call of it.
+     * @return The explanation of the tree of evaluator nodes.
+     */
+    public Exevalator.Explanation explain(AstNode ast, Map<String, Integer> variableTable,
+            Map<String, Exevalator.FunctionInterface> functionTable, int scratchAddress, Map<String, Double> functionCostTable) {
+
+        List<String> optimizationList = new ArrayList<String>();
+        this.optimizationList = optimizationList;
+        try {
+            this.update(ast, variableTable, functionTable, scratchAddress);
+        } finally {
+            this.optimizationList = null;
+        }
+        PlanExplainer explainer = new PlanExplainer(functionCostTable);
+        double cost = explainer.appendPlan(this.evaluatorNodeTree, 1);
+        return new Exevalator.Explanation(
+            explainer.planBuilder.toString(), cost, explainer.operationCountMap, explainer.functionCallCountMap,
+            explainer.maxDepth, this.scratchSlotCount, optimizationList
+        );
+    }
+
+    /**
+     * The class creating the text of a plan (a tree of evaluator nodes), with estimating costs of nodes.
+     */
+    private static final class PlanExplainer {
+
+        /** The line separator. */
+        private final String eol = System.getProperty("line.separator");
+
+        /** The Map mapping each function name to the estimated cost of a call of it. */
+        private final Map<String, Double> functionCostTable;
+
+        /** The StringBuilder to which the plan is appended. */
+        private final StringBuilder planBuilder = new StringBuilder();
+
+        /** The Map mapping each type of nodes to the number of them. */
+        private final Map<String, Integer> operationCountMap = new TreeMap<String, Integer>();
+
+        /** The Map mapping each function name to the number of call sites of it. */
+        private final Map<String, Integer> functionCallCountMap = new TreeMap<String, Integer>();
+
+        /** The maximum depth of nodes. */
+        private int maxDepth = 0;
+
+        /**
+         * Creates an explainer estimating costs of function calls by the specified Map.
+         *
+         * @param functionCostTable The Map mapping each function name to the estimated cost of a call of it.
+         */
+        private PlanExplainer(Map<String, Double> functionCostTable) {
+            this.functionCostTable = functionCostTable;
+        }
+
+        /**
+         * Appends the plan of the tree under the specified node, in XML-like text format, and returns the estimated cost of it.
+         *
+         * @param node The evaluator node.
+         * @param depth The depth of the node (1 for the root node).
+         * @return The estimated cost of the tree under the node.
+         */
+        private double appendPlan(EvaluatorNode node, int depth) {
+            this.maxDepth = Math.max(this.maxDepth, depth);
+            String type = getPlanType(node);
+            Integer operationCount = this.operationCountMap.get(type);
+            this.operationCountMap.put(type, operationCount == null ? 1 : operationCount + 1);
+
+            StringBuilder indentBuilder = new StringBuilder();
+            for (int istage=1; istage<depth; istage++) {
+                indentBuilder.append(StaticSettings.AST_INDENT);
+            }
+            final String indent = indentBuilder.toString();
+            if (this.planBuilder.length() != 0) {
+                this.planBuilder.append(this.eol);
+            }
+            this.planBuilder.append(indent);
+            this.planBuilder.append("<");
+            this.planBuilder.append(type);
+            this.planBuilder.append(node.getPlanAttributes());
+            int costPosition = this.planBuilder.length();
+
+            EvaluatorNode[] childNodes = node.getChildNodes();
+            double[] childCosts = new double[childNodes.length];
+            if (childNodes.length == 0) {
+                this.planBuilder.append(" />");
+            } else {
+                this.planBuilder.append(">");
+                for (int ichild=0; ichild<childNodes.length; ichild++) {
+                    childCosts[ichild] = this.appendPlan(childNodes[ichild], depth + 1);
+                }
+                this.planBuilder.append(this.eol);
+                this.planBuilder.append(indent);
+                this.planBuilder.append("</");
+                this.planBuilder.append(type);
+                this.planBuilder.append(">");
+            }
+
+            // Estimate the cost of this node, including child nodes.
+            double cost = 1.0;
+            if (node instanceof ConditionalEvaluatorNode) {
+                cost += childCosts[0] + Math.max(childCosts[1], childCosts[2]);
+            } else if (node instanceof ArithmeticChainEvaluatorNode) {
+                cost = ((ArithmeticChainEvaluatorNode)node).operatorSymbols.length;
+                for (double childCost: childCosts) {
+                    cost += childCost;
+                }
+            } else if (node instanceof ReductionEvaluatorNode) {
+                ReductionEvaluatorNode reductionNode = (ReductionEvaluatorNode)node;
+                double iterationCount = StaticSettings.DEFAULT_REDUCTION_ITERATION_COUNT;
+                if (reductionNode.lowerNode instanceof NumberLiteralEvaluatorNode
+                        && reductionNode.upperNode instanceof NumberLiteralEvaluatorNode) {
+                    double lower = ((NumberLiteralEvaluatorNode)reductionNode.lowerNode).value;
+                    double upper = ((NumberLiteralEvaluatorNode)reductionNode.upperNode).value;
+                    iterationCount = lower <= upper ? Math.floor(upper - lower) + 1.0 : 0.0;
+                }
+                cost += childCosts[0] + childCosts[1] + iterationCount * childCosts[2];
+            } else {
+                for (double childCost: childCosts) {
+                    cost += childCost;
+                }
+            }
+            String functionName = null;
+            if (node instanceof FunctionEvaluatorNode) {
+                functionName = ((FunctionEvaluatorNode)node).functionName;
+            } else if (node instanceof LazyFunctionEvaluatorNode) {
+                functionName = ((LazyFunctionEvaluatorNode)node).functionName;
+            }
+            if (functionName != null) {
+                Double functionCost = this.functionCostTable.get(functionName);
+                cost += functionCost != null ? functionCost : StaticSettings.DEFAULT_FUNCTION_COST;
+                Integer callCount = this.functionCallCountMap.get(functionName);
+                this.functionCallCountMap.put(functionName, callCount == null ? 1 : callCount + 1);
+            }
+
+            this.planBuilder.insert(costPosition, " cost=\"" + cost + "\"");
+            return cost;
+        }
+
+        /**
+         * Returns the type of the evaluator node in plans, e.g. "LESS_EQUAL" for LessEqualEvaluatorNode.
+         *
+         * @param node The evaluator node.
+         * @return The type of the node.
+         */
+        private static String getPlanType(EvaluatorNode node) {
+            String className = node.getClass().getSimpleName().replace("EvaluatorNode", "");
+            StringBuilder typeBuilder = new StringBuilder();
+            for (int ichar=0; ichar<className.length(); ichar++) {
+                char c = className.charAt(ichar);
+                if (ichar != 0 && Character.isUpperCase(c)) {
+                    typeBuilder.append('_');
+                }
+                typeBuilder.append(Character.toUpperCase(c));
+            }
+            return typeBuilder.toString();
+        }
+    }
+
+    /**
+     * Returns whether "evaluate" method is available on the current state.
+     *
+     * @return Return value - True if "evaluate" method is available.
+     */
+    public boolean isEvaluatable() {
+        return this.evaluatorNodeTree != null;
+    }
+
+    /**
+     * Returns whether any scratch slots used by the current tree of evaluator nodes overlap with declared variables,
+     * so they should be relocated by "relocate" method.
+     *
+     * @param memoryUsage The current usage (max used index + 1) of the memory.
+     * @return Returns true if scratch slots should be relocated.
+     */
+    public boolean isRelocationRequired(int memoryUsage) {
+        return this.scratchSlotCount != 0 && this.scratchAddress < memoryUsage;
+    }
+
+    /**
+     * Returns the size of the memory required for evaluating the current tree of evaluator nodes,
+     * including scratch slots.
+     *
+     * @return The required size of the memory.
+     */
+    public int getRequiredMemorySize() {
+        return this.scratchAddress + this.scratchSlotCount;
+    }
+
+    /**
+     * Returns whether the memory may be modified in evaluations of the current tree of evaluator nodes,
+     * by assignments to variables or by storing values into scratch slots.
+     *
+     * @return Returns true if the memory may be modified.
+     */
+    public boolean isMemoryWritten() {
+        return this.assignmentContained || 0 < this.scratchSlotCount;
+    }
+
+    /**
+     * Returns addresses of declared variables which are read or assigned by the current tree of evaluator nodes,
+     * except for scratch slots (storing let-bound values and indices of reductions).
+     *
+     * @return The Set of addresses of variables.
+     */
+    public Set<Integer> getVariableAddresses() {
+        Set<Integer> addressSet = new HashSet<Integer>();
+        if (this.evaluatorNodeTree == null) {
+            return addressSet;
+        }
+
+        // Traverse nodes with an explicit stack, not recursively, as in "checkDepth" method of AstNode.
+        Deque<EvaluatorNode> nodeStack = new ArrayDeque<EvaluatorNode>();
+        nodeStack.push(this.evaluatorNodeTree);
+        while (!nodeStack.isEmpty()) {
+            EvaluatorNode node = nodeStack.pop();
+            int address = -1;
+            if (node instanceof VariableEvaluatorNode) {
+                address = ((VariableEvaluatorNode)node).address;
+            } else if (node instanceof AssignmentEvaluatorNode) {
+                address = ((AssignmentEvaluatorNode)node).address;
+            }
+            if (0 <= address && address < this.scratchAddress) {
+                addressSet.add(address);
+            }
+            for (EvaluatorNode childNode: node.getChildNodes()) {
+                nodeStack.push(childNode);
+            }
+        }
+        return addressSet;
+    }
+
+    /**
+     * Evaluates the value of the AST set by "update" method.
+     *
+     * @param memory The Vec used as as a virtual memory storing values of variables.
+     * @return The evaluated value.
+     */
+    public double evaluate(double[] memory) {
+        return this.evaluatorNodeTree.evaluate(memory);
+    }
+
+    /**
+     * Creates a tree of evaluator nodes corresponding with the specified AST.
+     *
+     * @param ast The root node of the AST.
+     * @param variableTable The Map mapping each variable name to an address of the variable.
+     * @param functionTable The Map mapping each function name to an IExevalatorFunction instance.
+     * @param localVariableTable The Map mapping each let-bound variable name in the current scope to an address of a scratch slot.
+     * @return The root node of the created tree of evaluator nodes.
+     */
+    private EvaluatorNode createEvaluatorNodeTree(AstNode ast,
+            Map<String, Integer> variableTable, Map<String, Exevalator.FunctionInterface> functionTable,
+            Map<String, Integer> localVariableTable) {
+
+        EvaluatorNode node = this.createEvaluatorNode(ast, variableTable, functionTable, localVariableTable);
+        node = this.foldConstantNode(ast, node);
+
+        // Share the node with other trees if the structurally identical node exists in the pool.
+        if (this.nodePool != null && this.profilingNodeMap == null && node != null) {
+            node = this.nodePool.intern(node);
+        }
+
+        // In the profiling mode, wrap the node by the node counting calls and measuring times.
+        if (this.profilingNodeMap != null && node != null) {
+            ProfilingEvaluatorNode profilingNode = new ProfilingEvaluatorNode(node);
+            this.profilingNodeMap.put(ast, profilingNode);
+            return profilingNode;
+        }
+        return node;
+    }
+
+    /**
+     * Creates an evaluator node corresponding with the specified AST node,
+     * with evaluator nodes of child nodes created by "createEvaluatorNodeTree" method.
+     *
+     * @param ast The AST node.
+     * @param variableTable The Map mapping each variable name to an address of the variable.
+     * @param functionTable The Map mapping each function name to an IExevalatorFunction instance.
+     * @param localVariableTable The Map mapping each let-bound variable name in the current scope to an address of a scratch slot.
+     * @return The created evaluator node.
+     */
+    private EvaluatorNode createEvaluatorNode(AstNode ast,
+            Map<String, Integer> variableTable, Map<String, Exevalator.FunctionInterface> functionTable,
+            Map<String, Integer> localVariableTable) {
+
+        // Note: This method creates a tree of evaluator nodes by traversing each node in the AST recursively.
+
+        List<AstNode> childNodeList = ast.childNodeList;
+        int childCount = childNodeList.size();
+        Token token = ast.token;
+
+        // Let-bindings: "let name = value in body" is parsed as in(=(name, value), body).
+        // The value is evaluated once and stored in a scratch slot, which is referred as the variable in the body.
+        if (token.type == TokenType.OPERATOR && token.operator.type == OperatorType.BINARY && token.operator.symbol.equals("in")) {
+            AstNode bindingNode = childNodeList.get(0);
+            if (!bindingNode.token.word.equals("=")
+                    || bindingNode.childNodeList.get(0).token.type != TokenType.VARIABLE_IDENTIFIER) {
+                throw Exevalator.Exception.create(this.stackTraceEnabled, Exevalator.ErrorCode.INVALID_LET_SYNTAX, token.position);
+            }
+            String name = bindingNode.childNodeList.get(0).token.word;
+            EvaluatorNode valueNode = this.createEvaluatorNodeTree(
+                bindingNode.childNodeList.get(1), variableTable, functionTable, localVariableTable
+            );
+
+            int address = this.scratchAddress + this.scratchSlotCount;
+            this.scratchSlotCount++;
+
+            // The bound variable is available only in the body, and shadows the variable having the same name.
+            Integer shadowedAddress = localVariableTable.put(name, address);
+            EvaluatorNode bodyNode = this.createEvaluatorNodeTree(
+                childNodeList.get(1), variableTable, functionTable, localVariableTable
+            );
+            if (shadowedAddress == null) {
+                localVariableTable.remove(name);
+            } else {
+                localVariableTable.put(name, shadowedAddress);
+            }
+            return new Evaluator.LetEvaluatorNode(address, valueNode, bodyNode);
+        }
+
+        // Built-in reductions: "sum(index, lower, upper, expression)" and "prod(index, lower, upper, expression)",
+        // which are available unless functions having the same names are connected.
+        // The index variable is stored in a scratch slot, and available only in the expression.
+        if (token.type == TokenType.OPERATOR && token.operator.type == OperatorType.CALL && token.operator.symbol.equals("(")) {
+            String identifier = childNodeList.get(0).token.word;
+            boolean isReduction = identifier.equals(StaticSettings.SUM_FUNCTION_NAME) || identifier.equals(StaticSettings.PRODUCT_FUNCTION_NAME);
+            if (isReduction && !functionTable.containsKey(identifier)) {
+                if (childCount != 5 || childNodeList.get(1).token.type != TokenType.VARIABLE_IDENTIFIER) {
+                    throw Exevalator.Exception.create(this.stackTraceEnabled, Exevalator.ErrorCode.INVALID_REDUCTION_ARGUMENTS, token.position, identifier);
+                }
+                String indexName = childNodeList.get(1).token.word;
+                EvaluatorNode lowerEvalNode = this.createEvaluatorNodeTree(
+                    childNodeList.get(2), variableTable, functionTable, localVariableTable
+                );
+                EvaluatorNode upperEvalNode = this.createEvaluatorNodeTree(
+                    childNodeList.get(3), variableTable, functionTable, localVariableTable
+                );
+
+                int address = this.scratchAddress + this.scratchSlotCount;
+                this.scratchSlotCount++;
+
+                Integer shadowedAddress = localVariableTable.put(indexName, address);
+                EvaluatorNode bodyEvalNode = this.createEvaluatorNodeTree(
+                    childNodeList.get(4), variableTable, functionTable, localVariableTable
+                );
+                if (shadowedAddress == null) {
+                    localVariableTable.remove(indexName);
+                } else {
+                    localVariableTable.put(indexName, shadowedAddress);
+                }
+
+                if (identifier.equals(StaticSettings.SUM_FUNCTION_NAME)) {
+                    return new Evaluator.SumEvaluatorNode(
+                        address, lowerEvalNode, upperEvalNode, bodyEvalNode, this.checkpoint, this.stackTraceEnabled
+                    );
+                } else {
+                    return new Evaluator.ProductEvaluatorNode(
+                        address, lowerEvalNode, upperEvalNode, bodyEvalNode, this.checkpoint, this.stackTraceEnabled
+                    );
+                }
+            }
+        }
+
+        // Conditional operators: "condition ? value1 : value2" is parsed as :(?(condition, value1), value2).
+        if (token.type == TokenType.OPERATOR && token.operator.type == OperatorType.BINARY && token.operator.symbol.equals(":")) {
+            AstNode conditionNode = childNodeList.get(0);
+            if (conditionNode.token.type != TokenType.OPERATOR || !conditionNode.token.word.equals("?")) {
+                throw Exevalator.Exception.create(this.stackTraceEnabled, Exevalator.ErrorCode.INVALID_CONDITIONAL_OPERATOR, token.position);
+            }
+            EvaluatorNode conditionEvalNode = this.createEvaluatorNodeTree(
+                conditionNode.childNodeList.get(0), variableTable, functionTable, localVariableTable
+            );
+            EvaluatorNode trueEvalNode = this.createEvaluatorNodeTree(
+                conditionNode.childNodeList.get(1), variableTable, functionTable, localVariableTable
+            );
+            EvaluatorNode falseEvalNode = this.createEvaluatorNodeTree(
+                childNodeList.get(1), variableTable, functionTable, localVariableTable
+            );
+
+            // If the condition is a constant (e.g. it depends only on variables treated as constants),
+            // only the selected value is evaluated, so the others are discarded.
+            if (unwrapProfilingNode(conditionEvalNode) instanceof NumberLiteralEvaluatorNode) {
+                boolean condition = ((NumberLiteralEvaluatorNode)unwrapProfilingNode(conditionEvalNode)).value != 0.0;
+                if (this.profilingNodeMap != null) {
+                    this.removeProfilingNodes(conditionNode.childNodeList.get(0));
+                    this.removeProfilingNodes(condition ? childNodeList.get(1) : conditionNode.childNodeList.get(1));
+                }
+                if (this.optimizationList != null) {
+                    this.optimizationList.add("BRANCH_ELIMINATION: " + ast.toExpressionText());
+                }
+                return condition ? trueEvalNode : falseEvalNode;
+            }
+
+            // If both values are trivial (literals or variables), evaluating both of them and selecting one without branches
+            // is cheaper than the (hardly predictable) branch.
+            if (isTrivialNode(trueEvalNode) && isTrivialNode(falseEvalNode)) {
+                if (this.optimizationList != null) {
+                    this.optimizationList.add("BRANCHLESS_SELECT: " + ast.toExpressionText());
+                }
+                return new Evaluator.SelectEvaluatorNode(conditionEvalNode, trueEvalNode, falseEvalNode);
+            } else {
+                return new Evaluator.ConditionalEvaluatorNode(conditionEvalNode, trueEvalNode, falseEvalNode);
+            }
+        }
+
+        // Long chains of arithmetic operators of the same precedence, e.g. "x1 + x2 + ... + xN", are parsed as left-deep trees.
+        // They are evaluated iteratively from the left, so the depth of recursive calls does not grow with their lengths.
+        List<AstNode> chainNodeList = ast.getArithmeticChainNodeList();
+        if (chainNodeList != null) {
+            int operatorCount = chainNodeList.size();
+            EvaluatorNode[] operandNodes = new EvaluatorNode[operatorCount + 1];
+            char[] operatorSymbols = new char[operatorCount];
+            operandNodes[0] = this.createEvaluatorNodeTree(
+                chainNodeList.get(0).childNodeList.get(0), variableTable, functionTable, localVariableTable
+            );
+            for (int ioperator=0; ioperator<operatorCount; ioperator++) {
+                AstNode chainNode = chainNodeList.get(ioperator);
+                operatorSymbols[ioperator] = chainNode.token.operator.symbol.charAt(0);
+                operandNodes[ioperator + 1] = this.createEvaluatorNodeTree(
+                    chainNode.childNodeList.get(1), variableTable, functionTable, localVariableTable
+                );
+            }
+            return new Evaluator.ArithmeticChainEvaluatorNode(operandNodes, operatorSymbols);
+        }
+
+        // Creates evaluator nodes of child nodes, and store then into an array.
+        Evaluator.EvaluatorNode childNodeNodes[] = new Evaluator.EvaluatorNode[childCount];
+        for (int ichild=0; ichild<childCount; ichild++) {
+            AstNode childAstNode = childNodeList.get(ichild);
+            childNodeNodes[ichild] = this.createEvaluatorNodeTree(childAstNode, variableTable, functionTable, localVariableTable);
+        }
+
+        // Initialize evaluator nodes of this node.
+        if (token.type == TokenType.NUMBER_LITERAL) {
+            return new Evaluator.NumberLiteralEvaluatorNode(token.word);
+        } else if (token.type == TokenType.VARIABLE_IDENTIFIER) {
+            if (localVariableTable.containsKey(token.word)) {
+                return new Evaluator.VariableEvaluatorNode(localVariableTable.get(token.word));
+            }
+            if (!variableTable.containsKey(token.word)) {
+                throw Exevalator.Exception.create(this.stackTraceEnabled, Exevalator.ErrorCode.VARIABLE_NOT_FOUND, token.position, token.word);
+            }
+            if (this.constantTable != null && this.constantTable.containsKey(token.word)) {
+                return new Evaluator.NumberLiteralEvaluatorNode(this.constantTable.get(token.word));
+            }
+            int address = variableTable.get(token.word);
+            return new Evaluator.VariableEvaluatorNode(address);
+        } else if (token.type == TokenType.FUNCTION_IDENTIFIER) {
+            return null;
+        } else if (token.type == TokenType.OPERATOR) {
+            Operator op = token.operator;
+
+            if (op.type == OperatorType.UNARY_PREFIX && op.symbol.equals("-")) {
+                return new Evaluator.MinusEvaluatorNode(childNodeNodes[0]);
+            } else if (op.type == OperatorType.BINARY && op.symbol.equals("+")) {
+                return new Evaluator.AdditionEvaluatorNode(childNodeNodes[0], childNodeNodes[1]);
+            } else if (op.type == OperatorType.BINARY && op.symbol.equals("-")) {
+                return new Evaluator.SubtractionEvaluatorNode(childNodeNodes[0], childNodeNodes[1]);
+            } else if (op.type == OperatorType.BINARY && op.symbol.equals("*")) {
+                return new Evaluator.MultiplicationEvaluatorNode(childNodeNodes[0], childNodeNodes[1]);
+            } else if (op.type == OperatorType.BINARY && op.symbol.equals("/")) {
+                return new Evaluator.DivisionEvaluatorNode(childNodeNodes[0], childNodeNodes[1]);
+            } else if (op.type == OperatorType.BINARY && op.symbol.equals("<")) {
+                return new Evaluator.LessThanEvaluatorNode(childNodeNodes[0], childNodeNodes[1]);
+            } else if (op.type == OperatorType.BINARY && op.symbol.equals("<=")) {
+                return new Evaluator.LessEqualEvaluatorNode(childNodeNodes[0], childNodeNodes[1]);
+            } else if (op.type == OperatorType.BINARY && op.symbol.equals(">")) {
+                return new Evaluator.GreaterThanEvaluatorNode(childNodeNodes[0], childNodeNodes[1]);
+            } else if (op.type == OperatorType.BINARY && op.symbol.equals(">=")) {
+                return new Evaluator.GreaterEqualEvaluatorNode(childNodeNodes[0], childNodeNodes[1]);
+            } else if (op.type == OperatorType.BINARY && op.symbol.equals("==")) {
+                return new Evaluator.EqualEvaluatorNode(childNodeNodes[0], childNodeNodes[1]);
+            } else if (op.type == OperatorType.BINARY && op.symbol.equals("!=")) {
+                return new Evaluator.NotEqualEvaluatorNode(childNodeNodes[0], childNodeNodes[1]);
+            } else if (op.type == OperatorType.BINARY && op.symbol.equals("?")) {
+                throw Exevalator.Exception.create(this.stackTraceEnabled, Exevalator.ErrorCode.INVALID_CONDITIONAL_OPERATOR, token.position);
+            } else if (op.type == OperatorType.BINARY && op.symbol.equals("=")) {
+                AstNode targetNode = childNodeList.get(0);
+                if (targetNode.token.type != TokenType.VARIABLE_IDENTIFIER) {
+                    throw Exevalator.Exception.create(this.stackTraceEnabled, Exevalator.ErrorCode.UNEXPECTED_OPERATOR, token.position, op.symbol);
+                }
+                // A variable treated as a constant has been replaced with a literal, so no value can be assigned to it.
+                if (unwrapProfilingNode(childNodeNodes[0]) instanceof Evaluator.NumberLiteralEvaluatorNode) {
+                    throw Exevalator.Exception.create(this.stackTraceEnabled, 
+                        Exevalator.ErrorCode.SPECIALIZED_VARIABLE_ASSIGNED, targetNode.token.position, targetNode.token.word
+                    );
+                }
+                // The target node has been created as a VariableEvaluatorNode, so the address has been resolved.
+                // (In the profiling mode, it is wrapped by a profiling node, which is not evaluated, so not reported.)
+                if (this.profilingNodeMap != null) {
+                    this.profilingNodeMap.remove(targetNode);
+                }
+                int address = ((Evaluator.VariableEvaluatorNode)unwrapProfilingNode(childNodeNodes[0])).address;
+                this.assignmentContained = true;
+                return new Evaluator.AssignmentEvaluatorNode(address, childNodeNodes[1]);
+            } else if (op.type == OperatorType.BINARY && op.symbol.equals(";")) {
+                return new Evaluator.StatementListEvaluatorNode(childNodeNodes);
+            } else if (op.type == OperatorType.CALL && op.symbol.equals("(")) {
+                String identifier = childNodeList.get(0).token.word;
+                Exevalator.FunctionInterface function = functionTable.get(identifier);
+                if (function == null) {
+                    throw Exevalator.Exception.create(this.stackTraceEnabled, Exevalator.ErrorCode.FUNCTION_NOT_FOUND, childNodeList.get(0).token.position, identifier);
+                }
+                int argCount = childCount - 1;
+                Evaluator.EvaluatorNode[] argNodes = new Evaluator.EvaluatorNode[argCount];
+                for (int iarg=0; iarg<argCount; iarg++) {
+                    argNodes[iarg] = childNodeNodes[iarg + 1];
+                }
+                if (function instanceof Exevalator.LazyFunctionInterface) {
+                    return new Evaluator.LazyFunctionEvaluatorNode(
+                        (Exevalator.LazyFunctionInterface)function, identifier, argNodes,
+                        this.functionCallListener, this.checkpoint, this.stackTraceEnabled
+                    );
+                } else {
+                    return new Evaluator.FunctionEvaluatorNode(
+                        function, identifier, argNodes, this.functionCallListener, this.checkpoint, this.stackTraceEnabled
+                    );
+                }
+            } else {
+                throw Exevalator.Exception.create(this.stackTraceEnabled, Exevalator.ErrorCode.UNEXPECTED_OPERATOR, token.position, op.symbol);
+            }
+        } else {
+            throw Exevalator.Exception.create(this.stackTraceEnabled, Exevalator.ErrorCode.UNEXPECTED_TOKEN, token.position, token.type.toString());
+        }
+    }
+
+    /**
+     * Checks that evaluator nodes can be created from the specified AST, without creating them,
+     * by performing the same checks as "createEvaluatorNode" method (resolutions of identifiers, etc.).
      *
-     * @param depthOfThisNode The depth of this node in the AST.
-     * @param maxAstDepth The maximum value of the depth of the AST.
+     * @param ast The root node of the AST.
+     * @param variableTable The Map mapping each variable name to an address of the variable.
+     * @param functionTable The Map mapping each function name to an IExevalatorFunction instance.
+     * @param localVariableNameSet The Set of let-bound variable names (and indices of reductions) in the current scope.
+     * @param stackTraceEnabled Specify false not to capture the stack trace of the thrown exception.
+     * @throws Exevalator.Exception Thrown if the AST is invalid.
+     */
+    static void validate(AstNode ast,
+            Map<String, Integer> variableTable, Map<String, Exevalator.FunctionInterface> functionTable,
+            Set<String> localVariableNameSet, boolean stackTraceEnabled) {
+
+        // Note: The depth of recursive calls of this method is bounded by the maximum depth of ASTs,
+        //       except for long chains of arithmetic operators, which are traversed iteratively.
+
+        List<AstNode> childNodeList = ast.childNodeList;
+        int childCount = childNodeList.size();
+        Token token = ast.token;
+
+        // Let-bindings: in(=(name, value), body)
+        if (token.type == TokenType.OPERATOR && token.operator.type == OperatorType.BINARY && token.operator.symbol.equals("in")) {
+            AstNode bindingNode = childNodeList.get(0);
+            if (!bindingNode.token.word.equals("=")
+                    || bindingNode.childNodeList.get(0).token.type != TokenType.VARIABLE_IDENTIFIER) {
+                throw Exevalator.Exception.create(stackTraceEnabled, Exevalator.ErrorCode.INVALID_LET_SYNTAX, token.position);
+            }
+            String name = bindingNode.childNodeList.get(0).token.word;
+            validate(bindingNode.childNodeList.get(1), variableTable, functionTable, localVariableNameSet, stackTraceEnabled);
+            boolean shadowing = !localVariableNameSet.add(name);
+            validate(childNodeList.get(1), variableTable, functionTable, localVariableNameSet, stackTraceEnabled);
+            if (!shadowing) {
+                localVariableNameSet.remove(name);
+            }
+            return;
+        }
+
+        // Built-in reductions: sum(index, lower, upper, expression) and prod(index, lower, upper, expression)
+        if (token.type == TokenType.OPERATOR && token.operator.type == OperatorType.CALL && token.operator.symbol.equals("(")) {
+            String identifier = childNodeList.get(0).token.word;
+            boolean isReduction = identifier.equals(StaticSettings.SUM_FUNCTION_NAME) || identifier.equals(StaticSettings.PRODUCT_FUNCTION_NAME);
+            if (isReduction && !functionTable.containsKey(identifier)) {
+                if (childCount != 5 || childNodeList.get(1).token.type != TokenType.VARIABLE_IDENTIFIER) {
+                    throw Exevalator.Exception.create(stackTraceEnabled, Exevalator.ErrorCode.INVALID_REDUCTION_ARGUMENTS, token.position, identifier);
+                }
+                String indexName = childNodeList.get(1).token.word;
+                validate(childNodeList.get(2), variableTable, functionTable, localVariableNameSet, stackTraceEnabled);
+                validate(childNodeList.get(3), variableTable, functionTable, localVariableNameSet, stackTraceEnabled);
+                boolean shadowing = !localVariableNameSet.add(indexName);
+                validate(childNodeList.get(4), variableTable, functionTable, localVariableNameSet, stackTraceEnabled);
+                if (!shadowing) {
+                    localVariableNameSet.remove(indexName);
+                }
+                return;
+            }
+        }
+
+        // Conditional operators: :(?(condition, value1), value2)
+        if (token.type == TokenType.OPERATOR && token.operator.type == OperatorType.BINARY && token.operator.symbol.equals(":")) {
+            AstNode conditionNode = childNodeList.get(0);
+            if (conditionNode.token.type != TokenType.OPERATOR || !conditionNode.token.word.equals("?")) {
+                throw Exevalator.Exception.create(stackTraceEnabled, Exevalator.ErrorCode.INVALID_CONDITIONAL_OPERATOR, token.position);
+            }
+            validate(conditionNode.childNodeList.get(0), variableTable, functionTable, localVariableNameSet, stackTraceEnabled);
+            validate(conditionNode.childNodeList.get(1), variableTable, functionTable, localVariableNameSet, stackTraceEnabled);
+            validate(childNodeList.get(1), variableTable, functionTable, localVariableNameSet, stackTraceEnabled);
+            return;
+        }
+
+        // Long chains of arithmetic operators are traversed iteratively.
+        List<AstNode> chainOperandList = ast.getArithmeticChainOperandList();
+        if (chainOperandList != null) {
+            for (AstNode operandNode: chainOperandList) {
+                validate(operandNode, variableTable, functionTable, localVariableNameSet, stackTraceEnabled);
+            }
+            return;
+        }
+
+        for (int ichild=0; ichild<childCount; ichild++) {
+            validate(childNodeList.get(ichild), variableTable, functionTable, localVariableNameSet, stackTraceEnabled);
+        }
+
+        if (token.type == TokenType.NUMBER_LITERAL) {
+            try {
+                Double.parseDouble(token.word);
+            } catch (NumberFormatException nfe) {
+                throw Exevalator.Exception.create(stackTraceEnabled, Exevalator.ErrorCode.INVALID_NUMBER_LITERAL, token.position, token.word);
+            }
+        } else if (token.type == TokenType.VARIABLE_IDENTIFIER) {
+            if (!localVariableNameSet.contains(token.word) && !variableTable.containsKey(token.word)) {
+                throw Exevalator.Exception.create(stackTraceEnabled, Exevalator.ErrorCode.VARIABLE_NOT_FOUND, token.position, token.word);
+            }
+        } else if (token.type == TokenType.FUNCTION_IDENTIFIER) {
+            return;
+        } else if (token.type == TokenType.OPERATOR) {
+            Operator op = token.operator;
+            if (op.type == OperatorType.UNARY_PREFIX && op.symbol.equals("-")) {
+                return;
+            } else if (op.type == OperatorType.BINARY && op.symbol.equals("?")) {
+                throw Exevalator.Exception.create(stackTraceEnabled, Exevalator.ErrorCode.INVALID_CONDITIONAL_OPERATOR, token.position);
+            } else if (op.type == OperatorType.BINARY && op.symbol.equals("=")) {
+                if (childNodeList.get(0).token.type != TokenType.VARIABLE_IDENTIFIER) {
+                    throw Exevalator.Exception.create(stackTraceEnabled, Exevalator.ErrorCode.UNEXPECTED_OPERATOR, token.position, op.symbol);
+                }
+            } else if (op.type == OperatorType.BINARY && VALIDATED_BINARY_OPERATOR_SYMBOL_SET.contains(op.symbol)) {
+                return;
+            } else if (op.type == OperatorType.CALL && op.symbol.equals("(")) {
+                String identifier = childNodeList.get(0).token.word;
+                if (!functionTable.containsKey(identifier)) {
+                    throw Exevalator.Exception.create(stackTraceEnabled, Exevalator.ErrorCode.FUNCTION_NOT_FOUND, childNodeList.get(0).token.position, identifier);
+                }
+            } else {
+                throw Exevalator.Exception.create(stackTraceEnabled, Exevalator.ErrorCode.UNEXPECTED_OPERATOR, token.position, op.symbol);
+            }
+        } else {
+            throw Exevalator.Exception.create(stackTraceEnabled, Exevalator.ErrorCode.UNEXPECTED_TOKEN, token.position, token.type.toString());
+        }
+    }
+
+    /**
+     * Replaces the evaluator node of an operator of which operands are all number literals,
+     * with the number literal of the value computed in advance (constant folding).
+     * As this method is applied to each node from leaves, all constant subexpressions are folded into literals.
+     * Function calls are folded only if functions are pure (see FunctionInterface.isPure),
+     * because other functions may return different values for the same arguments.
+     *
+     * @param ast The AST node corresponding with the evaluator node.
+     * @param node The evaluator node.
+     * @return The folded node, or the specified node itself if it can not be folded.
+     */
+    private EvaluatorNode foldConstantNode(AstNode ast, EvaluatorNode node) {
+        Exevalator.FunctionInterface pureFunction = getPureFunction(node);
+        if (!(node instanceof BinaryOperationEvaluatorNode || node instanceof ArithmeticChainEvaluatorNode
+                || node instanceof MinusEvaluatorNode || node instanceof ConditionalEvaluatorNode
+                || node instanceof SelectEvaluatorNode || pureFunction != null)) {
+            return node;
+        }
+        EvaluatorNode[] childNodes = node.getChildNodes();
+        for (EvaluatorNode childNode: childNodes) {
+            if (!(unwrapProfilingNode(childNode) instanceof NumberLiteralEvaluatorNode)) {
+                return node;
+            }
+        }
+
+        // Operands are literals, so the memory is not accessed.
+        // A pure function is called directly (not through the node), so listeners and the checkpoint are not involved.
+        // If it fails, the call is not folded, and the error will be thrown when it is evaluated.
+        double foldedValue;
+        if (pureFunction == null) {
+            foldedValue = node.evaluate(null);
+        } else {
+            double[] arguments = new double[childNodes.length];
+            for (int iarg=0; iarg<childNodes.length; iarg++) {
+                arguments[iarg] = childNodes[iarg].evaluate(null);
+            }
+            try {
+                foldedValue = pureFunction.invoke(arguments);
+            } catch (Exception e) {
+                return node;
+            }
+        }
+        NumberLiteralEvaluatorNode foldedNode = new NumberLiteralEvaluatorNode(foldedValue);
+        if (this.profilingNodeMap != null) {
+            for (AstNode childNode: ast.childNodeList) {
+                this.removeProfilingNodes(childNode);
+            }
+        }
+        if (this.optimizationList != null) {
+            this.optimizationList.add("CONSTANT_FOLDING: " + ast.toExpressionText() + " -> " + foldedNode.value);
+        }
+        return foldedNode;
+    }
+
+    /**
+     * Returns the function called by the evaluator node, if it is a function-call node of a pure function.
+     *
+     * @param node The evaluator node.
+     * @return The pure function called by the node, or null if the node does not call a pure function.
+     */
+    private static Exevalator.FunctionInterface getPureFunction(EvaluatorNode node) {
+        Exevalator.FunctionInterface function = null;
+        if (node instanceof FunctionEvaluatorNode) {
+            function = ((FunctionEvaluatorNode)node).function;
+        } else if (node instanceof LazyFunctionEvaluatorNode) {
+            function = ((LazyFunctionEvaluatorNode)node).function;
+        }
+        return function != null && function.isPure() ? function : null;
+    }
+
+    /**
+     * Removes profiling nodes of the AST under the specified node, of which evaluator nodes have been discarded.
+     *
+     * @param ast The AST node.
+     */
+    private void removeProfilingNodes(AstNode ast) {
+
+        // Traverse nodes with an explicit stack, not recursively, because the AST may be very deep.
+        Deque<AstNode> nodeStack = new ArrayDeque<AstNode>();
+        nodeStack.push(ast);
+        while (!nodeStack.isEmpty()) {
+            AstNode node = nodeStack.pop();
+            this.profilingNodeMap.remove(node);
+            for (AstNode childNode: node.childNodeList) {
+                nodeStack.push(childNode);
+            }
+        }
+    }
+
+    /**
+     * Returns whether the evaluator node is trivial to evaluate, i.e., it is a literal or a variable.
+     *
+     * @param node The evaluator node to be checked.
+     * @return Returns true if the node is trivial to evaluate.
+     */
+    private static boolean isTrivialNode(EvaluatorNode node) {
+        node = unwrapProfilingNode(node);
+        return node instanceof NumberLiteralEvaluatorNode || node instanceof VariableEvaluatorNode;
+    }
+
+    /**
+     * Returns the evaluator node wrapped by the profiling node, or the specified node itself if it is not a profiling node.
+     *
+     * @param node The evaluator node.
+     * @return The unwrapped evaluator node.
+     */
+    private static EvaluatorNode unwrapProfilingNode(EvaluatorNode node) {
+        return node instanceof ProfilingEvaluatorNode ? ((ProfilingEvaluatorNode)node).targetNode : node;
+    }
+
+    /**
+     * The checkpoint checked cooperatively at function calls and iterations of reductions,
+     * to abort the evaluation exceeding the deadline or cancelled by the token.
+     * The state is set by the thread evaluating an expression (holding the lock of the engine) before the evaluation.
+     */
+    static final class Checkpoint {
+
+        /** The time limit in nanoseconds (0 if there is no deadline). */
+        private long timeout = 0L;
+
+        /** The deadline in the value of System.nanoTime(), valid only if the time limit is not 0. */
+        private long deadline = 0L;
+
+        /** The token cancelling the evaluation, or null if it is not cancellable. */
+        private Exevalator.CancellationToken cancellationToken = null;
+
+        /** The flag representing whether stack traces are captured for thrown exceptions. */
+        private boolean stackTraceEnabled = true;
+
+        /**
+         * Begins checking the deadline and/or the cancellation token.
+         *
+         * @param timeout The time limit from now in nanoseconds (0 if there is no deadline).
+         * @param cancellationToken The token cancelling the evaluation, or null if it is not cancellable.
+         * @param stackTraceEnabled Specify false not to capture stack traces of thrown exceptions.
+         */
+        public void begin(long timeout, Exevalator.CancellationToken cancellationToken, boolean stackTraceEnabled) {
+            this.timeout = timeout;
+            this.deadline = timeout != 0L ? System.nanoTime() + timeout : 0L;
+            this.cancellationToken = cancellationToken;
+            this.stackTraceEnabled = stackTraceEnabled;
+        }
+
+        /**
+         * Ends checking the deadline and the cancellation token.
+         */
+        public void end() {
+            this.timeout = 0L;
+            this.cancellationToken = null;
+        }
+
+        /**
+         * Throws an exception if the deadline has passed or the evaluation has been cancelled.
+         */
+        public void check() {
+            if (this.cancellationToken != null && this.cancellationToken.isCancelled()) {
+                throw new Exevalator.EvaluationAbortedException(
+                    Exevalator.ErrorCode.EVALUATION_CANCELLED, false, new String[0], this.stackTraceEnabled
+                );
+            }
+            if (this.timeout != 0L && 0L <= System.nanoTime() - this.deadline) {
+                throw new Exevalator.EvaluationAbortedException(
+                    Exevalator.ErrorCode.EVALUATION_TIMED_OUT, true, new String[] { Long.toString(this.timeout) }, this.stackTraceEnabled
+                );
+            }
+        }
+    }
+
+    /**
+     * The pool of shareable evaluator nodes, to share structurally identical subtrees among trees of evaluator nodes (hash-consing).
+     * As trees are created from leaves, nodes are identical if they are of the same class, have the same attributes,
+     * and have the same (identical) child nodes. Nodes are referred weakly, so nodes no longer used by any tree are collected.
+     */
+    static final class NodePool {
+
+        /** The initial capacity (the number of buckets) of the table. */
+        private static final int INITIAL_CAPACITY = 256;
+
+        /** The weak reference to a pooled node, which is also an entry of a bucket of the table. */
+        private static final class NodeReference extends WeakReference<EvaluatorNode> {
+
+            /** The structural hash code of the referred node. */
+            private final int hash;
+
+            /** The next entry in the same bucket, or null if this is the last one. */
+            private NodeReference next;
+
+            /**
+             * Creates a reference to the node.
+             *
+             * @param node The node to be referred.
+             * @param hash The structural hash code of the node.
+             * @param next The next entry in the same bucket.
+             * @param referenceQueue The queue to which this reference is enqueued when the node is collected.
+             */
+            private NodeReference(EvaluatorNode node, int hash, NodeReference next, ReferenceQueue<EvaluatorNode> referenceQueue) {
+                super(node, referenceQueue);
+                this.hash = hash;
+                this.next = next;
+            }
+        }
+
+        /** The lock guarding the table, because a pool may be shared among engines used on different threads. */
+        private final ReentrantLock lock = new ReentrantLock();
+
+        /** The queue of references of which nodes have been collected. */
+        private final ReferenceQueue<EvaluatorNode> referenceQueue = new ReferenceQueue<EvaluatorNode>();
+
+        /** The table of buckets, of which length is a power of 2. */
+        private NodeReference[] table = new NodeReference[INITIAL_CAPACITY];
+
+        /** The number of entries in the table (including ones of which nodes have been collected but not removed yet). */
+        private int size = 0;
+
+        /**
+         * Returns the pooled node structurally identical with the specified node,
+         * or adds the specified node to this pool and returns it if there is no such node.
+         * Nodes which are not shareable, or having child nodes which are not shareable, are returned as they are.
+         *
+         * @param node The node to be shared.
+         * @return The shared node.
+         */
+        public EvaluatorNode intern(EvaluatorNode node) {
+            if (!node.isShareable()) {
+                return node;
+            }
+            EvaluatorNode[] childNodes = node.getChildNodes();
+            int hash = node.getClass().hashCode() * 31 + node.getAttributeHashCode();
+            for (EvaluatorNode childNode: childNodes) {
+                if (!childNode.isShareable()) {
+                    return node;
+                }
+                hash = hash * 31 + System.identityHashCode(childNode);
+            }
+            hash ^= hash >>> 16;
+
+            this.lock.lock();
+            try {
+                this.removeCollectedEntries();
+                int index = hash & (this.table.length - 1);
+                for (NodeReference reference = this.table[index]; reference != null; reference = reference.next) {
+                    EvaluatorNode pooledNode = reference.get();
+                    if (reference.hash == hash && pooledNode != null && isIdentical(pooledNode, node, childNodes)) {
+                        return pooledNode;
+                    }
+                }
+                this.table[index] = new NodeReference(node, hash, this.table[index], this.referenceQueue);
+                this.size++;
+                if (this.table.length * 3 / 4 < this.size) {
+                    this.resize();
+                }
+                return node;
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        /**
+         * Returns the number of nodes in this pool.
+         *
+         * @return The number of pooled nodes.
+         */
+        public int getSize() {
+            this.lock.lock();
+            try {
+                this.removeCollectedEntries();
+                return this.size;
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        /**
+         * Returns whether the pooled node is structurally identical with the specified node.
+         *
+         * @param pooledNode The pooled node.
+         * @param node The node to be shared.
+         * @param childNodes Child nodes of the node to be shared.
+         * @return Returns true if the nodes are identical.
+         */
+        private static boolean isIdentical(EvaluatorNode pooledNode, EvaluatorNode node, EvaluatorNode[] childNodes) {
+            if (pooledNode.getClass() != node.getClass() || !pooledNode.hasSameAttributes(node)) {
+                return false;
+            }
+            EvaluatorNode[] pooledChildNodes = pooledNode.getChildNodes();
+            if (pooledChildNodes.length != childNodes.length) {
+                return false;
+            }
+            for (int ichild=0; ichild<childNodes.length; ichild++) {
+                if (pooledChildNodes[ichild] != childNodes[ichild]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Removes entries of which nodes have been collected.
+         */
+        private void removeCollectedEntries() {
+            Reference<? extends EvaluatorNode> collectedReference;
+            while ((collectedReference = this.referenceQueue.poll()) != null) {
+                NodeReference removedReference = (NodeReference)collectedReference;
+                int index = removedReference.hash & (this.table.length - 1);
+                NodeReference previousReference = null;
+                for (NodeReference reference = this.table[index]; reference != null; reference = reference.next) {
+                    if (reference == removedReference) {
+                        if (previousReference == null) {
+                            this.table[index] = reference.next;
+                        } else {
+                            previousReference.next = reference.next;
+                        }
+                        this.size--;
+                        break;
+                    }
+                    previousReference = reference;
+                }
+            }
+        }
+
+        /**
+         * Doubles the number of buckets of the table.
+         */
+        private void resize() {
+            NodeReference[] oldTable = this.table;
+            NodeReference[] newTable = new NodeReference[oldTable.length * 2];
+            for (NodeReference reference: oldTable) {
+                while (reference != null) {
+                    NodeReference nextReference = reference.next;
+                    int index = reference.hash & (newTable.length - 1);
+                    reference.next = newTable[index];
+                    newTable[index] = reference;
+                    reference = nextReference;
+                }
+            }
+            this.table = newTable;
+        }
+    }
+
+    /**
+     * The super class of evaluator nodes.
+     */
+    private static abstract class EvaluatorNode {
+
+        /**
+         * Performs the evaluation.
+         * Implementations should not allocate any objects on the heap, except when throwing exceptions,
+         * because this method is called repeatedly by "eval", "reeval", and "execute" methods.
+         *
+         * @param memory The array storing values of variables.
+         * @return The evaluated value.
+         */
+        public abstract double evaluate(double[] memory);
+
+        /**
+         * Returns child nodes of this node, for explaining the plan (not called in evaluations).
+         *
+         * @return Child nodes of this node.
+         */
+        public EvaluatorNode[] getChildNodes() {
+            return new EvaluatorNode[0];
+        }
+
+        /**
+         * Returns attributes of this node in the explained plan, e.g. ' address="0"' (not called in evaluations).
+         *
+         * @return Attributes of this node, beginning with a space (or an empty string if there are no attributes).
+         */
+        public String getPlanAttributes() {
+            return "";
+        }
+
+        /**
+         * Returns whether this node can be shared among trees of evaluator nodes by NodePool,
+         * i.e., it has no state other than its attributes and child nodes (not called in evaluations).
+         *
+         * @return Returns true if this node can be shared.
+         */
+        public boolean isShareable() {
+            return false;
+        }
+
+        /**
+         * Returns whether this node has the same attributes (e.g. the address) as the specified node of the same class,
+         * for sharing nodes (not called in evaluations).
+         *
+         * @param node The node of the same class as this node.
+         * @return Returns true if attributes of the nodes are the same.
+         */
+        public boolean hasSameAttributes(EvaluatorNode node) {
+            return true;
+        }
+
+        /**
+         * Returns the hash code of attributes of this node, for sharing nodes (not called in evaluations).
+         *
+         * @return The hash code of attributes.
+         */
+        public int getAttributeHashCode() {
+            return 0;
+        }
+    }
+
+    /**
+     * The super class of evaluator nodes of binary operations.
+     */
+    private static abstract class BinaryOperationEvaluatorNode extends EvaluatorNode {
+
+        /** The node for evaluating the right-side operand. */
+        protected final EvaluatorNode leftOperandNode;
+
+        /** The node for evaluating the left-side operand. */
+        protected final EvaluatorNode rightOperandNode;
+
+        /**
+         * Initializes operands.
+         *
+         * @param leftOperandNode The node for evaluating the left-side operand
+         * @param rightOperandNode The node for evaluating the right-side operand
+         */
+        protected BinaryOperationEvaluatorNode(EvaluatorNode leftOperandNode, EvaluatorNode rightOperandNode) {
+            this.leftOperandNode = leftOperandNode;
+            this.rightOperandNode = rightOperandNode;
+        }
+
+        @Override
+        public EvaluatorNode[] getChildNodes() {
+            return new EvaluatorNode[] { this.leftOperandNode, this.rightOperandNode };
+        }
+
+        @Override
+        public boolean isShareable() {
+            return true;
+        }
+    }
+
+    /**
+     * The evaluator node for evaluating the value of a addition operator.
+     */
+    private static final class AdditionEvaluatorNode extends BinaryOperationEvaluatorNode {
+
+        /**
+         * Initializes operands.
+         *
+         * @param leftOperandNode The node for evaluating the left-side operand.
+         * @param rightOperandNode The node for evaluating the right-side operand.
+         */
+        public AdditionEvaluatorNode(EvaluatorNode leftOperandNode, EvaluatorNode rightOperandNode) {
+            super(leftOperandNode, rightOperandNode);
+        }
+
+        /**
+         * Performs the addition.
+         *
+         * @param memory The array storing values of variables.
+         * @return The result value of the addition.
+         */
+        @Override
+        public double evaluate(double[] memory) {
+            return this.leftOperandNode.evaluate(memory) + this.rightOperandNode.evaluate(memory);
+        }
+    }
+
+    /**
+     * The evaluator node for evaluating the value of a subtraction operator.
      */
-    public void checkDepth(int depthOfThisNode, int maxAstDepth) {
-        if (maxAstDepth < depthOfThisNode) {
-            throw new Exevalator.Exception(
-                ErrorMessages.EXCEEDS_MAX_AST_DEPTH.replace("$0", Integer.toString(StaticSettings.MAX_AST_DEPTH))
-            );
+    private static final class SubtractionEvaluatorNode extends BinaryOperationEvaluatorNode {
+
+        /**
+         * Initializes operands.
+         *
+         * @param leftOperandNode The node for evaluating the left-side operand.
+         * @param rightOperandNode The node for evaluating the right-side operand.
+         */
+        public SubtractionEvaluatorNode(EvaluatorNode leftOperandNode, EvaluatorNode rightOperandNode) {
+            super(leftOperandNode, rightOperandNode);
         }
-        for (AstNode childNode: this.childNodeList) {
-            childNode.checkDepth(depthOfThisNode + 1, maxAstDepth);
+
+        /**
+         * Performs the subtraction.
+         *
+         * @param memory The array storing values of variables.
+         * @return The result value of the subtraction.
+         */
+        @Override
+        public double evaluate(double[] memory) {
+            return this.leftOperandNode.evaluate(memory) - this.rightOperandNode.evaluate(memory);
         }
     }
 
     /**
-     * Expresses the AST under this node in XML-like text format.
-     *
-     * @return XML-like text representation of the AST under this node.
+     * The evaluator node for evaluating the value of a multiplication operator.
      */
-    public String toMarkuppedText() {
-        return this.toMarkuppedText(0);
+    private static final class MultiplicationEvaluatorNode extends BinaryOperationEvaluatorNode {
+
+        /**
+         * Initializes operands.
+         *
+         * @param leftOperandNode The node for evaluating the left-side operand.
+         * @param rightOperandNode The node for evaluating the right-side operand.
+         */
+        public MultiplicationEvaluatorNode(EvaluatorNode leftOperandNode, EvaluatorNode rightOperandNode) {
+            super(leftOperandNode, rightOperandNode);
+        }
+
+        /**
+         * Performs the multiplication.
+         *
+         * @param memory The array storing values of variables.
+         * @return The result value of the multiplication.
+         */
+        @Override
+        public double evaluate(double[] memory) {
+            return this.leftOperandNode.evaluate(memory) * this.rightOperandNode.evaluate(memory);
+        }
+    }
+
+    /**
+     * The evaluator node for evaluating the value of a division operator.
+     */
+    private static final class DivisionEvaluatorNode extends BinaryOperationEvaluatorNode {
+
+        /**
+         * Initializes operands.
+         *
+         * @param leftOperandNode The node for evaluating the left-side operand.
+         * @param rightOperandNode The node for evaluating the right-side operand.
+         */
+        public DivisionEvaluatorNode(EvaluatorNode leftOperandNode, EvaluatorNode rightOperandNode) {
+            super(leftOperandNode, rightOperandNode);
+        }
+
+        /**
+         * Performs the division.
+         *
+         * @param memory The array storing values of variables.
+         * @return The result value of the division.
+         */
+        @Override
+        public double evaluate(double[] memory) {
+            return this.leftOperandNode.evaluate(memory) / this.rightOperandNode.evaluate(memory);
+        }
+    }
+
+    /**
+     * The evaluator node for evaluating the value of a "less than" operator: "<".
+     */
+    private static final class LessThanEvaluatorNode extends BinaryOperationEvaluatorNode {
+
+        /**
+         * Initializes operands.
+         *
+         * @param leftOperandNode The node for evaluating the left-side operand.
+         * @param rightOperandNode The node for evaluating the right-side operand.
+         */
+        public LessThanEvaluatorNode(EvaluatorNode leftOperandNode, EvaluatorNode rightOperandNode) {
+            super(leftOperandNode, rightOperandNode);
+        }
+
+        /**
+         * Performs the "less than" comparison.
+         *
+         * @param memory The array storing values of variables.
+         * @return 1.0 if the comparison is true, 0.0 if it is false.
+         */
+        @Override
+        public double evaluate(double[] memory) {
+            return this.leftOperandNode.evaluate(memory) < this.rightOperandNode.evaluate(memory) ? 1.0 : 0.0;
+        }
+    }
+
+    /**
+     * The evaluator node for evaluating the value of a "less than or equal" operator: "<=".
+     */
+    private static final class LessEqualEvaluatorNode extends BinaryOperationEvaluatorNode {
+
+        /**
+         * Initializes operands.
+         *
+         * @param leftOperandNode The node for evaluating the left-side operand.
+         * @param rightOperandNode The node for evaluating the right-side operand.
+         */
+        public LessEqualEvaluatorNode(EvaluatorNode leftOperandNode, EvaluatorNode rightOperandNode) {
+            super(leftOperandNode, rightOperandNode);
+        }
+
+        /**
+         * Performs the "less than or equal" comparison.
+         *
+         * @param memory The array storing values of variables.
+         * @return 1.0 if the comparison is true, 0.0 if it is false.
+         */
+        @Override
+        public double evaluate(double[] memory) {
+            return this.leftOperandNode.evaluate(memory) <= this.rightOperandNode.evaluate(memory) ? 1.0 : 0.0;
+        }
+    }
+
+    /**
+     * The evaluator node for evaluating the value of a "greater than" operator: ">".
+     */
+    private static final class GreaterThanEvaluatorNode extends BinaryOperationEvaluatorNode {
+
+        /**
+         * Initializes operands.
+         *
+         * @param leftOperandNode The node for evaluating the left-side operand.
+         * @param rightOperandNode The node for evaluating the right-side operand.
+         */
+        public GreaterThanEvaluatorNode(EvaluatorNode leftOperandNode, EvaluatorNode rightOperandNode) {
+            super(leftOperandNode, rightOperandNode);
+        }
+
+        /**
+         * Performs the "greater than" comparison.
+         *
+         * @param memory The array storing values of variables.
+         * @return 1.0 if the comparison is true, 0.0 if it is false.
+         */
+        @Override
+        public double evaluate(double[] memory) {
+            return this.leftOperandNode.evaluate(memory) > this.rightOperandNode.evaluate(memory) ? 1.0 : 0.0;
+        }
+    }
+
+    /**
+     * The evaluator node for evaluating the value of a "greater than or equal" operator: ">=".
+     */
+    private static final class GreaterEqualEvaluatorNode extends BinaryOperationEvaluatorNode {
+
+        /**
+         * Initializes operands.
+         *
+         * @param leftOperandNode The node for evaluating the left-side operand.
+         * @param rightOperandNode The node for evaluating the right-side operand.
+         */
+        public GreaterEqualEvaluatorNode(EvaluatorNode leftOperandNode, EvaluatorNode rightOperandNode) {
+            super(leftOperandNode, rightOperandNode);
+        }
+
+        /**
+         * Performs the "greater than or equal" comparison.
+         *
+         * @param memory The array storing values of variables.
+         * @return 1.0 if the comparison is true, 0.0 if it is false.
+         */
+        @Override
+        public double evaluate(double[] memory) {
+            return this.leftOperandNode.evaluate(memory) >= this.rightOperandNode.evaluate(memory) ? 1.0 : 0.0;
+        }
+    }
+
+    /**
+     * The evaluator node for evaluating the value of an "equal" operator: "==".
+     */
+    private static final class EqualEvaluatorNode extends BinaryOperationEvaluatorNode {
+
+        /**
+         * Initializes operands.
+         *
+         * @param leftOperandNode The node for evaluating the left-side operand.
+         * @param rightOperandNode The node for evaluating the right-side operand.
+         */
+        public EqualEvaluatorNode(EvaluatorNode leftOperandNode, EvaluatorNode rightOperandNode) {
+            super(leftOperandNode, rightOperandNode);
+        }
+
+        /**
+         * Performs the "equal" comparison.
+         *
+         * @param memory The array storing values of variables.
+         * @return 1.0 if the comparison is true, 0.0 if it is false.
+         */
+        @Override
+        public double evaluate(double[] memory) {
+            return this.leftOperandNode.evaluate(memory) == this.rightOperandNode.evaluate(memory) ? 1.0 : 0.0;
+        }
+    }
+
+    /**
+     * The evaluator node for evaluating the value of a "not equal" operator: "!=".
+     */
+    private static final class NotEqualEvaluatorNode extends BinaryOperationEvaluatorNode {
+
+        /**
+         * Initializes operands.
+         *
+         * @param leftOperandNode The node for evaluating the left-side operand.
+         * @param rightOperandNode The node for evaluating the right-side operand.
+         */
+        public NotEqualEvaluatorNode(EvaluatorNode leftOperandNode, EvaluatorNode rightOperandNode) {
+            super(leftOperandNode, rightOperandNode);
+        }
+
+        /**
+         * Performs the "not equal" comparison.
+         *
+         * @param memory The array storing values of variables.
+         * @return 1.0 if the comparison is true, 0.0 if it is false.
+         */
+        @Override
+        public double evaluate(double[] memory) {
+            return this.leftOperandNode.evaluate(memory) != this.rightOperandNode.evaluate(memory) ? 1.0 : 0.0;
+        }
+    }
+
+    /**
+     * The evaluator node for evaluating the value of a long chain of arithmetic operators of the same precedence,
+     * e.g. "x1 + x2 - x3 + ... + xN", iteratively from the left, in the same order as nested nodes of binary operators.
+     */
+    private static final class ArithmeticChainEvaluatorNode extends EvaluatorNode {
+
+        /** Nodes for evaluating operands, from the left. */
+        private final EvaluatorNode[] operandNodes;
+
+        /** Symbols of operators ('+', '-', '*', or '/'), where the i-th operator is between the i-th and the (i+1)-th operands. */
+        private final char[] operatorSymbols;
+
+        /**
+         * Initializes operands and operators.
+         *
+         * @param operandNodes Nodes for evaluating operands, from the left.
+         * @param operatorSymbols Symbols of operators, from the left.
+         */
+        public ArithmeticChainEvaluatorNode(EvaluatorNode[] operandNodes, char[] operatorSymbols) {
+            this.operandNodes = operandNodes;
+            this.operatorSymbols = operatorSymbols;
+        }
+
+        /**
+         * Performs operations from the left.
+         *
+         * @param memory The array storing values of variables.
+         * @return The result value of the chain.
+         */
+        @Override
+        public double evaluate(double[] memory) {
+            double value = this.operandNodes[0].evaluate(memory);
+            int operatorCount = this.operatorSymbols.length;
+            for (int ioperator=0; ioperator<operatorCount; ioperator++) {
+                double operand = this.operandNodes[ioperator + 1].evaluate(memory);
+                switch (this.operatorSymbols[ioperator]) {
+                    case '+': value += operand; break;
+                    case '-': value -= operand; break;
+                    case '*': value *= operand; break;
+                    default:  value /= operand; break;
+                }
+            }
+            return value;
+        }
+
+        @Override
+        public EvaluatorNode[] getChildNodes() {
+            return this.operandNodes.clone();
+        }
+
+        @Override
+        public String getPlanAttributes() {
+            return " operators=\"" + new String(this.operatorSymbols) + "\"";
+        }
+
+        @Override
+        public boolean isShareable() {
+            return true;
+        }
+
+        @Override
+        public boolean hasSameAttributes(EvaluatorNode node) {
+            return Arrays.equals(this.operatorSymbols, ((ArithmeticChainEvaluatorNode)node).operatorSymbols);
+        }
+
+        @Override
+        public int getAttributeHashCode() {
+            return Arrays.hashCode(this.operatorSymbols);
+        }
     }
 
     /**
-     * Expresses the AST under this node in XML-like text format.
-     *
-     * @param indentStage The stage of indent of this node.
-     * @return XML-like text representation of the AST under this node.
+     * The evaluator node for evaluating the value of a conditional operator: "condition ? value1 : value2".
+     * Only one of values, selected by the condition, is evaluated.
      */
-    public String toMarkuppedText(int indentStage) {
-        StringBuilder indentBuilder = new StringBuilder();
-        for (int istage=0; istage<indentStage; istage++) {
-            indentBuilder.append(StaticSettings.AST_INDENT);
-        }
-        final String indent = indentBuilder.toString();
-        final String eol = System.getProperty("line.separator");
-        StringBuilder resultBuilder = new StringBuilder();
+    private static final class ConditionalEvaluatorNode extends EvaluatorNode {
 
-        resultBuilder.append(indent);
-        resultBuilder.append("<");
-        resultBuilder.append(this.token.type);
-        resultBuilder.append(" word=\"");
-        resultBuilder.append(this.token.word);
-        resultBuilder.append("\"");
-        if (this.token.type == TokenType.OPERATOR) {
-            resultBuilder.append(" optype=\"");
-            resultBuilder.append(this.token.operator.type);
-            resultBuilder.append("\" precedence=\"");
-            resultBuilder.append(this.token.operator.precedence);
-            resultBuilder.append("\"");
+        /** The node for evaluating the condition. */
+        private final EvaluatorNode conditionNode;
+
+        /** The node for evaluating the value when the condition is true (non-zero). */
+        private final EvaluatorNode trueValueNode;
+
+        /** The node for evaluating the value when the condition is false (zero). */
+        private final EvaluatorNode falseValueNode;
+
+        /**
+         * Initializes the condition and values.
+         *
+         * @param conditionNode The node for evaluating the condition.
+         * @param trueValueNode The node for evaluating the value when the condition is true (non-zero).
+         * @param falseValueNode The node for evaluating the value when the condition is false (zero).
+         */
+        public ConditionalEvaluatorNode(EvaluatorNode conditionNode, EvaluatorNode trueValueNode, EvaluatorNode falseValueNode) {
+            this.conditionNode = conditionNode;
+            this.trueValueNode = trueValueNode;
+            this.falseValueNode = falseValueNode;
         }
 
-        if (0 < this.childNodeList.size()) {
-            resultBuilder.append(">");
-            for (AstNode childNode: this.childNodeList) {
-                resultBuilder.append(eol);
-                resultBuilder.append(childNode.toMarkuppedText(indentStage + 1));
+        /**
+         * Evaluates the condition, and evaluates the value selected by it.
+         *
+         * @param memory The array storing values of variables.
+         * @return The value selected by the condition.
+         */
+        @Override
+        public double evaluate(double[] memory) {
+            if (this.conditionNode.evaluate(memory) != 0.0) {
+                return this.trueValueNode.evaluate(memory);
+            } else {
+                return this.falseValueNode.evaluate(memory);
             }
-            resultBuilder.append(eol);
-            resultBuilder.append(indent);
-            resultBuilder.append("</");
-            resultBuilder.append(this.token.type);
-            resultBuilder.append(">");
+        }
 
-        } else {
-            resultBuilder.append(" />");
+        @Override
+        public EvaluatorNode[] getChildNodes() {
+            return new EvaluatorNode[] { this.conditionNode, this.trueValueNode, this.falseValueNode };
         }
 
-        return resultBuilder.toString();
+        @Override
+        public boolean isShareable() {
+            return true;
+        }
     }
-}
 
+    /**
+     * The evaluator node for evaluating the value of a conditional operator: "condition ? value1 : value2",
+     * of which values are trivial (literals or variables).
+     * Both values are evaluated, and one of them is selected without branches.
+     */
+    private static final class SelectEvaluatorNode extends EvaluatorNode {
 
-/**
- * The class for evaluating the value of an AST.
- */
-final class Evaluator {
+        /** The node for evaluating the condition. */
+        private final EvaluatorNode conditionNode;
 
-    /** The tree of evaluator nodes, which evaluates an expression. */
-    private volatile EvaluatorNode evaluatorNodeTree = null;
+        /** The node for evaluating the value when the condition is true (non-zero). */
+        private final EvaluatorNode trueValueNode;
 
-    /**
-     * Updates the state to evaluate the value of the AST.
-     *
-     * @param ast The root node of the AST.
-     * @param variableTable The Map mapping each variable name to an address of the variable.
-     * @param functionTable The Map mapping each function name to an IExevalatorFunction instance.
-     */
-    public void update(AstNode ast, Map<String, Integer> variableTable, Map<String, Exevalator.FunctionInterface> functionTable) {
-        this.evaluatorNodeTree = Evaluator.createEvaluatorNodeTree(ast, variableTable, functionTable);
-    }
+        /** The node for evaluating the value when the condition is false (zero). */
+        private final EvaluatorNode falseValueNode;
 
-    /**
-     * Returns whether "evaluate" method is available on the current state.
-     *
-     * @return Return value - True if "evaluate" method is available.
-     */
-    public boolean isEvaluatable() {
-        return this.evaluatorNodeTree != null;
-    }
+        /**
+         * Initializes the condition and values.
+         *
+         * @param conditionNode The node for evaluating the condition.
+         * @param trueValueNode The node for evaluating the value when the condition is true (non-zero).
+         * @param falseValueNode The node for evaluating the value when the condition is false (zero).
+         */
+        public SelectEvaluatorNode(EvaluatorNode conditionNode, EvaluatorNode trueValueNode, EvaluatorNode falseValueNode) {
+            this.conditionNode = conditionNode;
+            this.trueValueNode = trueValueNode;
+            this.falseValueNode = falseValueNode;
+        }
 
-    /**
-     * Evaluates the value of the AST set by "update" method.
-     *
-     * @param memory The Vec used as as a virtual memory storing values of variables.
-     * @return The evaluated value.
-     */
-    public double evaluate(double[] memory) {
-        return this.evaluatorNodeTree.evaluate(memory);
+        /**
+         * Evaluates the condition and both values, and selects one of values.
+         *
+         * @param memory The array storing values of variables.
+         * @return The value selected by the condition.
+         */
+        @Override
+        public double evaluate(double[] memory) {
+            double condition = this.conditionNode.evaluate(memory);
+            double trueValue = this.trueValueNode.evaluate(memory);
+            double falseValue = this.falseValueNode.evaluate(memory);
+            return condition != 0.0 ? trueValue : falseValue;
+        }
+
+        @Override
+        public EvaluatorNode[] getChildNodes() {
+            return new EvaluatorNode[] { this.conditionNode, this.trueValueNode, this.falseValueNode };
+        }
+
+        @Override
+        public boolean isShareable() {
+            return true;
+        }
     }
 
     /**
-     * Creates a tree of evaluator nodes corresponding with the specified AST.
-     *
-     * @param ast The root node of the AST.
-     * @param variableTable The Map mapping each variable name to an address of the variable.
-     * @param functionTable The Map mapping each function name to an IExevalatorFunction instance.
-     * @return The root node of the created tree of evaluator nodes.
+     * The evaluator node for evaluating the value of a unary-minus operator.
      */
-    private static EvaluatorNode createEvaluatorNodeTree(
-            AstNode ast, Map<String, Integer> variableTable, Map<String, Exevalator.FunctionInterface> functionTable) {
+    private static final class MinusEvaluatorNode extends EvaluatorNode {
 
-        // Note: This method creates a tree of evaluator nodes by traversing each node in the AST recursively.
+        /** The node for evaluating the operand. */
+        private final EvaluatorNode operandNode;
 
-        List<AstNode> childNodeList = ast.childNodeList;
-        int childCount = childNodeList.size();
+        /**
+         * Initializes the operand.
+         *
+         * @param operandNode The node for evaluating the operand
+         */
+        public MinusEvaluatorNode(EvaluatorNode operandNode) {
+            this.operandNode = operandNode;
+        }
 
-        // Creates evaluator nodes of child nodes, and store then into an array.
-        Evaluator.EvaluatorNode childNodeNodes[] = new Evaluator.EvaluatorNode[childCount];
-        for (int ichild=0; ichild<childCount; ichild++) {
-            AstNode childAstNode = childNodeList.get(ichild);
-            childNodeNodes[ichild] = createEvaluatorNodeTree(childAstNode, variableTable, functionTable);
+        /**
+         * Performs the division.
+         *
+         * @param memory The array storing values of variables.
+         * @return The result value of the division.
+         */
+        @Override
+        public double evaluate(double[] memory) {
+            return -this.operandNode.evaluate(memory);
         }
 
-        // Initialize evaluator nodes of this node.
-        Token token = ast.token;
-        if (token.type == TokenType.NUMBER_LITERAL) {
-            return new Evaluator.NumberLiteralEvaluatorNode(token.word);
-        } else if (token.type == TokenType.VARIABLE_IDENTIFIER) {
-            if (!variableTable.containsKey(token.word)) {
-                throw new Exevalator.Exception(ErrorMessages.VARIABLE_NOT_FOUND.replace("$0", token.word));
-            }
-            int address = variableTable.get(token.word);
-            return new Evaluator.VariableEvaluatorNode(address);
-        } else if (token.type == TokenType.FUNCTION_IDENTIFIER) {
-            return null;
-        } else if (token.type == TokenType.OPERATOR) {
-            Operator op = token.operator;
+        @Override
+        public EvaluatorNode[] getChildNodes() {
+            return new EvaluatorNode[] { this.operandNode };
+        }
 
-            if (op.type == OperatorType.UNARY_PREFIX && op.symbol == '-') {
-                return new Evaluator.MinusEvaluatorNode(childNodeNodes[0]);
-            } else if (op.type == OperatorType.BINARY && op.symbol == '+') {
-                return new Evaluator.AdditionEvaluatorNode(childNodeNodes[0], childNodeNodes[1]);
-            } else if (op.type == OperatorType.BINARY && op.symbol == '-') {
-                return new Evaluator.SubtractionEvaluatorNode(childNodeNodes[0], childNodeNodes[1]);
-            } else if (op.type == OperatorType.BINARY && op.symbol == '*') {
-                return new Evaluator.MultiplicationEvaluatorNode(childNodeNodes[0], childNodeNodes[1]);
-            } else if (op.type == OperatorType.BINARY && op.symbol == '/') {
-                return new Evaluator.DivisionEvaluatorNode(childNodeNodes[0], childNodeNodes[1]);
-            } else if (op.type == OperatorType.CALL && op.symbol == '(') {
-                String identifier = childNodeList.get(0).token.word;
-                if (!functionTable.containsKey(identifier)) {
-                    throw new Exevalator.Exception(ErrorMessages.FUNCTION_NOT_FOUND.replace("$0", identifier));
-                }
-                Exevalator.FunctionInterface function = functionTable.get(identifier);
-                int argCount = childCount - 1;
-                Evaluator.EvaluatorNode[] argNodes = new Evaluator.EvaluatorNode[argCount];
-                for (int iarg=0; iarg<argCount; iarg++) {
-                    argNodes[iarg] = childNodeNodes[iarg + 1];
-                }
-                return new Evaluator.FunctionEvaluatorNode(function, identifier, argNodes);
-            } else {
-                throw new Exevalator.Exception(ErrorMessages.UNEXPECTED_OPERATOR.replace("$0", Character.toString(op.symbol)));
-            }
-        } else {
-            throw new Exevalator.Exception(ErrorMessages.UNEXPECTED_TOKEN.replace("$0", token.type.toString()));
+        @Override
+        public boolean isShareable() {
+            return true;
         }
     }
 
     /**
-     * The super class of evaluator nodes.
+     * The evaluator node wrapping another node in the profiling mode,
+     * which counts calls of the wrapped node, and measures times of them at intervals (StaticSettings.PROFILER_SAMPLING_INTERVAL).
      */
-    private static abstract class EvaluatorNode {
+    private static final class ProfilingEvaluatorNode extends EvaluatorNode {
+
+        /** The wrapped node. */
+        private final EvaluatorNode targetNode;
+
+        /** The number of calls. */
+        private long count = 0L;
+
+        /** The number of calls of which times have been measured. */
+        private long sampledCount = 0L;
+
+        /** The sum of measured times. */
+        private long sampledTime = 0L;
 
         /**
-         * Performs the evaluation.
+         * Initializes the wrapped node.
+         *
+         * @param targetNode The node to be wrapped.
+         */
+        public ProfilingEvaluatorNode(EvaluatorNode targetNode) {
+            this.targetNode = targetNode;
+        }
+
+        /**
+         * Evaluates the wrapped node, with counting the call and measuring the time if it is at the sampling interval.
          *
          * @param memory The array storing values of variables.
-         * @return The evaluated value.
+         * @return The value of the wrapped node.
          */
-        public abstract double evaluate(double[] memory);
+        @Override
+        public double evaluate(double[] memory) {
+            long count = this.count++;
+            if (count % StaticSettings.PROFILER_SAMPLING_INTERVAL != 0) {
+                return this.targetNode.evaluate(memory);
+            }
+            long beginTime = System.nanoTime();
+            double value = this.targetNode.evaluate(memory);
+            this.sampledTime += System.nanoTime() - beginTime;
+            this.sampledCount++;
+            return value;
+        }
+
+        /**
+         * Returns the number of calls.
+         *
+         * @return The number of calls.
+         */
+        public long getCount() {
+            return this.count;
+        }
+
+        /**
+         * Returns the total time of all calls, estimated from measured times.
+         *
+         * @return The estimated total time in nanoseconds.
+         */
+        public long getEstimatedTime() {
+            if (this.sampledCount == 0L) {
+                return 0L;
+            }
+            return (long)((double)this.sampledTime / this.sampledCount * this.count);
+        }
+
+        /**
+         * Discards the counted and measured values.
+         */
+        public void reset() {
+            this.count = 0L;
+            this.sampledCount = 0L;
+            this.sampledTime = 0L;
+        }
+
+        @Override
+        public EvaluatorNode[] getChildNodes() {
+            return new EvaluatorNode[] { this.targetNode };
+        }
     }
 
     /**
-     * The super class of evaluator nodes of binary operations.
+     * The evaluator node for evaluating the value of a number literal.
      */
-    private static abstract class BinaryOperationEvaluatorNode extends EvaluatorNode {
+    private static final class NumberLiteralEvaluatorNode extends EvaluatorNode {
 
-        /** The node for evaluating the right-side operand. */
-        protected final EvaluatorNode leftOperandNode;
+        /** The value of the number literal. */
+        private final double value;
 
-        /** The node for evaluating the left-side operand. */
-        protected final EvaluatorNode rightOperandNode;
+        /**
+         * Initializes the value of the number literal.
+         *
+         * @param literal The number literal.
+         */
+        public NumberLiteralEvaluatorNode(String literal) {
+            try {
+                this.value = Double.parseDouble(literal);
+            } catch (NumberFormatException nfe) {
+                throw new Exevalator.Exception(Exevalator.ErrorCode.INVALID_NUMBER_LITERAL, -1, literal);
+            }
+        }
 
         /**
-         * Initializes operands.
+         * Initializes the value, computed from constants in advance.
          *
-         * @param leftOperandNode The node for evaluating the left-side operand
-         * @param rightOperandNode The node for evaluating the right-side operand
+         * @param value The value.
          */
-        protected BinaryOperationEvaluatorNode(EvaluatorNode leftOperandNode, EvaluatorNode rightOperandNode) {
-            this.leftOperandNode = leftOperandNode;
-            this.rightOperandNode = rightOperandNode;
+        public NumberLiteralEvaluatorNode(double value) {
+            this.value = value;
+        }
+
+        /**
+         * Returns the value of the number literal.
+         *
+         * @param memory The array storing values of variables.
+         * @return The value of the number literal.
+         */
+        @Override
+        public double evaluate(double[] memory) {
+            return this.value;
+        }
+
+        @Override
+        public String getPlanAttributes() {
+            return " value=\"" + this.value + "\"";
+        }
+
+        @Override
+        public boolean isShareable() {
+            return true;
+        }
+
+        @Override
+        public boolean hasSameAttributes(EvaluatorNode node) {
+            return Double.doubleToLongBits(this.value) == Double.doubleToLongBits(((NumberLiteralEvaluatorNode)node).value);
+        }
+
+        @Override
+        public int getAttributeHashCode() {
+            return Double.hashCode(this.value);
         }
     }
 
     /**
-     * The evaluator node for evaluating the value of a addition operator.
+     * The evaluator node for evaluating the value of a variable.
      */
-    private static final class AdditionEvaluatorNode extends BinaryOperationEvaluatorNode {
+    private static final class VariableEvaluatorNode extends EvaluatorNode {
+
+        /** The address of the variable. */
+        private final int address;
 
         /**
-         * Initializes operands.
+         * Initializes the address of the variable.
          *
-         * @param leftOperandNode The node for evaluating the left-side operand.
-         * @param rightOperandNode The node for evaluating the right-side operand.
+         * @param address The address of the variable.
          */
-        public AdditionEvaluatorNode(EvaluatorNode leftOperandNode, EvaluatorNode rightOperandNode) {
-            super(leftOperandNode, rightOperandNode);
+        public VariableEvaluatorNode(int address) {
+            this.address = address;
         }
 
         /**
-         * Performs the addition.
+         * Returns the value of the variable.
          *
          * @param memory The array storing values of variables.
-         * @return The result value of the addition.
+         * @return The value of the variable.
          */
         @Override
         public double evaluate(double[] memory) {
-            return this.leftOperandNode.evaluate(memory) + this.rightOperandNode.evaluate(memory);
+            if (address < 0 || memory.length <= address) {
+                throw new Exevalator.Exception(Exevalator.ErrorCode.INVALID_MEMORY_ADDRESS, -1, Integer.toString(this.address));
+            }
+            return memory[this.address];
+        }
+
+        @Override
+        public String getPlanAttributes() {
+            return " address=\"" + this.address + "\"";
+        }
+
+        @Override
+        public boolean isShareable() {
+            return true;
+        }
+
+        @Override
+        public boolean hasSameAttributes(EvaluatorNode node) {
+            return this.address == ((VariableEvaluatorNode)node).address;
+        }
+
+        @Override
+        public int getAttributeHashCode() {
+            return this.address;
         }
     }
 
     /**
-     * The evaluator node for evaluating the value of a subtraction operator.
+     * The evaluator node for evaluating a let-binding: "let name = value in body".
      */
-    private static final class SubtractionEvaluatorNode extends BinaryOperationEvaluatorNode {
+    private static final class LetEvaluatorNode extends EvaluatorNode {
+
+        /** The address of the scratch slot storing the value of the bound variable. */
+        private final int address;
+
+        /** The node for evaluating the value to be bound. */
+        private final EvaluatorNode valueNode;
+
+        /** The node for evaluating the body, in which the bound variable is available. */
+        private final EvaluatorNode bodyNode;
 
         /**
-         * Initializes operands.
+         * Initializes the binding and the body.
          *
-         * @param leftOperandNode The node for evaluating the left-side operand.
-         * @param rightOperandNode The node for evaluating the right-side operand.
+         * @param address The address of the scratch slot storing the value of the bound variable.
+         * @param valueNode The node for evaluating the value to be bound.
+         * @param bodyNode The node for evaluating the body.
          */
-        public SubtractionEvaluatorNode(EvaluatorNode leftOperandNode, EvaluatorNode rightOperandNode) {
-            super(leftOperandNode, rightOperandNode);
+        public LetEvaluatorNode(int address, EvaluatorNode valueNode, EvaluatorNode bodyNode) {
+            this.address = address;
+            this.valueNode = valueNode;
+            this.bodyNode = bodyNode;
         }
 
         /**
-         * Performs the subtraction.
+         * Evaluates the bound value only once, stores it in the scratch slot, and evaluates the body.
          *
          * @param memory The array storing values of variables.
-         * @return The result value of the subtraction.
+         * @return The value of the body.
          */
         @Override
         public double evaluate(double[] memory) {
-            return this.leftOperandNode.evaluate(memory) - this.rightOperandNode.evaluate(memory);
+            memory[this.address] = this.valueNode.evaluate(memory);
+            return this.bodyNode.evaluate(memory);
+        }
+
+        @Override
+        public EvaluatorNode[] getChildNodes() {
+            return new EvaluatorNode[] { this.valueNode, this.bodyNode };
+        }
+
+        @Override
+        public String getPlanAttributes() {
+            return " address=\"" + this.address + "\"";
+        }
+
+        @Override
+        public boolean isShareable() {
+            return true;
+        }
+
+        @Override
+        public boolean hasSameAttributes(EvaluatorNode node) {
+            return this.address == ((LetEvaluatorNode)node).address;
+        }
+
+        @Override
+        public int getAttributeHashCode() {
+            return this.address;
         }
     }
 
     /**
-     * The evaluator node for evaluating the value of a multiplication operator.
+     * The super class of evaluator nodes of built-in reductions: "sum(index, lower, upper, expression)", etc.
      */
-    private static final class MultiplicationEvaluatorNode extends BinaryOperationEvaluatorNode {
+    private static abstract class ReductionEvaluatorNode extends EvaluatorNode {
+
+        /** The address of the scratch slot storing the value of the index variable. */
+        protected final int indexAddress;
+
+        /** The node for evaluating the lower limit of the index. */
+        protected final EvaluatorNode lowerNode;
+
+        /** The node for evaluating the upper limit of the index. */
+        protected final EvaluatorNode upperNode;
+
+        /** The node for evaluating the expression for each index. */
+        protected final EvaluatorNode bodyNode;
+
+        /** The checkpoint checked at each iteration, or null if it is not checked. */
+        protected final Checkpoint checkpoint;
+
+        /** The flag representing whether the stack trace is captured for the exception thrown for invalid limits. */
+        protected final boolean stackTraceEnabled;
 
         /**
-         * Initializes operands.
+         * Initializes the index variable, limits, and the expression.
          *
-         * @param leftOperandNode The node for evaluating the left-side operand.
-         * @param rightOperandNode The node for evaluating the right-side operand.
+         * @param indexAddress The address of the scratch slot storing the value of the index variable.
+         * @param lowerNode The node for evaluating the lower limit of the index.
+         * @param upperNode The node for evaluating the upper limit of the index.
+         * @param bodyNode The node for evaluating the expression for each index.
+         * @param checkpoint The checkpoint checked at each iteration, or null not to check it.
+         * @param stackTraceEnabled Specify false not to capture the stack trace of the exception thrown for invalid limits.
          */
-        public MultiplicationEvaluatorNode(EvaluatorNode leftOperandNode, EvaluatorNode rightOperandNode) {
-            super(leftOperandNode, rightOperandNode);
+        protected ReductionEvaluatorNode(int indexAddress, EvaluatorNode lowerNode, EvaluatorNode upperNode, EvaluatorNode bodyNode,
+                Checkpoint checkpoint, boolean stackTraceEnabled) {
+            this.indexAddress = indexAddress;
+            this.lowerNode = lowerNode;
+            this.upperNode = upperNode;
+            this.bodyNode = bodyNode;
+            this.checkpoint = checkpoint;
+            this.stackTraceEnabled = stackTraceEnabled;
         }
 
         /**
-         * Performs the multiplication.
+         * Returns the number of iterations of the index from the lower limit to the upper limit by 1.
+         * The number is computed from the limits in advance, because the index can't be increased by adding 1
+         * once it reaches 2^53 (the upper limit of integers exactly representable in double).
          *
-         * @param memory The array storing values of variables.
-         * @return The result value of the multiplication.
+         * @param lower The lower limit of the index.
+         * @param upper The upper limit of the index.
+         * @param functionName The name of the reduction, used in the error message.
+         * @return The number of iterations (0 if the lower limit exceeds the upper limit).
          */
+        protected long getIterationCount(double lower, double upper, String functionName) {
+            double iterationCount = lower <= upper ? Math.floor(upper - lower) + 1.0 : 0.0;
+            if (Double.isNaN(lower) || Double.isInfinite(lower) || Double.isNaN(upper) || Double.isInfinite(upper)
+                    || StaticSettings.MAX_REDUCTION_ITERATION_COUNT < iterationCount) {
+                throw Exevalator.Exception.create(
+                    this.stackTraceEnabled, Exevalator.ErrorCode.INVALID_REDUCTION_RANGE, -1, functionName, Double.toString(lower), Double.toString(upper)
+                );
+            }
+            return (long)iterationCount;
+        }
+
         @Override
-        public double evaluate(double[] memory) {
-            return this.leftOperandNode.evaluate(memory) * this.rightOperandNode.evaluate(memory);
+        public EvaluatorNode[] getChildNodes() {
+            return new EvaluatorNode[] { this.lowerNode, this.upperNode, this.bodyNode };
+        }
+
+        @Override
+        public String getPlanAttributes() {
+            return " indexAddress=\"" + this.indexAddress + "\"";
         }
     }
 
     /**
-     * The evaluator node for evaluating the value of a division operator.
+     * The evaluator node for evaluating the value of a summation: "sum(index, lower, upper, expression)".
      */
-    private static final class DivisionEvaluatorNode extends BinaryOperationEvaluatorNode {
+    private static final class SumEvaluatorNode extends ReductionEvaluatorNode {
 
         /**
-         * Initializes operands.
+         * Initializes the index variable, limits, and the expression.
          *
-         * @param leftOperandNode The node for evaluating the left-side operand.
-         * @param rightOperandNode The node for evaluating the right-side operand.
+         * @param indexAddress The address of the scratch slot storing the value of the index variable.
+         * @param lowerNode The node for evaluating the lower limit of the index.
+         * @param upperNode The node for evaluating the upper limit of the index.
+         * @param bodyNode The node for evaluating the expression for each index.
+         * @param checkpoint The checkpoint checked at each iteration, or null not to check it.
+         * @param stackTraceEnabled Specify false not to capture the stack trace of the exception thrown for invalid limits.
          */
-        public DivisionEvaluatorNode(EvaluatorNode leftOperandNode, EvaluatorNode rightOperandNode) {
-            super(leftOperandNode, rightOperandNode);
+        public SumEvaluatorNode(int indexAddress, EvaluatorNode lowerNode, EvaluatorNode upperNode, EvaluatorNode bodyNode,
+                Checkpoint checkpoint, boolean stackTraceEnabled) {
+            super(indexAddress, lowerNode, upperNode, bodyNode, checkpoint, stackTraceEnabled);
         }
 
         /**
-         * Performs the division.
+         * Performs the summation, by increasing the index from the lower limit to the upper limit by 1.
          *
          * @param memory The array storing values of variables.
-         * @return The result value of the division.
+         * @return The sum of values of the expression (0 if the lower limit exceeds the upper limit).
          */
         @Override
         public double evaluate(double[] memory) {
-            return this.leftOperandNode.evaluate(memory) / this.rightOperandNode.evaluate(memory);
+            double lower = this.lowerNode.evaluate(memory);
+            double upper = this.upperNode.evaluate(memory);
+            double sum = 0.0;
+            long iterationCount = getIterationCount(lower, upper, StaticSettings.SUM_FUNCTION_NAME);
+            for (long iteration=0L; iteration<iterationCount; iteration++) {
+                if (this.checkpoint != null) {
+                    this.checkpoint.check();
+                }
+                memory[this.indexAddress] = lower + iteration;
+                sum += this.bodyNode.evaluate(memory);
+            }
+            return sum;
         }
     }
 
     /**
-     * The evaluator node for evaluating the value of a unary-minus operator.
+     * The evaluator node for evaluating the value of a product: "prod(index, lower, upper, expression)".
      */
-    private static final class MinusEvaluatorNode extends EvaluatorNode {
-
-        /** The node for evaluating the operand. */
-        private final EvaluatorNode operandNode;
+    private static final class ProductEvaluatorNode extends ReductionEvaluatorNode {
 
         /**
-         * Initializes the operand.
+         * Initializes the index variable, limits, and the expression.
          *
-         * @param operandNode The node for evaluating the operand
+         * @param indexAddress The address of the scratch slot storing the value of the index variable.
+         * @param lowerNode The node for evaluating the lower limit of the index.
+         * @param upperNode The node for evaluating the upper limit of the index.
+         * @param bodyNode The node for evaluating the expression for each index.
+         * @param checkpoint The checkpoint checked at each iteration, or null not to check it.
+         * @param stackTraceEnabled Specify false not to capture the stack trace of the exception thrown for invalid limits.
          */
-        public MinusEvaluatorNode(EvaluatorNode operandNode) {
-            this.operandNode = operandNode;
+        public ProductEvaluatorNode(int indexAddress, EvaluatorNode lowerNode, EvaluatorNode upperNode, EvaluatorNode bodyNode,
+                Checkpoint checkpoint, boolean stackTraceEnabled) {
+            super(indexAddress, lowerNode, upperNode, bodyNode, checkpoint, stackTraceEnabled);
         }
 
         /**
-         * Performs the division.
+         * Performs the product, by increasing the index from the lower limit to the upper limit by 1.
          *
          * @param memory The array storing values of variables.
-         * @return The result value of the division.
+         * @return The product of values of the expression (1 if the lower limit exceeds the upper limit).
          */
         @Override
         public double evaluate(double[] memory) {
-            return -this.operandNode.evaluate(memory);
+            double lower = this.lowerNode.evaluate(memory);
+            double upper = this.upperNode.evaluate(memory);
+            double product = 1.0;
+            long iterationCount = getIterationCount(lower, upper, StaticSettings.PRODUCT_FUNCTION_NAME);
+            for (long iteration=0L; iteration<iterationCount; iteration++) {
+                if (this.checkpoint != null) {
+                    this.checkpoint.check();
+                }
+                memory[this.indexAddress] = lower + iteration;
+                product *= this.bodyNode.evaluate(memory);
+            }
+            return product;
         }
     }
 
     /**
-     * The evaluator node for evaluating the value of a number literal.
+     * The evaluator node for evaluating an assignment: "name = value".
      */
-    private static final class NumberLiteralEvaluatorNode extends EvaluatorNode {
+    private static final class AssignmentEvaluatorNode extends EvaluatorNode {
 
-        /** The value of the number literal. */
-        private final double value;
+        /** The address of the variable to which the value is assigned. */
+        private final int address;
+
+        /** The node for evaluating the value to be assigned. */
+        private final EvaluatorNode valueNode;
 
         /**
-         * Initializes the value of the number literal.
+         * Initializes the target variable and the value.
          *
-         * @param literal The number literal.
+         * @param address The address of the variable to which the value is assigned.
+         * @param valueNode The node for evaluating the value to be assigned.
          */
-        public NumberLiteralEvaluatorNode(String literal) {
-            try {
-                this.value = Double.parseDouble(literal);
-            } catch (NumberFormatException nfe) {
-                throw new Exevalator.Exception(ErrorMessages.INVALID_NUMBER_LITERAL.replace("$0", literal));
-            }
+        public AssignmentEvaluatorNode(int address, EvaluatorNode valueNode) {
+            this.address = address;
+            this.valueNode = valueNode;
         }
 
         /**
-         * Returns the value of the number literal.
+         * Evaluates the value and stores it to the variable.
          *
          * @param memory The array storing values of variables.
-         * @return The value of the number literal.
+         * @return The assigned value.
          */
         @Override
         public double evaluate(double[] memory) {
-            return this.value;
+            double value = this.valueNode.evaluate(memory);
+            memory[this.address] = value;
+            return value;
+        }
+
+        @Override
+        public EvaluatorNode[] getChildNodes() {
+            return new EvaluatorNode[] { this.valueNode };
+        }
+
+        @Override
+        public String getPlanAttributes() {
+            return " address=\"" + this.address + "\"";
+        }
+
+        @Override
+        public boolean isShareable() {
+            return true;
+        }
+
+        @Override
+        public boolean hasSameAttributes(EvaluatorNode node) {
+            return this.address == ((AssignmentEvaluatorNode)node).address;
+        }
+
+        @Override
+        public int getAttributeHashCode() {
+            return this.address;
         }
     }
 
     /**
-     * The evaluator node for evaluating the value of a variable.
+     * The evaluator node for evaluating sequential statements: "s1; s2; s3; ...".
      */
-    private static final class VariableEvaluatorNode extends EvaluatorNode {
+    private static final class StatementListEvaluatorNode extends EvaluatorNode {
 
-        /** The address of the variable. */
-        private volatile int address;
+        /** Nodes for evaluating statements. */
+        private final EvaluatorNode[] statementNodes;
 
         /**
-         * Initializes the address of the variable.
+         * Initializes statements.
          *
-         * @param address The address of the variable.
+         * @param statementNodes Nodes for evaluating statements.
          */
-        public VariableEvaluatorNode(int address) {
-            this.address = address;
+        public StatementListEvaluatorNode(EvaluatorNode[] statementNodes) {
+            this.statementNodes = statementNodes;
         }
 
         /**
-         * Returns the value of the variable.
+         * Evaluates statements in order.
          *
          * @param memory The array storing values of variables.
-         * @return The value of the variable.
+         * @return The value of the last statement.
          */
         @Override
         public double evaluate(double[] memory) {
-            if (address < 0 || memory.length <= address) {
-                throw new Exevalator.Exception(ErrorMessages.INVALID_MEMORY_ADDRESS.replace("$0", Integer.toString(this.address)));
+            int lastIndex = this.statementNodes.length - 1;
+            for (int istatement=0; istatement<lastIndex; istatement++) {
+                this.statementNodes[istatement].evaluate(memory);
             }
-            return memory[this.address];
+            return this.statementNodes[lastIndex].evaluate(memory);
+        }
+
+        @Override
+        public EvaluatorNode[] getChildNodes() {
+            return this.statementNodes.clone();
+        }
+
+        @Override
+        public boolean isShareable() {
+            return true;
         }
     }
 
@@ -1474,16 +6448,25 @@ final class Evaluator {
     private static final class FunctionEvaluatorNode extends EvaluatorNode {
 
         /** The function to be called. */
-        private volatile Exevalator.FunctionInterface function;
+        private final Exevalator.FunctionInterface function;
 
         /** The name of the function. */
-        private volatile String functionName;
+        private final String functionName;
 
         /** Evaluator nodes for evaluating values of arguments. */
-        private volatile EvaluatorNode[] argumentEvalNodes;
+        private final EvaluatorNode[] argumentEvalNodes;
 
         /** An array storing evaluated values of arguments. */
-        private volatile double[] argumentArrayBuffer;
+        private final double[] argumentArrayBuffer;
+
+        /** The listener notified of times of function calls, or null if they are not measured. */
+        private final Exevalator.EventListener functionCallListener;
+
+        /** The checkpoint checked before calling the function, or null if it is not checked. */
+        private final Checkpoint checkpoint;
+
+        /** The flag representing whether the stack trace is captured for the exception wrapping the error in the function. */
+        private final boolean stackTraceEnabled;
 
         /**
          * Initializes information of functions to be called.
@@ -1491,13 +6474,20 @@ final class Evaluator {
          * @param function The function to be called.
          * @param functionName The name of the function.
          * @param argumentEvalNodes Evaluator nodes for evaluating values of arguments.
+         * @param functionCallListener The listener notified of times of function calls, or null not to measure them.
+         * @param checkpoint The checkpoint checked before calling the function, or null not to check it.
+         * @param stackTraceEnabled Specify false not to capture the stack trace of the exception wrapping the error in the function.
          */
-        public FunctionEvaluatorNode(
-                Exevalator.FunctionInterface function, String functionName, EvaluatorNode[] argumentEvalNodes) {
+        public FunctionEvaluatorNode(Exevalator.FunctionInterface function, String functionName,
+                EvaluatorNode[] argumentEvalNodes, Exevalator.EventListener functionCallListener, Checkpoint checkpoint,
+                boolean stackTraceEnabled) {
             this.function = function;
             this.functionName = functionName;
             this.argumentEvalNodes = argumentEvalNodes;
             this.argumentArrayBuffer = new double[this.argumentEvalNodes.length];
+            this.functionCallListener = functionCallListener;
+            this.checkpoint = checkpoint;
+            this.stackTraceEnabled = stackTraceEnabled;
         }
 
         /**
@@ -1512,11 +6502,154 @@ final class Evaluator {
             for (int iarg=0; iarg<argCount; iarg++) {
                 this.argumentArrayBuffer[iarg] = this.argumentEvalNodes[iarg].evaluate(memory);
             }
+            if (this.checkpoint != null) {
+                this.checkpoint.check();
+            }
+            long beginTime = this.functionCallListener != null ? System.nanoTime() : 0L;
+            double returnedValue;
+            try {
+                returnedValue = this.function.invoke(this.argumentArrayBuffer);
+            } catch (Exevalator.EvaluationAbortedException eae) {
+                // Thrown when the evaluation has been aborted in the function (e.g. when evaluating lazy arguments).
+                throw eae;
+            } catch (Exception e) {
+                throw new Exevalator.Exception(
+                    Exevalator.ErrorCode.FUNCTION_ERROR, -1, new String[] { this.functionName, String.valueOf(e.getMessage()) }, e,
+                    this.stackTraceEnabled
+                );
+            }
+            if (this.functionCallListener != null) {
+                this.functionCallListener.functionCalled(this.functionName, System.nanoTime() - beginTime);
+            }
+            return returnedValue;
+        }
+
+        @Override
+        public EvaluatorNode[] getChildNodes() {
+            return this.argumentEvalNodes.clone();
+        }
+
+        @Override
+        public String getPlanAttributes() {
+            return " name=\"" + this.functionName + "\"";
+        }
+    }
+
+    /**
+     * The evaluator node for evaluating a function-call operator of a function implementing LazyFunctionInterface.
+     * This node itself is passed to the function as LazyArguments, so no objects are allocated for each call.
+     */
+    private static final class LazyFunctionEvaluatorNode extends EvaluatorNode implements Exevalator.LazyArguments {
+
+        /** The function to be called. */
+        private final Exevalator.LazyFunctionInterface function;
+
+        /** The name of the function. */
+        private final String functionName;
+
+        /** Evaluator nodes for evaluating values of arguments. */
+        private final EvaluatorNode[] argumentEvalNodes;
+
+        /**
+         * The array storing values of variables, referred when the function evaluates arguments.
+         * It is set only during the call of the function, and restored after it for re-entrant calls (null outside calls).
+         */
+        private double[] memory = null;
+
+        /** The listener notified of times of function calls, or null if they are not measured. */
+        private final Exevalator.EventListener functionCallListener;
+
+        /** The checkpoint checked before calling the function, or null if it is not checked. */
+        private final Checkpoint checkpoint;
+
+        /** The flag representing whether the stack trace is captured for the exception wrapping the error in the function. */
+        private final boolean stackTraceEnabled;
+
+        /**
+         * Initializes information of functions to be called.
+         *
+         * @param function The function to be called.
+         * @param functionName The name of the function.
+         * @param argumentEvalNodes Evaluator nodes for evaluating values of arguments.
+         * @param functionCallListener The listener notified of times of function calls, or null not to measure them.
+         * @param checkpoint The checkpoint checked before calling the function, or null not to check it.
+         * @param stackTraceEnabled Specify false not to capture the stack trace of the exception wrapping the error in the function.
+         */
+        public LazyFunctionEvaluatorNode(Exevalator.LazyFunctionInterface function, String functionName,
+                EvaluatorNode[] argumentEvalNodes, Exevalator.EventListener functionCallListener, Checkpoint checkpoint,
+                boolean stackTraceEnabled) {
+            this.function = function;
+            this.functionName = functionName;
+            this.argumentEvalNodes = argumentEvalNodes;
+            this.functionCallListener = functionCallListener;
+            this.checkpoint = checkpoint;
+            this.stackTraceEnabled = stackTraceEnabled;
+        }
+
+        /**
+         * Calls the function and returns the returned value of the function.
+         * Arguments are not evaluated here, but evaluated when the function requires them.
+         *
+         * @param memory The array storing values of variables.
+         * @return The returned value of the function.
+         */
+        @Override
+        public double evaluate(double[] memory) {
+            if (this.checkpoint != null) {
+                this.checkpoint.check();
+            }
+            long beginTime = this.functionCallListener != null ? System.nanoTime() : 0L;
+            double returnedValue;
+            double[] outerMemory = this.memory;
+            this.memory = memory;
             try {
-                return this.function.invoke(this.argumentArrayBuffer);
+                returnedValue = this.function.invoke(this);
+            } catch (Exevalator.Exception ee) {
+                // Thrown when evaluating lazy arguments (or the evaluation has been aborted), so keep the original code and position.
+                throw ee;
             } catch (Exception e) {
-                throw new Exevalator.Exception(ErrorMessages.FUNCTION_ERROR.replace("$0", this.functionName).replace("$1", e.getMessage()), e);
+                throw new Exevalator.Exception(
+                    Exevalator.ErrorCode.FUNCTION_ERROR, -1, new String[] { this.functionName, String.valueOf(e.getMessage()) }, e,
+                    this.stackTraceEnabled
+                );
+            } finally {
+                this.memory = outerMemory;
             }
+            if (this.functionCallListener != null) {
+                this.functionCallListener.functionCalled(this.functionName, System.nanoTime() - beginTime);
+            }
+            return returnedValue;
+        }
+
+        @Override
+        public EvaluatorNode[] getChildNodes() {
+            return this.argumentEvalNodes.clone();
+        }
+
+        @Override
+        public String getPlanAttributes() {
+            return " name=\"" + this.functionName + "\"";
+        }
+
+        /**
+         * Returns the number of arguments.
+         *
+         * @return The number of arguments.
+         */
+        @Override
+        public int count() {
+            return this.argumentEvalNodes.length;
+        }
+
+        /**
+         * Evaluates the value of the argument at the specified index.
+         *
+         * @param index The index of the argument.
+         * @return The value of the argument.
+         */
+        @Override
+        public double arg(int index) {
+            return this.argumentEvalNodes[index].evaluate(this.memory);
         }
     }
 }
@@ -1539,73 +6672,162 @@ final class StaticSettings {
     /** The maximum depth of an Abstract Syntax Tree (AST). */
     public static final int MAX_AST_DEPTH = 32;
 
+    /**
+     * The upper limit of the maximum depth of ASTs set by "setLimits" method,
+     * up to which recursive calls in compilations and evaluations don't overflow the default stack (1 MB) of threads.
+     */
+    public static final int MAX_AST_DEPTH_UPPER_LIMIT = 512;
+
+    /** The minimum number of operators of a chain of arithmetic operators (e.g. "x1 + x2 + ... + xN") evaluated iteratively. */
+    public static final int MIN_ARITHMETIC_CHAIN_LENGTH = 16;
+
     /** The indent used in text representations of ASTs. */
     public static final String AST_INDENT = "  ";
 
+    /** The interval of calls of each evaluator node at which the time is measured, in the profiling mode. */
+    public static final int PROFILER_SAMPLING_INTERVAL = 16;
+
+    /** The estimated cost of a call of a function of which cost is not set by "setFunctionCost", in "explain" method. */
+    public static final double DEFAULT_FUNCTION_COST = 10.0;
+
+    /** The maximum number of iterations of a reduction (sum or prod), up to which the number is exactly representable in double (2^53). */
+    public static final long MAX_REDUCTION_ITERATION_COUNT = 1L << 53;
+
+    /** The estimated number of iterations of a reduction of which limits are not constants, in "explain" method. */
+    public static final int DEFAULT_REDUCTION_ITERATION_COUNT = 100;
+
     /** The regular expression of number literals. */
     public static final String NUMBER_LITERAL_REGEX =
-        "(?<=(\\s|\\+|-|\\*|/|\\(|\\)|,|^))" + // Token splitters or start of expression
+        "(?<=[\\s+\\-*/(),=;<>?:]|^)" +     // Token splitters or start of expression
         "([0-9]+(\\.[0-9]+)?)" +               // Significand part
         "([eE][+\\-]?[0-9]+)?";              // Exponent part
 
+    /** The compiled pattern of NUMBER_LITERAL_REGEX. */
+    public static final Pattern NUMBER_LITERAL_PATTERN = Pattern.compile(NUMBER_LITERAL_REGEX);
+
+    /** The keyword beginning a let-binding: "let name = value in expression". */
+    public static final String LET_KEYWORD = "let";
+
+    /** The name of the built-in summation: "sum(index, lower, upper, expression)". */
+    public static final String SUM_FUNCTION_NAME = "sum";
+
+    /** The name of the built-in product: "prod(index, lower, upper, expression)". */
+    public static final String PRODUCT_FUNCTION_NAME = "prod";
+
     /** The escaped representation of number literals in expressions */
     public static final String ESCAPED_NUMBER_LITERAL = "@NUMBER_LITERAL@";
 
     /** The set of symbols of available operators. */
-    public static final Set<Character> OPERATOR_SYMBOL_SET;
+    public static final Set<String> OPERATOR_SYMBOL_SET;
 
     /** The Map mapping each symbol of an unary-prefix operator to an instance of Operator class. */
-    public static final Map<Character, Operator> UNARY_PREFIX_OPERATOR_SYMBOL_MAP;
+    public static final Map<String, Operator> UNARY_PREFIX_OPERATOR_SYMBOL_MAP;
 
     /** The Map mapping each symbol of an binary operator to an instance of Operator class. */
-    public static final Map<Character, Operator> BINARY_OPERATOR_SYMBOL_MAP;
+    public static final Map<String, Operator> BINARY_OPERATOR_SYMBOL_MAP;
 
     /** The Map mapping each symbol of an call operator to an instance of Operator class. */
-    public static final Map<Character, Operator> CALL_OPERATOR_SYMBOL_MAP;
+    public static final Map<String, Operator> CALL_OPERATOR_SYMBOL_MAP;
 
     /** The list of symbols to split an expression into tokens. */
-    public static final List<Character> TOKEN_SPLITTER_SYMBOL_LIST;
+    public static final List<String> TOKEN_SPLITTER_SYMBOL_LIST;
+
+    /** The regular expression pattern matching with any symbols in TOKEN_SPLITTER_SYMBOL_LIST. */
+    public static final Pattern TOKEN_SPLITTER_PATTERN;
 
     static {
-        Operator additionOperator       = new Operator(OperatorType.BINARY, '+', 400, OperatorAssociativity.LEFT);
-        Operator subtractionOperator    = new Operator(OperatorType.BINARY, '-', 400, OperatorAssociativity.LEFT);
-        Operator multiplicationOperator = new Operator(OperatorType.BINARY, '*', 300, OperatorAssociativity.LEFT);
-        Operator divisionOperator       = new Operator(OperatorType.BINARY, '/', 300, OperatorAssociativity.LEFT);
-        Operator minusOperator          = new Operator(OperatorType.UNARY_PREFIX, '-', 200, OperatorAssociativity.RIGHT);
-        Operator callBeginOperator      = new Operator(OperatorType.CALL, '(', 100, OperatorAssociativity.LEFT);
-        Operator callEndOperator        = new Operator(OperatorType.CALL, ')', Integer.MAX_VALUE, OperatorAssociativity.LEFT); // least prior
-        Operator callSeparatorOperator  = new Operator(OperatorType.CALL, ',', Integer.MAX_VALUE, OperatorAssociativity.LEFT); // least prior
-
-        OPERATOR_SYMBOL_SET = new HashSet<Character>();
-        OPERATOR_SYMBOL_SET.add('+');
-        OPERATOR_SYMBOL_SET.add('-');
-        OPERATOR_SYMBOL_SET.add('*');
-        OPERATOR_SYMBOL_SET.add('/');
-        OPERATOR_SYMBOL_SET.add('(');
-        OPERATOR_SYMBOL_SET.add(')');
-        OPERATOR_SYMBOL_SET.add(',');
-
-        UNARY_PREFIX_OPERATOR_SYMBOL_MAP = new ConcurrentHashMap<Character, Operator>();
-        UNARY_PREFIX_OPERATOR_SYMBOL_MAP.put('-', minusOperator);
-
-        BINARY_OPERATOR_SYMBOL_MAP = new ConcurrentHashMap<Character, Operator>();
-        BINARY_OPERATOR_SYMBOL_MAP.put('+', additionOperator);
-        BINARY_OPERATOR_SYMBOL_MAP.put('-', subtractionOperator);
-        BINARY_OPERATOR_SYMBOL_MAP.put('*', multiplicationOperator);
-        BINARY_OPERATOR_SYMBOL_MAP.put('/', divisionOperator);
-
-        CALL_OPERATOR_SYMBOL_MAP = new ConcurrentHashMap<Character, Operator>();
-        CALL_OPERATOR_SYMBOL_MAP.put('(', callBeginOperator);
-        CALL_OPERATOR_SYMBOL_MAP.put(')', callEndOperator);
-        CALL_OPERATOR_SYMBOL_MAP.put(',', callSeparatorOperator);
-
-        TOKEN_SPLITTER_SYMBOL_LIST = new ArrayList<Character>();
-        TOKEN_SPLITTER_SYMBOL_LIST.add('+');
-        TOKEN_SPLITTER_SYMBOL_LIST.add('-');
-        TOKEN_SPLITTER_SYMBOL_LIST.add('*');
-        TOKEN_SPLITTER_SYMBOL_LIST.add('/');
-        TOKEN_SPLITTER_SYMBOL_LIST.add('(');
-        TOKEN_SPLITTER_SYMBOL_LIST.add(')');
-        TOKEN_SPLITTER_SYMBOL_LIST.add(',');
+        Operator additionOperator       = new Operator(OperatorType.BINARY, "+", 400, OperatorAssociativity.LEFT);
+        Operator subtractionOperator    = new Operator(OperatorType.BINARY, "-", 400, OperatorAssociativity.LEFT);
+        Operator multiplicationOperator = new Operator(OperatorType.BINARY, "*", 300, OperatorAssociativity.LEFT);
+        Operator divisionOperator       = new Operator(OperatorType.BINARY, "/", 300, OperatorAssociativity.LEFT);
+        Operator minusOperator          = new Operator(OperatorType.UNARY_PREFIX, "-", 200, OperatorAssociativity.RIGHT);
+        Operator callBeginOperator      = new Operator(OperatorType.CALL, "(", 100, OperatorAssociativity.LEFT);
+        Operator callEndOperator        = new Operator(OperatorType.CALL, ")", Integer.MAX_VALUE, OperatorAssociativity.LEFT); // least prior
+        Operator callSeparatorOperator  = new Operator(OperatorType.CALL, ",", Integer.MAX_VALUE, OperatorAssociativity.LEFT); // least prior
+        Operator lessThanOperator       = new Operator(OperatorType.BINARY, "<", 500, OperatorAssociativity.LEFT);
+        Operator lessEqualOperator      = new Operator(OperatorType.BINARY, "<=", 500, OperatorAssociativity.LEFT);
+        Operator greaterThanOperator    = new Operator(OperatorType.BINARY, ">", 500, OperatorAssociativity.LEFT);
+        Operator greaterEqualOperator   = new Operator(OperatorType.BINARY, ">=", 500, OperatorAssociativity.LEFT);
+        Operator equalOperator          = new Operator(OperatorType.BINARY, "==", 600, OperatorAssociativity.LEFT);
+        Operator notEqualOperator       = new Operator(OperatorType.BINARY, "!=", 600, OperatorAssociativity.LEFT);
+        Operator conditionOperator      = new Operator(OperatorType.BINARY, "?", 700, OperatorAssociativity.RIGHT);
+        Operator alternativeOperator    = new Operator(OperatorType.BINARY, ":", 800, OperatorAssociativity.RIGHT);
+        Operator bindingOperator        = new Operator(OperatorType.BINARY, "=", 900, OperatorAssociativity.RIGHT);
+        Operator letBodyOperator        = new Operator(OperatorType.BINARY, "in", 1000, OperatorAssociativity.RIGHT);
+        Operator statementSeparator     = new Operator(OperatorType.BINARY, ";", 1100, OperatorAssociativity.LEFT);
+
+        OPERATOR_SYMBOL_SET = new HashSet<String>();
+        OPERATOR_SYMBOL_SET.add("+");
+        OPERATOR_SYMBOL_SET.add("-");
+        OPERATOR_SYMBOL_SET.add("*");
+        OPERATOR_SYMBOL_SET.add("/");
+        OPERATOR_SYMBOL_SET.add("(");
+        OPERATOR_SYMBOL_SET.add(")");
+        OPERATOR_SYMBOL_SET.add(",");
+        OPERATOR_SYMBOL_SET.add("<");
+        OPERATOR_SYMBOL_SET.add("<=");
+        OPERATOR_SYMBOL_SET.add(">");
+        OPERATOR_SYMBOL_SET.add(">=");
+        OPERATOR_SYMBOL_SET.add("==");
+        OPERATOR_SYMBOL_SET.add("!=");
+        OPERATOR_SYMBOL_SET.add("?");
+        OPERATOR_SYMBOL_SET.add(":");
+        OPERATOR_SYMBOL_SET.add("=");
+        OPERATOR_SYMBOL_SET.add("in");
+        OPERATOR_SYMBOL_SET.add(";");
+
+        UNARY_PREFIX_OPERATOR_SYMBOL_MAP = new ConcurrentHashMap<String, Operator>();
+        UNARY_PREFIX_OPERATOR_SYMBOL_MAP.put("-", minusOperator);
+
+        BINARY_OPERATOR_SYMBOL_MAP = new ConcurrentHashMap<String, Operator>();
+        BINARY_OPERATOR_SYMBOL_MAP.put("+", additionOperator);
+        BINARY_OPERATOR_SYMBOL_MAP.put("-", subtractionOperator);
+        BINARY_OPERATOR_SYMBOL_MAP.put("*", multiplicationOperator);
+        BINARY_OPERATOR_SYMBOL_MAP.put("/", divisionOperator);
+        BINARY_OPERATOR_SYMBOL_MAP.put("<", lessThanOperator);
+        BINARY_OPERATOR_SYMBOL_MAP.put("<=", lessEqualOperator);
+        BINARY_OPERATOR_SYMBOL_MAP.put(">", greaterThanOperator);
+        BINARY_OPERATOR_SYMBOL_MAP.put(">=", greaterEqualOperator);
+        BINARY_OPERATOR_SYMBOL_MAP.put("==", equalOperator);
+        BINARY_OPERATOR_SYMBOL_MAP.put("!=", notEqualOperator);
+        BINARY_OPERATOR_SYMBOL_MAP.put("?", conditionOperator);
+        BINARY_OPERATOR_SYMBOL_MAP.put(":", alternativeOperator);
+        BINARY_OPERATOR_SYMBOL_MAP.put("=", bindingOperator);
+        BINARY_OPERATOR_SYMBOL_MAP.put("in", letBodyOperator);
+        BINARY_OPERATOR_SYMBOL_MAP.put(";", statementSeparator);
+
+        CALL_OPERATOR_SYMBOL_MAP = new ConcurrentHashMap<String, Operator>();
+        CALL_OPERATOR_SYMBOL_MAP.put("(", callBeginOperator);
+        CALL_OPERATOR_SYMBOL_MAP.put(")", callEndOperator);
+        CALL_OPERATOR_SYMBOL_MAP.put(",", callSeparatorOperator);
+
+        TOKEN_SPLITTER_SYMBOL_LIST = new ArrayList<String>();
+        TOKEN_SPLITTER_SYMBOL_LIST.add("<=");
+        TOKEN_SPLITTER_SYMBOL_LIST.add(">=");
+        TOKEN_SPLITTER_SYMBOL_LIST.add("==");
+        TOKEN_SPLITTER_SYMBOL_LIST.add("!=");
+        TOKEN_SPLITTER_SYMBOL_LIST.add("+");
+        TOKEN_SPLITTER_SYMBOL_LIST.add("-");
+        TOKEN_SPLITTER_SYMBOL_LIST.add("*");
+        TOKEN_SPLITTER_SYMBOL_LIST.add("/");
+        TOKEN_SPLITTER_SYMBOL_LIST.add("(");
+        TOKEN_SPLITTER_SYMBOL_LIST.add(")");
+        TOKEN_SPLITTER_SYMBOL_LIST.add(",");
+        TOKEN_SPLITTER_SYMBOL_LIST.add("=");
+        TOKEN_SPLITTER_SYMBOL_LIST.add(";");
+        TOKEN_SPLITTER_SYMBOL_LIST.add("<");
+        TOKEN_SPLITTER_SYMBOL_LIST.add(">");
+        TOKEN_SPLITTER_SYMBOL_LIST.add("?");
+        TOKEN_SPLITTER_SYMBOL_LIST.add(":");
+
+        // Symbols are matched in the order in the list, so longer symbols (e.g. "<=") should be listed before shorter ones.
+        StringBuilder splitterRegexBuilder = new StringBuilder();
+        for (String splitter: TOKEN_SPLITTER_SYMBOL_LIST) {
+            if (splitterRegexBuilder.length() != 0) {
+                splitterRegexBuilder.append("|");
+            }
+            splitterRegexBuilder.append(Pattern.quote(splitter));
+        }
+        TOKEN_SPLITTER_PATTERN = Pattern.compile(splitterRegexBuilder.toString());
     };
 }
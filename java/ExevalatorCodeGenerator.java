@@ -0,0 +1,581 @@
+/*
+ * Exevalator Ver.2.4.0 - by RINEARN (Fumihiro Matsui) 2021-2025
+ * This software is released under the "Unlicense" license.
+ * You can choose the "CC0" license instead, if you want.
+ */
+
+/*
+ * Put this code in the same folder as Exevalator.java, and write the same package-statement as it.
+ */
+// package your.projects.package.anywhere;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The generator of Java source code from a fixed set of named expressions (formulas), used at the build time.
+ * Generated code evaluates formulas without the engine, so they are fully optimized by the JIT compiler from the start.
+ *
+ * Formulas, variables, and functions are defined in a text file as follows (lines beginning with "#" are comments):
+ *
+ *     class com.example.Formulas
+ *     variable x, y
+ *     variable rate
+ *     function f = com.example.MyFunctions.f
+ *     limits 1024, 256, 64
+ *     formula Spread = x - y
+ *     formula Growth = let d = x - y in d * rate + f(d, 2)
+ *
+ * and the Java source file is generated by the command:
+ *
+ *     java ExevalatorCodeGenerator formulas.txt src/main/java
+ *
+ * which generates "com/example/Formulas.java", containing a class for each formula, having the method:
+ *
+ *     public static double evaluate(double[] memory)
+ *
+ * Values of variables are stored in the array "memory", at addresses in the declared order (the same as "declareVariable" of the engine).
+ * Functions are bound to static methods taking double arguments and returning a double value.
+ * The "limits" line sets limits of the length, the number of tokens, and the depth of the AST of subsequent formulas
+ * (the same as "setLimits" method of the engine).
+ * All formulas are checked when generating the code (syntax errors, undeclared variables, unbound functions, etc.),
+ * and the generated code does not depend on the engine. The results are the same as ones of the engine.
+ */
+public final class ExevalatorCodeGenerator {
+
+    /** The fully qualified name of the generated class. */
+    private final String className;
+
+    /** The Map mapping names of variables to their addresses. */
+    private final Map<String, Integer> variableTable = new LinkedHashMap<String, Integer>();
+
+    /** The Map mapping names of functions to fully qualified names of static methods. */
+    private final Map<String, String> functionTable = new HashMap<String, String>();
+
+    /** The Map mapping names of formulas to their expressions. */
+    private final Map<String, String> formulaMap = new LinkedHashMap<String, String>();
+
+    /** The engine parsing formulas, of which limits are applied to them. */
+    private final Exevalator parsingEngine = new Exevalator();
+
+    /** Reserved words of Java, which can not be used as names of formulas. */
+    private static final Set<String> JAVA_KEYWORD_SET = new HashSet<String>(Arrays.asList(
+        "abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class", "const", "continue",
+        "default", "do", "double", "else", "enum", "extends", "final", "finally", "float", "for", "goto", "if",
+        "implements", "import", "instanceof", "int", "interface", "long", "native", "new", "package", "private",
+        "protected", "public", "return", "short", "static", "strictfp", "super", "switch", "synchronized", "this",
+        "throw", "throws", "transient", "try", "void", "volatile", "while", "true", "false", "null", "var", "record"
+    ));
+
+    /**
+     * Creates a generator of the class having the specified name.
+     *
+     * @param className The fully qualified name of the generated class (e.g. "com.example.Formulas").
+     */
+    public ExevalatorCodeGenerator(String className) {
+        for (String part: className.split("\\.", -1)) {
+            checkJavaIdentifier(part, "class name");
+        }
+        this.className = className;
+    }
+
+    /**
+     * Declares a variable, stored at the next address of the memory.
+     *
+     * @param name The name of the variable.
+     * @return The address of the variable.
+     */
+    public int declareVariable(String name) {
+        if (this.variableTable.containsKey(name)) {
+            throw new Exevalator.Exception(Exevalator.ErrorCode.VARIABLE_ALREADY_DECLARED, -1, name);
+        }
+        int address = this.variableTable.size();
+        this.variableTable.put(name, address);
+        return address;
+    }
+
+    /**
+     * Binds a function to a static method, which takes double arguments and returns a double value.
+     *
+     * @param name The name of the function.
+     * @param methodName The fully qualified name of the static method (e.g. "java.lang.Math.max").
+     */
+    public void bindFunction(String name, String methodName) {
+        for (String part: methodName.split("\\.", -1)) {
+            checkJavaIdentifier(part, "method name");
+        }
+        this.functionTable.put(name, methodName);
+    }
+
+    /**
+     * Sets the limits of the length, the number of tokens, and the depth of the AST of formulas added after this call,
+     * in the same way as "setLimits" method of the engine (the depth can't exceed the same upper limit).
+     *
+     * @param maxExpressionCharCount The maximum number of characters in an expression.
+     * @param maxTokenCount The maximum number of tokens in an expression.
+     * @param maxAstDepth The maximum depth of an AST.
+     * @throws IllegalArgumentException Thrown if any limit is not positive, or the depth exceeds the upper limit.
+     */
+    public void setLimits(int maxExpressionCharCount, int maxTokenCount, int maxAstDepth) {
+        this.parsingEngine.setLimits(maxExpressionCharCount, maxTokenCount, maxAstDepth);
+    }
+
+    /**
+     * Adds a formula, after checking that code can be generated from it.
+     *
+     * @param name The name of the formula, which is the name of the generated class.
+     * @param expression The expression of the formula.
+     * @throws Exevalator.Exception Thrown if the expression is invalid.
+     */
+    public void addFormula(String name, String expression) {
+        checkJavaIdentifier(name, "formula name");
+        if (this.formulaMap.containsKey(name)) {
+            throw new IllegalArgumentException("Duplicate formula name: " + name);
+        }
+        new MethodBodyGenerator().generate(expression); // Check it here, to report errors with the formula.
+        this.formulaMap.put(name, expression);
+    }
+
+    /**
+     * Generates the content of the Java source file.
+     *
+     * @return The content of the Java source file.
+     */
+    public String generate() {
+        int lastDotIndex = this.className.lastIndexOf('.');
+        String packageName = lastDotIndex < 0 ? null : this.className.substring(0, lastDotIndex);
+        String simpleName = this.className.substring(lastDotIndex + 1);
+
+        StringBuilder code = new StringBuilder();
+        code.append("/*\n * Generated by ExevalatorCodeGenerator. Do not edit this file directly.\n */\n\n");
+        if (packageName != null) {
+            code.append("package ").append(packageName).append(";\n\n");
+        }
+        code.append("/**\n * Formulas evaluating values on the memory, in which variables are stored at the following addresses:\n *\n");
+        for (Map.Entry<String, Integer> variableEntry: this.variableTable.entrySet()) {
+            code.append(" *     ").append(variableEntry.getValue()).append(": ").append(variableEntry.getKey()).append("\n");
+        }
+        code.append(" */\n");
+        code.append("public final class ").append(simpleName).append(" {\n\n");
+        code.append("    /** Names of variables, indexed by their addresses. */\n");
+        code.append("    public static final String[] VARIABLE_NAMES = {");
+        int ivar = 0;
+        for (String variableName: this.variableTable.keySet()) {
+            code.append(ivar++ == 0 ? " " : ", ").append(toJavaStringLiteral(variableName));
+        }
+        code.append(this.variableTable.isEmpty() ? "};\n\n" : " };\n\n");
+        code.append("    private ").append(simpleName).append("() {\n    }\n\n");
+        code.append("    /**\n     * Creates the memory storing values of all variables.\n     *\n");
+        code.append("     * @return The array of which length is the number of variables.\n     */\n");
+        code.append("    public static double[] createMemory() {\n");
+        code.append("        return new double[").append(this.variableTable.size()).append("];\n    }\n");
+
+        for (Map.Entry<String, String> formulaEntry: this.formulaMap.entrySet()) {
+            code.append("\n    /**\n     * {@code ").append(formulaEntry.getValue().replace("*/", "* /")).append("}\n     */\n");
+            code.append("    public static final class ").append(formulaEntry.getKey()).append(" {\n\n");
+            code.append("        private ").append(formulaEntry.getKey()).append("() {\n        }\n\n");
+            code.append("        /**\n         * Evaluates the formula.\n         *\n");
+            code.append("         * @param memory The array storing values of variables.\n");
+            code.append("         * @return The evaluated value.\n         */\n");
+            code.append("        public static double evaluate(double[] memory) {\n");
+            code.append(new MethodBodyGenerator().generate(formulaEntry.getValue()));
+            code.append("        }\n    }\n");
+        }
+        code.append("}\n");
+        return code.toString();
+    }
+
+    /**
+     * The generator of the body of "evaluate" method of a formula.
+     *
+     * Each subexpression is evaluated into a new local variable in the same order as the engine,
+     * so side effects (assignments and function calls) occur in the same order.
+     * Conditional operators are converted into if-statements, and built-in reductions (sum, prod) into for-loops.
+     */
+    private final class MethodBodyGenerator {
+
+        /** The generated code. */
+        private final StringBuilder code = new StringBuilder();
+
+        /** The number of generated local variables. */
+        private int localCount = 0;
+
+        /** The Map mapping each let-bound variable (or index variable) in the current scope to the Java local variable. */
+        private final Map<String, String> localVariableTable = new HashMap<String, String>();
+
+        /**
+         * Generates the method body evaluating the expression.
+         *
+         * @param expression The expression.
+         * @return The generated code of the method body.
+         */
+        private String generate(String expression) {
+            Exevalator.SyntaxNode ast = parsingEngine.parse(expression).ast;
+            String result = this.generateNode(ast, 2);
+            this.indent(2).append("return ").append(result).append(";\n");
+            return this.code.toString();
+        }
+
+        /**
+         * Generates the code evaluating an AST node into a new local variable (or a literal).
+         *
+         * @param ast The AST node.
+         * @param indentStage The depth of the indentation.
+         * @return The name of the local variable storing the value, or the literal.
+         */
+        private String generateNode(Exevalator.SyntaxNode ast, int indentStage) {
+            Exevalator.SyntaxNode.Kind kind = ast.getKind();
+            String word = ast.getWord();
+
+            if (kind == Exevalator.SyntaxNode.Kind.NUMBER_LITERAL) {
+                return toJavaDoubleLiteral(word);
+            }
+            if (kind == Exevalator.SyntaxNode.Kind.VARIABLE_IDENTIFIER) {
+                return this.declareLocal(indentStage, this.resolveVariable(ast));
+            }
+            if (kind == Exevalator.SyntaxNode.Kind.FUNCTION_IDENTIFIER) {
+                throw new Exevalator.Exception(Exevalator.ErrorCode.UNEXPECTED_TOKEN, ast.getPosition(), word);
+            }
+            boolean isBinary = kind == Exevalator.SyntaxNode.Kind.BINARY_OPERATOR;
+            boolean isCall = kind == Exevalator.SyntaxNode.Kind.CALL_OPERATOR;
+
+            // Let-bindings: "let name = value in body", parsed as in(=(name, value), body).
+            if (isBinary && word.equals("in")) {
+                Exevalator.SyntaxNode bindingNode = ast.getChild(0);
+                if (!bindingNode.getWord().equals("=")
+                        || bindingNode.getChild(0).getKind() != Exevalator.SyntaxNode.Kind.VARIABLE_IDENTIFIER) {
+                    throw new Exevalator.Exception(Exevalator.ErrorCode.INVALID_LET_SYNTAX, bindingNode.getPosition());
+                }
+                String name = bindingNode.getChild(0).getWord();
+                String value = this.generateNode(bindingNode.getChild(1), indentStage);
+                String boundLocal = this.declareMutableLocal(indentStage, value);
+                String shadowedLocal = this.localVariableTable.put(name, boundLocal);
+                String body = this.generateNode(ast.getChild(1), indentStage);
+                this.restoreLocal(name, shadowedLocal);
+                return body;
+            }
+
+            // Built-in reductions: "sum(index, lower, upper, expression)" and "prod(index, lower, upper, expression)".
+            if (isCall && word.equals("(")) {
+                String identifier = ast.getChild(0).getWord();
+                boolean isSum = identifier.equals(Exevalator.SyntaxNode.SUM_FUNCTION_NAME);
+                boolean isReduction = isSum || identifier.equals(Exevalator.SyntaxNode.PRODUCT_FUNCTION_NAME);
+                if (isReduction && !functionTable.containsKey(identifier)) {
+                    if (ast.getChildCount() != 5 || ast.getChild(1).getKind() != Exevalator.SyntaxNode.Kind.VARIABLE_IDENTIFIER) {
+                        throw new Exevalator.Exception(Exevalator.ErrorCode.INVALID_REDUCTION_ARGUMENTS, ast.getChild(0).getPosition(), identifier);
+                    }
+                    String lower = this.generateNode(ast.getChild(2), indentStage);
+                    String upper = this.generateNode(ast.getChild(3), indentStage);
+                    String result = this.declareMutableLocal(indentStage, isSum ? "0.0" : "1.0");
+
+                    // Iterate by the count computed from the limits, as the engine,
+                    // because the index can't be increased by adding 1 once it reaches 2^53.
+                    String lowerLocal = this.declareLocal(indentStage, lower);
+                    String upperLocal = this.declareLocal(indentStage, upper);
+                    String count = this.declareLocal(indentStage,
+                        lowerLocal + " <= " + upperLocal + " ? Math.floor(" + upperLocal + " - " + lowerLocal + ") + 1.0 : 0.0"
+                    );
+                    this.indent(indentStage).append("if (Double.isNaN(").append(lowerLocal).append(") || Double.isInfinite(").append(lowerLocal)
+                        .append(") || Double.isNaN(").append(upperLocal).append(") || Double.isInfinite(").append(upperLocal)
+                        .append(") || ").append(toJavaDoubleLiteral(Long.toString(Exevalator.SyntaxNode.MAX_REDUCTION_ITERATION_COUNT)))
+                        .append(" < ").append(count).append(") {\n");
+                    this.indent(indentStage + 1).append("throw new ArithmeticException(\"Invalid limits of the index of '")
+                        .append(identifier).append("': from \" + ").append(lowerLocal).append(" + \" to \" + ").append(upperLocal).append(");\n");
+                    this.indent(indentStage).append("}\n");
+                    String counter = this.newLocalName();
+                    this.indent(indentStage).append("for (long ").append(counter).append("=0L; ")
+                        .append(counter).append("<").append(count).append("; ").append(counter).append("++) {\n");
+                    String indexLocal = this.declareMutableLocal(indentStage + 1, lowerLocal + " + " + counter);
+                    String indexName = ast.getChild(1).getWord();
+                    String shadowedLocal = this.localVariableTable.put(indexName, indexLocal);
+                    String body = this.generateNode(ast.getChild(4), indentStage + 1);
+                    this.restoreLocal(indexName, shadowedLocal);
+                    this.indent(indentStage + 1).append(result).append(isSum ? " += " : " *= ").append(body).append(";\n");
+                    this.indent(indentStage).append("}\n");
+                    return result;
+                }
+            }
+
+            // Conditional operators: "condition ? value1 : value2", parsed as :(?(condition, value1), value2).
+            // Only the selected value is evaluated, as the engine.
+            if (isBinary && word.equals(":")) {
+                Exevalator.SyntaxNode conditionNode = ast.getChild(0);
+                if (conditionNode.getKind() != Exevalator.SyntaxNode.Kind.BINARY_OPERATOR || !conditionNode.getWord().equals("?")) {
+                    throw new Exevalator.Exception(Exevalator.ErrorCode.INVALID_CONDITIONAL_OPERATOR, ast.getPosition());
+                }
+                String condition = this.generateNode(conditionNode.getChild(0), indentStage);
+                String result = this.newLocalName();
+                this.indent(indentStage).append("double ").append(result).append(";\n");
+                this.indent(indentStage).append("if (").append(condition).append(" != 0.0) {\n");
+                String trueValue = this.generateNode(conditionNode.getChild(1), indentStage + 1);
+                this.indent(indentStage + 1).append(result).append(" = ").append(trueValue).append(";\n");
+                this.indent(indentStage).append("} else {\n");
+                String falseValue = this.generateNode(ast.getChild(1), indentStage + 1);
+                this.indent(indentStage + 1).append(result).append(" = ").append(falseValue).append(";\n");
+                this.indent(indentStage).append("}\n");
+                return result;
+            }
+
+            // Assignments: "name = value".
+            if (isBinary && word.equals("=")) {
+                Exevalator.SyntaxNode targetNode = ast.getChild(0);
+                if (targetNode.getKind() != Exevalator.SyntaxNode.Kind.VARIABLE_IDENTIFIER) {
+                    throw new Exevalator.Exception(Exevalator.ErrorCode.UNEXPECTED_OPERATOR, ast.getPosition(), word);
+                }
+                String target = this.resolveVariable(targetNode);
+                String value = this.generateNode(ast.getChild(1), indentStage);
+                this.indent(indentStage).append(target).append(" = ").append(value).append(";\n");
+                return value;
+            }
+
+            // Statements: "s1; s2; s3; ...", of which the value is the value of the last statement.
+            if (isBinary && word.equals(";")) {
+                String last = null;
+                for (int istatement=0; istatement<ast.getChildCount(); istatement++) {
+                    last = this.generateNode(ast.getChild(istatement), indentStage);
+                }
+                return last;
+            }
+
+            // Function calls: "f(arg1, arg2, ...)".
+            if (isCall && word.equals("(")) {
+                String identifier = ast.getChild(0).getWord();
+                if (!functionTable.containsKey(identifier)) {
+                    throw new Exevalator.Exception(Exevalator.ErrorCode.FUNCTION_NOT_FOUND, ast.getChild(0).getPosition(), identifier);
+                }
+                StringBuilder call = new StringBuilder(functionTable.get(identifier)).append("(");
+                for (int iarg=1; iarg<ast.getChildCount(); iarg++) {
+                    call.append(iarg == 1 ? "" : ", ").append(this.generateNode(ast.getChild(iarg), indentStage));
+                }
+                return this.declareLocal(indentStage, call.append(")").toString());
+            }
+
+            if (kind == Exevalator.SyntaxNode.Kind.UNARY_PREFIX_OPERATOR && word.equals("-")) {
+                return this.declareLocal(indentStage, "-" + this.generateNode(ast.getChild(0), indentStage));
+            }
+            if (isBinary && isArithmeticOrComparison(word)) {
+
+                // Operators in a chain (e.g. "x1 + x2 - x3 + ...", parsed as a left-deep tree) are generated from the bottom,
+                // iteratively, because long chains make deep ASTs.
+                Deque<Exevalator.SyntaxNode> chainNodeStack = new ArrayDeque<Exevalator.SyntaxNode>();
+                Exevalator.SyntaxNode chainNode = ast;
+                while (chainNode.getKind() == Exevalator.SyntaxNode.Kind.BINARY_OPERATOR && isArithmeticOrComparison(chainNode.getWord())) {
+                    chainNodeStack.push(chainNode);
+                    chainNode = chainNode.getChild(0);
+                }
+                String left = this.generateNode(chainNode, indentStage);
+                while (!chainNodeStack.isEmpty()) {
+                    chainNode = chainNodeStack.pop();
+                    String symbol = chainNode.getWord();
+                    boolean isComparison = !(symbol.equals("+") || symbol.equals("-") || symbol.equals("*") || symbol.equals("/"));
+                    String right = this.generateNode(chainNode.getChild(1), indentStage);
+                    String operation = left + " " + symbol + " " + right;
+                    left = this.declareLocal(indentStage, isComparison ? "(" + operation + ") ? 1.0 : 0.0" : operation);
+                }
+                return left;
+            }
+            if (isBinary && word.equals("?")) {
+                throw new Exevalator.Exception(Exevalator.ErrorCode.INVALID_CONDITIONAL_OPERATOR, ast.getPosition());
+            }
+            throw new Exevalator.Exception(Exevalator.ErrorCode.UNEXPECTED_OPERATOR, ast.getPosition(), word);
+        }
+
+        /**
+         * Returns the Java expression accessing the variable: the local variable if it is let-bound, or the element of the memory.
+         */
+        private String resolveVariable(Exevalator.SyntaxNode variableNode) {
+            String name = variableNode.getWord();
+            if (this.localVariableTable.containsKey(name)) {
+                return this.localVariableTable.get(name);
+            }
+            if (!variableTable.containsKey(name)) {
+                throw new Exevalator.Exception(Exevalator.ErrorCode.VARIABLE_NOT_FOUND, variableNode.getPosition(), name);
+            }
+            return "memory[" + variableTable.get(name) + "]";
+        }
+
+        /**
+         * Restores the binding of the variable shadowed in the scope which is ending.
+         */
+        private void restoreLocal(String name, String shadowedLocal) {
+            if (shadowedLocal == null) {
+                this.localVariableTable.remove(name);
+            } else {
+                this.localVariableTable.put(name, shadowedLocal);
+            }
+        }
+
+        /**
+         * Generates the declaration of a new final local variable initialized by the value.
+         */
+        private String declareLocal(int indentStage, String value) {
+            String name = this.newLocalName();
+            this.indent(indentStage).append("final double ").append(name).append(" = ").append(value).append(";\n");
+            return name;
+        }
+
+        /**
+         * Generates the declaration of a new (assignable) local variable initialized by the value.
+         */
+        private String declareMutableLocal(int indentStage, String value) {
+            String name = this.newLocalName();
+            this.indent(indentStage).append("double ").append(name).append(" = ").append(value).append(";\n");
+            return name;
+        }
+
+        /**
+         * Returns the name of a new local variable.
+         */
+        private String newLocalName() {
+            return "v" + (this.localCount++);
+        }
+
+        /**
+         * Appends the indentation, and returns the generated code.
+         */
+        private StringBuilder indent(int indentStage) {
+            for (int istage=0; istage<=indentStage; istage++) {
+                this.code.append("    ");
+            }
+            return this.code;
+        }
+    }
+
+    /**
+     * Returns whether the symbol is of an arithmetic operator or a comparison operator, which have the same symbols in Java.
+     */
+    private static boolean isArithmeticOrComparison(String symbol) {
+        return symbol.equals("+") || symbol.equals("-") || symbol.equals("*") || symbol.equals("/")
+            || symbol.equals("<") || symbol.equals("<=") || symbol.equals(">") || symbol.equals(">=")
+            || symbol.equals("==") || symbol.equals("!=");
+    }
+
+    /**
+     * Converts a number literal into the Java literal having the same value.
+     */
+    private static String toJavaDoubleLiteral(String word) {
+        double value;
+        try {
+            value = Double.parseDouble(word);
+        } catch (NumberFormatException nfe) {
+            throw new Exevalator.Exception(Exevalator.ErrorCode.INVALID_NUMBER_LITERAL, -1, word);
+        }
+        if (Double.isInfinite(value)) {
+            return "Double.POSITIVE_INFINITY";
+        }
+        return Double.toString(value);
+    }
+
+    /**
+     * Converts a String into the Java string literal.
+     */
+    private static String toJavaStringLiteral(String string) {
+        return "\"" + string.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    /**
+     * Checks that the name is a valid identifier of Java.
+     */
+    private static void checkJavaIdentifier(String name, String kind) {
+        boolean valid = !name.isEmpty() && Character.isJavaIdentifierStart(name.charAt(0)) && !JAVA_KEYWORD_SET.contains(name);
+        for (int i=1; valid && i<name.length(); i++) {
+            valid = Character.isJavaIdentifierPart(name.charAt(i));
+        }
+        if (!valid) {
+            throw new IllegalArgumentException("Invalid " + kind + " (should be a Java identifier): " + name);
+        }
+    }
+
+    /**
+     * Generates the Java source file from the definition file of formulas.
+     *
+     * @param args "definition_file output_directory".
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java ExevalatorCodeGenerator definition_file output_directory");
+            return;
+        }
+        List<String> lineList = Files.readAllLines(Paths.get(args[0]), StandardCharsets.UTF_8);
+        ExevalatorCodeGenerator generator = null;
+        List<String> errorList = new ArrayList<String>();
+        for (int iline=0; iline<lineList.size(); iline++) {
+            String line = lineList.get(iline).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] keywordAndContent = line.split("\\s+", 2);
+            String content = keywordAndContent.length == 2 ? keywordAndContent[1].trim() : "";
+            try {
+                if (keywordAndContent[0].equals("class")) {
+                    if (generator != null) {
+                        throw new IllegalArgumentException("The class should be declared only once, at the beginning.");
+                    }
+                    generator = new ExevalatorCodeGenerator(content);
+                    continue;
+                }
+                if (generator == null) {
+                    generator = new ExevalatorCodeGenerator("Formulas");
+                }
+                if (keywordAndContent[0].equals("variable")) {
+                    for (String name: content.split(",")) {
+                        generator.declareVariable(name.trim());
+                    }
+                } else if (keywordAndContent[0].equals("limits")) {
+                    String[] limits = content.split(",");
+                    if (limits.length != 3) {
+                        throw new IllegalArgumentException("Three limits (characters, tokens, depth) are required.");
+                    }
+                    generator.setLimits(
+                        Integer.parseInt(limits[0].trim()), Integer.parseInt(limits[1].trim()), Integer.parseInt(limits[2].trim())
+                    );
+                } else if (keywordAndContent[0].equals("function") || keywordAndContent[0].equals("formula")) {
+                    int equalIndex = content.indexOf('=');
+                    if (equalIndex < 0) {
+                        throw new IllegalArgumentException("'=' is missing.");
+                    }
+                    String name = content.substring(0, equalIndex).trim();
+                    String value = content.substring(equalIndex + 1).trim();
+                    if (keywordAndContent[0].equals("function")) {
+                        generator.bindFunction(name, value);
+                    } else {
+                        generator.addFormula(name, value);
+                    }
+                } else {
+                    throw new IllegalArgumentException("Unknown keyword: " + keywordAndContent[0]);
+                }
+            } catch (Exevalator.Exception | IllegalArgumentException e) {
+                errorList.add(args[0] + ":" + (iline + 1) + ": " + e.getMessage());
+            }
+        }
+        if (!errorList.isEmpty()) {
+            for (String error: errorList) {
+                System.err.println(error);
+            }
+            System.exit(1);
+        }
+        if (generator == null) {
+            generator = new ExevalatorCodeGenerator("Formulas");
+        }
+
+        Path outputPath = Paths.get(args[1], (generator.className.replace('.', '/') + ".java").split("/"));
+        if (outputPath.getParent() != null) {
+            Files.createDirectories(outputPath.getParent());
+        }
+        Files.write(outputPath, generator.generate().getBytes(StandardCharsets.UTF_8));
+        System.out.println("Generated: " + outputPath);
+    }
+}
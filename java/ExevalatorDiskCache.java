@@ -0,0 +1,744 @@
+/*
+ * Exevalator Ver.2.4.0 - by RINEARN (Fumihiro Matsui) 2021-2025
+ * This software is released under the "Unlicense" license.
+ * You can choose the "CC0" license instead, if you want.
+ */
+
+/*
+ * Put this code in the same folder as Exevalator.java, and write the same package-statement as it.
+ */
+// package your.projects.package.anywhere;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * The persistent cache of parsed expressions, to compile many expressions at startup without lexing/parsing them.
+ *
+ * Expressions are parsed and serialized into a compact binary file in advance (e.g. at the build/deploy time),
+ * and the file is memory-mapped at startup. Each expression is decoded lazily when it is compiled:
+ *
+ *     ExevalatorDiskCache.write(Paths.get("formulas.cache"), expressionList);
+ *     ...
+ *     ExevalatorDiskCache cache = ExevalatorDiskCache.open(Paths.get("formulas.cache"));
+ *     Exevalator.CompiledExpression compiled = cache.compile(exevalator, "x * 2 + f(y)");
+ *
+ * Expressions not found in the cache (or of which entries are corrupted) are compiled by parsing them as usual,
+ * so the cache is always safe to use. The header and the index are verified by a checksum when the file is opened,
+ * and each entry is verified by its own checksum when it is decoded first.
+ * A cache file can also be created by the command: java ExevalatorDiskCache build expressions.txt formulas.cache
+ * (append limits of the length, the number of tokens, and the depth of expressions to the command, to raise them).
+ * Limits applied to cached expressions are those of the engine passed to "write" method, and the engine compiling them
+ * checks them again with its own limits, so expressions exceeding them are rejected in the same way as usual.
+ *
+ * Format (all numbers are big-endian):
+ *
+ *     Header:  magic "EXVCACHE" (8 bytes), format version, entry count, name count,
+ *              index offset, name table offset, data offset, CRC-32 of the header and the metadata (4-byte ints)
+ *     Index:   { hash of the expression, key offset, key length, body offset, body length, CRC-32 of the body } * entry count,
+ *              sorted by hashes
+ *     Names:   { offset, length } * name count, followed by UTF-8 bytes of names (of variables and functions)
+ *     Data:    keys (UTF-8 bytes of expressions) and bodies (the number of tokens, and nodes of the AST in the prefix order)
+ *
+ * Each node of the AST is encoded as the tag (1: number literal, 2: variable, 3: function, 4: operator),
+ * the value (the raw double, the index of the name, or the code of the operator), and the number of child nodes,
+ * where variable-length integers are used for indices and counts.
+ */
+public final class ExevalatorDiskCache {
+
+    /** The bytes at the beginning of cache files. */
+    private static final byte[] MAGIC_NUMBER = { 'E', 'X', 'V', 'C', 'A', 'C', 'H', 'E' };
+
+    /** The version of the format of cache files. */
+    public static final int FORMAT_VERSION = 1;
+
+    /** The size of the header, in bytes. */
+    private static final int HEADER_SIZE = 36;
+
+    /** The size of each entry of the index, in bytes. */
+    private static final int INDEX_ENTRY_SIZE = 24;
+
+    /** The tag of AST nodes of number literals. */
+    private static final byte NUMBER_LITERAL_TAG = 1;
+
+    /** The tag of AST nodes of variables. */
+    private static final byte VARIABLE_TAG = 2;
+
+    /** The tag of AST nodes of functions. */
+    private static final byte FUNCTION_TAG = 3;
+
+    /** The tag of AST nodes of operators. */
+    private static final byte OPERATOR_TAG = 4;
+
+    /** Kinds of operators, indexed by their codes. Append new operators to the end, to keep codes of existing ones. */
+    private static final Exevalator.SyntaxNode.Kind[] OPERATOR_KINDS = {
+        Exevalator.SyntaxNode.Kind.BINARY_OPERATOR,
+        Exevalator.SyntaxNode.Kind.BINARY_OPERATOR,
+        Exevalator.SyntaxNode.Kind.BINARY_OPERATOR,
+        Exevalator.SyntaxNode.Kind.BINARY_OPERATOR,
+        Exevalator.SyntaxNode.Kind.UNARY_PREFIX_OPERATOR,
+        Exevalator.SyntaxNode.Kind.CALL_OPERATOR,
+        Exevalator.SyntaxNode.Kind.CALL_OPERATOR,
+        Exevalator.SyntaxNode.Kind.CALL_OPERATOR,
+        Exevalator.SyntaxNode.Kind.BINARY_OPERATOR,
+        Exevalator.SyntaxNode.Kind.BINARY_OPERATOR,
+        Exevalator.SyntaxNode.Kind.BINARY_OPERATOR,
+        Exevalator.SyntaxNode.Kind.BINARY_OPERATOR,
+        Exevalator.SyntaxNode.Kind.BINARY_OPERATOR,
+        Exevalator.SyntaxNode.Kind.BINARY_OPERATOR,
+        Exevalator.SyntaxNode.Kind.BINARY_OPERATOR,
+        Exevalator.SyntaxNode.Kind.BINARY_OPERATOR,
+        Exevalator.SyntaxNode.Kind.BINARY_OPERATOR,
+        Exevalator.SyntaxNode.Kind.BINARY_OPERATOR,
+        Exevalator.SyntaxNode.Kind.BINARY_OPERATOR,
+    };
+
+    /** Symbols of operators, indexed by their codes. */
+    private static final String[] OPERATOR_SYMBOLS = {
+        "+", "-", "*", "/", "-", "(", ")", ",", "<", "<=", ">", ">=", "==", "!=", "?", ":", "=", "in", ";"
+    };
+
+    /** The Map mapping kinds and symbols of operators (e.g. "BINARY_OPERATOR +") to their codes. */
+    private static final Map<String, Integer> OPERATOR_CODE_MAP = new HashMap<String, Integer>();
+    static {
+        for (int icode=0; icode<OPERATOR_SYMBOLS.length; icode++) {
+            OPERATOR_CODE_MAP.put(OPERATOR_KINDS[icode] + " " + OPERATOR_SYMBOLS[icode], icode);
+        }
+    }
+
+    /** The memory-mapped content of the cache file. */
+    private final ByteBuffer buffer;
+
+    /** The number of entries. */
+    private final int entryCount;
+
+    /** The offset of the index. */
+    private final int indexOffset;
+
+    /** The offset of the name table. */
+    private final int nameTableOffset;
+
+    /** Names decoded from the name table (null for ones not decoded yet). */
+    private final String[] names;
+
+    /** The lock guarding names and counters. */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** The number of expressions compiled from the cache. */
+    private long hitCount = 0L;
+
+    /** The number of expressions compiled by parsing them, because they are not found in the cache (or corrupted). */
+    private long missCount = 0L;
+
+    private ExevalatorDiskCache(ByteBuffer buffer, int entryCount, int nameCount, int indexOffset, int nameTableOffset) {
+        this.buffer = buffer;
+        this.entryCount = entryCount;
+        this.indexOffset = indexOffset;
+        this.nameTableOffset = nameTableOffset;
+        this.names = new String[nameCount];
+    }
+
+    /**
+     * Parses expressions, and writes them into a cache file.
+     * The file is written to a temporary file at first, and then moved to the specified path,
+     * so processes opening the cache file never read an incomplete file.
+     *
+     * Expressions are parsed with the default limits (see "setLimits" method of Exevalator).
+     *
+     * @param path The path of the cache file.
+     * @param expressions Expressions to be stored (duplicated ones are stored once).
+     * @throws IOException Thrown if failed to write the file.
+     * @throws Exevalator.Exception Thrown if any expression could not be parsed.
+     */
+    public static void write(Path path, Collection<String> expressions) throws IOException {
+        write(path, expressions, new Exevalator());
+    }
+
+    /**
+     * Parses expressions with the limits of the specified engine, and writes them into a cache file.
+     * Specify the engine of which limits are raised by "setLimits" method, to store long/deep expressions.
+     *
+     * @param path The path of the cache file.
+     * @param expressions Expressions to be stored (duplicated ones are stored once).
+     * @param engine The engine of which limits are applied to expressions.
+     * @throws IOException Thrown if failed to write the file.
+     * @throws Exevalator.Exception Thrown if any expression could not be parsed.
+     */
+    public static void write(Path path, Collection<String> expressions, Exevalator engine) throws IOException {
+        List<String> expressionList = new ArrayList<String>(new LinkedHashSet<String>(expressions));
+        Collections.sort(expressionList, new Comparator<String>() {
+            @Override
+            public int compare(String expressionA, String expressionB) {
+                return Integer.compare(expressionA.hashCode(), expressionB.hashCode());
+            }
+        });
+
+        // Encode keys and bodies into the data area, with collecting names.
+        Map<String, Integer> nameIndexMap = new HashMap<String, Integer>();
+        List<String> nameList = new ArrayList<String>();
+        ByteArrayOutputStream dataStream = new ByteArrayOutputStream();
+        ByteArrayOutputStream bodyStream = new ByteArrayOutputStream();
+        int[][] entryFields = new int[expressionList.size()][];
+        for (int ientry=0; ientry<expressionList.size(); ientry++) {
+            String expression = expressionList.get(ientry);
+            Exevalator.ParsedExpression parsedExpression = engine.parse(expression);
+            bodyStream.reset();
+            writeVarint(bodyStream, parsedExpression.tokenCount);
+            encodeTree(parsedExpression.ast, bodyStream, nameIndexMap, nameList);
+
+            byte[] keyBytes = expression.getBytes(StandardCharsets.UTF_8);
+            byte[] bodyBytes = bodyStream.toByteArray();
+            CRC32 bodyCrc = new CRC32();
+            bodyCrc.update(bodyBytes, 0, bodyBytes.length);
+            int keyOffset = dataStream.size();
+            dataStream.write(keyBytes, 0, keyBytes.length);
+            int bodyOffset = dataStream.size();
+            dataStream.write(bodyBytes, 0, bodyBytes.length);
+            entryFields[ientry] = new int[] {
+                expression.hashCode(), keyOffset, keyBytes.length, bodyOffset, bodyBytes.length, (int)bodyCrc.getValue()
+            };
+        }
+
+        // Layout the file, and convert offsets in the data area into offsets in the file.
+        byte[][] nameBytes = new byte[nameList.size()][];
+        int nameBytesSize = 0;
+        for (int iname=0; iname<nameBytes.length; iname++) {
+            nameBytes[iname] = nameList.get(iname).getBytes(StandardCharsets.UTF_8);
+            nameBytesSize += nameBytes[iname].length;
+        }
+        int indexOffset = HEADER_SIZE;
+        int nameTableOffset = indexOffset + INDEX_ENTRY_SIZE * entryFields.length;
+        int dataOffset = nameTableOffset + 8 * nameBytes.length + nameBytesSize;
+        long fileSize = (long)dataOffset + dataStream.size();
+        if (Integer.MAX_VALUE < fileSize) {
+            throw new IOException("The cache file is too large: " + fileSize + " bytes");
+        }
+        ByteBuffer fileBuffer = ByteBuffer.allocate((int)fileSize);
+        fileBuffer.put(MAGIC_NUMBER);
+        fileBuffer.putInt(FORMAT_VERSION).putInt(entryFields.length).putInt(nameBytes.length);
+        fileBuffer.putInt(indexOffset).putInt(nameTableOffset).putInt(dataOffset).putInt(0); // CRC is written later.
+        for (int[] fields: entryFields) {
+            fileBuffer.putInt(fields[0]).putInt(dataOffset + fields[1]).putInt(fields[2]);
+            fileBuffer.putInt(dataOffset + fields[3]).putInt(fields[4]).putInt(fields[5]);
+        }
+        int nameOffset = dataOffset - nameBytesSize;
+        for (byte[] bytes: nameBytes) {
+            fileBuffer.putInt(nameOffset).putInt(bytes.length);
+            nameOffset += bytes.length;
+        }
+        for (byte[] bytes: nameBytes) {
+            fileBuffer.put(bytes);
+        }
+        fileBuffer.put(dataStream.toByteArray());
+        fileBuffer.putInt(HEADER_SIZE - 4, computeMetadataCrc(fileBuffer, dataOffset));
+
+        Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.write(temporaryPath, fileBuffer.array());
+        try {
+            Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException amnse) {
+            Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Opens a cache file by mapping it into the memory, with verifying its header and metadata.
+     * Entries are not decoded until they are compiled.
+     *
+     * @param path The path of the cache file.
+     * @return The opened cache.
+     * @throws IOException Thrown if failed to read the file, or the file is not a valid cache file of the supported version.
+     */
+    public static ExevalatorDiskCache open(Path path) throws IOException {
+        MappedByteBuffer buffer;
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            if (Integer.MAX_VALUE < channel.size()) {
+                throw new IOException("The cache file is too large: " + channel.size() + " bytes");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+        } finally {
+            channel.close();
+        }
+
+        if (buffer.capacity() < HEADER_SIZE) {
+            throw new IOException("The file is not a cache file of Exevalator: " + path);
+        }
+        for (int i=0; i<MAGIC_NUMBER.length; i++) {
+            if (buffer.get(i) != MAGIC_NUMBER[i]) {
+                throw new IOException("The file is not a cache file of Exevalator: " + path);
+            }
+        }
+        int version = buffer.getInt(8);
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported version of the cache file: " + version + " (supported: " + FORMAT_VERSION + ")");
+        }
+        int entryCount = buffer.getInt(12);
+        int nameCount = buffer.getInt(16);
+        int indexOffset = buffer.getInt(20);
+        int nameTableOffset = buffer.getInt(24);
+        int dataOffset = buffer.getInt(28);
+        if (entryCount < 0 || nameCount < 0 || indexOffset != HEADER_SIZE
+                || (long)indexOffset + (long)INDEX_ENTRY_SIZE * entryCount != nameTableOffset
+                || (long)nameTableOffset + 8L * nameCount > dataOffset || buffer.capacity() < dataOffset) {
+            throw new IOException("The header of the cache file is broken: " + path);
+        }
+        if (buffer.getInt(HEADER_SIZE - 4) != computeMetadataCrc(buffer, dataOffset)) {
+            throw new IOException("The checksum of the header and the index of the cache file mismatched: " + path);
+        }
+        return new ExevalatorDiskCache(buffer, entryCount, nameCount, indexOffset, nameTableOffset);
+    }
+
+    /**
+     * Compiles an expression on the engine, from its AST stored in the cache if it exists, or by parsing it.
+     *
+     * @param engine The engine on which the expression is compiled.
+     * @param expression The expression to be compiled.
+     * @return The compiled expression.
+     * @throws Exevalator.Exception Thrown if the expression could not be compiled.
+     */
+    public Exevalator.CompiledExpression compile(Exevalator engine, String expression) {
+        Exevalator.ParsedExpression parsedExpression = null;
+        this.lock.lock();
+        try {
+            int entryIndex = this.findEntry(expression);
+            if (0 <= entryIndex) {
+                ByteBuffer body = this.getVerifiedBody(entryIndex);
+                if (body != null) {
+                    try {
+                        int tokenCount = readVarint(body);
+                        parsedExpression = new Exevalator.ParsedExpression(this.decodeTree(body), tokenCount);
+                    } catch (RuntimeException e) {
+                        parsedExpression = null; // Broken in spite of the checksum (e.g. written by an incompatible version), so parse it.
+                    }
+                }
+            }
+            if (parsedExpression != null) {
+                this.hitCount++;
+            } else {
+                this.missCount++;
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        return engine.compile(expression, parsedExpression);
+    }
+
+    /**
+     * Returns whether the expression is stored in the cache.
+     *
+     * @param expression The expression.
+     * @return True if the expression is stored.
+     */
+    public boolean contains(String expression) {
+        this.lock.lock();
+        try {
+            return 0 <= this.findEntry(expression);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of expressions stored in the cache.
+     *
+     * @return The number of stored expressions.
+     */
+    public int size() {
+        return this.entryCount;
+    }
+
+    /**
+     * Returns the number of expressions compiled from the cache.
+     *
+     * @return The number of expressions compiled from the cache.
+     */
+    public long getHitCount() {
+        this.lock.lock();
+        try {
+            return this.hitCount;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of expressions compiled by parsing them, because they are not found in the cache (or corrupted).
+     *
+     * @return The number of expressions compiled by parsing them.
+     */
+    public long getMissCount() {
+        this.lock.lock();
+        try {
+            return this.missCount;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Finds the entry of the expression, by the binary search of its hash in the index.
+     *
+     * @param expression The expression.
+     * @return The index of the entry, or -1 if it is not found.
+     */
+    private int findEntry(String expression) {
+        int hash = expression.hashCode();
+        int low = 0;
+        int high = this.entryCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleHash = this.buffer.getInt(this.indexOffset + INDEX_ENTRY_SIZE * middle);
+            if (middleHash < hash) {
+                low = middle + 1;
+            } else if (hash < middleHash) {
+                high = middle - 1;
+            } else {
+                low = middle;
+                break;
+            }
+        }
+        if (this.entryCount <= low || this.buffer.getInt(this.indexOffset + INDEX_ENTRY_SIZE * low) != hash) {
+            return -1;
+        }
+
+        // Compare keys of all entries having the same hash.
+        while (0 < low && this.buffer.getInt(this.indexOffset + INDEX_ENTRY_SIZE * (low - 1)) == hash) {
+            low--;
+        }
+        byte[] keyBytes = expression.getBytes(StandardCharsets.UTF_8);
+        for (int ientry=low; ientry<this.entryCount; ientry++) {
+            int entryOffset = this.indexOffset + INDEX_ENTRY_SIZE * ientry;
+            if (this.buffer.getInt(entryOffset) != hash) {
+                break;
+            }
+            int keyOffset = this.buffer.getInt(entryOffset + 4);
+            int keyLength = this.buffer.getInt(entryOffset + 8);
+            if (keyLength == keyBytes.length && this.matchesBytes(keyOffset, keyBytes)) {
+                return ientry;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns whether the bytes at the offset in the file are the same as the specified bytes.
+     */
+    private boolean matchesBytes(int offset, byte[] bytes) {
+        if (offset < 0 || this.buffer.capacity() - bytes.length < offset) {
+            return false;
+        }
+        for (int i=0; i<bytes.length; i++) {
+            if (this.buffer.get(offset + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the body of the entry, after verifying its checksum.
+     *
+     * @param entryIndex The index of the entry.
+     * @return The buffer of which the content is the body, or null if the body is corrupted.
+     */
+    private ByteBuffer getVerifiedBody(int entryIndex) {
+        int entryOffset = this.indexOffset + INDEX_ENTRY_SIZE * entryIndex;
+        int bodyOffset = this.buffer.getInt(entryOffset + 12);
+        int bodyLength = this.buffer.getInt(entryOffset + 16);
+        int bodyCrc = this.buffer.getInt(entryOffset + 20);
+        if (bodyOffset < 0 || bodyLength < 0 || this.buffer.capacity() - bodyLength < bodyOffset) {
+            return null;
+        }
+        ByteBuffer body = this.buffer.duplicate();
+        body.position(bodyOffset).limit(bodyOffset + bodyLength);
+        body = body.slice();
+        CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+        return (int)crc.getValue() == bodyCrc ? body : null;
+    }
+
+    /**
+     * Returns the name at the index in the name table, with decoding it if it has not been decoded.
+     */
+    private String getName(int nameIndex) {
+        String name = this.names[nameIndex];
+        if (name == null) {
+            int offset = this.buffer.getInt(this.nameTableOffset + 8 * nameIndex);
+            int length = this.buffer.getInt(this.nameTableOffset + 8 * nameIndex + 4);
+            byte[] bytes = new byte[length];
+            ByteBuffer nameBuffer = this.buffer.duplicate();
+            nameBuffer.position(offset);
+            nameBuffer.get(bytes);
+            name = new String(bytes, StandardCharsets.UTF_8);
+            this.names[nameIndex] = name;
+        }
+        return name;
+    }
+
+    /**
+     * Encodes nodes of an AST in the prefix order.
+     */
+    private static void encodeTree(Exevalator.SyntaxNode root, ByteArrayOutputStream stream,
+            Map<String, Integer> nameIndexMap, List<String> nameList) {
+
+        // Traverse nodes with an explicit stack, not recursively, because long chains of operators make deep ASTs.
+        Deque<Exevalator.SyntaxNode> nodeStack = new ArrayDeque<Exevalator.SyntaxNode>();
+        nodeStack.push(root);
+        while (!nodeStack.isEmpty()) {
+            Exevalator.SyntaxNode node = nodeStack.pop();
+            switch (node.getKind()) {
+                case NUMBER_LITERAL: {
+                    stream.write(NUMBER_LITERAL_TAG);
+                    long bits = Double.doubleToRawLongBits(Double.parseDouble(node.getWord()));
+                    for (int shift=56; 0<=shift; shift-=8) {
+                        stream.write((int)(bits >>> shift));
+                    }
+                    break;
+                }
+                case VARIABLE_IDENTIFIER:
+                case FUNCTION_IDENTIFIER: {
+                    stream.write(node.getKind() == Exevalator.SyntaxNode.Kind.VARIABLE_IDENTIFIER ? VARIABLE_TAG : FUNCTION_TAG);
+                    Integer nameIndex = nameIndexMap.get(node.getWord());
+                    if (nameIndex == null) {
+                        nameIndex = nameList.size();
+                        nameList.add(node.getWord());
+                        nameIndexMap.put(node.getWord(), nameIndex);
+                    }
+                    writeVarint(stream, nameIndex);
+                    break;
+                }
+                default: {
+                    Integer operatorCode = OPERATOR_CODE_MAP.get(node.getKind() + " " + node.getWord());
+                    if (operatorCode == null) {
+                        throw new Exevalator.Exception("Unexpected operator: " + node.getWord());
+                    }
+                    stream.write(OPERATOR_TAG);
+                    writeVarint(stream, operatorCode);
+                    break;
+                }
+            }
+            int childCount = node.getChildCount();
+            writeVarint(stream, childCount);
+            for (int ichild=childCount-1; 0<=ichild; ichild--) {
+                nodeStack.push(node.getChild(ichild));
+            }
+        }
+    }
+
+    /**
+     * Decodes nodes of an AST encoded in the prefix order.
+     */
+    private Exevalator.SyntaxNode decodeTree(ByteBuffer body) {
+
+        // Restore nodes with explicit stacks of parent nodes and numbers of their child nodes not decoded yet.
+        Deque<Exevalator.SyntaxNode> parentStack = new ArrayDeque<Exevalator.SyntaxNode>();
+        Deque<Integer> remainingChildCountStack = new ArrayDeque<Integer>();
+        Exevalator.SyntaxNode root = null;
+        do {
+            Exevalator.SyntaxNode node = this.decodeNode(body);
+            int childCount = readVarint(body);
+            if (root == null) {
+                root = node;
+            } else {
+                parentStack.peek().addChild(node);
+                int remainingChildCount = remainingChildCountStack.pop() - 1;
+                if (remainingChildCount == 0) {
+                    parentStack.pop();
+                } else {
+                    remainingChildCountStack.push(remainingChildCount);
+                }
+            }
+            if (0 < childCount) {
+                parentStack.push(node);
+                remainingChildCountStack.push(childCount);
+            }
+        } while (!parentStack.isEmpty());
+        return root;
+    }
+
+    /**
+     * Decodes a node of an AST (without its child nodes).
+     */
+    private Exevalator.SyntaxNode decodeNode(ByteBuffer body) {
+        byte tag = body.get();
+        switch (tag) {
+            case NUMBER_LITERAL_TAG: {
+                return new Exevalator.SyntaxNode(
+                    Exevalator.SyntaxNode.Kind.NUMBER_LITERAL, Double.toString(Double.longBitsToDouble(body.getLong()))
+                );
+            }
+            case VARIABLE_TAG: {
+                return new Exevalator.SyntaxNode(Exevalator.SyntaxNode.Kind.VARIABLE_IDENTIFIER, this.getName(readVarint(body)));
+            }
+            case FUNCTION_TAG: {
+                return new Exevalator.SyntaxNode(Exevalator.SyntaxNode.Kind.FUNCTION_IDENTIFIER, this.getName(readVarint(body)));
+            }
+            case OPERATOR_TAG: {
+                int operatorCode = readVarint(body);
+                return new Exevalator.SyntaxNode(OPERATOR_KINDS[operatorCode], OPERATOR_SYMBOLS[operatorCode]);
+            }
+            default: {
+                throw new IllegalStateException("Unknown tag: " + tag);
+            }
+        }
+    }
+
+    /**
+     * Computes the CRC-32 of the header (excluding the field of the CRC) and the metadata (the index and the name table).
+     */
+    private static int computeMetadataCrc(ByteBuffer buffer, int dataOffset) {
+        CRC32 crc = new CRC32();
+        ByteBuffer header = buffer.duplicate();
+        header.position(0).limit(HEADER_SIZE - 4);
+        crc.update(header);
+        ByteBuffer metadata = buffer.duplicate();
+        metadata.position(HEADER_SIZE).limit(dataOffset);
+        crc.update(metadata);
+        return (int)crc.getValue();
+    }
+
+    /**
+     * Writes a non-negative integer in the variable-length format (7 bits per byte, lower bits first).
+     */
+    private static void writeVarint(ByteArrayOutputStream stream, int value) {
+        while ((value & ~0x7F) != 0) {
+            stream.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        stream.write(value);
+    }
+
+    /**
+     * Reads a non-negative integer in the variable-length format.
+     */
+    private static int readVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift=0; shift<32; shift+=7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Too long variable-length integer");
+    }
+
+
+
+    /**
+     * Creates a cache file from a text file (one expression per line),
+     * or measures times to compile many expressions with/without the cache.
+     *
+     * @param args "build input_file cache_file [max_chars max_tokens max_depth]", or "bench [expression_count]".
+     */
+    public static void main(String[] args) throws IOException {
+        if ((args.length == 3 || args.length == 6) && args[0].equals("build")) {
+            List<String> expressionList = new ArrayList<String>();
+            BufferedReader reader = new BufferedReader(
+                new InputStreamReader(Files.newInputStream(Paths.get(args[1])), StandardCharsets.UTF_8)
+            );
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.trim().isEmpty()) {
+                        expressionList.add(line.trim());
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+            Exevalator engine = new Exevalator();
+            if (args.length == 6) {
+                engine.setLimits(Integer.parseInt(args[3]), Integer.parseInt(args[4]), Integer.parseInt(args[5]));
+            }
+            write(Paths.get(args[2]), expressionList, engine);
+            System.out.println("Stored " + expressionList.size() + " expressions into: " + args[2]);
+            return;
+        }
+        if (args.length < 1 || !args[0].equals("bench")) {
+            System.err.println("Usage: java ExevalatorDiskCache build input_file cache_file [max_chars max_tokens max_depth]");
+            System.err.println("       java ExevalatorDiskCache bench [expression_count]");
+            return;
+        }
+
+        // Generate expressions using variables x0...x49 and a function f, and store them into a temporary cache file.
+        int expressionCount = 2 <= args.length ? Integer.parseInt(args[1]) : 200000;
+        List<String> expressionList = new ArrayList<String>(expressionCount);
+        for (int i=0; i<expressionCount; i++) {
+            expressionList.add(
+                "x" + (i % 50) + " * " + i + ".25 + f(x" + ((i * 7) % 50) + ", " + (i % 13) + ") - (x" + ((i * 3) % 50) + " - " + i + ") / 2"
+            );
+        }
+        Path cachePath = Files.createTempFile("exevalator", ".cache");
+        try {
+            write(cachePath, expressionList);
+
+            // Repeat the measurement, to warm up the JIT compiler, and print the result of the last one.
+            long parsingTime = 0L;
+            long cachedTime = 0L;
+            for (int irepetition=0; irepetition<5; irepetition++) {
+                Exevalator engine = createBenchmarkEngine();
+                long beginTime = System.nanoTime();
+                for (String expression: expressionList) {
+                    engine.compile(expression);
+                }
+                parsingTime = System.nanoTime() - beginTime;
+
+                engine = createBenchmarkEngine();
+                beginTime = System.nanoTime();
+                ExevalatorDiskCache cache = open(cachePath);
+                for (String expression: expressionList) {
+                    cache.compile(engine, expression);
+                }
+                cachedTime = System.nanoTime() - beginTime;
+            }
+            System.out.println("Compiled " + expressionCount + " expressions (cache file: " + Files.size(cachePath) + " bytes)");
+            System.out.println("by parsing:     " + String.format("%.1f", parsingTime * 1.0E-6) + " ms");
+            System.out.println("from the cache: " + String.format("%.1f", cachedTime * 1.0E-6) + " ms (including opening the file)");
+        } finally {
+            Files.deleteIfExists(cachePath);
+        }
+    }
+
+    /**
+     * Creates an engine on which expressions generated in the benchmark can be compiled.
+     */
+    private static Exevalator createBenchmarkEngine() {
+        Exevalator engine = new Exevalator();
+        for (int i=0; i<50; i++) {
+            engine.declareVariable("x" + i);
+        }
+        engine.connectFunction("f", new Exevalator.FunctionInterface() {
+            @Override
+            public double invoke(double[] arguments) {
+                return arguments[0] + arguments[1];
+            }
+        });
+        return engine;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Exevalator Ver.2.4.0 - by RINEARN (Fumihiro Matsui) 2021-2025
+ * This software is released under the "Unlicense" license.
+ * You can choose the "CC0" license instead, if you want.
+ */
+
+/*
+ * Put this code in the same folder as Exevalator.java, and write the same package-statement as it.
+ * This code requires Java 11 or later, while Exevalator.java itself can be used in Java 8.
+ */
+// package your.projects.package.anywhere;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The listener emitting events of Exevalator to Java Flight Recorder (JFR).
+ *
+ * Events are recorded only while they are enabled in the recording settings, e.g. (in Java 17 or later):
+ *
+ *     java "-XX:StartFlightRecording:+exevalator.Evaluation#enabled=true,+exevalator.FunctionCall#enabled=true" ...
+ *
+ * They are disabled by default, and then cost almost nothing except for measuring times of phases.
+ * To record events, add an instance of this class to the engine by "Exevalator.addEventListener" method.
+ *
+ * Events are emitted as instant events when evaluations (or function calls) have finished, because the engine notifies
+ * listeners only after that. So the start time of each event is the time at the end of the evaluation, its duration is 0,
+ * and times taken by the evaluation are stored in its fields ("Total Time", "Lexing Time", and so on).
+ */
+public final class ExevalatorFlightRecorder implements Exevalator.EventListener {
+
+    /** The type of evaluation events, used for checking whether they are enabled without creating events. */
+    private static final EventType EVALUATION_EVENT_TYPE = EventType.getEventType(EvaluationEvent.class);
+
+    /** The type of function-call events, used for checking whether they are enabled without creating events. */
+    private static final EventType FUNCTION_CALL_EVENT_TYPE = EventType.getEventType(FunctionCallEvent.class);
+
+    /** The threshold of times of function calls (in nanoseconds), at or above which function-call events are emitted. */
+    private final long functionCallTimeThreshold;
+
+    /**
+     * Creates a listener emitting evaluation events, and function-call events taking the time at or above the threshold.
+     *
+     * @param functionCallTimeThreshold The threshold of times of function calls in nanoseconds (negative to disable function-call events).
+     */
+    public ExevalatorFlightRecorder(long functionCallTimeThreshold) {
+        this.functionCallTimeThreshold = functionCallTimeThreshold;
+    }
+
+    /**
+     * Creates a listener emitting evaluation events, and function-call events taking 1 millisecond or more.
+     */
+    public ExevalatorFlightRecorder() {
+        this(1000000L);
+    }
+
+    /**
+     * The instant event of an evaluation of an expression by "eval" method, emitted at the end of the evaluation.
+     */
+    @Name("exevalator.Evaluation")
+    @Label("Exevalator Evaluation")
+    @Category("Exevalator")
+    @Description("An evaluation of an expression by Exevalator.eval, emitted at its end (times are in the fields, not in the duration)")
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class EvaluationEvent extends Event {
+
+        @Label("Expression")
+        public String expression;
+
+        @Label("Expression Length")
+        public int expressionLength;
+
+        @Label("Token Count")
+        public int tokenCount;
+
+        @Label("Cache Hit")
+        @Description("True if the cached result of parsing has been reused")
+        public boolean cacheHit;
+
+        @Label("Total Time")
+        @Description("The sum of times of all phases of the evaluation")
+        @Timespan(Timespan.NANOSECONDS)
+        public long totalTime;
+
+        @Label("Lexing Time")
+        @Timespan(Timespan.NANOSECONDS)
+        public long lexingTime;
+
+        @Label("Parsing Time")
+        @Timespan(Timespan.NANOSECONDS)
+        public long parsingTime;
+
+        @Label("Building Time")
+        @Description("The time taken for creating the tree of evaluator nodes from the AST")
+        @Timespan(Timespan.NANOSECONDS)
+        public long buildingTime;
+
+        @Label("Evaluating Time")
+        @Timespan(Timespan.NANOSECONDS)
+        public long evaluatingTime;
+    }
+
+    /**
+     * The instant event of a function call taking the time at or above the threshold, emitted at the end of the call.
+     */
+    @Name("exevalator.FunctionCall")
+    @Label("Exevalator Function Call")
+    @Category("Exevalator")
+    @Description("A call of a function connected to Exevalator taking the time at or above the threshold, emitted at its end (the time is in the field, not in the duration)")
+    @Enabled(false)
+    public static final class FunctionCallEvent extends Event {
+
+        @Label("Function Name")
+        public String functionName;
+
+        @Label("Call Time")
+        @Timespan(Timespan.NANOSECONDS)
+        public long callTime;
+    }
+
+    @Override
+    public void expressionEvaluated(String expression, int tokenCount, boolean cacheHit,
+            long lexingTime, long parsingTime, long buildingTime, long evaluatingTime) {
+
+        if (!EVALUATION_EVENT_TYPE.isEnabled()) {
+            return;
+        }
+        EvaluationEvent event = new EvaluationEvent();
+        event.expression = expression;
+        event.expressionLength = expression.length();
+        event.tokenCount = tokenCount;
+        event.cacheHit = cacheHit;
+        event.totalTime = lexingTime + parsingTime + buildingTime + evaluatingTime;
+        event.lexingTime = lexingTime;
+        event.parsingTime = parsingTime;
+        event.buildingTime = buildingTime;
+        event.evaluatingTime = evaluatingTime;
+        event.commit();
+    }
+
+    @Override
+    public long getFunctionCallTimeThreshold() {
+        return this.functionCallTimeThreshold;
+    }
+
+    @Override
+    public void functionCalled(String functionName, long time) {
+        if (!FUNCTION_CALL_EVENT_TYPE.isEnabled()) {
+            return;
+        }
+        FunctionCallEvent event = new FunctionCallEvent();
+        event.functionName = functionName;
+        event.callTime = time;
+        event.commit();
+    }
+}
@@ -0,0 +1,496 @@
+/*
+ * Exevalator Ver.2.4.0 - by RINEARN (Fumihiro Matsui) 2021-2025
+ * This software is released under the "Unlicense" license.
+ * You can choose the "CC0" license instead, if you want.
+ */
+
+/*
+ * Put this code in the same folder as Exevalator.java, and write the same package-statement as it.
+ * This code requires JDK 9 or later.
+ */
+// package your.projects.package.anywhere;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The Flow.Processor bridging a stream of updates of variables to a stream of results of expressions,
+ * with honoring the demand of the downstream subscriber (backpressure).
+ *
+ * Each received batch of updates (a Map from names of variables to their new values) is written to variables of the engine,
+ * and compiled expressions depending on updated variables are re-evaluated.
+ * Then their values are published to the downstream subscriber as a "Result":
+ *
+ *     Map<String, String> expressionMap = new LinkedHashMap<String, String>();
+ *     expressionMap.put("spread", "ask - bid");
+ *     expressionMap.put("mid", "(ask + bid) / 2");
+ *     ExevalatorFlowProcessor processor = new ExevalatorFlowProcessor(exevalator, expressionMap, true);
+ *     updatePublisher.subscribe(processor);
+ *     processor.subscribe(resultSubscriber);
+ *
+ * Batches are requested from the upstream only as many as requested by the downstream, so no updates are lost.
+ * In the merging mode, the upstream is consumed without waiting for the downstream,
+ * and batches received while the downstream is busy are merged into one (later values overwrite earlier ones),
+ * so the latest state of variables is always evaluated, with skipping stale intermediate states.
+ *
+ * Dependencies of expressions are detected from variables appearing in them,
+ * so variables read in connected functions are not taken into account.
+ * This processor accepts only one downstream subscriber.
+ */
+public final class ExevalatorFlowProcessor implements Flow.Processor<Map<String, Double>, ExevalatorFlowProcessor.Result> {
+
+    /** The engine on the memory of which expressions are evaluated. */
+    private final Exevalator engine;
+
+    /** The names of expressions, in the order of the Map given to the constructor. */
+    private final String[] expressionNames;
+
+    /** The compiled expressions, in the same order as expressionNames. */
+    private final Exevalator.CompiledExpression[] compiledExpressions;
+
+    /** The Map mapping the name of each variable to indices of expressions depending on it. */
+    private final Map<String, int[]> dependentIndicesMap = new HashMap<String, int[]>();
+
+    /**
+     * The Map mapping the name of each variable to its address, resolved when the processor is built
+     * (and when other variables are updated first). It is accessed only while processing batches, which are serialized.
+     */
+    private final Map<String, Integer> variableAddressMap = new HashMap<String, Integer>();
+
+    /** The flag to merge batches received while the downstream is busy. */
+    private final boolean mergingEnabled;
+
+    /** The lock guarding the fields below. */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** The queue of received batches not processed yet (in the merging mode, at most one merged batch is stored). */
+    private final ArrayDeque<PendingBatch> pendingBatchQueue = new ArrayDeque<PendingBatch>();
+
+    /** The number of results requested by the downstream but not published yet. */
+    private long downstreamDemand = 0L;
+
+    /** The number of batches requested before the subscription to the upstream has been started. */
+    private long unforwardedDemand = 0L;
+
+    /** The subscription to the upstream publisher. */
+    private Flow.Subscription upstreamSubscription = null;
+
+    /** The downstream subscriber. */
+    private Flow.Subscriber<? super Result> downstreamSubscriber = null;
+
+    /** The sequence number of the next received batch. */
+    private long nextSequenceNumber = 0L;
+
+    /** The flag representing that the upstream has completed. */
+    private boolean upstreamCompleted = false;
+
+    /** The error signaled from the upstream, or thrown in this processor. */
+    private Throwable error = null;
+
+    /** The flag representing that onComplete/onError has been signaled to the downstream, or it has cancelled. */
+    private boolean terminated = false;
+
+    /** The counter for serializing signals to the downstream from multiple threads (the work-in-progress counter). */
+    private final AtomicInteger drainCounter = new AtomicInteger();
+
+    /**
+     * Creates a processor evaluating the specified expressions, with delivering all batches without merging.
+     *
+     * @param engine The engine on the memory of which expressions are evaluated.
+     * @param expressionMap The Map mapping names of expressions to their contents.
+     */
+    public ExevalatorFlowProcessor(Exevalator engine, Map<String, String> expressionMap) {
+        this(engine, expressionMap, false);
+    }
+
+    /**
+     * Creates a processor evaluating the specified expressions.
+     *
+     * @param engine The engine on the memory of which expressions are evaluated.
+     * @param expressionMap The Map mapping names of expressions to their contents.
+     * @param mergingEnabled Specify true to merge batches received while the downstream is busy.
+     * @throws Exevalator.Exception Thrown if any expression could not be compiled.
+     */
+    public ExevalatorFlowProcessor(Exevalator engine, Map<String, String> expressionMap, boolean mergingEnabled) {
+        this.engine = engine;
+        this.mergingEnabled = mergingEnabled;
+        int expressionCount = expressionMap.size();
+        this.expressionNames = new String[expressionCount];
+        this.compiledExpressions = new Exevalator.CompiledExpression[expressionCount];
+
+        Map<String, List<Integer>> dependentIndexListMap = new HashMap<String, List<Integer>>();
+        int expressionIndex = 0;
+        for (Map.Entry<String, String> expressionEntry: expressionMap.entrySet()) {
+            this.expressionNames[expressionIndex] = expressionEntry.getKey();
+            this.compiledExpressions[expressionIndex] = engine.compile(expressionEntry.getValue());
+
+            for (String variableName: this.compiledExpressions[expressionIndex].getVariableNames()) {
+                if (!dependentIndexListMap.containsKey(variableName)) {
+                    dependentIndexListMap.put(variableName, new ArrayList<Integer>());
+                }
+                dependentIndexListMap.get(variableName).add(expressionIndex);
+            }
+            expressionIndex++;
+        }
+        for (Map.Entry<String, List<Integer>> dependencyEntry: dependentIndexListMap.entrySet()) {
+            List<Integer> indexList = dependencyEntry.getValue();
+            int[] indices = new int[indexList.size()];
+            for (int i=0; i<indices.length; i++) {
+                indices[i] = indexList.get(i);
+            }
+            this.dependentIndicesMap.put(dependencyEntry.getKey(), indices);
+            this.variableAddressMap.put(dependencyEntry.getKey(), engine.getVariableAddress(dependencyEntry.getKey()));
+        }
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        long initialRequest;
+        this.lock.lock();
+        try {
+            if (this.upstreamSubscription != null || this.terminated) {
+                initialRequest = -1L;
+            } else {
+                this.upstreamSubscription = subscription;
+                initialRequest = this.mergingEnabled ? Long.MAX_VALUE : this.unforwardedDemand;
+                this.unforwardedDemand = 0L;
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        if (initialRequest < 0L) {
+            subscription.cancel();
+        } else if (0L < initialRequest) {
+            subscription.request(initialRequest);
+        }
+    }
+
+    @Override
+    public void onNext(Map<String, Double> updateMap) {
+        this.lock.lock();
+        try {
+            if (this.terminated) {
+                return;
+            }
+            long sequenceNumber = this.nextSequenceNumber++;
+            PendingBatch lastBatch = this.pendingBatchQueue.peekLast();
+            if (this.mergingEnabled && lastBatch != null) {
+                lastBatch.updateMap.putAll(updateMap);
+                lastBatch.sequenceNumber = sequenceNumber;
+                lastBatch.mergedBatchCount++;
+            } else {
+                this.pendingBatchQueue.add(new PendingBatch(new LinkedHashMap<String, Double>(updateMap), sequenceNumber));
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        this.drain();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        this.lock.lock();
+        try {
+            if (this.error == null) {
+                this.error = throwable;
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        this.drain();
+    }
+
+    @Override
+    public void onComplete() {
+        this.lock.lock();
+        try {
+            this.upstreamCompleted = true;
+        } finally {
+            this.lock.unlock();
+        }
+        this.drain();
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Result> subscriber) {
+        boolean accepted;
+        this.lock.lock();
+        try {
+            accepted = this.downstreamSubscriber == null;
+            if (accepted) {
+                this.downstreamSubscriber = subscriber;
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        if (!accepted) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("This processor accepts only one subscriber."));
+            return;
+        }
+        subscriber.onSubscribe(new DownstreamSubscription());
+        this.drain();
+    }
+
+    /**
+     * The subscription given to the downstream subscriber.
+     */
+    private final class DownstreamSubscription implements Flow.Subscription {
+
+        @Override
+        public void request(long n) {
+            ExevalatorFlowProcessor processor = ExevalatorFlowProcessor.this;
+            Flow.Subscription upstream = null;
+            processor.lock.lock();
+            try {
+                if (processor.terminated) {
+                    return;
+                }
+                if (n <= 0L) {
+                    processor.error = new IllegalArgumentException("The requested number should be positive: " + n);
+                    processor.pendingBatchQueue.clear();
+                } else {
+                    processor.downstreamDemand = addCapped(processor.downstreamDemand, n);
+                    if (!processor.mergingEnabled) {
+                        if (processor.upstreamSubscription != null) {
+                            upstream = processor.upstreamSubscription;
+                        } else {
+                            processor.unforwardedDemand = addCapped(processor.unforwardedDemand, n);
+                        }
+                    }
+                }
+            } finally {
+                processor.lock.unlock();
+            }
+
+            // Each batch is delivered as one result, so the same number of batches is requested from the upstream.
+            if (upstream != null) {
+                upstream.request(n);
+            }
+            processor.drain();
+        }
+
+        @Override
+        public void cancel() {
+            ExevalatorFlowProcessor processor = ExevalatorFlowProcessor.this;
+            Flow.Subscription upstream;
+            processor.lock.lock();
+            try {
+                processor.terminated = true;
+                processor.pendingBatchQueue.clear();
+                upstream = processor.upstreamSubscription;
+            } finally {
+                processor.lock.unlock();
+            }
+            if (upstream != null) {
+                upstream.cancel();
+            }
+        }
+    }
+
+    /**
+     * Processes pending batches as many as demanded, and signals the completion or the error to the downstream.
+     * Only one thread performs this at a time, and calls from other threads during it are performed by that thread.
+     */
+    private void drain() {
+        if (this.drainCounter.getAndIncrement() != 0) {
+            return;
+        }
+        int missedCount = 1;
+        while (true) {
+            while (true) {
+                PendingBatch batch = null;
+                Flow.Subscriber<? super Result> subscriber;
+                Throwable terminalError = null;
+                boolean completed = false;
+                this.lock.lock();
+                try {
+                    subscriber = this.downstreamSubscriber;
+                    if (this.terminated || subscriber == null) {
+                        break;
+                    }
+                    if (this.error != null) {
+                        terminalError = this.error;
+                        this.terminated = true;
+                    } else if (0L < this.downstreamDemand && !this.pendingBatchQueue.isEmpty()) {
+                        batch = this.pendingBatchQueue.poll();
+                        if (this.downstreamDemand != Long.MAX_VALUE) {
+                            this.downstreamDemand--;
+                        }
+                    } else if (this.upstreamCompleted && this.pendingBatchQueue.isEmpty()) {
+                        completed = true;
+                        this.terminated = true;
+                    } else {
+                        break;
+                    }
+                } finally {
+                    this.lock.unlock();
+                }
+
+                if (terminalError != null) {
+                    this.cancelUpstream();
+                    subscriber.onError(terminalError);
+                    break;
+                }
+                if (completed) {
+                    subscriber.onComplete();
+                    break;
+                }
+                Result result;
+                try {
+                    result = this.process(batch);
+                } catch (Exevalator.Exception ee) {
+                    this.onError(ee);
+                    continue;
+                }
+                subscriber.onNext(result);
+            }
+            missedCount = this.drainCounter.addAndGet(-missedCount);
+            if (missedCount == 0) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Writes updated values to variables, and re-evaluates expressions depending on them.
+     * They are performed while holding the lock of the engine, so other users of the engine can't interleave with them.
+     *
+     * @param batch The batch of updates.
+     * @return The result storing values of re-evaluated expressions.
+     */
+    private Result process(PendingBatch batch) {
+        boolean[] affected = new boolean[this.compiledExpressions.length];
+        Map<String, Double> valueMap = new LinkedHashMap<String, Double>();
+        ReentrantLock engineLock = this.engine.getLock();
+        engineLock.lock();
+        try {
+            for (Map.Entry<String, Double> update: batch.updateMap.entrySet()) {
+                this.engine.writeVariableAt(this.resolveAddress(update.getKey()), update.getValue());
+                int[] dependentIndices = this.dependentIndicesMap.get(update.getKey());
+                if (dependentIndices != null) {
+                    for (int dependentIndex: dependentIndices) {
+                        affected[dependentIndex] = true;
+                    }
+                }
+            }
+            for (int iexpr=0; iexpr<this.compiledExpressions.length; iexpr++) {
+                if (affected[iexpr]) {
+                    valueMap.put(this.expressionNames[iexpr], this.compiledExpressions[iexpr].execute());
+                }
+            }
+        } finally {
+            engineLock.unlock();
+        }
+        return new Result(batch.sequenceNumber, batch.mergedBatchCount, Collections.unmodifiableMap(valueMap));
+    }
+
+    /**
+     * Returns the address of the variable, resolving it on the engine if it has not been resolved.
+     *
+     * @param name The name of the variable.
+     * @return The address of the variable.
+     * @throws Exevalator.Exception Thrown if the variable has not been declared.
+     */
+    private int resolveAddress(String name) {
+        Integer address = this.variableAddressMap.get(name);
+        if (address == null) {
+            int resolvedAddress = this.engine.getVariableAddress(name);
+            if (resolvedAddress < 0) {
+                // Throws the exception of the undeclared variable, notified to listeners of the engine.
+                this.engine.readVariable(name);
+            }
+            address = resolvedAddress;
+            this.variableAddressMap.put(name, address);
+        }
+        return address;
+    }
+
+    /**
+     * Cancels the subscription to the upstream, if it exists.
+     */
+    private void cancelUpstream() {
+        Flow.Subscription upstream;
+        this.lock.lock();
+        try {
+            upstream = this.upstreamSubscription;
+        } finally {
+            this.lock.unlock();
+        }
+        if (upstream != null) {
+            upstream.cancel();
+        }
+    }
+
+    /**
+     * Adds two non-negative numbers, with capping the result to Long.MAX_VALUE (regarded as unbounded) on overflow.
+     */
+    private static long addCapped(long a, long b) {
+        long sum = a + b;
+        return sum < 0L ? Long.MAX_VALUE : sum;
+    }
+
+    /**
+     * A received batch of updates not processed yet.
+     */
+    private static final class PendingBatch {
+        private final Map<String, Double> updateMap;
+        private long sequenceNumber;
+        private int mergedBatchCount = 1;
+
+        private PendingBatch(Map<String, Double> updateMap, long sequenceNumber) {
+            this.updateMap = updateMap;
+            this.sequenceNumber = sequenceNumber;
+        }
+    }
+
+    /**
+     * The values of expressions re-evaluated for a batch (or merged batches) of updates.
+     */
+    public static final class Result {
+        private final long sequenceNumber;
+        private final int mergedBatchCount;
+        private final Map<String, Double> valueMap;
+
+        private Result(long sequenceNumber, int mergedBatchCount, Map<String, Double> valueMap) {
+            this.sequenceNumber = sequenceNumber;
+            this.mergedBatchCount = mergedBatchCount;
+            this.valueMap = valueMap;
+        }
+
+        /** Returns the sequence number (starting from 0) of the last batch reflected to this result. */
+        public long getSequenceNumber() {
+            return this.sequenceNumber;
+        }
+
+        /** Returns the number of batches merged into this result (always 1 if the merging mode is disabled). */
+        public int getMergedBatchCount() {
+            return this.mergedBatchCount;
+        }
+
+        /** Returns the Map mapping names of re-evaluated expressions to their values. */
+        public Map<String, Double> getValues() {
+            return this.valueMap;
+        }
+
+        @Override
+        public String toString() {
+            return "sequence=" + this.sequenceNumber + ", merged=" + this.mergedBatchCount + ", values=" + this.valueMap;
+        }
+    }
+}
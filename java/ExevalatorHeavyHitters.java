@@ -0,0 +1,307 @@
+/*
+ * Exevalator Ver.2.4.0 - by RINEARN (Fumihiro Matsui) 2021-2025
+ * This software is released under the "Unlicense" license.
+ * You can choose the "CC0" license instead, if you want.
+ */
+
+/*
+ * Put this code in the same folder as Exevalator.java, and write the same package-statement as it.
+ */
+// package your.projects.package.anywhere;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The listener tracking the most frequently evaluated expressions (heavy hitters) with bounded memory,
+ * to find expressions which should be kept in a cache or compiled ahead of time.
+ *
+ * Frequencies of expressions are estimated by a count-min sketch (a fixed-size table of counters indexed by hashes),
+ * and top expressions are kept in a min-heap of the fixed capacity.
+ * Add an instance of this class to engines by "Exevalator.addEventListener" method,
+ * and get top expressions by "getTopExpressions" method:
+ *
+ *     ExevalatorHeavyHitters heavyHitters = new ExevalatorHeavyHitters(20);
+ *     exevalator1.addEventListener(heavyHitters);
+ *     exevalator2.addEventListener(heavyHitters);
+ *     ...
+ *     for (ExevalatorHeavyHitters.HeavyHitter heavyHitter: heavyHitters.getTopExpressions()) {
+ *         System.out.println(heavyHitter);
+ *     }
+ *
+ * To reduce the overhead, evaluations can be sampled at random with the specified interval,
+ * in which case each sampled evaluation is counted as the interval.
+ */
+public final class ExevalatorHeavyHitters implements Exevalator.EventListener {
+
+    /** The default number of counters in each row of the sketch. */
+    public static final int DEFAULT_SKETCH_WIDTH = 2048;
+
+    /** The default number of rows (hash functions) of the sketch. */
+    public static final int DEFAULT_SKETCH_DEPTH = 4;
+
+    /** The maximum number of tracked expressions. */
+    private final int capacity;
+
+    /** The interval of sampling evaluations (1 to track all evaluations). */
+    private final int samplingInterval;
+
+    /** The counters of the count-min sketch, in which [row][column] is stored at [row * width + column]. */
+    private final long[] sketch;
+
+    /** The number of counters in each row of the sketch (a power of 2). */
+    private final int sketchWidth;
+
+    /** The number of rows of the sketch. */
+    private final int sketchDepth;
+
+    /** The min-heap of tracked expressions, in which the one having the smallest estimated count is at the top. */
+    private final PriorityQueue<Entry> entryHeap;
+
+    /** The Map mapping each tracked expression to its entry. */
+    private final Map<String, Entry> entryMap = new HashMap<String, Entry>();
+
+    /** The estimated total number of evaluations. */
+    private long totalCount = 0L;
+
+    /** The lock guarding the sketch and tracked expressions (not "synchronized", to not pin virtual threads). */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Creates a tracker keeping the specified number of top expressions, tracking all evaluations.
+     *
+     * @param capacity The maximum number of tracked expressions.
+     */
+    public ExevalatorHeavyHitters(int capacity) {
+        this(capacity, 1, DEFAULT_SKETCH_WIDTH, DEFAULT_SKETCH_DEPTH);
+    }
+
+    /**
+     * Creates a tracker keeping the specified number of top expressions.
+     *
+     * @param capacity The maximum number of tracked expressions.
+     * @param samplingInterval The interval of sampling evaluations (1 to track all evaluations).
+     * @param sketchWidth The number of counters in each row of the sketch (rounded up to a power of 2).
+     * @param sketchDepth The number of rows of the sketch.
+     */
+    public ExevalatorHeavyHitters(int capacity, int samplingInterval, int sketchWidth, int sketchDepth) {
+        if (capacity <= 0 || samplingInterval <= 0 || sketchWidth <= 0 || sketchDepth <= 0) {
+            throw new IllegalArgumentException(
+                "All arguments should be positive: capacity=" + capacity + ", samplingInterval=" + samplingInterval
+                + ", sketchWidth=" + sketchWidth + ", sketchDepth=" + sketchDepth
+            );
+        }
+        this.capacity = capacity;
+        this.samplingInterval = samplingInterval;
+        this.sketchWidth = Integer.highestOneBit(sketchWidth) == sketchWidth ? sketchWidth : Integer.highestOneBit(sketchWidth) << 1;
+        this.sketchDepth = sketchDepth;
+        this.sketch = new long[this.sketchWidth * this.sketchDepth];
+        this.entryHeap = new PriorityQueue<Entry>(capacity, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry entryA, Entry entryB) {
+                return Long.compare(entryA.estimatedCount, entryB.estimatedCount);
+            }
+        });
+    }
+
+    @Override
+    public void expressionEvaluated(String expression, int tokenCount, boolean cacheHit,
+            long lexingTime, long parsingTime, long buildingTime, long evaluatingTime) {
+
+        if (1 < this.samplingInterval && ThreadLocalRandom.current().nextInt(this.samplingInterval) != 0) {
+            return;
+        }
+        int hash = expression.hashCode();
+        this.lock.lock();
+        try {
+            this.totalCount += this.samplingInterval;
+
+            // Increment counters of the sketch, and estimate the count by the minimum of them.
+            long estimatedCount = Long.MAX_VALUE;
+            for (int irow=0; irow<this.sketchDepth; irow++) {
+                int index = irow * this.sketchWidth + (mixHash(hash, irow) & (this.sketchWidth - 1));
+                this.sketch[index] += this.samplingInterval;
+                estimatedCount = Math.min(estimatedCount, this.sketch[index]);
+            }
+
+            // Update the entry of the expression, or replace the entry having the smallest count with it.
+            Entry entry = this.entryMap.get(expression);
+            if (entry != null) {
+                this.entryHeap.remove(entry);
+            } else if (this.entryMap.size() < this.capacity) {
+                entry = new Entry(expression);
+                this.entryMap.put(expression, entry);
+            } else if (this.entryHeap.peek().estimatedCount < estimatedCount) {
+                this.entryMap.remove(this.entryHeap.poll().expression);
+                entry = new Entry(expression);
+                this.entryMap.put(expression, entry);
+            } else {
+                return;
+            }
+            entry.estimatedCount = estimatedCount;
+            entry.sampledCount++;
+            entry.totalEvaluatingTime += evaluatingTime;
+            if (!cacheHit) {
+                entry.parsedCount++;
+                entry.totalParsingTime += lexingTime + parsingTime + buildingTime;
+            }
+            this.entryHeap.add(entry);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Mixes a hash value with the index of a row of the sketch, to get independent hash values for rows.
+     *
+     * @param hash The hash value of an expression.
+     * @param row The index of a row of the sketch.
+     * @return The mixed hash value.
+     */
+    private static int mixHash(int hash, int row) {
+        int mixed = hash + row * 0x9E3779B9;
+        mixed ^= mixed >>> 16;
+        mixed *= 0x85EBCA6B;
+        mixed ^= mixed >>> 13;
+        mixed *= 0xC2B2AE35;
+        mixed ^= mixed >>> 16;
+        return mixed;
+    }
+
+    /**
+     * Returns tracked expressions in descending order of estimated counts.
+     *
+     * @return The List of tracked expressions.
+     */
+    public List<HeavyHitter> getTopExpressions() {
+        this.lock.lock();
+        try {
+            List<HeavyHitter> heavyHitterList = new ArrayList<HeavyHitter>(this.entryMap.size());
+            for (Entry entry: this.entryMap.values()) {
+                heavyHitterList.add(new HeavyHitter(
+                    entry.expression, entry.estimatedCount,
+                    entry.parsedCount == 0 ? 0.0 : (double)entry.totalParsingTime / entry.parsedCount,
+                    (double)entry.totalEvaluatingTime / entry.sampledCount,
+                    1.0 - (double)entry.parsedCount / entry.sampledCount
+                ));
+            }
+            Collections.sort(heavyHitterList, new Comparator<HeavyHitter>() {
+                @Override
+                public int compare(HeavyHitter heavyHitterA, HeavyHitter heavyHitterB) {
+                    return Long.compare(heavyHitterB.estimatedCount, heavyHitterA.estimatedCount);
+                }
+            });
+            return heavyHitterList;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the estimated total number of evaluations, including ones of expressions not tracked.
+     *
+     * @return The estimated total number of evaluations.
+     */
+    public long getTotalCount() {
+        this.lock.lock();
+        try {
+            return this.totalCount;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Clears the sketch and all tracked expressions.
+     */
+    public void reset() {
+        this.lock.lock();
+        try {
+            Arrays.fill(this.sketch, 0L);
+            this.entryHeap.clear();
+            this.entryMap.clear();
+            this.totalCount = 0L;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * The mutable entry of a tracked expression.
+     */
+    private static final class Entry {
+        private final String expression;
+        private long estimatedCount = 0L;
+        private long sampledCount = 0L;
+        private long parsedCount = 0L;
+        private long totalParsingTime = 0L;
+        private long totalEvaluatingTime = 0L;
+
+        private Entry(String expression) {
+            this.expression = expression;
+        }
+    }
+
+    /**
+     * A frequently evaluated expression, with its estimated count and average costs.
+     * Costs are averaged over sampled evaluations after the expression started being tracked.
+     */
+    public static final class HeavyHitter {
+        private final String expression;
+        private final long estimatedCount;
+        private final double averageParsingTime;
+        private final double averageEvaluatingTime;
+        private final double cacheHitRatio;
+
+        private HeavyHitter(String expression, long estimatedCount,
+                double averageParsingTime, double averageEvaluatingTime, double cacheHitRatio) {
+            this.expression = expression;
+            this.estimatedCount = estimatedCount;
+            this.averageParsingTime = averageParsingTime;
+            this.averageEvaluatingTime = averageEvaluatingTime;
+            this.cacheHitRatio = cacheHitRatio;
+        }
+
+        /** Returns the expression. */
+        public String getExpression() {
+            return this.expression;
+        }
+
+        /** Returns the estimated number of evaluations (never underestimated, but may be overestimated). */
+        public long getEstimatedCount() {
+            return this.estimatedCount;
+        }
+
+        /** Returns the average time (in nanoseconds) of lexing, parsing, and building evaluator nodes, when not cached. */
+        public double getAverageParsingTime() {
+            return this.averageParsingTime;
+        }
+
+        /** Returns the average time (in nanoseconds) of evaluations of the parsed expression. */
+        public double getAverageEvaluatingTime() {
+            return this.averageEvaluatingTime;
+        }
+
+        /** Returns the ratio of evaluations in which the cached result of parsing has been reused. */
+        public double getCacheHitRatio() {
+            return this.cacheHitRatio;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + this.estimatedCount
+                + ", parsing=" + String.format("%.1f", this.averageParsingTime) + " ns"
+                + ", evaluating=" + String.format("%.1f", this.averageEvaluatingTime) + " ns"
+                + ", cacheHit=" + String.format("%.1f", this.cacheHitRatio * 100.0) + "%"
+                + ", expression=\"" + this.expression + "\"";
+        }
+    }
+}
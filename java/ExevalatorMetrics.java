@@ -0,0 +1,539 @@
+/*
+ * Exevalator Ver.2.4.0 - by RINEARN (Fumihiro Matsui) 2021-2025
+ * This software is released under the "Unlicense" license.
+ * You can choose the "CC0" license instead, if you want.
+ */
+
+/*
+ * Put this code in the same folder as Exevalator.java, and write the same package-statement as it.
+ */
+// package your.projects.package.anywhere;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * The listener collecting metrics of engines, exposed as an MXBean on the platform MBean server.
+ *
+ * An instance of this class is registered with the name "exevalator:type=Metrics,name=(the specified name)",
+ * and collects metrics of all engines attached to it by "attach" method.
+ * So create an instance for each engine to collect per-engine metrics,
+ * or attach multiple engines to an instance to collect metrics of an engine group.
+ */
+public final class ExevalatorMetrics implements Exevalator.EventListener, AutoCloseable {
+
+    /** The domain of names of MBeans. */
+    public static final String DOMAIN = "exevalator";
+
+    /** The category of exceptions having no error code (e.g. ones thrown by connected functions). */
+    public static final String UNKNOWN_EXCEPTION_CATEGORY = "UNKNOWN";
+
+    /** The name of this metrics. */
+    private final String name;
+
+    /** The name with which the MXBean has been registered. */
+    private final ObjectName objectName;
+
+    /** The threshold of times of function calls (in nanoseconds), at or above which function calls are counted. */
+    private final long functionCallTimeThreshold;
+
+    private final AtomicInteger engineCount = new AtomicInteger();
+    private final LongAdder evaluationCount = new LongAdder();
+    private final LongAdder cacheHitCount = new LongAdder();
+    private final LongAdder cacheMissCount = new LongAdder();
+    private final LongAdder compilationCount = new LongAdder();
+    private final LongAdder exceptionCount = new LongAdder();
+    private final LongAdder declaredVariableCount = new LongAdder();
+    private final LongAdder connectedFunctionCount = new LongAdder();
+    private final Map<String, LongAdder> exceptionCountMap = new ConcurrentHashMap<String, LongAdder>();
+    private final LatencyHistogram evaluatingTimeHistogram = new LatencyHistogram();
+    private final LatencyHistogram parsingTimeHistogram = new LatencyHistogram();
+    private final LatencyHistogram functionCallTimeHistogram = new LatencyHistogram();
+
+    /**
+     * Creates metrics not measuring times of function calls, and registers it to the platform MBean server.
+     *
+     * @param name The name of the metrics (e.g. the name of the engine or the engine group).
+     */
+    public ExevalatorMetrics(String name) {
+        this(name, -1L);
+    }
+
+    /**
+     * Creates metrics, and registers it to the platform MBean server.
+     *
+     * @param name The name of the metrics (e.g. the name of the engine or the engine group).
+     * @param functionCallTimeThreshold The threshold of times of function calls in nanoseconds,
+     *                                      at or above which calls are recorded (negative not to record them).
+     */
+    public ExevalatorMetrics(String name, long functionCallTimeThreshold) {
+        if (name == null) {
+            throw new NullPointerException();
+        }
+        this.name = name;
+        this.functionCallTimeThreshold = functionCallTimeThreshold;
+        try {
+            this.objectName = new ObjectName(DOMAIN + ":type=Metrics,name=" + ObjectName.quote(name));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(new StandardMBean(new MXBeanAdapter(), MetricsMXBean.class, true), this.objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException("Failed to register the MBean of metrics: " + name, e);
+        }
+    }
+
+    /**
+     * Attaches an engine, to collect metrics of it.
+     * Attach it immediately after creating it, to count all declared variables and connected functions.
+     *
+     * @param engine The engine to be attached.
+     */
+    public void attach(Exevalator engine) {
+        engine.addEventListener(this);
+        this.engineCount.incrementAndGet();
+    }
+
+    /**
+     * Detaches an engine attached by "attach" method. Collected metrics are not discarded.
+     *
+     * @param engine The engine to be detached.
+     */
+    public void detach(Exevalator engine) {
+        engine.removeEventListener(this);
+        this.engineCount.decrementAndGet();
+    }
+
+    /**
+     * Unregisters the MXBean from the platform MBean server.
+     */
+    @Override
+    public void close() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException("Failed to unregister the MBean of metrics: " + this.name, e);
+        }
+    }
+
+    /**
+     * Returns the name with which the MXBean has been registered.
+     *
+     * @return The name of the MXBean.
+     */
+    public ObjectName getObjectName() {
+        return this.objectName;
+    }
+
+    /**
+     * Returns the MXBean interface, for reading metrics directly without JMX.
+     *
+     * @return The MXBean interface of this metrics.
+     */
+    public MetricsMXBean getMXBean() {
+        return new MXBeanAdapter();
+    }
+
+    @Override
+    public void expressionEvaluated(String expression, int tokenCount, boolean cacheHit,
+            long lexingTime, long parsingTime, long buildingTime, long evaluatingTime) {
+
+        this.evaluationCount.increment();
+        if (cacheHit) {
+            this.cacheHitCount.increment();
+        } else {
+            this.cacheMissCount.increment();
+            this.parsingTimeHistogram.record(lexingTime + parsingTime + buildingTime);
+        }
+        this.evaluatingTimeHistogram.record(lexingTime + parsingTime + buildingTime + evaluatingTime);
+    }
+
+    @Override
+    public void expressionCompiled(String expression, int tokenCount, long lexingTime, long parsingTime, long buildingTime) {
+        this.compilationCount.increment();
+        this.parsingTimeHistogram.record(lexingTime + parsingTime + buildingTime);
+    }
+
+    @Override
+    public void exceptionThrown(Exevalator.Exception exception) {
+        this.exceptionCount.increment();
+        String category = getExceptionCategory(exception);
+        LongAdder counter = this.exceptionCountMap.get(category);
+        if (counter == null) {
+            this.exceptionCountMap.putIfAbsent(category, new LongAdder());
+            counter = this.exceptionCountMap.get(category);
+        }
+        counter.increment();
+    }
+
+    @Override
+    public void variableDeclared(String name, int address) {
+        this.declaredVariableCount.increment();
+    }
+
+    @Override
+    public void functionConnected(String name, Exevalator.FunctionInterface function) {
+        this.connectedFunctionCount.increment();
+    }
+
+    @Override
+    public long getFunctionCallTimeThreshold() {
+        return this.functionCallTimeThreshold;
+    }
+
+    @Override
+    public void functionCalled(String functionName, long time) {
+        this.functionCallTimeHistogram.record(time);
+    }
+
+    /**
+     * Returns the category of an exception, which is the name of its error code.
+     *
+     * @param exception The exception.
+     * @return The category of the exception.
+     */
+    public static String getExceptionCategory(Exevalator.Exception exception) {
+        Exevalator.ErrorCode errorCode = exception.getErrorCode();
+        return errorCode != null ? errorCode.name() : UNKNOWN_EXCEPTION_CATEGORY;
+    }
+
+    /**
+     * The MXBean interface exposing metrics. Times are in nanoseconds.
+     */
+    public interface MetricsMXBean {
+
+        /** Returns the name of the metrics. */
+        public String getName();
+
+        /** Returns the number of attached engines. */
+        public int getEngineCount();
+
+        /** Returns the number of evaluations by "eval" method. */
+        public long getEvaluationCount();
+
+        /** Returns the number of parsings, by "eval" method (cache misses) and "compile" method. */
+        public long getParseCount();
+
+        /** Returns the number of evaluations by "eval" method in which the cached result of parsing has been reused. */
+        public long getCacheHitCount();
+
+        /** Returns the number of evaluations by "eval" method in which re-parsing has been required. */
+        public long getCacheMissCount();
+
+        /** Returns the number of compilations by "compile" method. */
+        public long getCompilationCount();
+
+        /** Returns the number of thrown exceptions. */
+        public long getExceptionCount();
+
+        /** Returns the numbers of thrown exceptions for each category (the name of the error code). */
+        public Map<String, Long> getExceptionCounts();
+
+        /** Returns the number of declared variables. */
+        public long getDeclaredVariableCount();
+
+        /** Returns the number of connected functions. */
+        public long getConnectedFunctionCount();
+
+        /** Returns the distribution of times of evaluations by "eval" method, including parsing. */
+        public LatencySnapshot getEvaluatingTime();
+
+        /** Returns the distribution of times of parsing (lexing, parsing, and building trees of evaluator nodes). */
+        public LatencySnapshot getParsingTime();
+
+        /** Returns the distribution of times of function calls taking the time at or above the threshold. */
+        public LatencySnapshot getFunctionCallTime();
+
+        /** Resets all metrics except for the numbers of engines, variables, and functions. */
+        public void reset();
+    }
+
+    /**
+     * The implementation of the MXBean interface, reading metrics from the outer instance.
+     */
+    private final class MXBeanAdapter implements MetricsMXBean {
+
+        @Override
+        public String getName() {
+            return ExevalatorMetrics.this.name;
+        }
+
+        @Override
+        public int getEngineCount() {
+            return ExevalatorMetrics.this.engineCount.get();
+        }
+
+        @Override
+        public long getEvaluationCount() {
+            return ExevalatorMetrics.this.evaluationCount.sum();
+        }
+
+        @Override
+        public long getParseCount() {
+            return ExevalatorMetrics.this.cacheMissCount.sum() + ExevalatorMetrics.this.compilationCount.sum();
+        }
+
+        @Override
+        public long getCacheHitCount() {
+            return ExevalatorMetrics.this.cacheHitCount.sum();
+        }
+
+        @Override
+        public long getCacheMissCount() {
+            return ExevalatorMetrics.this.cacheMissCount.sum();
+        }
+
+        @Override
+        public long getCompilationCount() {
+            return ExevalatorMetrics.this.compilationCount.sum();
+        }
+
+        @Override
+        public long getExceptionCount() {
+            return ExevalatorMetrics.this.exceptionCount.sum();
+        }
+
+        @Override
+        public Map<String, Long> getExceptionCounts() {
+            Map<String, Long> exceptionCounts = new TreeMap<String, Long>();
+            for (Map.Entry<String, LongAdder> entry: ExevalatorMetrics.this.exceptionCountMap.entrySet()) {
+                exceptionCounts.put(entry.getKey(), entry.getValue().sum());
+            }
+            return exceptionCounts;
+        }
+
+        @Override
+        public long getDeclaredVariableCount() {
+            return ExevalatorMetrics.this.declaredVariableCount.sum();
+        }
+
+        @Override
+        public long getConnectedFunctionCount() {
+            return ExevalatorMetrics.this.connectedFunctionCount.sum();
+        }
+
+        @Override
+        public LatencySnapshot getEvaluatingTime() {
+            return ExevalatorMetrics.this.evaluatingTimeHistogram.snapshot();
+        }
+
+        @Override
+        public LatencySnapshot getParsingTime() {
+            return ExevalatorMetrics.this.parsingTimeHistogram.snapshot();
+        }
+
+        @Override
+        public LatencySnapshot getFunctionCallTime() {
+            return ExevalatorMetrics.this.functionCallTimeHistogram.snapshot();
+        }
+
+        @Override
+        public void reset() {
+            ExevalatorMetrics.this.evaluationCount.reset();
+            ExevalatorMetrics.this.cacheHitCount.reset();
+            ExevalatorMetrics.this.cacheMissCount.reset();
+            ExevalatorMetrics.this.compilationCount.reset();
+            ExevalatorMetrics.this.exceptionCount.reset();
+            ExevalatorMetrics.this.exceptionCountMap.clear();
+            ExevalatorMetrics.this.evaluatingTimeHistogram.reset();
+            ExevalatorMetrics.this.parsingTimeHistogram.reset();
+            ExevalatorMetrics.this.functionCallTimeHistogram.reset();
+        }
+    }
+
+    /**
+     * The histogram of latencies, recorded into logarithmic buckets without locks.
+     * Each power-of-two range is divided into 16 sub-buckets, so recorded values are kept with the precision about 6%.
+     */
+    public static final class LatencyHistogram {
+
+        /** The number of bits to index sub-buckets in each power-of-two range. */
+        private static final int SUB_BUCKET_BITS = 4;
+
+        /** The number of sub-buckets in each power-of-two range. */
+        private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+        /** The number of buckets, covering all positive long values. */
+        private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+        private final AtomicLongArray bucketCounts = new AtomicLongArray(BUCKET_COUNT);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        /**
+         * Records a value.
+         *
+         * @param value The value to be recorded (negative values are recorded as 0).
+         */
+        public void record(long value) {
+            if (value < 0L) {
+                value = 0L;
+            }
+            this.bucketCounts.incrementAndGet(getBucketIndex(value));
+            this.count.increment();
+            this.sum.add(value);
+            long currentMax = this.max.get();
+            while (currentMax < value && !this.max.compareAndSet(currentMax, value)) {
+                currentMax = this.max.get();
+            }
+        }
+
+        /**
+         * Discards all recorded values.
+         */
+        public void reset() {
+            for (int ibucket=0; ibucket<BUCKET_COUNT; ibucket++) {
+                this.bucketCounts.set(ibucket, 0L);
+            }
+            this.count.reset();
+            this.sum.reset();
+            this.max.set(0L);
+        }
+
+        /**
+         * Creates a snapshot of statistics of recorded values.
+         * Percentiles are the highest values of buckets, so they are equal to or slightly larger than actual values.
+         *
+         * @return The snapshot of statistics.
+         */
+        public LatencySnapshot snapshot() {
+            long[] bucketCounts = new long[BUCKET_COUNT];
+            long count = 0L;
+            for (int ibucket=0; ibucket<BUCKET_COUNT; ibucket++) {
+                bucketCounts[ibucket] = this.bucketCounts.get(ibucket);
+                count += bucketCounts[ibucket];
+            }
+            long max = this.max.get();
+            double mean = count == 0L ? 0.0 : (double)this.sum.sum() / this.count.sum();
+            return new LatencySnapshot(
+                count, mean, max,
+                getPercentile(bucketCounts, count, max, 0.5),
+                getPercentile(bucketCounts, count, max, 0.9),
+                getPercentile(bucketCounts, count, max, 0.99),
+                getPercentile(bucketCounts, count, max, 0.999)
+            );
+        }
+
+        /**
+         * Returns the index of the bucket in which the value is recorded.
+         *
+         * @param value The value (not negative).
+         * @return The index of the bucket.
+         */
+        private static int getBucketIndex(long value) {
+            if (value < SUB_BUCKET_COUNT) {
+                return (int)value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int subBucketIndex = (int)(value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+            return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucketIndex;
+        }
+
+        /**
+         * Returns the highest value recorded in the bucket at the specified index.
+         *
+         * @param index The index of the bucket.
+         * @return The highest value of the bucket.
+         */
+        private static long getBucketHighestValue(int index) {
+            if (index < SUB_BUCKET_COUNT) {
+                return index;
+            }
+            int shift = index / SUB_BUCKET_COUNT - 1;
+            long lowestValue = (long)(SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT) << shift;
+            return lowestValue + (1L << shift) - 1L;
+        }
+
+        /**
+         * Returns the percentile from counts of buckets.
+         *
+         * @param bucketCounts Counts of buckets.
+         * @param count The total count.
+         * @param max The maximum recorded value.
+         * @param ratio The ratio of the percentile (e.g. 0.99 for the 99th percentile).
+         * @return The percentile.
+         */
+        private static long getPercentile(long[] bucketCounts, long count, long max, double ratio) {
+            if (count == 0L) {
+                return 0L;
+            }
+            long threshold = Math.max(1L, (long)Math.ceil(count * ratio));
+            long accumulatedCount = 0L;
+            for (int ibucket=0; ibucket<BUCKET_COUNT; ibucket++) {
+                accumulatedCount += bucketCounts[ibucket];
+                if (threshold <= accumulatedCount) {
+                    return Math.min(getBucketHighestValue(ibucket), max);
+                }
+            }
+            return max;
+        }
+    }
+
+    /**
+     * The snapshot of statistics of latencies, mapped to CompositeData in JMX.
+     */
+    public static final class LatencySnapshot {
+        private final long count;
+        private final double mean;
+        private final long max;
+        private final long p50;
+        private final long p90;
+        private final long p99;
+        private final long p999;
+
+        @java.beans.ConstructorProperties({ "count", "mean", "max", "p50", "p90", "p99", "p999" })
+        public LatencySnapshot(long count, double mean, long max, long p50, long p90, long p99, long p999) {
+            this.count = count;
+            this.mean = mean;
+            this.max = max;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.p999 = p999;
+        }
+
+        /** Returns the number of recorded values. */
+        public long getCount() {
+            return this.count;
+        }
+
+        /** Returns the mean of recorded values. */
+        public double getMean() {
+            return this.mean;
+        }
+
+        /** Returns the maximum recorded value. */
+        public long getMax() {
+            return this.max;
+        }
+
+        /** Returns the 50th percentile (median) of recorded values. */
+        public long getP50() {
+            return this.p50;
+        }
+
+        /** Returns the 90th percentile of recorded values. */
+        public long getP90() {
+            return this.p90;
+        }
+
+        /** Returns the 99th percentile of recorded values. */
+        public long getP99() {
+            return this.p99;
+        }
+
+        /** Returns the 99.9th percentile of recorded values. */
+        public long getP999() {
+            return this.p999;
+        }
+    }
+}
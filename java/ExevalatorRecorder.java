@@ -0,0 +1,834 @@
+/*
+ * Exevalator Ver.2.4.0 - by RINEARN (Fumihiro Matsui) 2021-2025
+ * This software is released under the "Unlicense" license.
+ * You can choose the "CC0" license instead, if you want.
+ */
+
+/*
+ * Put this code in the same folder as Exevalator.java and ExevalatorMetrics.java, and write the same package-statement as them.
+ */
+// package your.projects.package.anywhere;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The listener recording the workload of an engine (calls of "eval", "reeval", "declareVariable", "writeVariable(At)",
+ * and "connectFunction", with times of evaluations) into a compact binary trace, which can be replayed by "Trace" class.
+ *
+ * Records are encoded into a ring buffer on the thread calling the engine,
+ * and written to the output stream by a background thread, so the overhead of recording is small.
+ * The thread calling the engine never waits for the output stream: when the ring buffer is full, the record is dropped,
+ * and the number of dropped events is available by "getDroppedEventCount" method.
+ * Add an instance of this class to the engine immediately after creating it, to record all declarations of variables:
+ *
+ *     ExevalatorRecorder recorder = new ExevalatorRecorder(new FileOutputStream("workload.trace"));
+ *     exevalator.addEventListener(recorder);
+ *     ...
+ *     exevalator.removeEventListener(recorder);
+ *     recorder.close();
+ *
+ * A trace is replayed as follows (or by the command: java ExevalatorRecorder workload.trace):
+ *
+ *     ExevalatorRecorder.Trace trace = ExevalatorRecorder.Trace.load(new FileInputStream("workload.trace"));
+ *     ExevalatorRecorder.ReplayReport report = trace.replay(new Exevalator(), functionMap);
+ *     System.out.println(report);
+ *
+ * An instance of this class should be added to only one engine.
+ */
+public final class ExevalatorRecorder implements Exevalator.EventListener, AutoCloseable {
+
+    /** The default size of the ring buffer, in bytes. */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    /** The bytes at the beginning of traces. */
+    private static final byte[] MAGIC_NUMBER = { 'E', 'X', 'V', 'T', 'R', 'A', 'C', 'E' };
+
+    /** The version of the format of traces. */
+    private static final int FORMAT_VERSION = 1;
+
+    /** The size of chunks by which long strings are read from traces. */
+    private static final int DECODING_CHUNK_SIZE = 64 * 1024;
+
+    /** The initial size of the buffer in which a record is encoded, extended for records containing long expressions. */
+    private static final int INITIAL_RECORD_BUFFER_SIZE = 1024;
+
+    // Types of records.
+    private static final byte DECLARE_VARIABLE = 1;
+    private static final byte CONNECT_FUNCTION = 2;
+    private static final byte WRITE_VARIABLE = 3;
+    private static final byte DEFINE_EXPRESSION = 4;
+    private static final byte EVAL = 5;
+    private static final byte REEVAL = 6;
+
+    /** The output stream to which the trace is written. */
+    private final OutputStream outputStream;
+
+    /** The ring buffer storing encoded records until they are written to the output stream. */
+    private final byte[] ringBuffer;
+
+    /** The total number of bytes stored into the ring buffer (the position to be stored next is this modulo the size). */
+    private long storedSize = 0L;
+
+    /** The total number of bytes written from the ring buffer to the output stream. */
+    private long writtenSize = 0L;
+
+    /** The buffer in which a record is encoded before stored into the ring buffer. */
+    private byte[] recordBuffer = new byte[INITIAL_RECORD_BUFFER_SIZE];
+
+    /** The size of the record encoded in the record buffer. */
+    private int recordSize = 0;
+
+    /** The record larger than the ring buffer (e.g. of a long expression) waiting to be written directly, or null if there is no such record. */
+    private byte[] oversizedRecord = null;
+
+    /** The total number of bytes stored into the ring buffer before the oversized record, i.e., its position in the trace. */
+    private long oversizedRecordPosition = 0L;
+
+    /** The number of events of which records have been dropped. */
+    private long droppedEventCount = 0L;
+
+    /** The Map mapping each recorded expression to its ID, to record the content of an expression only once. */
+    private final Map<String, Integer> expressionIdMap = new HashMap<String, Integer>();
+
+    /** The flag representing whether "close" method has been called. */
+    private boolean closed = false;
+
+    /** The exception thrown when writing to the output stream, after which records are discarded. */
+    private IOException writingException = null;
+
+    /**
+     * The lock used for the synchronization between the recording thread(s) and the writing thread.
+     * A ReentrantLock is used instead of "synchronized", so that virtual threads waiting for it don't pin their carrier threads.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** The condition signalled to the writing thread when records are stored into the ring buffer, or the recorder is closed. */
+    private final Condition stateChanged = this.lock.newCondition();
+
+    /** The thread writing records from the ring buffer to the output stream. */
+    private final Thread writingThread;
+
+    /**
+     * Creates a recorder writing the trace to the specified stream, with the ring buffer of the default size.
+     *
+     * @param outputStream The output stream to which the trace is written (closed by "close" method).
+     * @throws IOException Thrown if failed to write the header of the trace.
+     */
+    public ExevalatorRecorder(OutputStream outputStream) throws IOException {
+        this(outputStream, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a recorder writing the trace to the specified stream.
+     *
+     * @param outputStream The output stream to which the trace is written (closed by "close" method).
+     * @param bufferSize The size of the ring buffer in bytes (records larger than it are stored piece by piece).
+     * @throws IOException Thrown if failed to write the header of the trace.
+     */
+    public ExevalatorRecorder(OutputStream outputStream, int bufferSize) throws IOException {
+        if (outputStream == null) {
+            throw new NullPointerException();
+        }
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("The buffer size should be positive: " + bufferSize);
+        }
+        this.outputStream = outputStream;
+        this.ringBuffer = new byte[bufferSize];
+        this.outputStream.write(MAGIC_NUMBER);
+        this.outputStream.write(FORMAT_VERSION);
+
+        this.writingThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeRecords();
+            }
+        }, "Exevalator Recorder");
+        this.writingThread.setDaemon(true);
+        this.writingThread.start();
+    }
+
+    @Override
+    public void variableDeclared(String name, int address) {
+        this.lock.lock();
+        try {
+            this.beginRecord(DECLARE_VARIABLE);
+            this.encodeVarLong(address);
+            this.encodeString(name);
+            this.storeRecord();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public void functionConnected(String name, Exevalator.FunctionInterface function) {
+        this.lock.lock();
+        try {
+            this.beginRecord(CONNECT_FUNCTION);
+            this.encodeString(name);
+            this.storeRecord();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public void variableWritten(int address, double value) {
+        this.lock.lock();
+        try {
+            this.beginRecord(WRITE_VARIABLE);
+            this.encodeVarLong(address);
+            this.encodeLong(Double.doubleToRawLongBits(value));
+            this.storeRecord();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public void expressionEvaluated(String expression, int tokenCount, boolean cacheHit,
+            long lexingTime, long parsingTime, long buildingTime, long evaluatingTime) {
+
+        this.lock.lock();
+        try {
+            Integer expressionId = this.expressionIdMap.get(expression);
+            if (expressionId == null) {
+                expressionId = this.expressionIdMap.size();
+                this.beginRecord(DEFINE_EXPRESSION);
+                this.encodeVarLong(expressionId);
+                this.encodeString(expression);
+
+                // If the definition is dropped, the evaluation referring it is also dropped (counted as one event),
+                // and the expression is defined again at its next evaluation.
+                if (!this.storeRecord()) {
+                    return;
+                }
+                this.expressionIdMap.put(expression, expressionId);
+            }
+            this.beginRecord(EVAL);
+            this.encodeVarLong(expressionId);
+            this.encodeVarLong(cacheHit ? 1 : 0);
+            this.encodeVarLong(lexingTime + parsingTime + buildingTime);
+            this.encodeVarLong(evaluatingTime);
+            this.storeRecord();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public void expressionReevaluated(long evaluatingTime) {
+        this.lock.lock();
+        try {
+            this.beginRecord(REEVAL);
+            this.encodeVarLong(evaluatingTime);
+            this.storeRecord();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of events of which records have been dropped,
+     * because the ring buffer was full (or the recorder had been closed, or failed to write the trace).
+     * A trace in which records are dropped can be replayed, but its results may differ from the recorded ones.
+     *
+     * @return The number of dropped events.
+     */
+    public long getDroppedEventCount() {
+        this.lock.lock();
+        try {
+            return this.droppedEventCount;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Writes all records remaining in the ring buffer to the output stream, and closes it.
+     *
+     * @throws IOException Thrown if failed to write the trace.
+     */
+    @Override
+    public void close() throws IOException {
+        this.lock.lock();
+        try {
+            this.closed = true;
+            this.stateChanged.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+        try {
+            this.writingThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            this.outputStream.close();
+        } catch (IOException e) {
+            if (this.writingException == null) {
+                this.writingException = e;
+            }
+        }
+        if (this.writingException != null) {
+            throw this.writingException;
+        }
+    }
+
+    /**
+     * Begins encoding a record into the record buffer.
+     * The lock should be held until the record is stored, so that the record buffer is not shared with other threads.
+     *
+     * @param type The type of the record.
+     */
+    private void beginRecord(byte type) {
+        this.recordBuffer[0] = type;
+        this.recordSize = 1;
+    }
+
+    /**
+     * Extends the record buffer if it does not have the space for the specified number of bytes.
+     *
+     * @param additionalSize The number of bytes to be encoded next.
+     */
+    private void ensureRecordCapacity(int additionalSize) {
+        int requiredSize = this.recordSize + additionalSize;
+        if (this.recordBuffer.length < requiredSize) {
+            this.recordBuffer = Arrays.copyOf(this.recordBuffer, Math.max(requiredSize, this.recordBuffer.length * 2));
+        }
+    }
+
+    /**
+     * Encodes a non-negative integer into the record buffer, in the variable-length format (7 bits per byte).
+     *
+     * @param value The value to be encoded.
+     */
+    private void encodeVarLong(long value) {
+        this.ensureRecordCapacity(10);
+        if (value < 0L) {
+            value = 0L;
+        }
+        while ((value & ~0x7FL) != 0L) {
+            this.recordBuffer[this.recordSize++] = (byte)((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        this.recordBuffer[this.recordSize++] = (byte)value;
+    }
+
+    /**
+     * Encodes an integer into the record buffer, in the fixed-length format (8 bytes, big-endian).
+     *
+     * @param value The value to be encoded.
+     */
+    private void encodeLong(long value) {
+        this.ensureRecordCapacity(8);
+        for (int shift=56; 0<=shift; shift-=8) {
+            this.recordBuffer[this.recordSize++] = (byte)(value >>> shift);
+        }
+    }
+
+    /**
+     * Encodes a string into the record buffer, as the length and the content in UTF-8.
+     *
+     * @param value The string to be encoded.
+     */
+    private void encodeString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        this.encodeVarLong(bytes.length);
+        this.ensureRecordCapacity(bytes.length);
+        System.arraycopy(bytes, 0, this.recordBuffer, this.recordSize, bytes.length);
+        this.recordSize += bytes.length;
+    }
+
+    /**
+     * Stores the record encoded in the record buffer into the ring buffer, without waiting for the writing thread.
+     * The record is dropped if the ring buffer does not have the space for it, or the recorder has been closed.
+     * A record larger than the ring buffer is passed to the writing thread as it is (only one at a time),
+     * which writes it between records stored before and after it.
+     *
+     * @return Returns true if the record has been stored, or false if it has been dropped.
+     */
+    private boolean storeRecord() {
+        int capacity = this.ringBuffer.length;
+        boolean storable;
+        if (this.closed || this.writingException != null) {
+            storable = false;
+        } else if (this.recordSize <= capacity) {
+            storable = this.recordSize <= capacity - (this.storedSize - this.writtenSize);
+        } else {
+            storable = this.oversizedRecord == null;
+        }
+        if (!storable) {
+            this.droppedEventCount++;
+            return false;
+        }
+        if (this.recordSize <= capacity) {
+            this.storeRecordPiece(0, this.recordSize);
+        } else {
+            this.oversizedRecord = Arrays.copyOf(this.recordBuffer, this.recordSize);
+            this.oversizedRecordPosition = this.storedSize;
+            this.stateChanged.signalAll();
+        }
+        return true;
+    }
+
+    /**
+     * Stores a part of the record encoded in the record buffer into the ring buffer, which has the space for it.
+     *
+     * @param offset The offset of the part in the record buffer.
+     * @param size The size of the part.
+     */
+    private void storeRecordPiece(int offset, int size) {
+        int capacity = this.ringBuffer.length;
+        int position = (int)(this.storedSize % capacity);
+        int firstPartSize = Math.min(size, capacity - position);
+        System.arraycopy(this.recordBuffer, offset, this.ringBuffer, position, firstPartSize);
+        System.arraycopy(this.recordBuffer, offset + firstPartSize, this.ringBuffer, 0, size - firstPartSize);
+        boolean wasEmpty = this.storedSize == this.writtenSize;
+        this.storedSize += size;
+        if (wasEmpty) {
+            this.stateChanged.signalAll();
+        }
+    }
+
+    /**
+     * Writes records from the ring buffer to the output stream, until "close" method is called.
+     * This method is executed on the writing thread.
+     */
+    private void writeRecords() {
+        byte[] chunk = new byte[Math.min(this.ringBuffer.length, 64 * 1024)];
+        OutputStream bufferedStream = new BufferedOutputStream(this.outputStream);
+        try {
+            while (true) {
+                int chunkSize = 0;
+                byte[] recordToWrite = null;
+                this.lock.lock();
+                try {
+                    while (this.storedSize == this.writtenSize && this.oversizedRecord == null && !this.closed) {
+                        this.stateChanged.await();
+                    }
+                    if (this.oversizedRecord != null && this.writtenSize == this.oversizedRecordPosition) {
+                        recordToWrite = this.oversizedRecord;
+                    } else if (this.storedSize == this.writtenSize) {
+                        break;
+                    } else {
+
+                        // Write records stored before the oversized record (if any) first.
+                        long writableSize = this.storedSize - this.writtenSize;
+                        if (this.oversizedRecord != null) {
+                            writableSize = Math.min(writableSize, this.oversizedRecordPosition - this.writtenSize);
+                        }
+                        int capacity = this.ringBuffer.length;
+                        int position = (int)(this.writtenSize % capacity);
+                        chunkSize = (int)Math.min(Math.min(writableSize, capacity - position), chunk.length);
+                        System.arraycopy(this.ringBuffer, position, chunk, 0, chunkSize);
+                    }
+                } finally {
+                    this.lock.unlock();
+                }
+                if (recordToWrite != null) {
+                    bufferedStream.write(recordToWrite);
+                } else {
+                    bufferedStream.write(chunk, 0, chunkSize);
+                }
+                this.lock.lock();
+                try {
+                    if (recordToWrite != null) {
+                        this.oversizedRecord = null;
+                    } else {
+                        this.writtenSize += chunkSize;
+                    }
+                } finally {
+                    this.lock.unlock();
+                }
+            }
+            bufferedStream.flush();
+        } catch (IOException e) {
+            this.lock.lock();
+            try {
+                this.writingException = e;
+                this.stateChanged.signalAll();
+            } finally {
+                this.lock.unlock();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The stub of a function which is not given when replaying a trace, returning 1.0 always.
+     */
+    private static final class StubFunction implements Exevalator.FunctionInterface {
+        @Override
+        public double invoke(double[] arguments) {
+            return 1.0;
+        }
+    }
+
+    /**
+     * An operation recorded in a trace.
+     */
+    private static final class Operation {
+        private final byte type;
+        private final int address;
+        private final double value;
+        private final String text;
+
+        private Operation(byte type, int address, double value, String text) {
+            this.type = type;
+            this.address = address;
+            this.value = value;
+            this.text = text;
+        }
+    }
+
+    /**
+     * A trace loaded from a stream, which can be replayed on engines.
+     */
+    public static final class Trace {
+
+        /** Recorded operations. */
+        private final Operation[] operations;
+
+        /** The distribution of times of evaluations (including parsing) by "eval" and "reeval" method, when recorded. */
+        private final ExevalatorMetrics.LatencySnapshot recordedEvaluatingTime;
+
+        /** The number of evaluations by "eval" method in which the cached result of parsing has been reused, when recorded. */
+        private final long recordedCacheHitCount;
+
+        private Trace(Operation[] operations, ExevalatorMetrics.LatencySnapshot recordedEvaluatingTime, long recordedCacheHitCount) {
+            this.operations = operations;
+            this.recordedEvaluatingTime = recordedEvaluatingTime;
+            this.recordedCacheHitCount = recordedCacheHitCount;
+        }
+
+        /**
+         * Loads a trace from the specified stream.
+         *
+         * @param inputStream The stream from which the trace is read (not closed by this method).
+         * @return The loaded trace.
+         * @throws IOException Thrown if failed to read the trace, or the content is not a trace.
+         */
+        public static Trace load(InputStream inputStream) throws IOException {
+            DataInputStream dataStream = new DataInputStream(new BufferedInputStream(inputStream));
+            byte[] magicNumber = new byte[MAGIC_NUMBER.length];
+            dataStream.readFully(magicNumber);
+            if (!Arrays.equals(magicNumber, MAGIC_NUMBER) || dataStream.read() != FORMAT_VERSION) {
+                throw new IOException("The content is not a trace of the supported format.");
+            }
+
+            List<Operation> operationList = new ArrayList<Operation>();
+            List<String> expressionList = new ArrayList<String>();
+            ExevalatorMetrics.LatencyHistogram evaluatingTimeHistogram = new ExevalatorMetrics.LatencyHistogram();
+            long cacheHitCount = 0L;
+            int type;
+            while ((type = dataStream.read()) != -1) {
+                switch (type) {
+                    case DECLARE_VARIABLE : {
+                        int address = (int)decodeVarLong(dataStream);
+                        operationList.add(new Operation(DECLARE_VARIABLE, address, 0.0, decodeString(dataStream)));
+                        break;
+                    }
+                    case CONNECT_FUNCTION : {
+                        operationList.add(new Operation(CONNECT_FUNCTION, 0, 0.0, decodeString(dataStream)));
+                        break;
+                    }
+                    case WRITE_VARIABLE : {
+                        int address = (int)decodeVarLong(dataStream);
+                        double value = Double.longBitsToDouble(dataStream.readLong());
+                        operationList.add(new Operation(WRITE_VARIABLE, address, value, null));
+                        break;
+                    }
+                    case DEFINE_EXPRESSION : {
+                        int expressionId = (int)decodeVarLong(dataStream);
+                        if (expressionId != expressionList.size()) {
+                            throw new IOException("The trace is broken (unexpected expression ID: " + expressionId + ").");
+                        }
+                        expressionList.add(decodeString(dataStream));
+                        break;
+                    }
+                    case EVAL : {
+                        int expressionId = (int)decodeVarLong(dataStream);
+                        if (expressionList.size() <= expressionId) {
+                            throw new IOException("The trace is broken (undefined expression ID: " + expressionId + ").");
+                        }
+                        boolean cacheHit = decodeVarLong(dataStream) != 0L;
+                        long parsingTime = decodeVarLong(dataStream);
+                        long evaluatingTime = decodeVarLong(dataStream);
+                        operationList.add(new Operation(EVAL, 0, 0.0, expressionList.get(expressionId)));
+                        evaluatingTimeHistogram.record(parsingTime + evaluatingTime);
+                        cacheHitCount += cacheHit ? 1L : 0L;
+                        break;
+                    }
+                    case REEVAL : {
+                        long evaluatingTime = decodeVarLong(dataStream);
+                        operationList.add(new Operation(REEVAL, 0, 0.0, null));
+                        evaluatingTimeHistogram.record(evaluatingTime);
+                        break;
+                    }
+                    default : {
+                        throw new IOException("The trace is broken (unknown type of a record: " + type + ").");
+                    }
+                }
+            }
+            return new Trace(
+                operationList.toArray(new Operation[operationList.size()]), evaluatingTimeHistogram.snapshot(), cacheHitCount
+            );
+        }
+
+        /**
+         * Decodes a non-negative integer encoded in the variable-length format.
+         *
+         * @param dataStream The stream from which the value is read.
+         * @return The decoded value.
+         * @throws IOException Thrown if failed to read the value.
+         */
+        private static long decodeVarLong(DataInputStream dataStream) throws IOException {
+            long value = 0L;
+            for (int shift=0; shift<64; shift+=7) {
+                int b = dataStream.read();
+                if (b == -1) {
+                    throw new EOFException("The trace is broken (unexpected end of the trace).");
+                }
+                value |= (long)(b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("The trace is broken (too long integer).");
+        }
+
+        /**
+         * Decodes a string encoded as the length and the content in UTF-8.
+         *
+         * @param dataStream The stream from which the value is read.
+         * @return The decoded value.
+         * @throws IOException Thrown if failed to read the value.
+         */
+        private static String decodeString(DataInputStream dataStream) throws IOException {
+            long length = decodeVarLong(dataStream);
+            if (Integer.MAX_VALUE - 8 < length) {
+                throw new IOException("The trace is broken (too long string).");
+            }
+
+            // Read the content by chunks, not to allocate a huge array for a broken length before reaching the end of the trace.
+            ByteArrayOutputStream bytesStream = new ByteArrayOutputStream((int)Math.min(length, DECODING_CHUNK_SIZE));
+            byte[] chunk = new byte[(int)Math.min(length, DECODING_CHUNK_SIZE)];
+            long remainingLength = length;
+            while (0L < remainingLength) {
+                int chunkSize = (int)Math.min(remainingLength, chunk.length);
+                dataStream.readFully(chunk, 0, chunkSize);
+                bytesStream.write(chunk, 0, chunkSize);
+                remainingLength -= chunkSize;
+            }
+            return new String(bytesStream.toByteArray(), StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Returns the number of recorded operations.
+         *
+         * @return The number of recorded operations.
+         */
+        public int getOperationCount() {
+            return this.operations.length;
+        }
+
+        /**
+         * Returns the distribution of times of evaluations (including parsing) by "eval" and "reeval" method, when recorded.
+         *
+         * @return The distribution of recorded times in nanoseconds.
+         */
+        public ExevalatorMetrics.LatencySnapshot getRecordedEvaluatingTime() {
+            return this.recordedEvaluatingTime;
+        }
+
+        /**
+         * Replays the trace on the specified engine, which should be newly created (no variables are declared).
+         * Functions not included in the specified Map are replaced with stubs returning 1.0.
+         * Evaluations failed with exceptions are counted, and the replay continues.
+         * If limits of the recorded engine have been raised by "setLimits" method, set the same limits to the specified engine.
+         *
+         * @param engine The engine on which the trace is replayed.
+         * @param functionMap The Map mapping each function name to the function (can be empty).
+         * @return The report of the replay.
+         */
+        public ReplayReport replay(Exevalator engine, Map<String, Exevalator.FunctionInterface> functionMap) {
+            ExevalatorMetrics.LatencyHistogram evaluatingTimeHistogram = new ExevalatorMetrics.LatencyHistogram();
+            Map<Integer, Integer> addressMap = new HashMap<Integer, Integer>();
+            Exevalator.FunctionInterface stubFunction = new StubFunction();
+            long failureCount = 0L;
+
+            long beginTime = System.nanoTime();
+            for (Operation operation: this.operations) {
+                switch (operation.type) {
+                    case DECLARE_VARIABLE : {
+                        addressMap.put(operation.address, engine.declareVariable(operation.text));
+                        break;
+                    }
+                    case CONNECT_FUNCTION : {
+                        Exevalator.FunctionInterface function = functionMap.get(operation.text);
+                        engine.connectFunction(operation.text, function != null ? function : stubFunction);
+                        break;
+                    }
+                    case WRITE_VARIABLE : {
+                        Integer address = addressMap.get(operation.address);
+                        if (address != null) {
+                            engine.writeVariableAt(address, operation.value);
+                        }
+                        break;
+                    }
+                    case EVAL : {
+                        long evaluationBeginTime = System.nanoTime();
+                        try {
+                            engine.eval(operation.text);
+                        } catch (Exevalator.Exception ee) {
+                            failureCount++;
+                        }
+                        evaluatingTimeHistogram.record(System.nanoTime() - evaluationBeginTime);
+                        break;
+                    }
+                    case REEVAL : {
+                        long evaluationBeginTime = System.nanoTime();
+                        try {
+                            engine.reeval();
+                        } catch (Exevalator.Exception ee) {
+                            failureCount++;
+                        }
+                        evaluatingTimeHistogram.record(System.nanoTime() - evaluationBeginTime);
+                        break;
+                    }
+                    default : {
+                        throw new IllegalStateException("Unknown type of an operation: " + operation.type);
+                    }
+                }
+            }
+            long elapsedTime = System.nanoTime() - beginTime;
+            return new ReplayReport(
+                this.operations.length, elapsedTime, failureCount, evaluatingTimeHistogram.snapshot(),
+                this.recordedEvaluatingTime, this.recordedCacheHitCount
+            );
+        }
+    }
+
+    /**
+     * The report of a replay of a trace.
+     */
+    public static final class ReplayReport {
+        private final long operationCount;
+        private final long elapsedTime;
+        private final long failureCount;
+        private final ExevalatorMetrics.LatencySnapshot evaluatingTime;
+        private final ExevalatorMetrics.LatencySnapshot recordedEvaluatingTime;
+        private final long recordedCacheHitCount;
+
+        private ReplayReport(long operationCount, long elapsedTime, long failureCount,
+                ExevalatorMetrics.LatencySnapshot evaluatingTime,
+                ExevalatorMetrics.LatencySnapshot recordedEvaluatingTime, long recordedCacheHitCount) {
+            this.operationCount = operationCount;
+            this.elapsedTime = elapsedTime;
+            this.failureCount = failureCount;
+            this.evaluatingTime = evaluatingTime;
+            this.recordedEvaluatingTime = recordedEvaluatingTime;
+            this.recordedCacheHitCount = recordedCacheHitCount;
+        }
+
+        /** Returns the number of replayed operations. */
+        public long getOperationCount() {
+            return this.operationCount;
+        }
+
+        /** Returns the time taken for the replay, in nanoseconds. */
+        public long getElapsedTime() {
+            return this.elapsedTime;
+        }
+
+        /** Returns the number of replayed operations per second. */
+        public double getThroughput() {
+            return this.elapsedTime == 0L ? 0.0 : this.operationCount * 1.0E9 / this.elapsedTime;
+        }
+
+        /** Returns the number of evaluations failed with exceptions. */
+        public long getFailureCount() {
+            return this.failureCount;
+        }
+
+        /** Returns the distribution of times of evaluations by "eval" and "reeval" method in the replay, in nanoseconds. */
+        public ExevalatorMetrics.LatencySnapshot getEvaluatingTime() {
+            return this.evaluatingTime;
+        }
+
+        /** Returns the distribution of times of evaluations when recorded, in nanoseconds. */
+        public ExevalatorMetrics.LatencySnapshot getRecordedEvaluatingTime() {
+            return this.recordedEvaluatingTime;
+        }
+
+        @Override
+        public String toString() {
+            final String eol = System.getProperty("line.separator");
+            return "Operations:  " + this.operationCount + eol
+                + "Elapsed:     " + this.elapsedTime + " ns" + eol
+                + "Throughput:  " + String.format("%.1f", this.getThroughput()) + " ops/s" + eol
+                + "Failures:    " + this.failureCount + eol
+                + "Evaluations: " + toText(this.evaluatingTime) + eol
+                + "(Recorded):  " + toText(this.recordedEvaluatingTime) + ", cache hits=" + this.recordedCacheHitCount;
+        }
+
+        private static String toText(ExevalatorMetrics.LatencySnapshot snapshot) {
+            return "count=" + snapshot.getCount() + ", mean=" + String.format("%.1f", snapshot.getMean()) + " ns"
+                + ", p50=" + snapshot.getP50() + " ns, p90=" + snapshot.getP90() + " ns"
+                + ", p99=" + snapshot.getP99() + " ns, p99.9=" + snapshot.getP999() + " ns, max=" + snapshot.getMax() + " ns";
+        }
+    }
+
+    /**
+     * Replays the trace file specified by the command-line argument, and prints the report.
+     * Functions in the trace are replaced with stubs returning 1.0.
+     * Limits of lengths of expressions are raised, as the recorded engine may have raised them.
+     *
+     * Usage: java ExevalatorRecorder trace_file [repetition_count]
+     *
+     * @param args The command-line arguments.
+     * @throws IOException Thrown if failed to read the trace.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java ExevalatorRecorder trace_file [repetition_count]");
+            return;
+        }
+        Trace trace;
+        InputStream inputStream = new FileInputStream(args[0]);
+        try {
+            trace = Trace.load(inputStream);
+        } finally {
+            inputStream.close();
+        }
+
+        // Replay repeatedly on new engines, to warm up the JIT compiler, and print the report of the last one.
+        int repetitionCount = 2 <= args.length ? Integer.parseInt(args[1]) : 5;
+        ReplayReport report = null;
+        for (int irepetition=0; irepetition<repetitionCount; irepetition++) {
+            Exevalator engine = new Exevalator();
+            engine.setLimits(Integer.MAX_VALUE, Integer.MAX_VALUE, Exevalator.getMaxAstDepthUpperLimit());
+            report = trace.replay(engine, new HashMap<String, Exevalator.FunctionInterface>());
+        }
+        System.out.println(report);
+    }
+}
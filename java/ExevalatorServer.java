@@ -0,0 +1,992 @@
+/*
+ * Exevalator Ver.2.4.0 - by RINEARN (Fumihiro Matsui) 2021-2025
+ * This software is released under the "Unlicense" license.
+ * You can choose the "CC0" license instead, if you want.
+ */
+
+/*
+ * Put this code in the same folder as Exevalator.java and ExevalatorMetrics.java, and write the same package-statement as them.
+ * This code requires JDK 16 or later (for Unix domain sockets).
+ */
+// package your.projects.package.anywhere;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The local server evaluating expressions for other processes (e.g. sidecar deployment),
+ * by a compact binary protocol over Unix domain sockets or loopback TCP.
+ *
+ *     ExevalatorServer server = new ExevalatorServer(UnixDomainSocketAddress.of("/tmp/exevalator.sock"));
+ *     server.connectFunction("fetchRate", new FetchRateFunction());
+ *     server.start();
+ *     ...
+ *     server.close();
+ *
+ * A client compiles an expression once and gets its handle, and then evaluates it repeatedly by the handle:
+ *
+ *     ExevalatorServer.Client client = ExevalatorServer.Client.connect(UnixDomainSocketAddress.of("/tmp/exevalator.sock"));
+ *     int x = client.declareVariable("x");
+ *     int handle = client.compile("x * 2 + 1");
+ *     client.writeVariables(new int[] { x }, new double[] { 3.0 });
+ *     double[] results = client.evaluate(new int[] { handle });
+ *
+ * Each connection has its own engine forked from the engine of the server (variables are not shared between connections),
+ * and handles of compiled expressions are shared between all connections with their parsed ASTs:
+ * an expression is compiled from its AST for a connection when its handle is used on it first, without re-parsing.
+ * The number of registered expressions is limited, and the oldest one is evicted when a new one exceeds the limit,
+ * so a client should compile an expression again when its handle becomes invalid.
+ * Connections are served by virtual threads on JDK 21 or later, or by platform threads on older JDKs.
+ *
+ * Protocol (all numbers are big-endian, and strings are encoded as a 4-byte length followed by UTF-8 bytes):
+ *
+ *     Request:  [4-byte length of the rest][1-byte operation code][payload]
+ *     Response: [4-byte length of the rest][1-byte status (0: OK, 1: error)][payload, or the error message]
+ *
+ *     DECLARE_VARIABLE (1): name (string)                             -> address (int)
+ *     COMPILE (2):          expression (string)                       -> handle (int)
+ *     WRITE_VARIABLES (3):  count (int), { address (int), value (double) } * count -> (empty)
+ *     EVALUATE (4):         count (int), { handle (int) } * count     -> count (int), { value (double) } * count
+ *
+ * Requests can be pipelined (sent without waiting for responses), and responses are returned in the order of requests.
+ * The server flushes responses when all received requests have been processed, so pipelined responses are sent in batches.
+ * The load generator is available by the command: java ExevalatorServer bench address
+ */
+public final class ExevalatorServer implements AutoCloseable {
+
+    /** The operation code of requests declaring a variable. */
+    public static final byte DECLARE_VARIABLE = 1;
+
+    /** The operation code of requests compiling an expression. */
+    public static final byte COMPILE = 2;
+
+    /** The operation code of requests writing values of variables. */
+    public static final byte WRITE_VARIABLES = 3;
+
+    /** The operation code of requests evaluating compiled expressions. */
+    public static final byte EVALUATE = 4;
+
+    /** The status of responses of succeeded requests. */
+    public static final byte STATUS_OK = 0;
+
+    /** The status of responses of failed requests. */
+    public static final byte STATUS_ERROR = 1;
+
+    /** The maximum length of a frame (excluding the length field), in bytes. */
+    public static final int MAX_FRAME_SIZE = 1 << 20;
+
+    /** The default maximum number of expressions registered at the same time. */
+    public static final int DEFAULT_MAX_EXPRESSION_COUNT = 4096;
+
+    /** The initial size of buffers of connections, in bytes. */
+    private static final int INITIAL_BUFFER_SIZE = 1 << 16;
+
+    /** The address on which the server listens. */
+    private final SocketAddress address;
+
+    /** The maximum number of expressions registered at the same time. */
+    private final int maxExpressionCount;
+
+    /** The engine in which functions are connected, from which engines of connections are forked. */
+    private final Exevalator baseEngine = new Exevalator();
+
+    /** The lock guarding the registry of compiled expressions, and the state of this server. */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** The Map mapping expressions to their registrations. */
+    private final Map<String, RegisteredExpression> registeredExpressionMap = new HashMap<String, RegisteredExpression>();
+
+    /** The Map mapping handles to registered expressions, in the order of registrations (the oldest one is evicted first). */
+    private final LinkedHashMap<Integer, RegisteredExpression> handleMap = new LinkedHashMap<Integer, RegisteredExpression>();
+
+    /** The handle of the expression registered next (handles are not reused). */
+    private int nextHandle = 0;
+
+    /** The channel accepting connections. */
+    private ServerSocketChannel serverChannel = null;
+
+    /** The executor serving connections. */
+    private ExecutorService connectionExecutor = null;
+
+    /** The List of open connections. */
+    private final List<SocketChannel> connectionList = new ArrayList<SocketChannel>();
+
+    /**
+     * Creates a server listening on the specified address.
+     *
+     * @param address The UnixDomainSocketAddress, or the InetSocketAddress (should be a loopback address).
+     */
+    public ExevalatorServer(SocketAddress address) {
+        this(address, DEFAULT_MAX_EXPRESSION_COUNT);
+    }
+
+    /**
+     * Creates a server listening on the specified address, with limiting the number of registered expressions.
+     *
+     * @param address The UnixDomainSocketAddress, or the InetSocketAddress (should be a loopback address).
+     * @param maxExpressionCount The maximum number of expressions registered at the same time.
+     */
+    public ExevalatorServer(SocketAddress address, int maxExpressionCount) {
+        if (maxExpressionCount <= 0) {
+            throw new IllegalArgumentException("The maximum number of expressions should be positive: " + maxExpressionCount);
+        }
+        this.address = address;
+        this.maxExpressionCount = maxExpressionCount;
+    }
+
+    /**
+     * Connects a function to engines of all connections. Call this method before starting the server.
+     *
+     * @param name The name of the function.
+     * @param function The function, which may be called from multiple threads at the same time.
+     */
+    public void connectFunction(String name, Exevalator.FunctionInterface function) {
+        this.lock.lock();
+        try {
+            if (this.serverChannel != null) {
+                throw new IllegalStateException("Functions should be connected before starting the server.");
+            }
+            this.baseEngine.connectFunction(name, function);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Starts listening on the address, and serving connections on background threads.
+     *
+     * @throws IOException Thrown if failed to listen on the address.
+     */
+    public void start() throws IOException {
+        this.lock.lock();
+        try {
+            if (this.serverChannel != null) {
+                throw new IllegalStateException("The server has already been started.");
+            }
+            if (this.address instanceof UnixDomainSocketAddress) {
+                Files.deleteIfExists(((UnixDomainSocketAddress)this.address).getPath());
+                this.serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            } else {
+                this.serverChannel = ServerSocketChannel.open();
+            }
+            this.serverChannel.bind(this.address);
+            this.connectionExecutor = createConnectionExecutor();
+        } finally {
+            this.lock.unlock();
+        }
+        Thread acceptingThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptConnections();
+            }
+        }, "Exevalator Server");
+        acceptingThread.setDaemon(true);
+        acceptingThread.start();
+    }
+
+    /**
+     * Returns the address on which the server is listening (e.g. to get the port number bound for the port 0).
+     *
+     * @return The address on which the server is listening.
+     * @throws IOException Thrown if failed to get the address.
+     */
+    public SocketAddress getLocalAddress() throws IOException {
+        this.lock.lock();
+        try {
+            if (this.serverChannel == null) {
+                throw new IllegalStateException("The server has not been started.");
+            }
+            return this.serverChannel.getLocalAddress();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Stops listening, and closes all connections.
+     *
+     * @throws IOException Thrown if failed to close the channel.
+     */
+    @Override
+    public void close() throws IOException {
+        List<SocketChannel> openConnectionList;
+        ServerSocketChannel channel;
+        this.lock.lock();
+        try {
+            channel = this.serverChannel;
+            openConnectionList = new ArrayList<SocketChannel>(this.connectionList);
+            this.connectionList.clear();
+        } finally {
+            this.lock.unlock();
+        }
+        if (channel == null) {
+            return;
+        }
+        channel.close();
+        for (SocketChannel connection: openConnectionList) {
+            connection.close();
+        }
+        this.connectionExecutor.shutdown();
+        if (this.address instanceof UnixDomainSocketAddress) {
+            Files.deleteIfExists(((UnixDomainSocketAddress)this.address).getPath());
+        }
+    }
+
+    /**
+     * Accepts connections until the server is closed.
+     */
+    private void acceptConnections() {
+        while (true) {
+            final SocketChannel connection;
+            try {
+                connection = this.serverChannel.accept();
+            } catch (IOException ioe) {
+                return; // Closed.
+            }
+            this.lock.lock();
+            try {
+                this.connectionList.add(connection);
+            } finally {
+                this.lock.unlock();
+            }
+            this.connectionExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    serveConnection(connection);
+                }
+            });
+        }
+    }
+
+    /**
+     * Processes requests on a connection until it is closed.
+     *
+     * @param connection The connection.
+     */
+    private void serveConnection(SocketChannel connection) {
+        try {
+            if (!(this.address instanceof UnixDomainSocketAddress)) {
+                connection.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            }
+            Session session = new Session();
+            ByteBuffer inputBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+            ByteBuffer outputBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+            while (true) {
+                if (connection.read(inputBuffer) < 0) {
+                    break;
+                }
+                inputBuffer.flip();
+
+                // Process all complete frames received, and then send their responses at once.
+                while (4 <= inputBuffer.remaining()) {
+                    int frameSize = inputBuffer.getInt(inputBuffer.position());
+                    if (frameSize <= 0 || MAX_FRAME_SIZE < frameSize) {
+                        throw new IOException("Invalid frame size: " + frameSize);
+                    }
+                    if (inputBuffer.remaining() < 4 + frameSize) {
+                        break;
+                    }
+                    inputBuffer.getInt();
+                    int frameEnd = inputBuffer.position() + frameSize;
+                    int receivedEnd = inputBuffer.limit();
+
+                    // Limit the buffer to the frame, not to read fields of the request from the next frame.
+                    inputBuffer.limit(frameEnd);
+                    outputBuffer = session.process(inputBuffer, outputBuffer);
+                    inputBuffer.limit(receivedEnd);
+                    inputBuffer.position(frameEnd);
+                }
+                inputBuffer = compactAndReserve(inputBuffer);
+                if (0 < outputBuffer.position()) {
+                    outputBuffer.flip();
+                    while (outputBuffer.hasRemaining()) {
+                        connection.write(outputBuffer);
+                    }
+                    outputBuffer.clear();
+                }
+            }
+        } catch (IOException ioe) {
+            // The connection has been closed by the client or by the server, or the protocol has been broken.
+        } finally {
+            this.lock.lock();
+            try {
+                this.connectionList.remove(connection);
+            } finally {
+                this.lock.unlock();
+            }
+            try {
+                connection.close();
+            } catch (IOException ioe) {
+                // Already closed.
+            }
+        }
+    }
+
+    /**
+     * Compacts the input buffer, and expands it if the frame at its beginning is larger than its capacity.
+     *
+     * @param buffer The input buffer in the read mode.
+     * @return The input buffer in the write mode.
+     */
+    private static ByteBuffer compactAndReserve(ByteBuffer buffer) {
+        buffer.compact();
+        if (4 <= buffer.position()) {
+            int requiredCapacity = 4 + buffer.getInt(0);
+            if (buffer.capacity() < requiredCapacity && requiredCapacity <= 4 + MAX_FRAME_SIZE) {
+                ByteBuffer expandedBuffer = ByteBuffer.allocate(requiredCapacity);
+                buffer.flip();
+                expandedBuffer.put(buffer);
+                return expandedBuffer;
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Returns the buffer having the space of the specified size, expanding it if necessary.
+     *
+     * @param buffer The buffer in the write mode.
+     * @param size The required size of the space.
+     * @return The buffer having the space.
+     */
+    private static ByteBuffer reserve(ByteBuffer buffer, int size) {
+        if (size <= buffer.remaining()) {
+            return buffer;
+        }
+        ByteBuffer expandedBuffer = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + size));
+        buffer.flip();
+        expandedBuffer.put(buffer);
+        return expandedBuffer;
+    }
+
+    /**
+     * Reads a string encoded as its length and UTF-8 bytes.
+     */
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || buffer.remaining() < length) {
+            throw new IllegalArgumentException("Invalid length of a string: " + length);
+        }
+        String string = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return string;
+    }
+
+    /**
+     * Registers the expression with its AST, and returns its handle.
+     * If the expression has already been registered (e.g. by another connection at the same time), its handle is returned.
+     * If the number of registered expressions exceeds the limit, the oldest one is evicted.
+     *
+     * @param expression The expression.
+     * @param parsedExpression The AST of the expression.
+     * @return The handle of the expression.
+     */
+    private int registerExpression(String expression, Exevalator.ParsedExpression parsedExpression) {
+        this.lock.lock();
+        try {
+            RegisteredExpression registeredExpression = this.registeredExpressionMap.get(expression);
+            if (registeredExpression != null) {
+                return registeredExpression.handle;
+            }
+            if (this.nextHandle == Integer.MAX_VALUE) {
+                throw new IllegalStateException("No more handles are available.");
+            }
+            registeredExpression = new RegisteredExpression(this.nextHandle++, expression, parsedExpression);
+            this.registeredExpressionMap.put(expression, registeredExpression);
+            this.handleMap.put(registeredExpression.handle, registeredExpression);
+            if (this.maxExpressionCount < this.handleMap.size()) {
+                Iterator<RegisteredExpression> oldestIterator = this.handleMap.values().iterator();
+                this.registeredExpressionMap.remove(oldestIterator.next().expression);
+                oldestIterator.remove();
+            }
+            return registeredExpression.handle;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the registration of the expression.
+     *
+     * @param expression The expression.
+     * @return The registration of the expression, or null if it has not been registered.
+     */
+    private RegisteredExpression findRegisteredExpression(String expression) {
+        this.lock.lock();
+        try {
+            return this.registeredExpressionMap.get(expression);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the registration of the expression of the handle.
+     *
+     * @param handle The handle of the expression.
+     * @return The registration of the expression, or null if the handle is invalid (or the expression has been evicted).
+     */
+    private RegisteredExpression getRegisteredExpression(int handle) {
+        this.lock.lock();
+        try {
+            return this.handleMap.get(handle);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Removes expressions evicted from the registry, from the Map of expressions compiled on a connection.
+     *
+     * @param compiledExpressionMap The Map mapping handles to expressions compiled on a connection.
+     */
+    private void removeEvictedExpressions(Map<Integer, Exevalator.CompiledExpression> compiledExpressionMap) {
+        this.lock.lock();
+        try {
+            compiledExpressionMap.keySet().retainAll(this.handleMap.keySet());
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Creates the executor serving connections: virtual threads if available, or daemon platform threads.
+     */
+    private static ExecutorService createConnectionExecutor() {
+        try {
+            Method factoryMethod = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService)factoryMethod.invoke(null);
+        } catch (ReflectiveOperationException roe) {
+            return Executors.newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "Exevalator Server Connection");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+
+    /**
+     * A registered expression, and its AST shared between connections.
+     */
+    private static final class RegisteredExpression {
+
+        /** The handle of the expression. */
+        private final int handle;
+
+        /** The expression. */
+        private final String expression;
+
+        /** The AST of the expression, from which the expression is compiled on each connection. */
+        private final Exevalator.ParsedExpression parsedExpression;
+
+        private RegisteredExpression(int handle, String expression, Exevalator.ParsedExpression parsedExpression) {
+            this.handle = handle;
+            this.expression = expression;
+            this.parsedExpression = parsedExpression;
+        }
+    }
+
+    /**
+     * The state of a connection: the engine, and expressions compiled on it.
+     */
+    private final class Session {
+
+        /** The engine of this connection, forked from the engine in which functions are connected. */
+        private final Exevalator engine = baseEngine.fork();
+
+        /** The Map mapping handles to expressions compiled on this connection. */
+        private final Map<Integer, Exevalator.CompiledExpression> compiledExpressionMap = new HashMap<Integer, Exevalator.CompiledExpression>();
+
+        /**
+         * Processes a request, and stores its response to the output buffer.
+         *
+         * @param input The buffer of which position is at the operation code of the request, and limit is at the end of it.
+         * @param output The output buffer in the write mode.
+         * @return The output buffer storing the response (may be expanded).
+         */
+        private ByteBuffer process(ByteBuffer input, ByteBuffer output) throws IOException {
+            int responseStart = output.position();
+            try {
+                byte operationCode = input.get();
+                switch (operationCode) {
+                    case DECLARE_VARIABLE: {
+                        int address = this.engine.declareVariable(getString(input));
+                        output = reserve(output, 9);
+                        output.putInt(5).put(STATUS_OK).putInt(address);
+                        break;
+                    }
+                    case COMPILE: {
+                        String expression = getString(input);
+                        RegisteredExpression registeredExpression = findRegisteredExpression(expression);
+                        int handle;
+                        if (registeredExpression != null) {
+                            handle = registeredExpression.handle;
+                            if (!this.compiledExpressionMap.containsKey(handle)) {
+                                this.putCompiledExpression(handle, this.engine.compile(expression, registeredExpression.parsedExpression));
+                            }
+                        } else {
+                            // Compile the expression before registering it, not to register invalid expressions.
+                            Exevalator.ParsedExpression parsedExpression = this.engine.parse(expression);
+                            Exevalator.CompiledExpression compiledExpression = this.engine.compile(expression, parsedExpression);
+                            handle = registerExpression(expression, parsedExpression);
+                            this.putCompiledExpression(handle, compiledExpression);
+                        }
+                        output = reserve(output, 9);
+                        output.putInt(5).put(STATUS_OK).putInt(handle);
+                        break;
+                    }
+                    case WRITE_VARIABLES: {
+                        int count = input.getInt();
+                        if (count < 0 || input.remaining() / 12 < count) {
+                            throw new IllegalArgumentException("Invalid number of variables: " + count);
+                        }
+                        for (int i=0; i<count; i++) {
+                            this.engine.writeVariableAt(input.getInt(), input.getDouble());
+                        }
+                        output = reserve(output, 5);
+                        output.putInt(1).put(STATUS_OK);
+                        break;
+                    }
+                    case EVALUATE: {
+                        int count = input.getInt();
+                        if (count < 0 || input.remaining() / 4 < count) {
+                            throw new IllegalArgumentException("Invalid number of handles: " + count);
+                        }
+                        output = reserve(output, 9 + 8 * count);
+                        output.putInt(5 + 8 * count).put(STATUS_OK).putInt(count);
+                        for (int i=0; i<count; i++) {
+                            output.putDouble(this.getCompiledExpression(input.getInt()).execute());
+                        }
+                        break;
+                    }
+                    default: {
+                        throw new IOException("Unknown operation code: " + operationCode);
+                    }
+                }
+            // Respond any error of the request (including ones thrown by functions), not to drop the connection.
+            } catch (RuntimeException e) {
+                output.position(responseStart);
+                byte[] messageBytes = String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8);
+                output = reserve(output, 9 + messageBytes.length);
+                output.putInt(5 + messageBytes.length).put(STATUS_ERROR).putInt(messageBytes.length).put(messageBytes);
+            }
+            return output;
+        }
+
+        /**
+         * Returns the expression of the handle compiled on this connection, compiling it from its AST if it has not been compiled.
+         *
+         * @param handle The handle of the expression.
+         * @return The compiled expression.
+         */
+        private Exevalator.CompiledExpression getCompiledExpression(int handle) {
+            Exevalator.CompiledExpression compiledExpression = this.compiledExpressionMap.get(handle);
+            if (compiledExpression != null) {
+                return compiledExpression;
+            }
+            RegisteredExpression registeredExpression = getRegisteredExpression(handle);
+            if (registeredExpression == null) {
+                throw new IllegalArgumentException("Invalid handle: " + handle);
+            }
+            compiledExpression = this.engine.compile(registeredExpression.expression, registeredExpression.parsedExpression);
+            this.putCompiledExpression(handle, compiledExpression);
+            return compiledExpression;
+        }
+
+        /**
+         * Stores the expression compiled on this connection, at the handle.
+         * Expressions evicted from the registry are removed when the number of stored expressions reaches the limit.
+         *
+         * @param handle The handle of the expression.
+         * @param compiledExpression The compiled expression.
+         */
+        private void putCompiledExpression(int handle, Exevalator.CompiledExpression compiledExpression) {
+            if (maxExpressionCount <= this.compiledExpressionMap.size()) {
+                removeEvictedExpressions(this.compiledExpressionMap);
+            }
+            this.compiledExpressionMap.put(handle, compiledExpression);
+        }
+    }
+
+
+    /**
+     * The client of the server, which sends requests over a connection.
+     * Methods sending requests ("send...") and receiving their responses ("receive...") are also provided for pipelining.
+     * An instance of this class should be used by one thread at a time.
+     */
+    public static final class Client implements AutoCloseable {
+
+        /** The connection to the server. */
+        private final SocketChannel channel;
+
+        /** The buffer storing requests not sent yet, in the write mode. */
+        private ByteBuffer outputBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+        /** The buffer storing received bytes, in the read mode. */
+        private ByteBuffer inputBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+        private Client(SocketChannel channel) {
+            this.channel = channel;
+            this.inputBuffer.flip();
+        }
+
+        /**
+         * Connects to the server.
+         *
+         * @param address The address of the server.
+         * @return The client connected to the server.
+         * @throws IOException Thrown if failed to connect.
+         */
+        public static Client connect(SocketAddress address) throws IOException {
+            SocketChannel channel = SocketChannel.open(address);
+            if (address instanceof InetSocketAddress) {
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            }
+            return new Client(channel);
+        }
+
+        /**
+         * Declares a variable on the engine of this connection.
+         *
+         * @param name The name of the variable.
+         * @return The address of the variable.
+         * @throws IOException Thrown if failed to communicate with the server.
+         * @throws Exevalator.Exception Thrown if the server could not declare the variable.
+         */
+        public int declareVariable(String name) throws IOException {
+            this.putStringRequest(DECLARE_VARIABLE, name);
+            this.flush();
+            return this.receiveResponse().getInt();
+        }
+
+        /**
+         * Compiles an expression, and returns its handle (shared between all connections).
+         *
+         * @param expression The expression to be compiled.
+         * @return The handle of the compiled expression.
+         * @throws IOException Thrown if failed to communicate with the server.
+         * @throws Exevalator.Exception Thrown if the server could not compile the expression.
+         */
+        public int compile(String expression) throws IOException {
+            this.putStringRequest(COMPILE, expression);
+            this.flush();
+            return this.receiveResponse().getInt();
+        }
+
+        /**
+         * Writes values of variables at once.
+         *
+         * @param addresses Addresses of variables.
+         * @param values Values to be written.
+         * @throws IOException Thrown if failed to communicate with the server.
+         * @throws Exevalator.Exception Thrown if the server could not write values.
+         */
+        public void writeVariables(int[] addresses, double[] values) throws IOException {
+            this.sendWriteVariables(addresses, values);
+            this.flush();
+            this.receiveResponse();
+        }
+
+        /**
+         * Evaluates compiled expressions at once.
+         *
+         * @param handles Handles of compiled expressions.
+         * @return Evaluated values.
+         * @throws IOException Thrown if failed to communicate with the server.
+         * @throws Exevalator.Exception Thrown if the server could not evaluate expressions.
+         */
+        public double[] evaluate(int[] handles) throws IOException {
+            this.sendEvaluate(handles);
+            this.flush();
+            return this.receiveEvaluate();
+        }
+
+        /**
+         * Puts the request writing values of variables into the buffer, without waiting for the response.
+         * The response should be received by "receiveWriteVariables" after calling "flush".
+         */
+        public void sendWriteVariables(int[] addresses, double[] values) {
+            if (addresses.length != values.length) {
+                throw new IllegalArgumentException("The numbers of addresses and values are different.");
+            }
+            this.outputBuffer = reserve(this.outputBuffer, 9 + 12 * addresses.length);
+            this.outputBuffer.putInt(5 + 12 * addresses.length).put(WRITE_VARIABLES).putInt(addresses.length);
+            for (int i=0; i<addresses.length; i++) {
+                this.outputBuffer.putInt(addresses[i]).putDouble(values[i]);
+            }
+        }
+
+        /**
+         * Receives the response of the request sent by "sendWriteVariables".
+         */
+        public void receiveWriteVariables() throws IOException {
+            this.receiveResponse();
+        }
+
+        /**
+         * Puts the request evaluating compiled expressions into the buffer, without waiting for the response.
+         * The response should be received by "receiveEvaluate" after calling "flush".
+         */
+        public void sendEvaluate(int[] handles) {
+            this.outputBuffer = reserve(this.outputBuffer, 9 + 4 * handles.length);
+            this.outputBuffer.putInt(5 + 4 * handles.length).put(EVALUATE).putInt(handles.length);
+            for (int handle: handles) {
+                this.outputBuffer.putInt(handle);
+            }
+        }
+
+        /**
+         * Receives the response of the request sent by "sendEvaluate".
+         *
+         * @return Evaluated values.
+         */
+        public double[] receiveEvaluate() throws IOException {
+            ByteBuffer response = this.receiveResponse();
+            double[] values = new double[response.getInt()];
+            for (int i=0; i<values.length; i++) {
+                values[i] = response.getDouble();
+            }
+            return values;
+        }
+
+        /**
+         * Sends all requests in the buffer.
+         *
+         * @throws IOException Thrown if failed to send requests.
+         */
+        public void flush() throws IOException {
+            this.outputBuffer.flip();
+            while (this.outputBuffer.hasRemaining()) {
+                this.channel.write(this.outputBuffer);
+            }
+            this.outputBuffer.clear();
+        }
+
+        /**
+         * Closes the connection.
+         *
+         * @throws IOException Thrown if failed to close the connection.
+         */
+        @Override
+        public void close() throws IOException {
+            this.channel.close();
+        }
+
+        /**
+         * Puts the request of which payload is a string into the buffer.
+         */
+        private void putStringRequest(byte operationCode, String string) {
+            byte[] stringBytes = string.getBytes(StandardCharsets.UTF_8);
+            this.outputBuffer = reserve(this.outputBuffer, 9 + stringBytes.length);
+            this.outputBuffer.putInt(5 + stringBytes.length).put(operationCode).putInt(stringBytes.length).put(stringBytes);
+        }
+
+        /**
+         * Receives the next response.
+         *
+         * @return The buffer of which position is at the payload of the response.
+         * @throws Exevalator.Exception Thrown if the status of the response is an error.
+         */
+        private ByteBuffer receiveResponse() throws IOException {
+            this.fill(4);
+            int frameSize = this.inputBuffer.getInt();
+            if (frameSize <= 0 || MAX_FRAME_SIZE < frameSize) {
+                throw new IOException("Invalid frame size: " + frameSize);
+            }
+            this.fill(frameSize);
+            ByteBuffer response = this.inputBuffer.slice();
+            response.limit(frameSize);
+            this.inputBuffer.position(this.inputBuffer.position() + frameSize);
+            if (response.get() == STATUS_ERROR) {
+                throw new Exevalator.Exception(getString(response));
+            }
+            return response;
+        }
+
+        /**
+         * Reads bytes from the connection until the input buffer stores the specified size of bytes.
+         */
+        private void fill(int size) throws IOException {
+            if (size <= this.inputBuffer.remaining()) {
+                return;
+            }
+            this.inputBuffer.compact();
+            if (this.inputBuffer.capacity() < size) {
+                this.inputBuffer.flip();
+                this.inputBuffer = ByteBuffer.allocate(size).put(this.inputBuffer);
+            }
+            while (this.inputBuffer.position() < size) {
+                if (this.channel.read(this.inputBuffer) < 0) {
+                    throw new EOFException("The connection has been closed by the server.");
+                }
+            }
+            this.inputBuffer.flip();
+        }
+    }
+
+
+    /**
+     * Parses an address: a port number of loopback TCP, or a path of a Unix domain socket.
+     *
+     * @param addressText The port number or the path.
+     * @return The parsed address.
+     */
+    public static SocketAddress parseAddress(String addressText) {
+        if (addressText.matches("[0-9]+")) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(addressText));
+        } else {
+            return UnixDomainSocketAddress.of(Path.of(addressText));
+        }
+    }
+
+    /**
+     * Starts the server, or generates load on a running server and prints the throughput and latencies.
+     *
+     * @param args "serve address", or "bench address [connection_count] [pipeline_depth] [seconds]".
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2 || !(args[0].equals("serve") || args[0].equals("bench"))) {
+            System.err.println("Usage: java ExevalatorServer serve address");
+            System.err.println("       java ExevalatorServer bench address [connection_count] [pipeline_depth] [seconds]");
+            System.err.println("(address: a port number of loopback TCP, or a path of a Unix domain socket)");
+            return;
+        }
+        SocketAddress address = parseAddress(args[1]);
+        if (args[0].equals("serve")) {
+            ExevalatorServer server = new ExevalatorServer(address);
+            server.start();
+            System.out.println("Listening on: " + server.getLocalAddress());
+            Thread.currentThread().join();
+            return;
+        }
+        int connectionCount = 3 <= args.length ? Integer.parseInt(args[2]) : 4;
+        int pipelineDepth = 4 <= args.length ? Integer.parseInt(args[3]) : 16;
+        int seconds = 5 <= args.length ? Integer.parseInt(args[4]) : 10;
+        BenchmarkResult result = benchmark(address, connectionCount, pipelineDepth, TimeUnit.SECONDS.toNanos(seconds));
+        System.out.println(result);
+    }
+
+    /**
+     * Generates load on a running server from multiple connections, and measures the throughput and latencies.
+     * Each connection repeats writing variables and evaluating an expression, with pipelining the specified number of requests.
+     *
+     * @param address The address of the server.
+     * @param connectionCount The number of connections.
+     * @param pipelineDepth The number of evaluation requests sent without waiting for responses.
+     * @param duration The duration of the measurement, in nanoseconds.
+     * @return The result of the measurement.
+     * @throws Exception Thrown if failed to communicate with the server.
+     */
+    public static BenchmarkResult benchmark(final SocketAddress address, int connectionCount,
+            final int pipelineDepth, long duration) throws Exception {
+
+        final ExevalatorMetrics.LatencyHistogram histogram = new ExevalatorMetrics.LatencyHistogram();
+        final AtomicLong evaluationCount = new AtomicLong();
+        final long endTime = System.nanoTime() + duration;
+        final List<Exception> errorList = new ArrayList<Exception>();
+        Thread[] threads = new Thread[connectionCount];
+        for (int ithread=0; ithread<connectionCount; ithread++) {
+            threads[ithread] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try (Client client = Client.connect(address)) {
+                        int[] addresses = { client.declareVariable("x"), client.declareVariable("y") };
+                        int[] handles = { client.compile("x * y + x / (y + 1) - 2 * x") };
+                        double[] values = new double[2];
+                        long[] sendTimes = new long[pipelineDepth];
+                        long count = 0L;
+                        while (System.nanoTime() < endTime) {
+                            for (int i=0; i<pipelineDepth; i++) {
+                                values[0] = count + i;
+                                values[1] = 0.5;
+                                client.sendWriteVariables(addresses, values);
+                                client.sendEvaluate(handles);
+                                sendTimes[i] = System.nanoTime();
+                            }
+                            client.flush();
+                            for (int i=0; i<pipelineDepth; i++) {
+                                client.receiveWriteVariables();
+                                client.receiveEvaluate();
+                                histogram.record(System.nanoTime() - sendTimes[i]);
+                            }
+                            count += pipelineDepth;
+                        }
+                        evaluationCount.addAndGet(count);
+                    } catch (Exception e) {
+                        synchronized (errorList) {
+                            errorList.add(e);
+                        }
+                    }
+                }
+            }, "Exevalator Server Benchmark");
+            threads[ithread].start();
+        }
+        for (Thread thread: threads) {
+            thread.join();
+        }
+        if (!errorList.isEmpty()) {
+            throw errorList.get(0);
+        }
+        return new BenchmarkResult(evaluationCount.get() * 1.0E9 / duration, histogram.snapshot());
+    }
+
+    /**
+     * The result of the measurement by "benchmark" method.
+     */
+    public static final class BenchmarkResult {
+        private final double throughput;
+        private final ExevalatorMetrics.LatencySnapshot latency;
+
+        private BenchmarkResult(double throughput, ExevalatorMetrics.LatencySnapshot latency) {
+            this.throughput = throughput;
+            this.latency = latency;
+        }
+
+        /** Returns the number of evaluations per second. */
+        public double getThroughput() {
+            return this.throughput;
+        }
+
+        /** Returns latencies (in nanoseconds) from sending evaluation requests to receiving their responses. */
+        public ExevalatorMetrics.LatencySnapshot getLatency() {
+            return this.latency;
+        }
+
+        @Override
+        public String toString() {
+            return "throughput=" + String.format("%.0f", this.throughput) + " evals/s"
+                + ", p50=" + String.format("%.1f", this.latency.getP50() / 1000.0) + " us"
+                + ", p99=" + String.format("%.1f", this.latency.getP99() / 1000.0) + " us"
+                + ", p99.9=" + String.format("%.1f", this.latency.getP999() / 1000.0) + " us"
+                + ", max=" + String.format("%.1f", this.latency.getMax() / 1000.0) + " us";
+        }
+    }
+}
@@ -21,6 +21,31 @@ public class Test {
         test.testEmptyExpressions();
         test.testReeval();
         test.testTokenization();
+        test.testLetBindings();
+        test.testStatements();
+        test.testComparisonsAndConditionals();
+        test.testLazyFunctions();
+        test.testReductions();
+        test.testEventListeners();
+        test.testMetrics();
+        test.testFlightRecorder();
+        test.testProfiler();
+        test.testRecorder();
+        test.testHeavyHitters();
+        test.testExplain();
+        test.testDeadlines();
+        test.testEvalAsync();
+        test.testFlowProcessor();
+        test.testServer();
+        test.testDiskCache();
+        test.testCodeGenerator();
+        test.testLimits();
+        test.testValidation();
+        test.testSpecialization();
+        test.testSubtreePool();
+        test.testFunctionRegistry();
+        test.testFork();
+        test.testAllocations();
 
         System.out.println("All tests have completed successfully.");
     }
@@ -971,6 +996,2433 @@ public class Test {
     }
 
 
+    private void testLetBindings() {
+        Exevalator exevalator = new Exevalator();
+        exevalator.declareVariable("a");
+        exevalator.declareVariable("b");
+        exevalator.declareVariable("c");
+        exevalator.writeVariable("a", 1.25);
+        exevalator.writeVariable("b", 2.5);
+        exevalator.writeVariable("c", 5.0);
+
+        check(
+            "Test of Let-Bindings 1",
+            exevalator.eval("let t = a*b+c in t/(1+t)"),
+            (1.25 * 2.5 + 5.0) / (1.0 + (1.25 * 2.5 + 5.0))
+        );
+
+        check(
+            "Test of Let-Bindings 2",
+            exevalator.eval("let t = a + 1 in let u = t * 2 in t + u"),
+            (1.25 + 1.0) + (1.25 + 1.0) * 2.0
+        );
+
+        check(
+            "Test of Let-Bindings 3",
+            exevalator.eval("2 * (let a = b - 1 in a * a) + a"),
+            2.0 * ((2.5 - 1.0) * (2.5 - 1.0)) + 1.25
+        );
+
+        FunctionC funC = new FunctionC();
+        exevalator.connectFunction("funC", funC);
+        check(
+            "Test of Let-Bindings 4",
+            exevalator.eval("funC(let t = 2 in t * t, let t = 3 in t * t)"),
+            4.0 + 9.0
+        );
+
+        check(
+            "Test of Let-Bindings 5",
+            exevalator.eval("let t = -a in funC(t, t)"),
+            -1.25 * 2.0
+        );
+
+        // Declaring a variable after evaluating a let-binding should not break the let-bound value.
+        exevalator.eval("let t = a * 2 in t + 1");
+        exevalator.declareVariable("d");
+        exevalator.writeVariable("d", 100.0);
+        check(
+            "Test of Let-Bindings 6",
+            exevalator.reeval(),
+            1.25 * 2.0 + 1.0
+        );
+        check(
+            "Test of Let-Bindings 7",
+            exevalator.readVariable("d"),
+            100.0
+        );
+
+        String[] invalidExpressions = {
+            "let t = 1",
+            "t = 1 in t",
+            "1 + let t = 1 in t",
+            "let 1 = 1 in 1",
+            "let t in t",
+            "(let t = 1) in t",
+            "let t = 1 in t in t",
+            "let t = 1 in u",
+        };
+        for (int i=0; i<invalidExpressions.length; i++) {
+            try {
+                exevalator.eval(invalidExpressions[i]);
+                throw new ExevalatorTestException("Expected exception has not been thrown");
+            } catch (Exevalator.Exception ee) {
+                // Expected to be thrown
+                System.out.println("Test of Let-Bindings " + (8 + i) + ": OK.");
+            }
+        }
+
+        // Variables declared after evaluations using scratch slots are initialized to 0, even in forked engines.
+        Exevalator scratchExevalator = new Exevalator();
+        scratchExevalator.eval("let t = 42 in t");
+        scratchExevalator.declareVariable("c");
+        check("Test of Let-Bindings 16", scratchExevalator.eval("c"), 0.0);
+        scratchExevalator.eval("sum(i, 1, 5, i)");
+        Exevalator forkedScratchExevalator = scratchExevalator.fork();
+        scratchExevalator.declareVariable("d");
+        check("Test of Let-Bindings 17", scratchExevalator.eval("d"), 0.0);
+        forkedScratchExevalator.declareVariable("e");
+        check("Test of Let-Bindings 18", forkedScratchExevalator.eval("e"), 0.0);
+    }
+
+
+    private void testStatements() {
+        Exevalator exevalator = new Exevalator();
+        int xAddress = exevalator.declareVariable("x");
+        int zAddress = exevalator.declareVariable("z");
+        int y1Address = exevalator.declareVariable("y1");
+        int y2Address = exevalator.declareVariable("y2");
+        int y3Address = exevalator.declareVariable("y3");
+        exevalator.writeVariableAt(xAddress, 1.25);
+        exevalator.writeVariableAt(zAddress, 2.5);
+
+        check(
+            "Test of Statements 1",
+            exevalator.eval("y1 = x*2; y2 = y1 + z; y3 = y2/3"),
+            (1.25 * 2.0 + 2.5) / 3.0
+        );
+        check(
+            "Test of Statements 2",
+            exevalator.readVariableAt(y1Address) + exevalator.readVariableAt(y2Address),
+            (1.25 * 2.0) + (1.25 * 2.0 + 2.5)
+        );
+
+        Exevalator.CompiledExpression compiled = exevalator.compile("y1 = x*2; y2 = y1 + z; y3 = y2/3");
+        exevalator.writeVariableAt(xAddress, 5.0);
+        exevalator.writeVariableAt(zAddress, -1.0);
+        check(
+            "Test of Statements 3",
+            compiled.execute(),
+            (5.0 * 2.0 - 1.0) / 3.0
+        );
+        check(
+            "Test of Statements 4",
+            exevalator.readVariableAt(y1Address) + exevalator.readVariableAt(y2Address) + exevalator.readVariableAt(y3Address),
+            (5.0 * 2.0) + (5.0 * 2.0 - 1.0) + (5.0 * 2.0 - 1.0) / 3.0
+        );
+
+        // Compiled expressions are independent from the expression cached by eval.
+        check(
+            "Test of Statements 5",
+            exevalator.eval("x + z"),
+            5.0 - 1.0
+        );
+        check(
+            "Test of Statements 6",
+            compiled.execute(),
+            (5.0 * 2.0 - 1.0) / 3.0
+        );
+
+        // Let-bindings in statements, and declaring a variable after the compilation.
+        Exevalator.CompiledExpression compiledLet = exevalator.compile("let t = x + 1 in y1 = t * t; y2 = y1 - 1");
+        int wAddress = exevalator.declareVariable("w");
+        exevalator.writeVariableAt(wAddress, 123.0);
+        check(
+            "Test of Statements 7",
+            compiledLet.execute(),
+            (5.0 + 1.0) * (5.0 + 1.0) - 1.0
+        );
+        check(
+            "Test of Statements 8",
+            exevalator.readVariableAt(wAddress),
+            123.0
+        );
+
+        String[] invalidExpressions = {
+            "y1 = 1;",
+            "; y1 = 1",
+            "(y1 = 1; y2 = 2)",
+            "1 = 2",
+            "x + y1 = 2",
+            "undeclared = 1",
+        };
+        for (int i=0; i<invalidExpressions.length; i++) {
+            try {
+                exevalator.compile(invalidExpressions[i]);
+                throw new ExevalatorTestException("Expected exception has not been thrown");
+            } catch (Exevalator.Exception ee) {
+                // Expected to be thrown
+                System.out.println("Test of Statements " + (9 + i) + ": OK.");
+            }
+        }
+    }
+
+
+    class CountingFunction implements Exevalator.FunctionInterface {
+        int callCount = 0;
+        @Override
+        public double invoke(double[] args) {
+            this.callCount++;
+            return args[0];
+        }
+    }
+
+    private void testComparisonsAndConditionals() {
+        Exevalator exevalator = new Exevalator();
+        int xAddress = exevalator.declareVariable("x");
+        exevalator.writeVariableAt(xAddress, 2.5);
+
+        String[] comparisons = { "x < 2.5", "x <= 2.5", "x > 2.5", "x >= 2.5", "x == 2.5", "x != 2.5",
+                                 "x<3", "x<=2", "x>2", "x>=3", "x==-1", "x!=-1" };
+        double[] results = { 0.0, 1.0, 0.0, 1.0, 1.0, 0.0,
+                             1.0, 0.0, 1.0, 0.0, 0.0, 1.0 };
+        for (int i=0; i<comparisons.length; i++) {
+            check(
+                "Test of Comparisons " + (i + 1),
+                exevalator.eval(comparisons[i]),
+                results[i]
+            );
+        }
+
+        check(
+            "Test of Comparisons 13",
+            exevalator.eval("x + 1 < x * 2 == 1 + 0"),
+            1.0
+        );
+
+        check(
+            "Test of Conditionals 1",
+            exevalator.eval("x < 3 ? 1.25 : 5.0"),
+            1.25
+        );
+
+        check(
+            "Test of Conditionals 2",
+            exevalator.eval("x > 3 ? 1.25 : 5.0"),
+            5.0
+        );
+
+        check(
+            "Test of Conditionals 3",
+            exevalator.eval("x < 1 ? 1 : x < 2 ? 2 : x < 3 ? 3 : 4"),
+            3.0
+        );
+
+        check(
+            "Test of Conditionals 4",
+            exevalator.eval("x > 1 ? (x > 2 ? x * 2 : x * 3) : -x"),
+            2.5 * 2.0
+        );
+
+        check(
+            "Test of Conditionals 5",
+            exevalator.eval("x == 0 ? 0 : 1 / x"),
+            1.0 / 2.5
+        );
+
+        check(
+            "Test of Conditionals 6",
+            exevalator.eval("2 * (x < 3 ? x : 3) + 1"),
+            2.0 * 2.5 + 1.0
+        );
+
+        // Only the selected value should be evaluated.
+        CountingFunction counter = new CountingFunction();
+        exevalator.connectFunction("count", counter);
+        check(
+            "Test of Conditionals 7",
+            exevalator.eval("x < 3 ? count(1) : count(2)"),
+            1.0
+        );
+        check(
+            "Test of Conditionals 8",
+            counter.callCount,
+            1.0
+        );
+
+        String[] invalidExpressions = {
+            "x ? 1",
+            "x : 1",
+            "x ? 1 : 2 : 3",
+            "x < ",
+            "x <> 1",
+        };
+        for (int i=0; i<invalidExpressions.length; i++) {
+            try {
+                exevalator.eval(invalidExpressions[i]);
+                throw new ExevalatorTestException("Expected exception has not been thrown");
+            } catch (Exevalator.Exception ee) {
+                // Expected to be thrown
+                System.out.println("Test of Conditionals " + (9 + i) + ": OK.");
+            }
+        }
+
+        // Conditional operators can be nested in the middle without parentheses.
+        check(
+            "Test of Conditionals 14",
+            exevalator.eval("x > 2 ? x > 5 ? 1 : 2 : 3"),
+            2.0
+        );
+
+        check(
+            "Test of Conditionals 15",
+            exevalator.eval("x > 2 ? x < 5 ? x > 3 ? 1 : 2 : 3 : 4"),
+            2.0
+        );
+
+        check(
+            "Test of Conditionals 16",
+            exevalator.eval("count(x > 2 ? x > 5 ? 1 : 2 : 3) + (x < 1 ? 4 : x < 2 ? 5 : 6)"),
+            2.0 + 6.0
+        );
+
+        counter.callCount = 0;
+        check(
+            "Test of Conditionals 17",
+            exevalator.compile("x > 2 ? x > 5 ? count(1) : count(2) : count(3)").execute(),
+            2.0
+        );
+        check(
+            "Test of Conditionals 18",
+            counter.callCount,
+            1.0
+        );
+
+        // Nested (in the middle) and right-associative conditional operators,
+        // with trivial values (selected without branches) and with function calls (branched).
+        int aAddress = exevalator.declareVariable("a");
+        int bAddress = exevalator.declareVariable("b");
+        int cAddress = exevalator.declareVariable("c");
+        String[] nestedExpressions = {
+            "a ? b ? 3 : 4 : 5",
+            "a ? 2 : c ? 4 : 5",
+            "a ? b ? count(3) : count(4) : count(5)",
+            "a ? count(2) : c ? count(4) : count(5)",
+        };
+        int testNumber = 19;
+        Exevalator.CompiledExpression[] nestedCompiledExpressions = new Exevalator.CompiledExpression[nestedExpressions.length];
+        for (int iexpr=0; iexpr<nestedExpressions.length; iexpr++) {
+            boolean hasSelect = false;
+            for (String optimization: exevalator.explain(nestedExpressions[iexpr]).getOptimizations()) {
+                hasSelect |= optimization.startsWith("BRANCHLESS_SELECT");
+            }
+            check("Test of Conditionals " + testNumber, hasSelect ? 1 : 0, iexpr < 2 ? 1 : 0);
+            testNumber++;
+            nestedCompiledExpressions[iexpr] = exevalator.compile(nestedExpressions[iexpr]);
+        }
+        for (int icase=0; icase<8; icase++) {
+            double a = icase & 1;
+            double b = (icase >> 1) & 1;
+            double c = (icase >> 2) & 1;
+            exevalator.writeVariableAt(aAddress, a);
+            exevalator.writeVariableAt(bAddress, b);
+            exevalator.writeVariableAt(cAddress, c);
+            double nestedExpectedValue = a != 0.0 ? (b != 0.0 ? 3.0 : 4.0) : 5.0;
+            double rightAssociativeExpectedValue = a != 0.0 ? 2.0 : (c != 0.0 ? 4.0 : 5.0);
+            for (int iexpr=0; iexpr<nestedExpressions.length; iexpr++) {
+                double expectedValue = iexpr % 2 == 0 ? nestedExpectedValue : rightAssociativeExpectedValue;
+                check("Test of Conditionals " + testNumber, exevalator.eval(nestedExpressions[iexpr]), expectedValue);
+                check("Test of Conditionals " + (testNumber + 1), nestedCompiledExpressions[iexpr].execute(), expectedValue);
+                testNumber += 2;
+            }
+        }
+
+        // Only the selected values should be evaluated, also in nested ones.
+        exevalator.writeVariableAt(aAddress, 0.0);
+        exevalator.writeVariableAt(cAddress, 1.0);
+        counter.callCount = 0;
+        check("Test of Conditionals " + testNumber, nestedCompiledExpressions[3].execute(), 4.0);
+        check("Test of Conditionals " + (testNumber + 1), counter.callCount, 1.0);
+    }
+
+
+    class SafeDivFunction implements Exevalator.LazyFunctionInterface {
+        @Override
+        public double invoke(Exevalator.LazyArguments args) {
+            if (args.count() != 3) {
+                throw new Exevalator.Exception("Incorrect number of arguments");
+            }
+            double denominator = args.arg(1);
+            return denominator == 0.0 ? args.arg(2) : args.arg(0) / denominator;
+        }
+    }
+
+    class AnyFunction implements Exevalator.LazyFunctionInterface {
+        @Override
+        public double invoke(Exevalator.LazyArguments args) {
+            for (int i=0; i<args.count(); i++) {
+                if (args.arg(i) != 0.0) {
+                    return 1.0;
+                }
+            }
+            return 0.0;
+        }
+    }
+
+    private void testLazyFunctions() {
+        Exevalator exevalator = new Exevalator();
+        int xAddress = exevalator.declareVariable("x");
+        exevalator.writeVariableAt(xAddress, 2.0);
+
+        CountingFunction counter = new CountingFunction();
+        exevalator.connectFunction("count", counter);
+        exevalator.connectFunction("safeDiv", new SafeDivFunction());
+        exevalator.connectFunction("any", new AnyFunction());
+
+        check(
+            "Test of Lazy Functions 1",
+            exevalator.eval("safeDiv(1, x, count(-1))"),
+            1.0 / 2.0
+        );
+        check(
+            "Test of Lazy Functions 2",
+            counter.callCount,
+            0.0
+        );
+
+        exevalator.writeVariableAt(xAddress, 0.0);
+        check(
+            "Test of Lazy Functions 3",
+            exevalator.reeval(),
+            -1.0
+        );
+        check(
+            "Test of Lazy Functions 4",
+            counter.callCount,
+            1.0
+        );
+
+        counter.callCount = 0;
+        check(
+            "Test of Lazy Functions 5",
+            exevalator.eval("any(x, count(1), count(2), count(3))"),
+            1.0
+        );
+        check(
+            "Test of Lazy Functions 6",
+            counter.callCount,
+            1.0
+        );
+
+        check(
+            "Test of Lazy Functions 7",
+            exevalator.eval("2 * safeDiv(x + 3, safeDiv(1, x, 4), -1) + 1"),
+            2.0 * ((0.0 + 3.0) / 4.0) + 1.0
+        );
+
+        // Lazy functions can also be called with values evaluated in advance.
+        check(
+            "Test of Lazy Functions 8",
+            new SafeDivFunction().invoke(new double[] { 1.0, 0.0, 5.0 }),
+            5.0
+        );
+
+        try {
+            exevalator.eval("safeDiv(1, 2)");
+            throw new ExevalatorTestException("Expected exception has not been thrown");
+        } catch (Exevalator.Exception ee) {
+            // Expected to be thrown
+            System.out.println("Test of Lazy Functions 9: OK.");
+        }
+
+        // Errors in lazy arguments are thrown with their original codes, not wrapped as errors of the lazy function.
+        exevalator.connectFunction("fail", new Exevalator.FunctionInterface() {
+            @Override
+            public double invoke(double[] arguments) {
+                throw new IllegalStateException("Failed");
+            }
+        });
+        try {
+            exevalator.eval("safeDiv(1, x, fail(1))");
+            throw new ExevalatorTestException("Expected exception has not been thrown");
+        } catch (Exevalator.Exception ee) {
+            check("Test of Lazy Functions 10", ee.getErrorCode() == Exevalator.ErrorCode.FUNCTION_ERROR ? 1 : 0, 1);
+            check("Test of Lazy Functions 11", ee.getErrorArguments().get(0).equals("fail") ? 1 : 0, 1);
+        }
+        Exevalator.ErrorCode reductionErrorCode = null;
+        try {
+            exevalator.eval("sum(i, 1, 1.0/0.0, i)");
+            throw new ExevalatorTestException("Expected exception has not been thrown");
+        } catch (Exevalator.Exception ee) {
+            reductionErrorCode = ee.getErrorCode();
+        }
+        try {
+            exevalator.eval("safeDiv(1, x, sum(i, 1, 1.0/0.0, i))");
+            throw new ExevalatorTestException("Expected exception has not been thrown");
+        } catch (Exevalator.Exception ee) {
+            check("Test of Lazy Functions 12", ee.getErrorCode() == reductionErrorCode ? 1 : 0, 1);
+        }
+    }
+
+
+    private void testReductions() {
+        Exevalator exevalator = new Exevalator();
+        int xAddress = exevalator.declareVariable("x");
+        exevalator.writeVariableAt(xAddress, 0.5);
+
+        check(
+            "Test of Reductions 1",
+            exevalator.eval("sum(i, 1, 100, i)"),
+            5050.0
+        );
+
+        check(
+            "Test of Reductions 2",
+            exevalator.eval("prod(i, 1, 5, i)"),
+            120.0
+        );
+
+        double expectedSum = 0.0;
+        for (int i=1; i<=10; i++) {
+            expectedSum += StrictMath.pow(0.5, i) / i;
+        }
+        check(
+            "Test of Reductions 3",
+            exevalator.eval("sum(n, 1, 10, prod(k, 1, n, x) / n)"),
+            expectedSum
+        );
+
+        check(
+            "Test of Reductions 4",
+            exevalator.eval("sum(i, 3, 1, i) + prod(i, 3, 1, i)"),
+            0.0 + 1.0
+        );
+
+        check(
+            "Test of Reductions 5",
+            exevalator.eval("let n = 4 in sum(i, 1, n, i < n ? i : 0)"),
+            1.0 + 2.0 + 3.0
+        );
+
+        exevalator.writeVariableAt(xAddress, 2.0);
+        check(
+            "Test of Reductions 6",
+            exevalator.reeval(),
+            1.0 + 2.0 + 3.0
+        );
+
+        String[] invalidExpressions = {
+            "sum(i, 1, 10)",
+            "sum(1, 1, 10, 1)",
+            "prod(i + 1, 1, 10, i)",
+            "sum(i, 1, 10, i) + i",
+        };
+        for (int i=0; i<invalidExpressions.length; i++) {
+            try {
+                exevalator.eval(invalidExpressions[i]);
+                throw new ExevalatorTestException("Expected exception has not been thrown");
+            } catch (Exevalator.Exception ee) {
+                // Expected to be thrown
+                System.out.println("Test of Reductions " + (7 + i) + ": OK.");
+            }
+        }
+
+        // Connected functions take precedence over built-in reductions having the same names.
+        exevalator.connectFunction("sum", new FunctionC());
+        check(
+            "Test of Reductions 11",
+            exevalator.eval("sum(1.25, 2.5)"),
+            1.25 + 2.5
+        );
+
+        // The number of iterations is determined by the limits, even beyond 2^53 where adding 1 doesn't change the index.
+        Exevalator largeIndexExevalator = new Exevalator();
+        check(
+            "Test of Reductions 12",
+            largeIndexExevalator.eval("sum(i, 9007199254740992, 9007199254740994, 1)"),
+            3.0
+        );
+        check(
+            "Test of Reductions 13",
+            largeIndexExevalator.eval("prod(i, 9007199254740992, 9007199254740994, 2)"),
+            8.0
+        );
+        String[] invalidRangeExpressions = {
+            "sum(i, 1, 1e300, i)",
+            "prod(i, 1, 1/0, i)",
+            "sum(i, 0/0, 1, i)",
+        };
+        for (int i=0; i<invalidRangeExpressions.length; i++) {
+            try {
+                largeIndexExevalator.eval(invalidRangeExpressions[i]);
+                throw new ExevalatorTestException("Expected exception has not been thrown");
+            } catch (Exevalator.Exception ee) {
+                if (ee.getErrorCode() != Exevalator.ErrorCode.INVALID_REDUCTION_RANGE) {
+                    throw new ExevalatorTestException("\"Test of Reductions " + (14 + i) + "\" has failed. code=" + ee.getErrorCode());
+                }
+                System.out.println("Test of Reductions " + (14 + i) + ": OK.");
+            }
+        }
+    }
+
+
+    class RecordingListener implements Exevalator.EventListener {
+        private final long functionCallTimeThreshold;
+        int evaluationCount = 0;
+        int lastTokenCount = -1;
+        boolean lastCacheHit = false;
+        long lastParsingTime = -1L;
+        int functionCallCount = 0;
+        String lastFunctionName = null;
+
+        RecordingListener(long functionCallTimeThreshold) {
+            this.functionCallTimeThreshold = functionCallTimeThreshold;
+        }
+
+        @Override
+        public void expressionEvaluated(String expression, int tokenCount, boolean cacheHit,
+                long lexingTime, long parsingTime, long buildingTime, long evaluatingTime) {
+            this.evaluationCount++;
+            this.lastTokenCount = tokenCount;
+            this.lastCacheHit = cacheHit;
+            this.lastParsingTime = parsingTime;
+        }
+
+        @Override
+        public long getFunctionCallTimeThreshold() {
+            return this.functionCallTimeThreshold;
+        }
+
+        @Override
+        public void functionCalled(String functionName, long time) {
+            this.functionCallCount++;
+            this.lastFunctionName = functionName;
+        }
+    }
+
+    private void testEventListeners() {
+        Exevalator exevalator = new Exevalator();
+        exevalator.connectFunction("f", new FunctionC());
+        exevalator.connectFunction("safediv", new SafeDivFunction());
+        RecordingListener allCallListener = new RecordingListener(0L);
+        RecordingListener noCallListener = new RecordingListener(-1L);
+        RecordingListener slowCallListener = new RecordingListener(Long.MAX_VALUE);
+        exevalator.addEventListener(allCallListener);
+        exevalator.addEventListener(noCallListener);
+        exevalator.addEventListener(slowCallListener);
+
+        check(
+            "Test of Event Listeners 1",
+            exevalator.eval("f(1, 2) + 3"),
+            6.0
+        );
+        check("Test of Event Listeners 2", allCallListener.evaluationCount, 1);
+        check("Test of Event Listeners 3", allCallListener.lastTokenCount, 8);
+        check("Test of Event Listeners 4", allCallListener.lastCacheHit ? 1 : 0, 0);
+        check("Test of Event Listeners 5", allCallListener.functionCallCount, 1);
+        if (!"f".equals(allCallListener.lastFunctionName)) {
+            throw new ExevalatorTestException("\"Test of Event Listeners 6\" has failed.");
+        }
+        System.out.println("Test of Event Listeners 6: OK.");
+
+        exevalator.eval("f(1, 2) + 3");
+        check("Test of Event Listeners 7", noCallListener.evaluationCount, 2);
+        check("Test of Event Listeners 8", noCallListener.lastTokenCount, 8);
+        check("Test of Event Listeners 9", noCallListener.lastCacheHit ? 1 : 0, 1);
+        check("Test of Event Listeners 10", noCallListener.lastParsingTime, 0);
+        check("Test of Event Listeners 11", allCallListener.functionCallCount, 2);
+        check("Test of Event Listeners 12", noCallListener.functionCallCount, 0);
+        check("Test of Event Listeners 13", slowCallListener.functionCallCount, 0);
+
+        // Calls of functions evaluating arguments lazily are also notified.
+        exevalator.compile("safediv(1, 0, 2)").execute();
+        check("Test of Event Listeners 14", allCallListener.functionCallCount, 3);
+        check("Test of Event Listeners 15", allCallListener.evaluationCount, 2);
+
+        // Removed listeners are not notified anymore.
+        exevalator.removeEventListener(allCallListener);
+        exevalator.eval("f(1, 2) + 3");
+        check("Test of Event Listeners 16", allCallListener.evaluationCount, 2);
+        check("Test of Event Listeners 17", allCallListener.functionCallCount, 3);
+        check("Test of Event Listeners 18", noCallListener.evaluationCount, 3);
+        check("Test of Event Listeners 19", noCallListener.lastCacheHit ? 1 : 0, 0);
+    }
+
+
+    private void testMetrics() {
+        ExevalatorMetrics metrics = new ExevalatorMetrics("Test", 0L);
+        Exevalator exevalator = new Exevalator();
+        metrics.attach(exevalator);
+        exevalator.declareVariable("x");
+        exevalator.connectFunction("f", new FunctionC());
+
+        exevalator.eval("x + 1");
+        exevalator.eval("x + 1");
+        exevalator.eval("f(x, 2)");
+        exevalator.compile("x * 2");
+        String[] invalidExpressions = { "x +", "y + 1", "g(1)" };
+        for (String invalidExpression: invalidExpressions) {
+            try {
+                exevalator.eval(invalidExpression);
+                throw new ExevalatorTestException("Expected exception has not been thrown");
+            } catch (Exevalator.Exception ee) {
+                // Expected to be thrown
+            }
+        }
+
+        ExevalatorMetrics.MetricsMXBean mxBean = metrics.getMXBean();
+        check("Test of Metrics 1", mxBean.getEngineCount(), 1);
+        check("Test of Metrics 2", mxBean.getEvaluationCount(), 3);
+        check("Test of Metrics 3", mxBean.getCacheHitCount(), 1);
+        check("Test of Metrics 4", mxBean.getCacheMissCount(), 2);
+        check("Test of Metrics 5", mxBean.getParseCount(), 3);
+        check("Test of Metrics 6", mxBean.getExceptionCount(), 3);
+        check("Test of Metrics 7", mxBean.getExceptionCounts().get("RIGHT_OPERAND_REQUIRED"), 1);
+        check("Test of Metrics 8", mxBean.getExceptionCounts().get("VARIABLE_NOT_FOUND"), 1);
+        check("Test of Metrics 9", mxBean.getExceptionCounts().get("FUNCTION_NOT_FOUND"), 1);
+        check("Test of Metrics 10", mxBean.getDeclaredVariableCount(), 1);
+        check("Test of Metrics 11", mxBean.getConnectedFunctionCount(), 1);
+        check("Test of Metrics 12", mxBean.getEvaluatingTime().getCount(), 3);
+        check("Test of Metrics 13", mxBean.getFunctionCallTime().getCount(), 1);
+
+        // Metrics are readable through the platform MBean server.
+        try {
+            javax.management.MBeanServer server = java.lang.management.ManagementFactory.getPlatformMBeanServer();
+            Object evaluationCount = server.getAttribute(metrics.getObjectName(), "EvaluationCount");
+            check("Test of Metrics 14", ((Long)evaluationCount).longValue(), 3);
+            javax.management.openmbean.CompositeData evaluatingTime
+                = (javax.management.openmbean.CompositeData)server.getAttribute(metrics.getObjectName(), "EvaluatingTime");
+            check("Test of Metrics 15", ((Long)evaluatingTime.get("count")).longValue(), 3);
+        } catch (javax.management.JMException e) {
+            throw new ExevalatorTestException("\"Test of Metrics 14/15\" has failed: " + e.getMessage());
+        }
+
+        // Percentiles are kept with the precision of the buckets (about 6%).
+        ExevalatorMetrics.LatencyHistogram histogram = new ExevalatorMetrics.LatencyHistogram();
+        for (long value=1; value<=1000; value++) {
+            histogram.record(value * 1000L);
+        }
+        ExevalatorMetrics.LatencySnapshot snapshot = histogram.snapshot();
+        check("Test of Metrics 16", snapshot.getCount(), 1000);
+        check("Test of Metrics 17", snapshot.getMax(), 1000000);
+        check("Test of Metrics 18", StrictMath.abs(snapshot.getP50() - 500000.0) / 500000.0 < 0.07 ? 1 : 0, 1);
+        check("Test of Metrics 19", StrictMath.abs(snapshot.getP99() - 990000.0) / 990000.0 < 0.07 ? 1 : 0, 1);
+
+        metrics.detach(exevalator);
+        metrics.close();
+        check("Test of Metrics 20", mxBean.getEngineCount(), 0);
+    }
+
+
+    private void testProfiler() {
+        Exevalator exevalator = new Exevalator();
+        int xAddress = exevalator.declareVariable("x");
+        exevalator.writeVariableAt(xAddress, 1.5);
+        exevalator.connectFunction("f", new FunctionC());
+
+        Exevalator.CompiledExpression compiledExpression = exevalator.compile("x = x + 1; x < 10 ? f(x, 2) : -x");
+        check("Test of Profiler 1", compiledExpression.isProfilingEnabled() ? 1 : 0, 0);
+        if (compiledExpression.getProfileReport() != null) {
+            throw new ExevalatorTestException("\"Test of Profiler 2\" has failed.");
+        }
+        System.out.println("Test of Profiler 2: OK.");
+
+        compiledExpression.setProfilingEnabled(true);
+        check("Test of Profiler 3", compiledExpression.isProfilingEnabled() ? 1 : 0, 1);
+        double lastValue = 0.0;
+        for (int i=0; i<20; i++) {
+            lastValue = compiledExpression.execute();
+        }
+        check("Test of Profiler 4", lastValue, -21.5);
+
+        String[] expectedReportLines = {
+            "<OPERATOR expression=\"x = x + 1; x < 10 ? f(x, 2) : -x\" count=\"20\"",
+            "  <OPERATOR expression=\"x = x + 1\" count=\"20\"",
+            "    <OPERATOR expression=\"f(x, 2)\" count=\"8\"",
+            "    <OPERATOR expression=\"-x\" count=\"12\"",
+            "<FUNCTION name=\"f\" count=\"8\"",
+        };
+        String report = compiledExpression.getProfileReport();
+        for (int iline=0; iline<expectedReportLines.length; iline++) {
+            if (!report.contains(expectedReportLines[iline])) {
+                throw new ExevalatorTestException("\"Test of Profiler " + (5 + iline) + "\" has failed. report=" + report);
+            }
+            System.out.println("Test of Profiler " + (5 + iline) + ": OK.");
+        }
+
+        compiledExpression.resetProfile();
+        compiledExpression.execute();
+        if (!compiledExpression.getProfileReport().contains("<FUNCTION name=\"f\" count=\"0\"")) {
+            throw new ExevalatorTestException("\"Test of Profiler 10\" has failed.");
+        }
+        System.out.println("Test of Profiler 10: OK.");
+
+        compiledExpression.setProfilingEnabled(false);
+        check("Test of Profiler 11", compiledExpression.execute(), -23.5);
+        if (compiledExpression.getProfileReport() != null) {
+            throw new ExevalatorTestException("\"Test of Profiler 12\" has failed.");
+        }
+        System.out.println("Test of Profiler 12: OK.");
+    }
+
+
+
+    private void testFlightRecorder() {
+        Exevalator exevalator = new Exevalator();
+        exevalator.addEventListener(new ExevalatorFlightRecorder());
+        java.util.List<jdk.jfr.consumer.RecordedEvent> eventList;
+        try {
+            java.nio.file.Path recordingFile = java.nio.file.Files.createTempFile("exevalator", ".jfr");
+            jdk.jfr.Recording recording = new jdk.jfr.Recording();
+            recording.enable("exevalator.Evaluation");
+            recording.start();
+            exevalator.eval("sum(i, 1, 1000, i * 2)");
+            recording.stop();
+            recording.dump(recordingFile);
+            recording.close();
+            eventList = jdk.jfr.consumer.RecordingFile.readAllEvents(recordingFile);
+            java.nio.file.Files.delete(recordingFile);
+        } catch (java.io.IOException e) {
+            throw new ExevalatorTestException("\"Test of Flight Recorder\" has failed: " + e);
+        }
+
+        // Events are instant events at the ends of evaluations, and times of evaluations are stored in their fields.
+        check("Test of Flight Recorder 1", eventList.size(), 1);
+        jdk.jfr.consumer.RecordedEvent event = eventList.get(0);
+        check("Test of Flight Recorder 2", event.getDuration().isZero() ? 1 : 0, 1);
+        check("Test of Flight Recorder 3", 0L < event.getLong("totalTime") ? 1 : 0, 1);
+        check("Test of Flight Recorder 4",
+            event.getLong("totalTime") == event.getLong("lexingTime") + event.getLong("parsingTime")
+                + event.getLong("buildingTime") + event.getLong("evaluatingTime") ? 1 : 0, 1
+        );
+    }
+
+    private void testRecorder() {
+        java.io.ByteArrayOutputStream traceStream = new java.io.ByteArrayOutputStream();
+        Exevalator exevalator = new Exevalator();
+        try {
+            // The ring buffer larger than the trace is used, not to drop records even if the writing thread is delayed.
+            ExevalatorRecorder recorder = new ExevalatorRecorder(traceStream, 256 * 1024);
+            exevalator.addEventListener(recorder);
+            int xAddress = exevalator.declareVariable("x");
+            exevalator.connectFunction("f", new FunctionC());
+            for (int i=0; i<1000; i++) {
+                exevalator.writeVariableAt(xAddress, i * 0.5);
+                exevalator.eval(i % 2 == 0 ? "x + f(x, 2)" : "x * 2");
+                exevalator.reeval();
+            }
+            try {
+                exevalator.eval("y + 1");
+                throw new ExevalatorTestException("Expected exception has not been thrown");
+            } catch (Exevalator.Exception ee) {
+                // Expected to be thrown, and not recorded
+            }
+            exevalator.removeEventListener(recorder);
+            recorder.close();
+        } catch (java.io.IOException e) {
+            throw new ExevalatorTestException("\"Test of Recorder 1\" has failed: " + e.getMessage());
+        }
+        System.out.println("Test of Recorder 1: OK.");
+
+        ExevalatorRecorder.Trace trace;
+        try {
+            trace = ExevalatorRecorder.Trace.load(new java.io.ByteArrayInputStream(traceStream.toByteArray()));
+        } catch (java.io.IOException e) {
+            throw new ExevalatorTestException("\"Test of Recorder 2\" has failed: " + e.getMessage());
+        }
+        check("Test of Recorder 2", trace.getOperationCount(), 2 + 3 * 1000);
+        check("Test of Recorder 3", trace.getRecordedEvaluatingTime().getCount(), 2 * 1000);
+
+        java.util.Map<String, Exevalator.FunctionInterface> functionMap = new java.util.HashMap<String, Exevalator.FunctionInterface>();
+        functionMap.put("f", new FunctionC());
+        Exevalator replayEngine = new Exevalator();
+        ExevalatorRecorder.ReplayReport report = trace.replay(replayEngine, functionMap);
+        check("Test of Recorder 4", report.getOperationCount(), 2 + 3 * 1000);
+        check("Test of Recorder 5", report.getFailureCount(), 0);
+        check("Test of Recorder 6", report.getEvaluatingTime().getCount(), 2 * 1000);
+        check("Test of Recorder 7", replayEngine.readVariable("x"), 499.5);
+        check("Test of Recorder 8", replayEngine.reeval(), 999.0);
+
+        // Functions not given are replaced with stubs returning 1.0.
+        Exevalator stubEngine = new Exevalator();
+        trace.replay(stubEngine, new java.util.HashMap<String, Exevalator.FunctionInterface>());
+        check("Test of Recorder 9", stubEngine.eval("f(x, 2)"), 1.0);
+
+        try {
+            ExevalatorRecorder.Trace.load(new java.io.ByteArrayInputStream(new byte[] { 'N', 'O', 'T', 'A', 'T', 'R', 'A', 'C', 'E' }));
+            throw new ExevalatorTestException("Expected exception has not been thrown");
+        } catch (java.io.IOException e) {
+            // Expected to be thrown
+        }
+        System.out.println("Test of Recorder 10: OK.");
+
+        // Expressions longer than the default limit (and than the ring buffer) are also recorded and replayed.
+        java.io.ByteArrayOutputStream longTraceStream = new java.io.ByteArrayOutputStream();
+        Exevalator longExevalator = new Exevalator();
+        longExevalator.setLimits(100000, 100000, 32);
+        StringBuilder longExpressionBuilder = new StringBuilder("x");
+        for (int i=1; i<2000; i++) {
+            longExpressionBuilder.append(" + x");
+        }
+        String longExpression = longExpressionBuilder.toString();
+        try {
+            ExevalatorRecorder recorder = new ExevalatorRecorder(longTraceStream, 4096);
+            longExevalator.addEventListener(recorder);
+            longExevalator.writeVariableAt(longExevalator.declareVariable("x"), 0.5);
+            longExevalator.eval(longExpression);
+            longExevalator.eval("x * 2");
+            longExevalator.removeEventListener(recorder);
+            recorder.close();
+            trace = ExevalatorRecorder.Trace.load(new java.io.ByteArrayInputStream(longTraceStream.toByteArray()));
+        } catch (java.io.IOException e) {
+            throw new ExevalatorTestException("\"Test of Recorder 11\" has failed: " + e.getMessage());
+        }
+        check("Test of Recorder 11", trace.getOperationCount(), 4);
+        Exevalator longReplayEngine = new Exevalator();
+        longReplayEngine.setLimits(100000, 100000, 32);
+        report = trace.replay(longReplayEngine, functionMap);
+        check("Test of Recorder 12", report.getFailureCount(), 0);
+        check("Test of Recorder 13", longReplayEngine.eval(longExpression), 1000.0);
+
+        // When the output stream is slow, records are dropped instead of blocking the engine,
+        // and the small ring buffer wraps around after the stream is available again.
+        BlockingOutputStream blockingStream = new BlockingOutputStream();
+        Exevalator droppingExevalator = new Exevalator();
+        ExevalatorRecorder droppingRecorder;
+        try {
+            droppingRecorder = new ExevalatorRecorder(blockingStream, 4096);
+            droppingExevalator.addEventListener(droppingRecorder);
+            int xAddress = droppingExevalator.declareVariable("x");
+            blockingStream.blocking = true;
+            for (int i=0; i<3000; i++) {
+                droppingExevalator.writeVariableAt(xAddress, i);
+                droppingExevalator.eval(i % 2 == 0 ? "x * 2" : "x + 1");
+            }
+            check("Test of Recorder 14", 0L < droppingRecorder.getDroppedEventCount() ? 1 : 0, 1);
+            blockingStream.released.countDown();
+            for (int i=0; i<1000; i++) {
+                droppingExevalator.writeVariableAt(xAddress, i);
+                droppingExevalator.eval("x * 3");
+            }
+            droppingExevalator.removeEventListener(droppingRecorder);
+            droppingRecorder.close();
+            trace = ExevalatorRecorder.Trace.load(new java.io.ByteArrayInputStream(blockingStream.toByteArray()));
+        } catch (java.io.IOException e) {
+            throw new ExevalatorTestException("\"Test of Recorder 15\" has failed: " + e.getMessage());
+        }
+        check("Test of Recorder 15", trace.getOperationCount() + droppingRecorder.getDroppedEventCount(), 1 + 2 * 4000);
+        report = trace.replay(new Exevalator(), functionMap);
+        check("Test of Recorder 16", report.getFailureCount(), 0);
+    }
+
+    class BlockingOutputStream extends java.io.ByteArrayOutputStream {
+        volatile boolean blocking = false;
+        final java.util.concurrent.CountDownLatch released = new java.util.concurrent.CountDownLatch(1);
+        @Override
+        public synchronized void write(byte[] bytes, int offset, int length) {
+            if (this.blocking) {
+                try {
+                    this.released.await();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            super.write(bytes, offset, length);
+        }
+    }
+
+
+    private void testHeavyHitters() {
+        ExevalatorHeavyHitters heavyHitters = new ExevalatorHeavyHitters(3);
+        Exevalator exevalator1 = new Exevalator();
+        Exevalator exevalator2 = new Exevalator();
+        exevalator1.addEventListener(heavyHitters);
+        exevalator2.addEventListener(heavyHitters);
+
+        // Evaluate "1 + 1" 400 times, "2 + 2" 300 times, "3 + 3" 200 times, and 100 distinct expressions once.
+        // The cache of exevalator1 misses for "3 + 3" every time, and the one of exevalator2 hits except for the first time.
+        for (int i=0; i<400; i++) {
+            exevalator1.eval("1 + 1");
+        }
+        for (int i=0; i<300; i++) {
+            exevalator2.eval("2 + 2");
+        }
+        for (int i=0; i<100; i++) {
+            exevalator1.eval("3 + 3");
+            exevalator2.eval("3 + 3");
+            exevalator1.eval("4 + " + i);
+        }
+
+        java.util.List<ExevalatorHeavyHitters.HeavyHitter> topExpressions = heavyHitters.getTopExpressions();
+        check("Test of Heavy Hitters 1", topExpressions.size(), 3);
+        check("Test of Heavy Hitters 2", heavyHitters.getTotalCount(), 1000);
+        String[] expectedExpressions = { "1 + 1", "2 + 2", "3 + 3" };
+        long[] expectedCounts = { 400, 300, 200 };
+        for (int i=0; i<expectedExpressions.length; i++) {
+            ExevalatorHeavyHitters.HeavyHitter heavyHitter = topExpressions.get(i);
+            if (!heavyHitter.getExpression().equals(expectedExpressions[i])
+                    || heavyHitter.getEstimatedCount() < expectedCounts[i]
+                    || expectedCounts[i] + 10 < heavyHitter.getEstimatedCount()) {
+                throw new ExevalatorTestException("\"Test of Heavy Hitters " + (3 + i) + "\" has failed: " + heavyHitter);
+            }
+            System.out.println("Test of Heavy Hitters " + (3 + i) + ": OK.");
+        }
+        check("Test of Heavy Hitters 6", topExpressions.get(0).getCacheHitRatio(), 399.0 / 400.0);
+        check("Test of Heavy Hitters 7", topExpressions.get(2).getCacheHitRatio(), 99.0 / 200.0);
+
+        heavyHitters.reset();
+        check("Test of Heavy Hitters 8", heavyHitters.getTopExpressions().size(), 0);
+    }
+
+
+    private void testExplain() {
+        Exevalator exevalator = new Exevalator();
+        exevalator.declareVariable("x");
+        exevalator.writeVariable("x", 2.0);
+        exevalator.connectFunction("f", new FunctionC());
+
+        // Constant subexpressions are folded, without changing results.
+        check("Test of Explain 1", exevalator.eval("x + 2 * 3 - -(1 + 2)"), 11.0);
+        check("Test of Explain 2", exevalator.eval("1 < 2 ? 3 : 4"), 3.0);
+        check("Test of Explain 3", exevalator.eval("1 / 0 == 2 / 0"), 1.0);
+
+        Exevalator.Explanation explanation = exevalator.explain("x + 2 * 3 - -(1 + 2)");
+        check("Test of Explain 4", explanation.getOperationCounts().get("NUMBER_LITERAL"), 2);
+        check("Test of Explain 5", explanation.getOperationCounts().get("VARIABLE"), 1);
+        check("Test of Explain 6", explanation.getOperationCounts().containsKey("MULTIPLICATION") ? 1 : 0, 0);
+        check("Test of Explain 7", explanation.getOptimizations().size(), 3);
+        check("Test of Explain 8", explanation.getEstimatedCost(), 5.0);
+        check("Test of Explain 9", explanation.getDepth(), 3);
+
+        // Function calls cost values set by "setFunctionCost", and conditional operators cost the more expensive value.
+        exevalator.setFunctionCost("f", 50.0);
+        explanation = exevalator.explain("let y = x * 2 in x < y ? f(x, y) : sum(i, 1, 10, i * y)");
+        check("Test of Explain 10", explanation.getFunctionCallCounts().get("f"), 1);
+        check("Test of Explain 11", explanation.getScratchSlotCount(), 2);
+        check("Test of Explain 12", explanation.getEstimatedCost(), 1 + 3 + 1 + 3 + Math.max(1 + 50 + 2, 1 + 2 + 10 * 3));
+        if (!explanation.getPlan().startsWith("<LET address=\"1\" cost=\"61.0\">")) {
+            throw new ExevalatorTestException("\"Test of Explain 13\" has failed. plan=" + explanation.getPlan());
+        }
+        System.out.println("Test of Explain 13: OK.");
+
+        // Explaining does not evaluate the expression.
+        exevalator.explain("x = 100");
+        check("Test of Explain 14", exevalator.readVariable("x"), 2.0);
+
+        try {
+            exevalator.explain("g(x)");
+            throw new ExevalatorTestException("Expected exception has not been thrown");
+        } catch (Exevalator.Exception ee) {
+            // Expected to be thrown
+        }
+        try {
+            exevalator.setFunctionCost("f", -1.0);
+            throw new ExevalatorTestException("Expected exception has not been thrown");
+        } catch (Exevalator.Exception ee) {
+            // Expected to be thrown
+        }
+        System.out.println("Test of Explain 15: OK.");
+
+        // Nodes folded into a constant are not reported by the profiler.
+        Exevalator.CompiledExpression compiledExpression = exevalator.compile("x + 2 * 3");
+        compiledExpression.setProfilingEnabled(true);
+        check("Test of Explain 16", compiledExpression.execute(), 8.0);
+        if (compiledExpression.getProfileReport().contains("count=\"0\"")) {
+            throw new ExevalatorTestException("\"Test of Explain 17\" has failed. report=" + compiledExpression.getProfileReport());
+        }
+        System.out.println("Test of Explain 17: OK.");
+    }
+
+
+    class SleepFunction implements Exevalator.FunctionInterface {
+        @Override
+        public double invoke(double[] args) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return args[0];
+        }
+    }
+
+    /**
+     * Evaluates an expression expected to be aborted, and returns the thrown exception.
+     */
+    private Exevalator.EvaluationAbortedException expectAbort(String testName, Exevalator exevalator, String expression,
+            long timeoutMillis, Exevalator.CancellationToken cancellationToken) {
+        long beginTime = System.nanoTime();
+        try {
+            if (cancellationToken != null) {
+                exevalator.eval(expression, cancellationToken);
+            } else if (timeoutMillis != 0L) {
+                exevalator.eval(expression, timeoutMillis, java.util.concurrent.TimeUnit.MILLISECONDS);
+            } else {
+                exevalator.eval(expression);
+            }
+            throw new ExevalatorTestException("\"" + testName + "\" has failed (not aborted).");
+        } catch (Exevalator.EvaluationAbortedException eae) {
+            long elapsedMillis = (System.nanoTime() - beginTime) / 1000000L;
+            if (2000L < elapsedMillis) {
+                throw new ExevalatorTestException("\"" + testName + "\" has failed (aborted too late: " + elapsedMillis + " ms).");
+            }
+            System.out.println(testName + ": OK.");
+            return eae;
+        }
+    }
+
+    private void testDeadlines() {
+        final Exevalator exevalator = new Exevalator();
+        exevalator.connectFunction("sleep", new SleepFunction());
+        exevalator.connectFunction("any", new AnyFunction());
+
+        // Each of following expressions takes about 10 seconds without time limits.
+        Exevalator.EvaluationAbortedException eae
+            = expectAbort("Test of Deadlines 1", exevalator, "sum(i, 1, 10000, sleep(i))", 20L, null);
+        check("Test of Deadlines 2", eae.isTimedOut() ? 1 : 0, 1);
+        expectAbort("Test of Deadlines 3", exevalator, "sum(i, 1, 10000000000, i)", 20L, null);
+        expectAbort("Test of Deadlines 4", exevalator, "any(0, sum(i, 1, 10000, sleep(0)))", 20L, null);
+
+        // The engine is available after aborted evaluations, and the deadline is not applied to evaluations without it.
+        check("Test of Deadlines 5", exevalator.eval("sum(i, 1, 10, sleep(i))"), 55.0);
+        check("Test of Deadlines 6", exevalator.eval("sum(i, 1, 10, sleep(i))", 1L, java.util.concurrent.TimeUnit.MINUTES), 55.0);
+
+        // Cancellation by the token, from the same thread or another thread.
+        final Exevalator.CancellationToken cancelledToken = new Exevalator.CancellationToken();
+        cancelledToken.cancel();
+        eae = expectAbort("Test of Deadlines 7", exevalator, "sleep(1)", 0L, cancelledToken);
+        check("Test of Deadlines 8", eae.isTimedOut() ? 1 : 0, 0);
+        final Exevalator.CancellationToken cancellationToken = new Exevalator.CancellationToken();
+        Thread cancellingThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                cancellationToken.cancel();
+            }
+        });
+        cancellingThread.start();
+        expectAbort("Test of Deadlines 9", exevalator, "sum(i, 1, 10000, sleep(i))", 0L, cancellationToken);
+
+        // The default time limit is applied to "eval", "reeval", and "execute".
+        Exevalator.CompiledExpression compiledExpression = exevalator.compile("sum(i, 1, 10000, sleep(i))");
+        exevalator.setDefaultTimeout(20L, java.util.concurrent.TimeUnit.MILLISECONDS);
+        expectAbort("Test of Deadlines 10", exevalator, "sum(i, 1, 10000, sleep(i))", 0L, null);
+        try {
+            exevalator.reeval();
+            throw new ExevalatorTestException("\"Test of Deadlines 11\" has failed (not aborted).");
+        } catch (Exevalator.EvaluationAbortedException e) {
+            System.out.println("Test of Deadlines 11: OK.");
+        }
+        try {
+            compiledExpression.execute();
+            throw new ExevalatorTestException("\"Test of Deadlines 12\" has failed (not aborted).");
+        } catch (Exevalator.EvaluationAbortedException e) {
+            System.out.println("Test of Deadlines 12: OK.");
+        }
+        exevalator.setDefaultTimeout(0L, java.util.concurrent.TimeUnit.MILLISECONDS);
+        check("Test of Deadlines 13", exevalator.eval("sum(i, 1, 10, i)"), 55.0);
+
+        // Aborted evaluations have error codes, as other errors.
+        eae = expectAbort("Test of Deadlines 14", exevalator, "sum(i, 1, 10000, sleep(i))", 20L, null);
+        check("Test of Deadlines 15", eae.getErrorCode() == Exevalator.ErrorCode.EVALUATION_TIMED_OUT ? 1 : 0, 1);
+        check("Test of Deadlines 16", eae.getErrorArguments().get(0).equals("20000000") ? 1 : 0, 1);
+        eae = expectAbort("Test of Deadlines 17", exevalator, "sleep(1)", 0L, cancelledToken);
+        check("Test of Deadlines 18", eae.getErrorCode() == Exevalator.ErrorCode.EVALUATION_CANCELLED ? 1 : 0, 1);
+    }
+
+
+    private void testEvalAsync() {
+        Exevalator exevalator = new Exevalator();
+        exevalator.connectFunction("sleep", new SleepFunction());
+        try {
+            check("Test of Async Evaluations 1", exevalator.evalAsync("1 + 2").get(), 3.0);
+
+            // Many evaluations waiting for the lock of the engine.
+            java.util.List<java.util.concurrent.CompletableFuture<Double>> futureList
+                = new java.util.ArrayList<java.util.concurrent.CompletableFuture<Double>>();
+            for (int i=0; i<100; i++) {
+                futureList.add(exevalator.evalAsync(i + " + sleep(1)"));
+            }
+            double sum = 0.0;
+            for (java.util.concurrent.CompletableFuture<Double> future: futureList) {
+                sum += future.get();
+            }
+            check("Test of Async Evaluations 2", sum, 4950.0 + 100.0);
+
+            java.util.concurrent.ExecutorService executor = java.util.concurrent.Executors.newSingleThreadExecutor();
+            exevalator.setAsyncExecutor(executor);
+            check("Test of Async Evaluations 3", exevalator.evalAsync("2 * 3").get(), 6.0);
+            executor.shutdown();
+            exevalator.setAsyncExecutor(null);
+
+            try {
+                exevalator.evalAsync("1 +").get();
+                throw new ExevalatorTestException("Expected exception has not been thrown");
+            } catch (java.util.concurrent.ExecutionException ee) {
+                check("Test of Async Evaluations 4", ee.getCause() instanceof Exevalator.Exception ? 1 : 0, 1);
+            }
+        } catch (InterruptedException | java.util.concurrent.ExecutionException e) {
+            throw new ExevalatorTestException("\"Test of Async Evaluations\" has failed: " + e);
+        }
+
+        // Cancelling the future aborts the evaluation, so the lock of the engine is released soon.
+        java.util.concurrent.CompletableFuture<Double> future = exevalator.evalAsync("sum(i, 1, 10000, sleep(i))");
+        try {
+            Thread.sleep(20);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        future.cancel(true);
+        long beginTime = System.nanoTime();
+        check("Test of Async Evaluations 5", exevalator.eval("1 + 1"), 2.0);
+        long elapsedMillis = (System.nanoTime() - beginTime) / 1000000L;
+        check("Test of Async Evaluations 6", elapsedMillis < 2000L ? 1 : 0, 1);
+    }
+
+
+    private void testFlowProcessor() {
+        Exevalator exevalator = new Exevalator();
+        exevalator.declareVariable("bid");
+        exevalator.declareVariable("ask");
+        java.util.Map<String, String> expressionMap = new java.util.LinkedHashMap<String, String>();
+        expressionMap.put("spread", "ask - bid");
+        expressionMap.put("mid", "(ask + bid) / 2");
+        expressionMap.put("bid10", "bid * 10");
+
+        // Without merging, batches are requested from the upstream as many as requested by the downstream.
+        ExevalatorFlowProcessor processor = new ExevalatorFlowProcessor(exevalator, expressionMap);
+        ManualSubscription upstream = new ManualSubscription();
+        processor.onSubscribe(upstream);
+        CollectingSubscriber downstream = new CollectingSubscriber();
+        processor.subscribe(downstream);
+        check("Test of Flow Processor 1", upstream.requestedCount, 0L);
+
+        downstream.subscription.request(2);
+        check("Test of Flow Processor 2", upstream.requestedCount, 2L);
+
+        processor.onNext(updates("bid", 1.0, "ask", 3.0));
+        processor.onNext(updates("ask", 5.0));
+        processor.onNext(updates("bid", 2.0));
+        check("Test of Flow Processor 3", downstream.resultList.size(), 2);
+        check("Test of Flow Processor 4", downstream.resultList.get(0).getValues().get("mid"), 2.0);
+        check("Test of Flow Processor 5", downstream.resultList.get(1).getValues().get("spread"), 4.0);
+        check("Test of Flow Processor 6", downstream.resultList.get(1).getValues().containsKey("bid10") ? 1 : 0, 0);
+
+        // The pending batch is delivered when requested, and then the completion is signaled.
+        processor.onComplete();
+        check("Test of Flow Processor 7", downstream.completed ? 1 : 0, 0);
+        downstream.subscription.request(1);
+        check("Test of Flow Processor 8", downstream.resultList.get(2).getValues().get("bid10"), 20.0);
+        check("Test of Flow Processor 9", downstream.completed ? 1 : 0, 1);
+
+        // In the merging mode, batches received while the downstream is busy are merged into the latest state.
+        ExevalatorFlowProcessor mergingProcessor = new ExevalatorFlowProcessor(exevalator, expressionMap, true);
+        ManualSubscription mergingUpstream = new ManualSubscription();
+        mergingProcessor.onSubscribe(mergingUpstream);
+        CollectingSubscriber mergingDownstream = new CollectingSubscriber();
+        mergingProcessor.subscribe(mergingDownstream);
+        check("Test of Flow Processor 10", mergingUpstream.requestedCount, Long.MAX_VALUE);
+
+        mergingProcessor.onNext(updates("bid", 10.0));
+        mergingProcessor.onNext(updates("ask", 12.0));
+        mergingProcessor.onNext(updates("bid", 11.0));
+        check("Test of Flow Processor 11", mergingDownstream.resultList.size(), 0);
+        mergingDownstream.subscription.request(1);
+        ExevalatorFlowProcessor.Result mergedResult = mergingDownstream.resultList.get(0);
+        check("Test of Flow Processor 12", mergedResult.getMergedBatchCount(), 3);
+        check("Test of Flow Processor 13", mergedResult.getSequenceNumber(), 2L);
+        check("Test of Flow Processor 14", mergedResult.getValues().get("spread"), 1.0);
+
+        // Only one downstream subscriber is accepted.
+        CollectingSubscriber secondDownstream = new CollectingSubscriber();
+        mergingProcessor.subscribe(secondDownstream);
+        check("Test of Flow Processor 15", secondDownstream.error instanceof IllegalStateException ? 1 : 0, 1);
+
+        // Cancelling by the downstream is propagated to the upstream.
+        mergingDownstream.subscription.cancel();
+        check("Test of Flow Processor 16", mergingUpstream.cancelled ? 1 : 0, 1);
+
+        // Dependencies are taken from compiled expressions, so let-bound variables and indices are not regarded as variables,
+        // and expressions allowed by the limits of the engine are available.
+        exevalator.setLimits(100000, 100000, 32);
+        StringBuilder longExpressionBuilder = new StringBuilder("bid");
+        for (int i=1; i<2000; i++) {
+            longExpressionBuilder.append(" + bid");
+        }
+        java.util.Map<String, String> localExpressionMap = new java.util.LinkedHashMap<String, String>();
+        localExpressionMap.put("local", "let bid2 = bid * 2 in sum(i, 1, 2, bid2 * i)");
+        localExpressionMap.put("long", longExpressionBuilder.toString());
+        check("Test of Flow Processor 17",
+            exevalator.compile(localExpressionMap.get("local")).getVariableNames().equals(java.util.Collections.singleton("bid")) ? 1 : 0, 1
+        );
+        ExevalatorFlowProcessor localProcessor = new ExevalatorFlowProcessor(exevalator, localExpressionMap);
+        CollectingSubscriber localDownstream = new CollectingSubscriber();
+        localProcessor.subscribe(localDownstream);
+        localDownstream.subscription.request(2);
+        localProcessor.onNext(updates("bid", 0.5));
+        localProcessor.onNext(updates("ask", 1.0));
+        check("Test of Flow Processor 18", localDownstream.resultList.get(0).getValues().get("local"), 3.0);
+        check("Test of Flow Processor 19", localDownstream.resultList.get(0).getValues().get("long"), 1000.0);
+        check("Test of Flow Processor 20", localDownstream.resultList.get(1).getValues().isEmpty() ? 1 : 0, 1);
+
+        // A batch is applied and evaluated atomically, so writes from other threads are not interleaved with it.
+        final Exevalator atomicExevalator = new Exevalator();
+        atomicExevalator.declareVariable("x");
+        atomicExevalator.declareVariable("y");
+        atomicExevalator.connectFunction("writeYConcurrently", new Exevalator.FunctionInterface() {
+            @Override
+            public double invoke(double[] arguments) {
+                Thread writingThread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        atomicExevalator.writeVariable("y", 100.0);
+                    }
+                });
+                writingThread.start();
+                try {
+                    writingThread.join(100);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+                return arguments[0];
+            }
+        });
+        java.util.Map<String, String> atomicExpressionMap = new java.util.LinkedHashMap<String, String>();
+        atomicExpressionMap.put("written", "writeYConcurrently(x)");
+        atomicExpressionMap.put("sum", "x + y");
+        ExevalatorFlowProcessor atomicProcessor = new ExevalatorFlowProcessor(atomicExevalator, atomicExpressionMap);
+        CollectingSubscriber atomicDownstream = new CollectingSubscriber();
+        atomicProcessor.subscribe(atomicDownstream);
+        atomicDownstream.subscription.request(2);
+        atomicProcessor.onNext(updates("x", 1.0, "y", 2.0));
+        check("Test of Flow Processor 21", atomicDownstream.resultList.get(0).getValues().get("sum"), 3.0);
+
+        // Updates of undeclared variables are signaled as errors.
+        atomicProcessor.onNext(updates("z", 1.0));
+        check("Test of Flow Processor 22", atomicDownstream.error instanceof Exevalator.Exception ? 1 : 0, 1);
+    }
+
+    private void testServer() {
+        try {
+            ExevalatorServer server = new ExevalatorServer(ExevalatorServer.parseAddress("0"));
+            server.connectFunction("twice", new Exevalator.FunctionInterface() {
+                @Override
+                public double invoke(double[] arguments) {
+                    return arguments[0] * 2.0;
+                }
+            });
+            server.start();
+            java.net.SocketAddress address = server.getLocalAddress();
+
+            ExevalatorServer.Client client = ExevalatorServer.Client.connect(address);
+            int x = client.declareVariable("x");
+            int y = client.declareVariable("y");
+            int handle1 = client.compile("x + y");
+            int handle2 = client.compile("twice(x * y)");
+            client.writeVariables(new int[] { x, y }, new double[] { 3.0, 4.0 });
+            double[] values = client.evaluate(new int[] { handle1, handle2 });
+            check("Test of Server 1", values[0], 7.0);
+            check("Test of Server 2", values[1], 24.0);
+
+            // Pipelined requests are responded in order.
+            for (int i=0; i<100; i++) {
+                client.sendWriteVariables(new int[] { x }, new double[] { i });
+                client.sendEvaluate(new int[] { handle1 });
+            }
+            client.flush();
+            double sum = 0.0;
+            for (int i=0; i<100; i++) {
+                client.receiveWriteVariables();
+                sum += client.receiveEvaluate()[0];
+            }
+            check("Test of Server 3", sum, 4950.0 + 400.0);
+
+            // Errors are returned as responses, and the connection is still usable.
+            try {
+                client.compile("x +");
+                throw new ExevalatorTestException("Expected exception has not been thrown");
+            } catch (Exevalator.Exception ee) {
+                // Expected to be thrown
+            }
+            check("Test of Server 4", client.evaluate(new int[] { handle1 })[0], 103.0);
+
+            // Handles are shared between connections, but variables are not.
+            ExevalatorServer.Client anotherClient = ExevalatorServer.Client.connect(address);
+            int anotherX = anotherClient.declareVariable("x");
+            anotherClient.declareVariable("y");
+            anotherClient.writeVariables(new int[] { anotherX }, new double[] { 10.0 });
+            check("Test of Server 5", anotherClient.evaluate(new int[] { handle1 })[0], 10.0);
+            check("Test of Server 6", client.evaluate(new int[] { handle1 })[0], 103.0);
+
+            // Invalid expressions are not registered, so they do not consume handles.
+            check("Test of Server 10", client.compile("x * y"), 2);
+
+            // Fields of a request are not read from the next pipelined request.
+            java.nio.channels.SocketChannel rawChannel = java.nio.channels.SocketChannel.open(address);
+            java.nio.ByteBuffer rawRequests = java.nio.ByteBuffer.allocate(20);
+            rawRequests.putInt(6).put(ExevalatorServer.DECLARE_VARIABLE).putInt(10).put((byte)'a'); // The length exceeds the request.
+            rawRequests.putInt(6).put(ExevalatorServer.DECLARE_VARIABLE).putInt(1).put((byte)'b');
+            rawRequests.flip();
+            while (rawRequests.hasRemaining()) {
+                rawChannel.write(rawRequests);
+            }
+            java.nio.ByteBuffer rawResponses = java.nio.ByteBuffer.allocate(1024);
+            while (rawResponses.position() < 4 || rawResponses.position() < 4 + rawResponses.getInt(0) + 9) {
+                if (rawChannel.read(rawResponses) < 0) {
+                    throw new ExevalatorTestException("\"Test of Server 11\" has failed: the connection has been closed");
+                }
+            }
+            int secondResponseOffset = 4 + rawResponses.getInt(0);
+            check("Test of Server 11", rawResponses.get(4), ExevalatorServer.STATUS_ERROR);
+            check("Test of Server 12", rawResponses.get(secondResponseOffset + 4), ExevalatorServer.STATUS_OK);
+            check("Test of Server 13", rawResponses.getInt(secondResponseOffset + 5), 0);
+            rawChannel.close();
+            anotherClient.close();
+            client.close();
+
+            ExevalatorServer.BenchmarkResult result = ExevalatorServer.benchmark(address, 2, 8, 50000000L);
+            check("Test of Server 7", 0.0 < result.getThroughput() && 0L < result.getLatency().getCount() ? 1 : 0, 1);
+            server.close();
+
+            // Errors thrown by functions are returned as responses, and the connection is still usable.
+            ExevalatorServer boundedServer = new ExevalatorServer(ExevalatorServer.parseAddress("0"), 2);
+            boundedServer.connectFunction("fail", new Exevalator.FunctionInterface() {
+                @Override
+                public double invoke(double[] arguments) {
+                    throw new IllegalStateException("Failed");
+                }
+            });
+            boundedServer.start();
+            ExevalatorServer.Client boundedClient = ExevalatorServer.Client.connect(boundedServer.getLocalAddress());
+            int failingHandle = boundedClient.compile("fail(1)");
+            try {
+                boundedClient.evaluate(new int[] { failingHandle });
+                throw new ExevalatorTestException("Expected exception has not been thrown");
+            } catch (Exevalator.Exception ee) {
+                // Expected to be thrown
+            }
+            check("Test of Server 14", boundedClient.evaluate(new int[] { boundedClient.compile("1 + 2") })[0], 3.0);
+
+            // The oldest expression is evicted when the number of registered expressions exceeds the limit.
+            int evictedHandle = boundedClient.compile("10");
+            boundedClient.compile("20");
+            boundedClient.compile("30");
+            ExevalatorServer.Client anotherBoundedClient = ExevalatorServer.Client.connect(boundedServer.getLocalAddress());
+            try {
+                anotherBoundedClient.evaluate(new int[] { evictedHandle });
+                throw new ExevalatorTestException("Expected exception has not been thrown");
+            } catch (Exevalator.Exception ee) {
+                // Expected to be thrown
+            }
+            int recompiledHandle = anotherBoundedClient.compile("10");
+            check("Test of Server 15", recompiledHandle == evictedHandle ? 1 : 0, 0);
+            check("Test of Server 16", anotherBoundedClient.evaluate(new int[] { recompiledHandle })[0], 10.0);
+            check("Test of Server 17", boundedClient.evaluate(new int[] { recompiledHandle })[0], 10.0);
+            anotherBoundedClient.close();
+            boundedClient.close();
+            boundedServer.close();
+
+            // Unix domain sockets.
+            java.io.File socketFile = java.io.File.createTempFile("exevalator", ".sock");
+            ExevalatorServer udsServer = new ExevalatorServer(ExevalatorServer.parseAddress(socketFile.getPath()));
+            udsServer.start();
+            ExevalatorServer.Client udsClient = ExevalatorServer.Client.connect(udsServer.getLocalAddress());
+            int udsHandle = udsClient.compile("1 + 2");
+            check("Test of Server 8", udsClient.evaluate(new int[] { udsHandle })[0], 3.0);
+            udsClient.close();
+            udsServer.close();
+            check("Test of Server 9", socketFile.exists() ? 1 : 0, 0);
+        } catch (Exception e) {
+            throw new ExevalatorTestException("\"Test of Server\" has failed: " + e);
+        }
+    }
+
+    private void testDiskCache() {
+        String[] expressions = {
+            "x * 2.5 + f(y, 3)",
+            "-x - -1.25E-3 * (y - 4)",
+            "x < y ? x + 1 : y - 1",
+            "let a = x * 3 in a * a - y",
+            "z = x + y; z * 10",
+            "sum(i, 1, 10, i * x)"
+        };
+        try {
+            java.nio.file.Path cachePath = java.nio.file.Files.createTempFile("exevalator", ".cache");
+            ExevalatorDiskCache.write(cachePath, java.util.Arrays.asList(expressions));
+            ExevalatorDiskCache cache = ExevalatorDiskCache.open(cachePath);
+            check("Test of Disk Cache 1", cache.size(), expressions.length);
+            check("Test of Disk Cache 2", cache.contains("x < y ? x + 1 : y - 1") && !cache.contains("x + 1") ? 1 : 0, 1);
+
+            // Expressions compiled from the cache should give the same values as ones compiled by parsing.
+            Exevalator parsingEngine = createDiskCacheTestEngine();
+            Exevalator cachedEngine = createDiskCacheTestEngine();
+            for (int iexpr=0; iexpr<expressions.length; iexpr++) {
+                double parsedValue = parsingEngine.compile(expressions[iexpr]).execute();
+                double cachedValue = cache.compile(cachedEngine, expressions[iexpr]).execute();
+                check("Test of Disk Cache 3-" + iexpr, cachedValue, parsedValue);
+            }
+            check("Test of Disk Cache 4", cache.getHitCount(), (long)expressions.length);
+
+            // Expressions not in the cache are compiled by parsing them.
+            check("Test of Disk Cache 5", cache.compile(cachedEngine, "x + 1").execute(), 4.0);
+            check("Test of Disk Cache 6", cache.getMissCount(), 1L);
+
+            // A corrupted entry is detected by its checksum, and the expression is compiled by parsing it.
+            byte[] fileBytes = java.nio.file.Files.readAllBytes(cachePath);
+            fileBytes[fileBytes.length - 2] ^= 0x55;
+            java.nio.file.Files.write(cachePath, fileBytes);
+            ExevalatorDiskCache corruptedCache = ExevalatorDiskCache.open(cachePath);
+            Exevalator corruptedEngine = createDiskCacheTestEngine();
+            for (int iexpr=0; iexpr<expressions.length; iexpr++) {
+                double parsedValue = parsingEngine.compile(expressions[iexpr]).execute();
+                double cachedValue = corruptedCache.compile(corruptedEngine, expressions[iexpr]).execute();
+                check("Test of Disk Cache 7-" + iexpr, cachedValue, parsedValue);
+            }
+            check("Test of Disk Cache 8", corruptedCache.getMissCount(), 1L);
+
+            // A corrupted header/index is detected when the file is opened.
+            fileBytes[40] ^= 0x55;
+            java.nio.file.Files.write(cachePath, fileBytes);
+            try {
+                ExevalatorDiskCache.open(cachePath);
+                throw new ExevalatorTestException("Expected exception has not been thrown");
+            } catch (java.io.IOException ioe) {
+                // Expected to be thrown
+            }
+            fileBytes[11] = 99; // The format version.
+            java.nio.file.Files.write(cachePath, fileBytes);
+            try {
+                ExevalatorDiskCache.open(cachePath);
+                throw new ExevalatorTestException("Expected exception has not been thrown");
+            } catch (java.io.IOException ioe) {
+                check("Test of Disk Cache 9", ioe.getMessage().contains("version") ? 1 : 0, 1);
+            }
+
+            // Expressions are parsed with the limits of the specified engine, and checked again by the compiling engine.
+            StringBuilder longExpression = new StringBuilder("x");
+            for (int i=1; i<40; i++) {
+                longExpression.append("+x");
+            }
+            java.util.List<String> longExpressionList = java.util.Collections.singletonList(longExpression.toString());
+            try {
+                ExevalatorDiskCache.write(cachePath, longExpressionList);
+                throw new ExevalatorTestException("Expected exception has not been thrown");
+            } catch (Exevalator.Exception ee) {
+                check("Test of Disk Cache 10", ee.getErrorCode() == Exevalator.ErrorCode.TOO_MANY_TOKENS ? 1 : 0, 1);
+            }
+            Exevalator raisedEngine = createDiskCacheTestEngine();
+            raisedEngine.setLimits(1000, 1000, 32);
+            ExevalatorDiskCache.write(cachePath, longExpressionList, raisedEngine);
+            ExevalatorDiskCache longCache = ExevalatorDiskCache.open(cachePath);
+            check("Test of Disk Cache 11", longCache.compile(raisedEngine, longExpression.toString()).execute(), 120.0);
+            check("Test of Disk Cache 12", longCache.getHitCount(), 1L);
+            try {
+                longCache.compile(createDiskCacheTestEngine(), longExpression.toString());
+                throw new ExevalatorTestException("Expected exception has not been thrown");
+            } catch (Exevalator.Exception ee) {
+                check("Test of Disk Cache 13", ee.getErrorCode() == Exevalator.ErrorCode.TOO_MANY_TOKENS ? 1 : 0, 1);
+            }
+            check("Test of Disk Cache 14", longCache.getHitCount(), 2L);
+
+            // Long chains of operators are stored and restored without deep recursive calls.
+            StringBuilder chainExpression = new StringBuilder("x");
+            for (int i=1; i<100000; i++) {
+                chainExpression.append("+x");
+            }
+            Exevalator chainEngine = createDiskCacheTestEngine();
+            chainEngine.setLimits(1000000, 1000000, 32);
+            ExevalatorDiskCache.write(cachePath, java.util.Collections.singletonList(chainExpression.toString()), chainEngine);
+            ExevalatorDiskCache chainCache = ExevalatorDiskCache.open(cachePath);
+            check("Test of Disk Cache 15", chainCache.compile(chainEngine, chainExpression.toString()).execute(), 300000.0);
+            check("Test of Disk Cache 16", chainCache.getHitCount(), 1L);
+            java.nio.file.Files.delete(cachePath);
+        } catch (java.io.IOException ioe) {
+            throw new ExevalatorTestException("\"Test of Disk Cache\" has failed: " + ioe);
+        }
+    }
+
+    private static Exevalator createDiskCacheTestEngine() {
+        Exevalator exevalator = new Exevalator();
+        exevalator.writeVariableAt(exevalator.declareVariable("x"), 3.0);
+        exevalator.writeVariableAt(exevalator.declareVariable("y"), 5.0);
+        exevalator.declareVariable("z");
+        exevalator.connectFunction("f", new Exevalator.FunctionInterface() {
+            @Override
+            public double invoke(double[] arguments) {
+                return arguments[0] * arguments[1];
+            }
+        });
+        return exevalator;
+    }
+
+    private void testCodeGenerator() {
+        String[][] formulas = {
+            { "Linear", "x * 2.5 + y / 4 - 1" },
+            { "Negation", "-x - -1.25E-3 * (y - 4)" },
+            { "Comparison", "(x < y) + (x <= y) * 2 + (x > y) * 4 + (x >= y) * 8 + (x == 3) * 16 + (x != 3) * 32" },
+            { "Conditional", "x < y ? max(x, y) * 2 : y - 1" },
+            { "Let", "let a = x * 3 in let b = a + y in a * b - (let a = 1 in a + b)" },
+            { "Statements", "z = x + y; z = z * 10; z + 1" },
+            { "Reductions", "sum(i, 1, 10, i * x) + prod(i, 1, 4, i + y)" },
+            { "LargeIndexReduction", "sum(i, 9007199254740992, 9007199254740994, x)" },
+            { "Order", "z = x * 2; x = z + x; x * z" }
+        };
+        ExevalatorCodeGenerator generator = new ExevalatorCodeGenerator("generated.TestFormulas");
+        generator.declareVariable("x");
+        generator.declareVariable("y");
+        generator.declareVariable("z");
+        generator.bindFunction("max", "java.lang.Math.max");
+        for (String[] formula: formulas) {
+            generator.addFormula(formula[0], formula[1]);
+        }
+
+        // Errors are detected when adding formulas.
+        try {
+            generator.addFormula("Undeclared", "x + w");
+            throw new ExevalatorTestException("Expected exception has not been thrown");
+        } catch (Exevalator.Exception ee) {
+            // Expected to be thrown
+        }
+        try {
+            generator.addFormula("Unbound", "f(x)");
+            throw new ExevalatorTestException("Expected exception has not been thrown");
+        } catch (Exevalator.Exception ee) {
+            // Expected to be thrown
+        }
+
+        // The same limits as the engine are applied to formulas by default, and they can be raised.
+        StringBuilder longFormula = new StringBuilder("x");
+        for (int i=1; i<100; i++) {
+            longFormula.append(" + x");
+        }
+        try {
+            generator.addFormula("Long", longFormula.toString());
+            throw new ExevalatorTestException("Expected exception has not been thrown");
+        } catch (Exevalator.Exception ee) {
+            check("Test of Code Generator 5", ee.getErrorCode() == Exevalator.ErrorCode.TOO_LONG_EXPRESSION ? 1 : 0, 1);
+        }
+        generator.setLimits(1000, 1000, 32);
+        generator.addFormula("Long", longFormula.toString());
+
+        // Long chains of operators are generated without deep recursive calls.
+        StringBuilder chainFormula = new StringBuilder("x");
+        for (int i=1; i<100000; i++) {
+            chainFormula.append("+x");
+        }
+        ExevalatorCodeGenerator chainGenerator = new ExevalatorCodeGenerator("generated.ChainFormulas");
+        chainGenerator.declareVariable("x");
+        chainGenerator.setLimits(1000000, 1000000, 32);
+        chainGenerator.addFormula("Chain", chainFormula.toString());
+        check("Test of Code Generator 7", chainGenerator.generate().contains("return v199998;") ? 1 : 0, 1);
+
+        javax.tools.JavaCompiler compiler = javax.tools.ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            System.out.println("Test of Code Generator: SKIPPED (no Java compiler available)");
+            return;
+        }
+        try {
+            java.nio.file.Path directory = java.nio.file.Files.createTempDirectory("exevalator");
+            java.nio.file.Path sourcePath = directory.resolve("generated").resolve("TestFormulas.java");
+            java.nio.file.Files.createDirectories(sourcePath.getParent());
+            java.nio.file.Files.write(sourcePath, generator.generate().getBytes(java.nio.charset.StandardCharsets.UTF_8));
+            int compilerStatus = compiler.run(null, null, null, "-d", directory.toString(), sourcePath.toString());
+            check("Test of Code Generator 1", compilerStatus, 0);
+
+            java.net.URLClassLoader classLoader = new java.net.URLClassLoader(new java.net.URL[] { directory.toUri().toURL() });
+            Class<?> formulasClass = classLoader.loadClass("generated.TestFormulas");
+            String[] variableNames = (String[])formulasClass.getField("VARIABLE_NAMES").get(null);
+            check("Test of Code Generator 2", variableNames.length, 3);
+
+            // Generated code should give the same values (and side effects) as the engine.
+            for (String[] formula: formulas) {
+                Exevalator exevalator = new Exevalator();
+                exevalator.writeVariableAt(exevalator.declareVariable("x"), 3.0);
+                exevalator.writeVariableAt(exevalator.declareVariable("y"), 5.0);
+                exevalator.declareVariable("z");
+                exevalator.connectFunction("max", new Exevalator.FunctionInterface() {
+                    @Override
+                    public double invoke(double[] arguments) {
+                        return Math.max(arguments[0], arguments[1]);
+                    }
+                });
+                double expectedValue = exevalator.eval(formula[1]);
+
+                double[] memory = (double[])formulasClass.getMethod("createMemory").invoke(null);
+                memory[0] = 3.0;
+                memory[1] = 5.0;
+                Class<?> formulaClass = classLoader.loadClass("generated.TestFormulas$" + formula[0]);
+                double generatedValue = (Double)formulaClass.getMethod("evaluate", double[].class).invoke(null, (Object)memory);
+                check("Test of Code Generator 3-" + formula[0], generatedValue, expectedValue);
+                check("Test of Code Generator 4-" + formula[0], memory[0] + memory[2] * 100, exevalator.readVariable("x") + exevalator.readVariable("z") * 100);
+            }
+            double[] longMemory = (double[])formulasClass.getMethod("createMemory").invoke(null);
+            longMemory[0] = 3.0;
+            Class<?> longFormulaClass = classLoader.loadClass("generated.TestFormulas$Long");
+            check("Test of Code Generator 6", (Double)longFormulaClass.getMethod("evaluate", double[].class).invoke(null, (Object)longMemory), 300.0);
+            classLoader.close();
+        } catch (Exception e) {
+            throw new ExevalatorTestException("\"Test of Code Generator\" has failed: " + e);
+        }
+    }
+
+    private void testLimits() {
+        Exevalator exevalator = new Exevalator();
+        int xAddress = exevalator.declareVariable("x");
+        exevalator.writeVariableAt(xAddress, 0.75);
+        int defaultMaxTokenCount = exevalator.getMaxTokenCount();
+        int defaultMaxAstDepth = exevalator.getMaxAstDepth();
+
+        // By default, limits in StaticSettings are applied.
+        StringBuilder defaultLimitExpressionBuilder = new StringBuilder("x");
+        for (int i=1; i<defaultMaxTokenCount; i++) {
+            defaultLimitExpressionBuilder.append(" + x");
+        }
+        try {
+            exevalator.eval(defaultLimitExpressionBuilder.toString());
+            throw new ExevalatorTestException("Expected exception has not been thrown");
+        } catch (Exevalator.Exception ee) {
+            // Expected to thrown
+            System.out.println("Test of Limits 1: OK.");
+        }
+
+        // A very long chain of arithmetic operators is evaluated iteratively, in the same order as nested binary operators.
+        int termCount = 50000;
+        exevalator.setLimits(Integer.MAX_VALUE, Integer.MAX_VALUE, defaultMaxAstDepth);
+        StringBuilder additiveExpressionBuilder = new StringBuilder("x");
+        StringBuilder multiplicativeExpressionBuilder = new StringBuilder("x");
+        double additiveExpectedValue = 0.75;
+        double multiplicativeExpectedValue = 0.75;
+        for (int i=1; i<termCount; i++) {
+            double literal = (i % 7) * 0.0001 + 1.0;
+            if (i % 3 == 0) {
+                additiveExpressionBuilder.append(" - x");
+                additiveExpectedValue -= 0.75;
+                multiplicativeExpressionBuilder.append(" / " + literal);
+                multiplicativeExpectedValue /= literal;
+            } else {
+                additiveExpressionBuilder.append(" + " + literal);
+                additiveExpectedValue += literal;
+                multiplicativeExpressionBuilder.append(" * " + literal);
+                multiplicativeExpectedValue *= literal;
+            }
+        }
+        String additiveExpression = additiveExpressionBuilder.toString();
+        check("Test of Limits 2", exevalator.eval(additiveExpression), additiveExpectedValue);
+        check("Test of Limits 3", exevalator.eval(multiplicativeExpressionBuilder.toString()), multiplicativeExpectedValue);
+        Exevalator.CompiledExpression compiledExpression = exevalator.compile(additiveExpression);
+        exevalator.writeVariableAt(xAddress, 1.0);
+        check("Test of Limits 4", compiledExpression.execute(), exevalator.eval("(" + additiveExpression + ")"));
+        check("Test of Limits 5", exevalator.explain(additiveExpression).getDepth(), 2);
+
+        // Chains count as one level of the depth, and operands are checked with the depth limit as usual.
+        StringBuilder nestedExpressionBuilder = new StringBuilder();
+        for (int i=0; i<defaultMaxAstDepth; i++) {
+            nestedExpressionBuilder.append("1 + (");
+        }
+        nestedExpressionBuilder.append("x");
+        for (int i=0; i<defaultMaxAstDepth; i++) {
+            nestedExpressionBuilder.append(")");
+        }
+        try {
+            exevalator.eval(nestedExpressionBuilder.toString());
+            throw new ExevalatorTestException("Expected exception has not been thrown");
+        } catch (Exevalator.Exception ee) {
+            // Expected to thrown
+            System.out.println("Test of Limits 6: OK.");
+        }
+        exevalator.setLimits(Integer.MAX_VALUE, Integer.MAX_VALUE, defaultMaxAstDepth + 1);
+        check("Test of Limits 7", exevalator.eval(nestedExpressionBuilder.toString()), 1.0 + defaultMaxAstDepth);
+
+        // Lower limits are also available.
+        exevalator.setLimits(8, defaultMaxTokenCount, defaultMaxAstDepth);
+        check("Test of Limits 8", exevalator.eval("x + 1.5"), 2.5);
+        try {
+            exevalator.eval("x + 1.125");
+            throw new ExevalatorTestException("Expected exception has not been thrown");
+        } catch (Exevalator.Exception ee) {
+            // Expected to thrown
+            System.out.println("Test of Limits 9: OK.");
+        }
+        try {
+            exevalator.setLimits(256, 0, 32);
+            throw new ExevalatorTestException("Expected exception has not been thrown");
+        } catch (IllegalArgumentException iae) {
+            // Expected to thrown
+            System.out.println("Test of Limits 10: OK.");
+        }
+
+        // The depth limit can't exceed the upper limit, up to which the default stack of threads doesn't overflow.
+        try {
+            exevalator.setLimits(Integer.MAX_VALUE, Integer.MAX_VALUE, Exevalator.getMaxAstDepthUpperLimit() + 1);
+            throw new ExevalatorTestException("Expected exception has not been thrown");
+        } catch (IllegalArgumentException iae) {
+            // Expected to thrown
+            System.out.println("Test of Limits 11: OK.");
+        }
+        exevalator.setLimits(Integer.MAX_VALUE, Integer.MAX_VALUE, Exevalator.getMaxAstDepthUpperLimit());
+        final int maxAstDepth = exevalator.getMaxAstDepth();
+        exevalator.writeVariableAt(xAddress, 2.0);
+        final Exevalator deepExevalator = exevalator;
+        final StringBuilder[] deepExpressionBuilders = { new StringBuilder(), new StringBuilder("x"), new StringBuilder() };
+        for (int i=1; i<maxAstDepth; i++) {
+            deepExpressionBuilders[0].append("-");
+            deepExpressionBuilders[1].append(" < x");
+            deepExpressionBuilders[2].append("(1 + ");
+        }
+        deepExpressionBuilders[0].append("x");
+        deepExpressionBuilders[2].append("x");
+        for (int i=1; i<maxAstDepth; i++) {
+            deepExpressionBuilders[2].append(")");
+        }
+        final double[] deepExpectedValues = { maxAstDepth % 2 == 0 ? -2.0 : 2.0, 1.0, maxAstDepth + 1.0 };
+        final Throwable[] deepThrowable = new Throwable[1];
+        Thread deepThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int iexpr=0; iexpr<deepExpressionBuilders.length; iexpr++) {
+                        String deepExpression = deepExpressionBuilders[iexpr].toString();
+                        int testNumber = 12 + iexpr * 4;
+                        check("Test of Limits " + testNumber, deepExevalator.eval(deepExpression), deepExpectedValues[iexpr]);
+                        check("Test of Limits " + (testNumber + 1), deepExevalator.compile(deepExpression).execute(), deepExpectedValues[iexpr]);
+                        check("Test of Limits " + (testNumber + 2), deepExevalator.validate(deepExpression).isValid() ? 1 : 0, 1);
+                        check("Test of Limits " + (testNumber + 3), deepExevalator.explain(deepExpression).getDepth(), maxAstDepth);
+                    }
+
+                    // Exceeding the upper limit is an error, not an overflow of the stack.
+                    String deeperExpression = "-" + deepExpressionBuilders[0].toString();
+                    try {
+                        deepExevalator.eval(deeperExpression);
+                        throw new ExevalatorTestException("Expected exception has not been thrown");
+                    } catch (Exevalator.Exception ee) {
+                        check("Test of Limits 24", ee.getErrorCode() == Exevalator.ErrorCode.EXCEEDS_MAX_AST_DEPTH ? 1 : 0, 1);
+                    }
+                    try {
+                        deepExevalator.compile(deeperExpression);
+                        throw new ExevalatorTestException("Expected exception has not been thrown");
+                    } catch (Exevalator.Exception ee) {
+                        check("Test of Limits 25", ee.getErrorCode() == Exevalator.ErrorCode.EXCEEDS_MAX_AST_DEPTH ? 1 : 0, 1);
+                    }
+                    Exevalator.ErrorCode deeperErrorCode = deepExevalator.validate(deeperExpression).getErrorCode();
+                    check("Test of Limits 26", deeperErrorCode == Exevalator.ErrorCode.EXCEEDS_MAX_AST_DEPTH ? 1 : 0, 1);
+                } catch (Throwable throwable) {
+                    deepThrowable[0] = throwable;
+                }
+            }
+        });
+        deepThread.start();
+        try {
+            deepThread.join();
+        } catch (InterruptedException ie) {
+            throw new ExevalatorTestException("\"Test of Limits 12-26\" has been interrupted.");
+        }
+        if (deepThrowable[0] != null) {
+            throw new ExevalatorTestException("\"Test of Limits 12-26\" has failed: " + deepThrowable[0]);
+        }
+    }
+
+    private void testValidation() {
+        Exevalator exevalator = new Exevalator();
+        exevalator.declareVariable("x");
+        exevalator.connectFunction("f", new FunctionC());
+
+        // Valid expressions, including local variables of let-bindings and reductions.
+        check("Test of Validation 1", exevalator.validate("x + f(x, 2) * 3").isValid() ? 1 : 0, 1);
+        check("Test of Validation 2", exevalator.validate("let y = x * 2 in sum(i, 1, y, i * y)").isValid() ? 1 : 0, 1);
+
+        // The code, the position, and arguments of the error are returned instead of being thrown.
+        Exevalator.ValidationResult result = exevalator.validate("x + 2 * y");
+        check("Test of Validation 3", result.isValid() ? 1 : 0, 0);
+        check("Test of Validation 4", result.getErrorCode() == Exevalator.ErrorCode.VARIABLE_NOT_FOUND ? 1 : 0, 1);
+        check("Test of Validation 5", result.getPosition(), 8);
+        if (!result.getErrorArguments().equals(java.util.Arrays.asList("y"))
+                || !result.getErrorMessage().equals(Exevalator.ErrorCode.VARIABLE_NOT_FOUND.formatMessage("y"))) {
+            throw new ExevalatorTestException("\"Test of Validation 6\" has failed. message=" + result.getErrorMessage());
+        }
+        System.out.println("Test of Validation 6: OK.");
+
+        result = exevalator.validate("x + g(x)");
+        check("Test of Validation 7", result.getErrorCode() == Exevalator.ErrorCode.FUNCTION_NOT_FOUND ? 1 : 0, 1);
+        check("Test of Validation 8", result.getPosition(), 4);
+        result = exevalator.validate("x + (2 * )");
+        check("Test of Validation 9", result.getErrorCode() == Exevalator.ErrorCode.RIGHT_OPERAND_REQUIRED ? 1 : 0, 1);
+        check("Test of Validation 10", result.getPosition(), 7);
+        result = exevalator.validate("let y = 1 in y + i");
+        check("Test of Validation 11", result.getErrorCode() == Exevalator.ErrorCode.VARIABLE_NOT_FOUND ? 1 : 0, 1);
+        check("Test of Validation 12", result.getPosition(), 17);
+
+        // The same codes and positions are available from exceptions thrown by evaluations.
+        try {
+            exevalator.eval("x + 2 * y");
+            throw new ExevalatorTestException("Expected exception has not been thrown");
+        } catch (Exevalator.Exception ee) {
+            check("Test of Validation 13", ee.getErrorCode() == Exevalator.ErrorCode.VARIABLE_NOT_FOUND ? 1 : 0, 1);
+            check("Test of Validation 14", ee.getPosition(), 8);
+            check("Test of Validation 15", ee.getStackTrace().length != 0 ? 1 : 0, 1);
+        }
+
+        // Stack traces can be omitted, for rejecting many invalid expressions cheaply.
+        exevalator.setStackTraceEnabled(false);
+        try {
+            exevalator.eval("x + 2 * y");
+            throw new ExevalatorTestException("Expected exception has not been thrown");
+        } catch (Exevalator.Exception ee) {
+            check("Test of Validation 16", ee.getStackTrace().length, 0);
+            if (!ee.getMessage().equals(Exevalator.ErrorCode.VARIABLE_NOT_FOUND.formatMessage("y"))) {
+                throw new ExevalatorTestException("\"Test of Validation 17\" has failed. message=" + ee.getMessage());
+            }
+            System.out.println("Test of Validation 17: OK.");
+        }
+
+        // Validations don't affect the cached expression of the engine.
+        exevalator.writeVariable("x", 1.5);
+        check("Test of Validation 18", exevalator.eval("x * 2"), 3.0);
+        check("Test of Validation 19", exevalator.validate("x +").isValid() ? 1 : 0, 0);
+        check("Test of Validation 20", exevalator.reeval(), 3.0);
+
+        // Stack traces are captured at the sites where errors are detected (in the lexer, the parser, or the evaluator).
+        exevalator.setStackTraceEnabled(true);
+        String[] invalidExpressions = { "x + (2 * )", "x + 2 * y", "sum(i, 1, 1.0/0.0, i)" };
+        String[] throwingClassNames = { "LexicalAnalyzer", "Evaluator", "Evaluator$ReductionEvaluatorNode" };
+        for (int i=0; i<invalidExpressions.length; i++) {
+            try {
+                exevalator.eval(invalidExpressions[i]);
+                throw new ExevalatorTestException("Expected exception has not been thrown");
+            } catch (Exevalator.Exception ee) {
+                boolean throwingFrameFound = false;
+                for (StackTraceElement frame: ee.getStackTrace()) {
+                    throwingFrameFound |= frame.getClassName().equals(throwingClassNames[i]);
+                }
+                if (!throwingFrameFound) {
+                    throw new ExevalatorTestException("\"Test of Validation " + (21 + i) + "\" has failed.");
+                }
+                System.out.println("Test of Validation " + (21 + i) + ": OK.");
+            }
+        }
+        exevalator.setStackTraceEnabled(false);
+        try {
+            exevalator.eval("sum(i, 1, 1.0/0.0, i)");
+            throw new ExevalatorTestException("Expected exception has not been thrown");
+        } catch (Exevalator.Exception ee) {
+            check("Test of Validation 24", ee.getStackTrace().length, 0);
+        }
+
+        // Errors of accessing variables and functions are also thrown without stack traces, and notified to listeners.
+        final java.util.List<Exevalator.ErrorCode> notifiedErrorCodeList = new java.util.ArrayList<Exevalator.ErrorCode>();
+        exevalator.addEventListener(new Exevalator.EventListener() {
+            @Override
+            public void exceptionThrown(Exevalator.Exception exception) {
+                notifiedErrorCodeList.add(exception.getErrorCode());
+            }
+        });
+        Exevalator.CompiledExpression compiledExpression = exevalator.compile("x + 1");
+        int invalidAccessCount = 5;
+        for (int i=0; i<invalidAccessCount; i++) {
+            try {
+                switch (i) {
+                    case 0: exevalator.declareVariable("x"); break;
+                    case 1: exevalator.readVariable("y"); break;
+                    case 2: exevalator.writeVariableAt(100, 1.0); break;
+                    case 3: exevalator.connectFunction("f", new FunctionC()); break;
+                    default: exevalator.specialize(compiledExpression, java.util.Collections.singletonMap("y", 1.0)); break;
+                }
+                throw new ExevalatorTestException("Expected exception has not been thrown");
+            } catch (Exevalator.Exception ee) {
+                check("Test of Validation " + (25 + i), ee.getStackTrace().length, 0);
+            }
+        }
+        check("Test of Validation 30", notifiedErrorCodeList.size(), invalidAccessCount);
+        check("Test of Validation 31", notifiedErrorCodeList.get(4) == Exevalator.ErrorCode.VARIABLE_NOT_FOUND ? 1 : 0, 1);
+
+        // Aborted evaluations are also thrown without stack traces.
+        Exevalator.CancellationToken cancelledToken = new Exevalator.CancellationToken();
+        cancelledToken.cancel();
+        try {
+            exevalator.eval("sum(i, 1, 10, i)", cancelledToken);
+            throw new ExevalatorTestException("Expected exception has not been thrown");
+        } catch (Exevalator.EvaluationAbortedException eae) {
+            check("Test of Validation 32", eae.getStackTrace().length, 0);
+        }
+
+        // Local variables of a validated expression are not visible in the next validation.
+        check("Test of Validation 33", exevalator.validate("let y = 1 in y").isValid() ? 1 : 0, 1);
+        check("Test of Validation 34", exevalator.validate("y").isValid() ? 1 : 0, 0);
+    }
+
+    class PureCountingFunction implements Exevalator.FunctionInterface {
+        int callCount = 0;
+        @Override
+        public double invoke(double[] args) {
+            this.callCount++;
+            return args[0] * args[1];
+        }
+        @Override
+        public boolean isPure() {
+            return true;
+        }
+    }
+
+    private void testSpecialization() {
+        Exevalator exevalator = new Exevalator();
+        exevalator.declareVariable("x");
+        exevalator.declareVariable("rate");
+        exevalator.declareVariable("offset");
+        exevalator.writeVariable("x", 3.0);
+        exevalator.writeVariable("rate", 1.5);
+        exevalator.writeVariable("offset", 2.0);
+        PureCountingFunction pureFunction = new PureCountingFunction();
+        CountingFunction impureFunction = new CountingFunction();
+        exevalator.connectFunction("scale", pureFunction);
+        exevalator.connectFunction("count", impureFunction);
+
+        // Calls of pure functions of which arguments are literals are folded when compiled.
+        Exevalator.CompiledExpression folded = exevalator.compile("x + scale(2, 3) + count(4)");
+        check("Test of Specialization 1", pureFunction.callCount, 1);
+        check("Test of Specialization 2", folded.execute(), 3.0 + 6.0 + 4.0);
+        check("Test of Specialization 3", pureFunction.callCount, 1);
+        check("Test of Specialization 4", impureFunction.callCount, 1);
+
+        // Specified variables are treated as constants, and subexpressions depending only on them are folded.
+        Exevalator.CompiledExpression compiled = exevalator.compile(
+            "x * rate + scale(rate, offset + 1) + (offset > 0 ? x : -x) + count(rate)"
+        );
+        java.util.Map<String, Double> constants = new java.util.HashMap<String, Double>();
+        constants.put("rate", 2.0);
+        constants.put("offset", -1.0);
+        Exevalator.CompiledExpression specialized = exevalator.specialize(compiled, constants);
+        int pureCallCount = pureFunction.callCount;
+        check("Test of Specialization 5", specialized.execute(), 3.0 * 2.0 + 0.0 - 3.0 + 2.0);
+        check("Test of Specialization 6", pureFunction.callCount, pureCallCount);
+        check("Test of Specialization 7", impureFunction.callCount, 2);
+
+        // The original expression still refers to the variables, and the specialized one refers to the other variables.
+        check("Test of Specialization 8", compiled.execute(), 3.0 * 1.5 + 1.5 * 3.0 + 3.0 + 1.5);
+        exevalator.writeVariable("x", 4.0);
+        exevalator.writeVariable("rate", 10.0);
+        check("Test of Specialization 9", specialized.execute(), 4.0 * 2.0 + 0.0 - 4.0 + 2.0);
+
+        // Let-bound variables shadow variables treated as constants.
+        Exevalator.CompiledExpression shadowing = exevalator.specialize(
+            exevalator.compile("let rate = x in rate * offset"), constants
+        );
+        check("Test of Specialization 10", shadowing.execute(), -4.0);
+
+        // Variables to which values are assigned can not be treated as constants.
+        try {
+            exevalator.specialize(exevalator.compile("rate = x * 2; rate + 1"), constants);
+            throw new ExevalatorTestException("Expected exception has not been thrown");
+        } catch (Exevalator.Exception ee) {
+            check("Test of Specialization 11", ee.getErrorCode() == Exevalator.ErrorCode.SPECIALIZED_VARIABLE_ASSIGNED ? 1 : 0, 1);
+            check("Test of Specialization 12", ee.getPosition(), 0);
+        }
+        constants.put("undeclared", 1.0);
+        try {
+            exevalator.specialize(compiled, constants);
+            throw new ExevalatorTestException("Expected exception has not been thrown");
+        } catch (Exevalator.Exception ee) {
+            // Expected to thrown
+            System.out.println("Test of Specialization 13: OK.");
+        }
+    }
+
+    private void testSubtreePool() {
+        Exevalator.SubtreePool subtreePool = new Exevalator.SubtreePool();
+        Exevalator exevalator = new Exevalator();
+        exevalator.declareVariable("x");
+        exevalator.declareVariable("y");
+        exevalator.writeVariable("x", 1.25);
+        exevalator.writeVariable("y", 2.5);
+        exevalator.connectFunction("f", new FunctionC());
+        exevalator.setSubtreePool(subtreePool);
+
+        // Structurally identical subtrees are shared among compiled expressions.
+        Exevalator.CompiledExpression compiled1 = exevalator.compile("(x*0.25 - y)*(x + 1.5) + 1");
+        int nodeCount = subtreePool.getNodeCount();
+        Exevalator.CompiledExpression compiled2 = exevalator.compile("(x*0.25 - y)*(x + 1.5) + 1");
+        check("Test of Subtree Pool 1", subtreePool.getNodeCount(), nodeCount);
+        Exevalator.CompiledExpression compiled3 = exevalator.compile("(x*0.25 - y)*(x + 1.5) + y");
+        check("Test of Subtree Pool 2", subtreePool.getNodeCount(), nodeCount + 1);
+        check("Test of Subtree Pool 3", compiled1.execute(), (1.25*0.25 - 2.5)*(1.25 + 1.5) + 1);
+        check("Test of Subtree Pool 4", compiled2.execute(), (1.25*0.25 - 2.5)*(1.25 + 1.5) + 1);
+        check("Test of Subtree Pool 5", compiled3.execute(), (1.25*0.25 - 2.5)*(1.25 + 1.5) + 2.5);
+
+        // The pool can be shared among engines, and function calls are not shared.
+        Exevalator anotherExevalator = new Exevalator();
+        anotherExevalator.declareVariable("x");
+        anotherExevalator.declareVariable("y");
+        anotherExevalator.writeVariable("x", 2.0);
+        anotherExevalator.connectFunction("f", new FunctionC());
+        anotherExevalator.setSubtreePool(subtreePool);
+        Exevalator.CompiledExpression compiled4 = anotherExevalator.compile("(x*0.25 - y)*(x + 1.5) + f(x, 1)");
+        Exevalator.CompiledExpression compiled5 = exevalator.compile("(x*0.25 - y)*(x + 1.5) + f(x, 1)");
+        check("Test of Subtree Pool 6", compiled4.execute(), (2.0*0.25 - 0.0)*(2.0 + 1.5) + 3.0);
+        check("Test of Subtree Pool 7", compiled5.execute(), (1.25*0.25 - 2.5)*(1.25 + 1.5) + 2.25);
+
+        // ASTs discarded for reducing the memory are re-created when they are required.
+        Exevalator.CompiledExpression compiled6 = exevalator.compile("let t = x*2 in t + y");
+        exevalator.declareVariable("z");
+        check("Test of Subtree Pool 8", compiled6.execute(), 1.25*2 + 2.5);
+        compiled6.setProfilingEnabled(true);
+        check("Test of Subtree Pool 9", compiled6.execute(), 1.25*2 + 2.5);
+        if (compiled6.getProfileReport() == null || !compiled6.getProfileReport().contains("t + y")) {
+            throw new ExevalatorTestException("\"Test of Subtree Pool 10\" has failed. report=" + compiled6.getProfileReport());
+        }
+        System.out.println("Test of Subtree Pool 10: OK.");
+        java.util.Map<String, Double> constants = new java.util.HashMap<String, Double>();
+        constants.put("x", 4.0);
+        check("Test of Subtree Pool 11", exevalator.specialize(compiled1, constants).execute(), (4.0*0.25 - 2.5)*(4.0 + 1.5) + 1);
+    }
+
+    private void testFunctionRegistry() {
+        java.util.Map<String, Exevalator.FunctionInterface> functionTable = new java.util.HashMap<String, Exevalator.FunctionInterface>();
+        functionTable.put("funcA", new FunctionA());
+        functionTable.put("funcB", new FunctionB());
+        functionTable.put("funcC", new FunctionC());
+        for (int ifunc=0; ifunc<100; ifunc++) {
+            functionTable.put("lib" + ifunc, new FunctionB());
+        }
+        Exevalator.FunctionRegistry registry = new Exevalator.FunctionRegistry(functionTable);
+        functionTable.put("funcD", new FunctionA());
+
+        // Functions in the registry are available in all engines created from it.
+        Exevalator exevalator = new Exevalator(registry);
+        check("Test of Function Registry 1", exevalator.eval("funcA() + funcB(2.5) + funcC(1, 2)"), 1.25 + 2.5 + 3.0);
+        check("Test of Function Registry 2", exevalator.eval("lib0(1) + lib57(2) + lib99(3)"), 6.0);
+        Exevalator anotherExevalator = new Exevalator(registry);
+        check("Test of Function Registry 3", anotherExevalator.eval("funcC(funcA(), 1)"), 2.25);
+
+        // The content of the Map is copied when the registry is created.
+        if (registry.size() != 103 || registry.containsKey("funcD") || registry.get("funcE") != null) {
+            throw new ExevalatorTestException("\"Test of Function Registry 4\" has failed. size=" + registry.size());
+        }
+        System.out.println("Test of Function Registry 4: OK.");
+        try {
+            exevalator.eval("funcD()");
+            throw new ExevalatorTestException("Expected exception has not been thrown");
+        } catch (Exevalator.Exception ee) {
+            // Expected to thrown
+            System.out.println("Test of Function Registry 5: OK.");
+        }
+
+        // Functions connected to an engine are available only in it, and can't override ones in the registry.
+        exevalator.connectFunction("funcD", new FunctionC());
+        check("Test of Function Registry 6", exevalator.eval("funcD(1, 2) + funcA()"), 4.25);
+        try {
+            anotherExevalator.eval("funcD(1, 2)");
+            throw new ExevalatorTestException("Expected exception has not been thrown");
+        } catch (Exevalator.Exception ee) {
+            // Expected to thrown
+            System.out.println("Test of Function Registry 7: OK.");
+        }
+        try {
+            exevalator.connectFunction("funcA", new FunctionA());
+            throw new ExevalatorTestException("Expected exception has not been thrown");
+        } catch (Exevalator.Exception ee) {
+            // Expected to thrown
+            System.out.println("Test of Function Registry 8: OK.");
+        }
+        if (registry.containsKey("funcD")) {
+            throw new ExevalatorTestException("\"Test of Function Registry 9\" has failed.");
+        }
+        System.out.println("Test of Function Registry 9: OK.");
+
+        // The registry is immutable.
+        try {
+            registry.put("funcE", new FunctionA());
+            throw new ExevalatorTestException("Expected exception has not been thrown");
+        } catch (UnsupportedOperationException uoe) {
+            // Expected to thrown
+            System.out.println("Test of Function Registry 10: OK.");
+        }
+
+        // Variables, compilations, and explanations work in engines created from registries.
+        exevalator.declareVariable("x");
+        exevalator.writeVariable("x", 1.5);
+        exevalator.setFunctionCost("lib1", 50.0);
+        check("Test of Function Registry 11", exevalator.compile("lib1(x) + funcD(x, 1)").execute(), 1.5 + 2.5);
+        check("Test of Function Registry 12", exevalator.explain("lib1(x)").getEstimatedCost(), 1 + 50 + 1);
+        check("Test of Function Registry 13", new Exevalator(registry).explain("lib1(1)").getEstimatedCost(), 1 + 10 + 1);
+
+        // An empty registry is also available.
+        Exevalator emptyExevalator = new Exevalator(new Exevalator.FunctionRegistry(new java.util.HashMap<String, Exevalator.FunctionInterface>()));
+        emptyExevalator.connectFunction("funcA", new FunctionA());
+        check("Test of Function Registry 14", emptyExevalator.eval("funcA() + 1"), 2.25);
+
+        // Functions of which names have the same hash code ("Aa" and "BB") are also available.
+        java.util.Map<String, Exevalator.FunctionInterface> collidingFunctionTable = new java.util.HashMap<String, Exevalator.FunctionInterface>();
+        collidingFunctionTable.put("Aa", new FunctionA());
+        collidingFunctionTable.put("BB", new FunctionB());
+        Exevalator collidingExevalator = new Exevalator(new Exevalator.FunctionRegistry(collidingFunctionTable));
+        check("Test of Function Registry 15", collidingExevalator.eval("Aa() + BB(2)"), 3.25);
+    }
+
+    private void testFork() {
+        Exevalator exevalator = new Exevalator();
+        exevalator.declareVariable("x");
+        exevalator.declareVariable("y");
+        exevalator.writeVariable("x", 1.25);
+        exevalator.writeVariable("y", 2.5);
+        exevalator.connectFunction("funcC", new FunctionC());
+        check("Test of Fork 1", exevalator.eval("let t = x*2 in funcC(t, y)"), 1.25*2 + 2.5);
+        Exevalator.CompiledExpression compiled = exevalator.compile("x + y");
+
+        // Variables, functions, and the cached expression are available in the forked engine.
+        Exevalator forkedExevalator = exevalator.fork();
+        check("Test of Fork 2", forkedExevalator.reeval(), 1.25*2 + 2.5);
+        check("Test of Fork 3", forkedExevalator.eval("let t = x*2 in funcC(t, y)"), 1.25*2 + 2.5);
+        check("Test of Fork 4", forkedExevalator.eval("funcC(x, y)"), 1.25 + 2.5);
+
+        // Modifications of variables in either engine don't affect the other.
+        forkedExevalator.writeVariable("x", 10.0);
+        check("Test of Fork 5", exevalator.readVariable("x"), 1.25);
+        exevalator.writeVariable("y", 20.0);
+        check("Test of Fork 6", forkedExevalator.readVariable("y"), 2.5);
+        check("Test of Fork 7", forkedExevalator.eval("x + y"), 10.0 + 2.5);
+        check("Test of Fork 8", compiled.execute(), 1.25 + 20.0);
+        Exevalator anotherForkedExevalator = exevalator.fork();
+        check("Test of Fork 9", anotherForkedExevalator.eval("y = x * 4"), 5.0);
+        check("Test of Fork 10", exevalator.readVariable("y"), 20.0);
+        check("Test of Fork 11", forkedExevalator.readVariable("y"), 2.5);
+
+        // Variables and functions added to either engine are not available in the other.
+        forkedExevalator.declareVariable("z");
+        forkedExevalator.writeVariable("z", 3.0);
+        forkedExevalator.connectFunction("funcB", new FunctionB());
+        check("Test of Fork 12", forkedExevalator.eval("funcB(z) + x"), 13.0);
+        try {
+            exevalator.eval("z");
+            throw new ExevalatorTestException("Expected exception has not been thrown");
+        } catch (Exevalator.Exception ee) {
+            // Expected to thrown
+            System.out.println("Test of Fork 13: OK.");
+        }
+        try {
+            exevalator.eval("funcB(1)");
+            throw new ExevalatorTestException("Expected exception has not been thrown");
+        } catch (Exevalator.Exception ee) {
+            // Expected to thrown
+            System.out.println("Test of Fork 14: OK.");
+        }
+        exevalator.connectFunction("funcA", new FunctionA());
+        check("Test of Fork 15", exevalator.eval("funcA() + funcC(1, 2)"), 4.25);
+        try {
+            forkedExevalator.eval("funcA()");
+            throw new ExevalatorTestException("Expected exception has not been thrown");
+        } catch (Exevalator.Exception ee) {
+            // Expected to thrown
+            System.out.println("Test of Fork 16: OK.");
+        }
+
+        // Engines created from registries and forked engines can also be forked, and settings are inherited.
+        java.util.Map<String, Exevalator.FunctionInterface> functionTable = new java.util.HashMap<String, Exevalator.FunctionInterface>();
+        functionTable.put("funcC", new FunctionC());
+        Exevalator registryExevalator = new Exevalator(new Exevalator.FunctionRegistry(functionTable));
+        registryExevalator.connectFunction("funcA", new FunctionA());
+        registryExevalator.setLimits(26, registryExevalator.getMaxTokenCount(), registryExevalator.getMaxAstDepth());
+        Exevalator forkedRegistryExevalator = registryExevalator.fork().fork();
+        forkedRegistryExevalator.connectFunction("funcB", new FunctionB());
+        check("Test of Fork 17", forkedRegistryExevalator.eval("funcC(funcA(), funcB(1))"), 2.25);
+        try {
+            registryExevalator.eval("funcB(1)");
+            throw new ExevalatorTestException("Expected exception has not been thrown");
+        } catch (Exevalator.Exception ee) {
+            // Expected to thrown
+            System.out.println("Test of Fork 18: OK.");
+        }
+        try {
+            forkedRegistryExevalator.eval("funcC(funcA(), funcB(1)) + 1");
+            throw new ExevalatorTestException("Expected exception has not been thrown");
+        } catch (Exevalator.Exception ee) {
+            // Expected to thrown
+            System.out.println("Test of Fork 19: OK.");
+        }
+    }
+
+    private static java.util.Map<String, Double> updates(Object... namesAndValues) {
+        java.util.Map<String, Double> updateMap = new java.util.LinkedHashMap<String, Double>();
+        for (int i=0; i<namesAndValues.length; i+=2) {
+            updateMap.put((String)namesAndValues[i], (Double)namesAndValues[i + 1]);
+        }
+        return updateMap;
+    }
+
+    class ManualSubscription implements java.util.concurrent.Flow.Subscription {
+        long requestedCount = 0L;
+        boolean cancelled = false;
+
+        @Override
+        public void request(long n) {
+            this.requestedCount += n;
+        }
+
+        @Override
+        public void cancel() {
+            this.cancelled = true;
+        }
+    }
+
+    class CollectingSubscriber implements java.util.concurrent.Flow.Subscriber<ExevalatorFlowProcessor.Result> {
+        java.util.concurrent.Flow.Subscription subscription = null;
+        java.util.List<ExevalatorFlowProcessor.Result> resultList = new java.util.ArrayList<ExevalatorFlowProcessor.Result>();
+        Throwable error = null;
+        boolean completed = false;
+
+        @Override
+        public void onSubscribe(java.util.concurrent.Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(ExevalatorFlowProcessor.Result result) {
+            this.resultList.add(result);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            this.error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            this.completed = true;
+        }
+    }
+
+    /**
+     * An operation of which allocated memory is measured in testAllocations().
+     */
+    interface AllocationTestTarget {
+        public void run(int count);
+    }
+
+    private void testAllocations() {
+        java.lang.management.ThreadMXBean threadMXBean = java.lang.management.ManagementFactory.getThreadMXBean();
+        if (!(threadMXBean instanceof com.sun.management.ThreadMXBean)
+                || !((com.sun.management.ThreadMXBean)threadMXBean).isThreadAllocatedMemorySupported()) {
+            System.out.println("Test of Allocations: Skipped (measuring allocated memory is not supported on this JVM).");
+            return;
+        }
+        ((com.sun.management.ThreadMXBean)threadMXBean).setThreadAllocatedMemoryEnabled(true);
+
+        final Exevalator exevalator = new Exevalator();
+        final int xAddress = exevalator.declareVariable("x");
+        final int yAddress = exevalator.declareVariable("y");
+        exevalator.writeVariableAt(xAddress, 1.25);
+        exevalator.writeVariableAt(yAddress, 2.5);
+        exevalator.connectFunction("f", new FunctionC());
+        exevalator.connectFunction("safediv", new SafeDivFunction());
+
+        // The corpus of expressions, using all kinds of evaluator nodes.
+        String[] expressions = {
+            "1.25 + 2.5 * 3 - 4 / 5",
+            "-x * (y - 1.5) / 2",
+            "f(x, f(y, 3)) * f(1, 2)",
+            "safediv(x, y - 2.5, -1)",
+            "let a = x * y in a * a - a",
+            "x = x + 1; y = y * 0.5; x - y",
+            "x < y ? x : y",
+            "x <= y ? f(x, 1) : safediv(y, x, 0)",
+            "(x == y) + (x != y) + (x > y) + (x >= y)",
+            "sum(i, 1, 10, prod(j, 1, i, x) / i)",
+        };
+
+        for (int iexpr=0; iexpr<expressions.length; iexpr++) {
+            final String expression = expressions[iexpr];
+            final Exevalator.CompiledExpression compiledExpression = exevalator.compile(expression);
+
+            checkZeroAllocation("Test of Allocations of eval " + (iexpr + 1), new AllocationTestTarget() {
+                @Override
+                public void run(int count) {
+                    for (int i=0; i<count; i++) {
+                        exevalator.eval(expression);
+                    }
+                }
+            });
+
+            checkZeroAllocation("Test of Allocations of reeval " + (iexpr + 1), new AllocationTestTarget() {
+                @Override
+                public void run(int count) {
+                    for (int i=0; i<count; i++) {
+                        exevalator.reeval();
+                    }
+                }
+            });
+
+            checkZeroAllocation("Test of Allocations of execute " + (iexpr + 1), new AllocationTestTarget() {
+                @Override
+                public void run(int count) {
+                    for (int i=0; i<count; i++) {
+                        compiledExpression.execute();
+                    }
+                }
+            });
+        }
+
+        checkZeroAllocation("Test of Allocations of accessing variables 1", new AllocationTestTarget() {
+            @Override
+            public void run(int count) {
+                for (int i=0; i<count; i++) {
+                    exevalator.writeVariable("x", exevalator.readVariable("y"));
+                }
+            }
+        });
+
+        checkZeroAllocation("Test of Allocations of accessing variables 2", new AllocationTestTarget() {
+            @Override
+            public void run(int count) {
+                for (int i=0; i<count; i++) {
+                    exevalator.writeVariableAt(xAddress, exevalator.readVariableAt(yAddress));
+                }
+            }
+        });
+    }
+
+    /**
+     * Checks that no memory is allocated on the heap by the specified operation (after warming up).
+     *
+     * @param testName The name of the testing
+     * @param target The operation to be measured
+     */
+    private static void checkZeroAllocation(String testName, AllocationTestTarget target) {
+        com.sun.management.ThreadMXBean threadMXBean
+            = (com.sun.management.ThreadMXBean)java.lang.management.ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        int count = 10000;
+
+        // Warm up, to exclude allocations by class loading, JIT compilation, and so on.
+        target.run(count);
+
+        // Measure the allocated memory of an empty operation, which includes allocations by the measurement itself.
+        // Repeat measurements and take the minimum value, to exclude incidental allocations.
+        long minBaselineBytes = Long.MAX_VALUE;
+        long minAllocatedBytes = Long.MAX_VALUE;
+        for (int itrial=0; itrial<5; itrial++) {
+            long beginBytes = threadMXBean.getThreadAllocatedBytes(threadId);
+            long endBytes = threadMXBean.getThreadAllocatedBytes(threadId);
+            minBaselineBytes = Math.min(minBaselineBytes, endBytes - beginBytes);
+
+            beginBytes = threadMXBean.getThreadAllocatedBytes(threadId);
+            target.run(count);
+            endBytes = threadMXBean.getThreadAllocatedBytes(threadId);
+            minAllocatedBytes = Math.min(minAllocatedBytes, endBytes - beginBytes);
+        }
+
+        long allocatedBytes = minAllocatedBytes - minBaselineBytes;
+        if (allocatedBytes <= 0) {
+            System.out.println(testName + ": OK.");
+            return;
+        }
+        throw new ExevalatorTestException(
+            "\"" + testName + "\" has failed. " +
+            allocatedBytes + " bytes have been allocated by " + count + " operations."
+        );
+    }
+
+
     /**
      * Checks the evaluated (computed) value of the testing expression by the Exevalator.
      *
@@ -0,0 +1,66 @@
+package exevalator.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of "eval" called from multiple threads:
+ * on one engine shared by all threads, and on engines created for each thread.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@Threads(4)
+public class ContentionBenchmark {
+
+    /** The engine shared by all threads. */
+    @State(Scope.Benchmark)
+    public static class SharedEngine {
+
+        @Param({ "SMALL", "MEDIUM", "MAX" })
+        public ExpressionCorpus corpus;
+
+        public Exevalator exevalator;
+
+        @Setup
+        public void setUp() {
+            this.exevalator = ExpressionCorpus.createEngine();
+        }
+    }
+
+    /** The engine created for each thread. */
+    @State(Scope.Thread)
+    public static class ThreadLocalEngine {
+
+        public Exevalator exevalator;
+
+        @Setup
+        public void setUp() {
+            this.exevalator = ExpressionCorpus.createEngine();
+        }
+    }
+
+    @Benchmark
+    public double sharedEngine(SharedEngine shared) {
+        return shared.exevalator.eval(shared.corpus.expression);
+    }
+
+    @Benchmark
+    public double perThreadEngine(SharedEngine shared, ThreadLocalEngine local) {
+        return local.exevalator.eval(shared.corpus.expression);
+    }
+}
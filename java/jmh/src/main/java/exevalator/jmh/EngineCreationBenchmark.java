@@ -0,0 +1,85 @@
+package exevalator.jmh;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of creations of engines in which the same library of functions is available,
+ * by connecting each function to each engine, by sharing an Exevalator.FunctionRegistry among engines,
+ * and by forking an engine in which the functions and variables of the corpus are available.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class EngineCreationBenchmark {
+
+    /** The number of functions in the library. */
+    private static final int FUNCTION_COUNT = 80;
+
+    private Map<String, Exevalator.FunctionInterface> functionTable;
+    private Exevalator.FunctionRegistry functionRegistry;
+    private Exevalator parentEngine;
+
+    @Setup
+    public void setUp() {
+        this.functionTable = new HashMap<String, Exevalator.FunctionInterface>();
+        for (int ifunc=0; ifunc<FUNCTION_COUNT; ifunc++) {
+            this.functionTable.put("lib" + ifunc, new ExpressionCorpus.AdditionFunction());
+        }
+        this.functionRegistry = new Exevalator.FunctionRegistry(this.functionTable);
+        this.parentEngine = this.connectEach();
+        for (int ivar=0; ivar<ExpressionCorpus.VARIABLE_NAMES.length; ivar++) {
+            int address = this.parentEngine.declareVariable(ExpressionCorpus.VARIABLE_NAMES[ivar]);
+            this.parentEngine.writeVariableAt(address, ExpressionCorpus.VARIABLE_VALUES[ivar]);
+        }
+        this.parentEngine.eval("lib0(x, y) + lib1(y, z)");
+    }
+
+    @Benchmark
+    public Exevalator connectEach() {
+        Exevalator engine = new Exevalator();
+        for (Map.Entry<String, Exevalator.FunctionInterface> entry: this.functionTable.entrySet()) {
+            engine.connectFunction(entry.getKey(), entry.getValue());
+        }
+        return engine;
+    }
+
+    @Benchmark
+    public Exevalator fromRegistry() {
+        return new Exevalator(this.functionRegistry);
+    }
+
+    @Benchmark
+    public Exevalator fromRegistryWithOverlay() {
+        Exevalator engine = new Exevalator(this.functionRegistry);
+        engine.connectFunction("f", new ExpressionCorpus.AdditionFunction());
+        return engine;
+    }
+
+    @Benchmark
+    public Exevalator fork() {
+        return this.parentEngine.fork();
+    }
+
+    @Benchmark
+    public double forkAndEval() {
+        Exevalator engine = this.parentEngine.fork();
+        engine.writeVariable("x", 2.0);
+        return engine.eval("lib0(x, y) + lib1(y, z)");
+    }
+}
@@ -0,0 +1,72 @@
+package exevalator.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of public methods of the engine:
+ * "eval" when the cached expression hits or misses, and "reeval".
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class EvalBenchmark {
+
+    /** The expression to be evaluated. */
+    @Param({ "SMALL", "MEDIUM", "MAX" })
+    public ExpressionCorpus corpus;
+
+    private Exevalator exevalator;
+    private String expression;
+    private String equalExpression;
+    private String[] alternatingExpressions;
+    private int alternatingIndex;
+
+    @Setup
+    public void setUp() {
+        this.exevalator = ExpressionCorpus.createEngine();
+        this.expression = this.corpus.expression;
+        this.equalExpression = new String(this.corpus.expression.toCharArray()); // Equal content, but not the same instance.
+        this.alternatingExpressions = new String[] { this.corpus.expression, this.corpus.getAlternativeExpression() };
+        this.alternatingIndex = 0;
+        this.exevalator.eval(this.expression);
+    }
+
+    /** Evaluates the same String instance repeatedly, so the cache hits by the reference comparison. */
+    @Benchmark
+    public double evalCacheHit() {
+        return this.exevalator.eval(this.expression);
+    }
+
+    /** Evaluates the String instance having the same content as the cached one, so the cache hits by comparing contents. */
+    @Benchmark
+    public double evalCacheHitByContent() {
+        return this.exevalator.eval(this.equalExpression);
+    }
+
+    /** Evaluates two different expressions alternately, so the cache always misses and re-parsing is required. */
+    @Benchmark
+    public double evalCacheMiss() {
+        this.alternatingIndex ^= 1;
+        return this.exevalator.eval(this.alternatingExpressions[this.alternatingIndex]);
+    }
+
+    @Benchmark
+    public double reeval() {
+        return this.exevalator.reeval();
+    }
+}
@@ -0,0 +1,109 @@
+package exevalator.jmh;
+
+import java.util.Map;
+import java.util.HashMap;
+
+/**
+ * The corpus of expressions used in benchmarks, with the environment (variables and functions) to evaluate them.
+ */
+public enum ExpressionCorpus {
+
+    /** A small expression. */
+    SMALL("x + 1"),
+
+    /** A medium-size expression, using variables and a function. */
+    MEDIUM("(x*y + 1.5) / (x - y*2.25) - 3*f(x, z)"),
+
+    /** A large expression, consisting of the tokens close to the limit (StaticSettings.MAX_TOKEN_COUNT). */
+    MAX("x*1.25 + y*2.5 - z/3.75 + f(x, y)*0.5 - (x + y)*(y - z) + f(z, 1.5)/2 - x*y*z + (x - 1)*(y + 2)/z + 4.5");
+
+    /** Names of variables available in expressions of the corpus. */
+    public static final String[] VARIABLE_NAMES = { "x", "y", "z" };
+
+    /** Values of variables available in expressions of the corpus. */
+    public static final double[] VARIABLE_VALUES = { 1.25, 2.5, 5.0 };
+
+    /** The expression. */
+    public final String expression;
+
+    /**
+     * Creates a corpus entry.
+     *
+     * @param expression The expression.
+     */
+    private ExpressionCorpus(String expression) {
+        this.expression = expression;
+    }
+
+    /**
+     * Returns another expression having the same length as this expression but different content,
+     * for measuring the performance when the cache of the engine misses.
+     *
+     * @return The expression different from this expression.
+     */
+    public String getAlternativeExpression() {
+        return this.expression.replace('x', 'w');
+    }
+
+    /**
+     * The function available in expressions of the corpus, as "f".
+     */
+    public static final class AdditionFunction implements Exevalator.FunctionInterface {
+        @Override
+        public double invoke(double[] arguments) {
+            return arguments[0] + arguments[1];
+        }
+    }
+
+    /**
+     * Creates an engine in which variables and functions used in the corpus are available.
+     *
+     * @return The created engine.
+     */
+    public static Exevalator createEngine() {
+        Exevalator exevalator = new Exevalator();
+        for (int i=0; i<VARIABLE_NAMES.length; i++) {
+            exevalator.declareVariable(VARIABLE_NAMES[i]);
+            exevalator.writeVariable(VARIABLE_NAMES[i], VARIABLE_VALUES[i]);
+        }
+        exevalator.declareVariable("w");
+        exevalator.writeVariable("w", 10.0);
+        exevalator.connectFunction("f", new AdditionFunction());
+        return exevalator;
+    }
+
+    /**
+     * Creates the variable table used in the corpus, for benchmarking internal phases directly.
+     *
+     * @return The Map mapping each variable name to an address of the variable.
+     */
+    public static Map<String, Integer> createVariableTable() {
+        Map<String, Integer> variableTable = new HashMap<String, Integer>();
+        for (int i=0; i<VARIABLE_NAMES.length; i++) {
+            variableTable.put(VARIABLE_NAMES[i], i);
+        }
+        return variableTable;
+    }
+
+    /**
+     * Creates the function table used in the corpus, for benchmarking internal phases directly.
+     *
+     * @return The Map mapping each function name to a function.
+     */
+    public static Map<String, Exevalator.FunctionInterface> createFunctionTable() {
+        Map<String, Exevalator.FunctionInterface> functionTable = new HashMap<String, Exevalator.FunctionInterface>();
+        functionTable.put("f", new AdditionFunction());
+        return functionTable;
+    }
+
+    /**
+     * Creates the memory storing values of variables used in the corpus, for benchmarking internal phases directly.
+     *
+     * @return The array storing values of variables.
+     */
+    public static double[] createMemory() {
+        double[] memory = new double[64];
+        System.arraycopy(VARIABLE_VALUES, 0, memory, 0, VARIABLE_VALUES.length);
+        return memory;
+    }
+}
@@ -0,0 +1,91 @@
+package exevalator.jmh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the memory retained by many compiled expressions sharing common terms,
+ * with and without sharing subtrees among them by Exevalator.SubtreePool.
+ * This is not a JMH benchmark, so run it directly:
+ *
+ *     java -cp target/benchmarks.jar exevalator.jmh.FootprintMeasurement
+ */
+public class FootprintMeasurement {
+
+    /** The number of compiled expressions to be held. */
+    private static final int EXPRESSION_COUNT = 20000;
+
+    /** The number of common terms, from which terms of each expression are selected. */
+    private static final int COMMON_TERM_COUNT = 64;
+
+    /** The number of common terms in each expression. */
+    private static final int TERMS_PER_EXPRESSION = 6;
+
+    public static void main(String[] args) {
+        String[] expressions = createExpressions();
+        long bytesWithoutSharing = measure(expressions, null);
+        long bytesWithSharing = measure(expressions, new Exevalator.SubtreePool());
+        System.out.println("Bytes per compiled expression without sharing: " + bytesWithoutSharing / EXPRESSION_COUNT);
+        System.out.println("Bytes per compiled expression with sharing:    " + bytesWithSharing / EXPRESSION_COUNT);
+    }
+
+    /**
+     * Creates expressions, each of which consists of common terms (e.g. generated risk terms) and a term specific to it.
+     *
+     * @return The created expressions.
+     */
+    private static String[] createExpressions() {
+        Random random = new Random(1234L);
+        String[] commonTerms = new String[COMMON_TERM_COUNT];
+        for (int iterm=0; iterm<COMMON_TERM_COUNT; iterm++) {
+            commonTerms[iterm] = "(x*" + (iterm + 1) * 0.125 + " - y)*(z + " + iterm + ".5)/(w + 2)";
+        }
+        String[] expressions = new String[EXPRESSION_COUNT];
+        for (int iexpr=0; iexpr<EXPRESSION_COUNT; iexpr++) {
+            StringBuilder expressionBuilder = new StringBuilder();
+            for (int iterm=0; iterm<TERMS_PER_EXPRESSION; iterm++) {
+                expressionBuilder.append(commonTerms[random.nextInt(COMMON_TERM_COUNT)]).append(" + ");
+            }
+            expressionBuilder.append("w*").append(iexpr);
+            expressions[iexpr] = expressionBuilder.toString();
+        }
+        return expressions;
+    }
+
+    /**
+     * Compiles all expressions and measures the memory retained by them.
+     *
+     * @param expressions The expressions to be compiled.
+     * @param subtreePool The pool of shared subtrees, or null not to share them.
+     * @return The retained memory in bytes.
+     */
+    private static long measure(String[] expressions, Exevalator.SubtreePool subtreePool) {
+        Exevalator engine = ExpressionCorpus.createEngine();
+        engine.setLimits(Integer.MAX_VALUE, Integer.MAX_VALUE, StaticSettings.MAX_AST_DEPTH);
+        engine.setSubtreePool(subtreePool);
+        long usedMemoryBefore = getUsedMemory();
+        List<Exevalator.CompiledExpression> compiledExpressions = new ArrayList<Exevalator.CompiledExpression>();
+        for (String expression: expressions) {
+            compiledExpressions.add(engine.compile(expression));
+        }
+        long usedMemoryAfter = getUsedMemory();
+        if (compiledExpressions.get(EXPRESSION_COUNT - 1).execute() == 0.0) {
+            System.out.println("(Unexpected result)");
+        }
+        return usedMemoryAfter - usedMemoryBefore;
+    }
+
+    /**
+     * Returns the used memory of the heap, after collecting garbage.
+     *
+     * @return The used memory in bytes.
+     */
+    private static long getUsedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int igc=0; igc<5; igc++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,75 @@
+package exevalator.jmh;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of each phase of the evaluation:
+ * lexical analysis, parsing, construction of the tree of evaluator nodes, and evaluation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class PhaseBenchmark {
+
+    /** The expression to be processed. */
+    @Param({ "SMALL", "MEDIUM", "MAX" })
+    public ExpressionCorpus corpus;
+
+    private String expression;
+    private Token[] tokens;
+    private AstNode ast;
+    private Map<String, Integer> variableTable;
+    private Map<String, Exevalator.FunctionInterface> functionTable;
+    private double[] memory;
+    private Evaluator evaluator;
+
+    @Setup
+    public void setUp() {
+        this.expression = this.corpus.expression;
+        this.tokens = LexicalAnalyzer.analyze(this.expression);
+        this.ast = Parser.parse(this.tokens);
+        this.variableTable = ExpressionCorpus.createVariableTable();
+        this.functionTable = ExpressionCorpus.createFunctionTable();
+        this.memory = ExpressionCorpus.createMemory();
+        this.evaluator = new Evaluator();
+        this.evaluator.update(this.ast, this.variableTable, this.functionTable, this.variableTable.size());
+    }
+
+    @Benchmark
+    public Token[] lex() {
+        return LexicalAnalyzer.analyze(this.expression);
+    }
+
+    @Benchmark
+    public AstNode parse() {
+        return Parser.parse(this.tokens);
+    }
+
+    @Benchmark
+    public Evaluator build() {
+        Evaluator evaluator = new Evaluator();
+        evaluator.update(this.ast, this.variableTable, this.functionTable, this.variableTable.size());
+        return evaluator;
+    }
+
+    @Benchmark
+    public double evaluate() {
+        return this.evaluator.evaluate(this.memory);
+    }
+}
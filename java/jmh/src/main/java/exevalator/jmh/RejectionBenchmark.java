@@ -0,0 +1,64 @@
+package exevalator.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of rejections of an invalid expression (referring an undeclared variable),
+ * by "validate" method, and by exceptions thrown by "compile" method with and without stack traces.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class RejectionBenchmark {
+
+    /** The invalid expression, in which "v" is not declared. */
+    private static final String INVALID_EXPRESSION = "(x*y + 1.5) / (x - y*2.25) - 3*f(x, v)";
+
+    private Exevalator engine;
+    private Exevalator stacklessEngine;
+
+    @Setup
+    public void setUp() {
+        this.engine = ExpressionCorpus.createEngine();
+        this.stacklessEngine = ExpressionCorpus.createEngine();
+        this.stacklessEngine.setStackTraceEnabled(false);
+    }
+
+    @Benchmark
+    public Exevalator.ValidationResult validate() {
+        return this.engine.validate(INVALID_EXPRESSION);
+    }
+
+    @Benchmark
+    public Exevalator.Exception compileWithStackTrace() {
+        return compile(this.engine);
+    }
+
+    @Benchmark
+    public Exevalator.Exception compileWithoutStackTrace() {
+        return compile(this.stacklessEngine);
+    }
+
+    private static Exevalator.Exception compile(Exevalator engine) {
+        try {
+            engine.compile(INVALID_EXPRESSION);
+            throw new IllegalStateException("The invalid expression has been compiled.");
+        } catch (Exevalator.Exception ee) {
+            return ee;
+        }
+    }
+}
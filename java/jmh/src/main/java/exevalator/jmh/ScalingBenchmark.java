@@ -0,0 +1,71 @@
+package exevalator.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of compilations and evaluations of expressions of various sizes (numbers of tokens),
+ * far beyond the default limits, to show how times scale with sizes of expressions.
+ * Both should grow linearly with sizes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class ScalingBenchmark {
+
+    /** Terms of the expression, used cyclically. */
+    private static final String[] TERMS = { "x*1.25", "y", "z/2.5", "(x - y)*z", "0.75" };
+
+    /** The (approximate) number of tokens of the expression. */
+    @Param({ "100", "1000", "10000", "100000" })
+    public int tokenCount;
+
+    private String expression;
+    private Exevalator engine;
+    private Exevalator.CompiledExpression compiledExpression;
+
+    @Setup
+    public void setUp() {
+        StringBuilder expressionBuilder = new StringBuilder(TERMS[0]);
+        int currentTokenCount = 3;
+        for (int iterm=1; currentTokenCount<this.tokenCount; iterm++) {
+            String term = TERMS[iterm % TERMS.length];
+            expressionBuilder.append(iterm % 2 == 0 ? " + " : " - ");
+            expressionBuilder.append(term);
+            currentTokenCount += 1 + LexicalAnalyzer.analyze(term).length;
+        }
+        this.expression = expressionBuilder.toString();
+
+        this.engine = new Exevalator();
+        this.engine.setLimits(Integer.MAX_VALUE, Integer.MAX_VALUE, StaticSettings.MAX_AST_DEPTH);
+        for (int ivar=0; ivar<ExpressionCorpus.VARIABLE_NAMES.length; ivar++) {
+            int address = this.engine.declareVariable(ExpressionCorpus.VARIABLE_NAMES[ivar]);
+            this.engine.writeVariableAt(address, ExpressionCorpus.VARIABLE_VALUES[ivar]);
+        }
+        this.compiledExpression = this.engine.compile(this.expression);
+    }
+
+    @Benchmark
+    public Exevalator.CompiledExpression compile() {
+        return this.engine.compile(this.expression);
+    }
+
+    @Benchmark
+    public double evaluate() {
+        return this.compiledExpression.execute();
+    }
+}